@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb;
+
+import de.targodan.usb.data.Case;
+import de.targodan.usb.data.CaseManager;
+import de.targodan.usb.data.Rat;
+import de.targodan.usb.data.Report;
+import de.targodan.usb.io.IRCFormatFilteringReader;
+import de.targodan.usb.io.processing.Command;
+import de.targodan.usb.io.processing.Handler;
+import de.targodan.usb.io.processing.HexchatMarshaller;
+import de.targodan.usb.io.processing.IRCMessage;
+import de.targodan.usb.io.processing.Marshaller;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+/**
+ * Fixtures provides the recorded logs used by the benchmarks.
+ *
+ * @author Luca Corbatto
+ */
+public class Fixtures {
+    /**
+     * A HexChat log of a dispatch session with a representative mix of
+     * RATSIGNALs, calls, reports, commands and chatter. It contains IRC
+     * formatting codes just like the real logs.
+     */
+    public static final String MIXED_LOG = "/de/targodan/usb/fuelrats-mix.log";
+    
+    /**
+     * NullHandler is a Handler that ignores everything.
+     */
+    public static class NullHandler implements Handler {
+        @Override
+        public void registerCaseManager(CaseManager cm) {
+        }
+
+        @Override
+        public void handleNewCase(Case c) {
+        }
+
+        @Override
+        public void handleCommand(Command cmd) {
+        }
+
+        @Override
+        public void handleCall(Rat rat, String caseIdentifier) {
+        }
+
+        @Override
+        public void handleReport(String ratIrcName, Report report, String caseIdentifier) {
+        }
+    }
+    
+    /**
+     * Disables logging.
+     * 
+     * Some of the benchmarked code logs every message, writing those logs
+     * would dominate the measurements.
+     */
+    public static void disableLogging() {
+        LogManager.getLogManager().reset();
+        Logger.getLogger("").setLevel(Level.OFF);
+    }
+    
+    /**
+     * Returns the raw content of the resource.
+     * 
+     * @param resource The name of the resource.
+     * @return the raw content of the resource.
+     * @throws IOException If the resource cannot be read.
+     */
+    public static String read(String resource) throws IOException {
+        InputStream in = Fixtures.class.getResourceAsStream(resource);
+        if(in == null) {
+            throw new IOException("Resource \""+resource+"\" not found.");
+        }
+        
+        StringBuilder sb = new StringBuilder();
+        try(InputStreamReader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            int n;
+            while((n = reader.read(buffer)) != -1) {
+                sb.append(buffer, 0, n);
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Returns the lines of the resource with the IRC formatting removed, the
+     * way a DataSource hands them to the Marshaller.
+     * 
+     * @param resource The name of the resource.
+     * @return the filtered lines of the resource.
+     * @throws IOException If the resource cannot be read.
+     */
+    public static List<String> readFilteredLines(String resource) throws IOException {
+        List<String> lines = new ArrayList<>();
+        try(BufferedReader reader = new BufferedReader(new IRCFormatFilteringReader(new StringReader(Fixtures.read(resource))))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+    
+    /**
+     * Returns the marshalled messages of the HexChat log resource.
+     * 
+     * @param resource The name of the resource.
+     * @return the marshalled messages of the resource.
+     * @throws IOException If the resource cannot be read.
+     */
+    public static List<IRCMessage> readMessages(String resource) throws IOException {
+        Marshaller marshaller = new HexchatMarshaller();
+        List<IRCMessage> messages = new ArrayList<>();
+        for(String line : Fixtures.readFilteredLines(resource)) {
+            IRCMessage msg = marshaller.marshall(line);
+            if(msg != null) {
+                messages.add(msg);
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.Fixtures;
+import de.targodan.usb.data.CaseManager;
+import de.targodan.usb.io.processing.DefaultHandler;
+import de.targodan.usb.io.processing.Handler;
+import de.targodan.usb.io.processing.HexchatMarshaller;
+import de.targodan.usb.io.processing.IRCMessage;
+import de.targodan.usb.io.processing.Marshaller;
+import de.targodan.usb.io.processing.ParseResult;
+import de.targodan.usb.io.processing.Parser;
+import de.targodan.usb.io.processing.ScanningParser;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks the whole pipeline from the raw log to the CaseManager.
+ * 
+ * Every invocation feeds the mixed log through a DataSource that filters and
+ * marshalls it, a DataConsumer with the given queue, the parser and the
+ * DefaultHandler into a new CaseManager. The DataConsumer keeps running for
+ * the whole trial so its poll timeout on shutdown is not measured, adding
+ * and removing the DataSource is.
+ *
+ * @author Luca Corbatto
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DataConsumerBenchmark {
+    @Param({"ring", "array"})
+    public String queue;
+    
+    private String log;
+    private int messageCount;
+    
+    private CountingParser parser;
+    private DataConsumer consumer;
+    private Thread consumerThread;
+    
+    /**
+     * RecordedLogDataSource hands all lines of a recorded log to the
+     * DataConsumer as fast as possible.
+     */
+    private static class RecordedLogDataSource implements DataSource {
+        private final String log;
+        private final Marshaller marshaller;
+        private final CountDownLatch stopped;
+        
+        public RecordedLogDataSource(String log, Marshaller marshaller) {
+            this.log = log;
+            this.marshaller = marshaller;
+            this.stopped = new CountDownLatch(1);
+        }
+        
+        @Override
+        public void listen(BlockingQueue<IRCMessage> output) {
+            try(BufferedReader reader = new BufferedReader(new IRCFormatFilteringReader(new StringReader(this.log)))) {
+                String line;
+                while((line = reader.readLine()) != null) {
+                    IRCMessage msg = this.marshaller.marshall(line);
+                    if(msg != null) {
+                        output.put(msg);
+                    }
+                }
+                this.stopped.await();
+            } catch (IOException | InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        @Override
+        public void stop() {
+            this.stopped.countDown();
+        }
+
+        @Override
+        public String getName() {
+            return "recorded://"+Fixtures.MIXED_LOG;
+        }
+
+        @Override
+        public String getShortName() {
+            return "recorded";
+        }
+    }
+    
+    /**
+     * CountingParser delegates to a parser that is exchanged for every
+     * invocation and counts down a latch for every parsed message.
+     */
+    private static class CountingParser implements Parser {
+        private volatile Parser parser;
+        private volatile CountDownLatch remaining;
+        
+        /**
+         * Makes the CountingParser delegate to the given parser until count
+         * messages have been parsed.
+         * 
+         * @param parser The parser to delegate to.
+         * @param count The number of messages to wait for.
+         */
+        public void begin(Parser parser, int count) {
+            this.remaining = new CountDownLatch(count);
+            this.parser = parser;
+        }
+        
+        @Override
+        public void registerHandler(Handler handler) {
+            this.parser.registerHandler(handler);
+        }
+
+        @Override
+        public ParseResult parseAndHandle(IRCMessage message) {
+            try {
+                return this.parser.parseAndHandle(message);
+            } finally {
+                this.remaining.countDown();
+            }
+        }
+        
+        public void await() throws InterruptedException {
+            this.remaining.await();
+        }
+    }
+    
+    @Setup
+    public void setUp() throws IOException {
+        Fixtures.disableLogging();
+        
+        this.log = Fixtures.read(Fixtures.MIXED_LOG);
+        this.messageCount = Fixtures.readMessages(Fixtures.MIXED_LOG).size();
+        
+        this.parser = new CountingParser();
+        this.consumer = new DataConsumer(this.parser, this.createQueue());
+        this.consumerThread = new Thread(this.consumer::start);
+        this.consumerThread.start();
+        while(!this.consumer.isRunning()) {
+            Thread.yield();
+        }
+    }
+    
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        this.consumer.stop();
+        this.consumerThread.join();
+    }
+    
+    /**
+     * Creates the queue between the DataSource and the DataConsumer.
+     * 
+     * @return the queue.
+     */
+    private BlockingQueue<IRCMessage> createQueue() {
+        switch(this.queue) {
+            case "ring":
+                return new RingBufferQueue<>(DataConsumer.DEFAULT_QUEUE_CAPACITY);
+            case "array":
+                return new ArrayBlockingQueue<>(8);
+            default:
+                throw new IllegalArgumentException("Queue \""+this.queue+"\" is unknown.");
+        }
+    }
+    
+    @Benchmark
+    public CaseManager consumeLog() throws InterruptedException {
+        CaseManager cm = new CaseManager();
+        Handler handler = new DefaultHandler();
+        handler.registerCaseManager(cm);
+        Parser scanningParser = new ScanningParser();
+        scanningParser.registerHandler(handler);
+        this.parser.begin(scanningParser, this.messageCount);
+        
+        DataSource ds = new RecordedLogDataSource(this.log, new HexchatMarshaller());
+        this.consumer.addDataSource(ds);
+        this.parser.await();
+        this.consumer.removeDataSource(ds);
+        return cm;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.Fixtures;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks filtering the IRC formatting out of the whole mixed log.
+ * 
+ * Reading the log through a plain StringReader is measured as well, so the
+ * overhead of the filtering can be told apart.
+ *
+ * @author Luca Corbatto
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class IRCFormatFilteringReaderBenchmark {
+    private String log;
+    private char[] buffer;
+    
+    @Setup
+    public void setUp() throws IOException {
+        this.log = Fixtures.read(Fixtures.MIXED_LOG);
+        this.buffer = new char[8192];
+    }
+    
+    /**
+     * Reads everything from the reader, returning the number of characters.
+     * 
+     * @param reader The reader to read from.
+     * @return the number of characters read.
+     * @throws IOException If reading fails.
+     */
+    private int readAll(Reader reader) throws IOException {
+        int total = 0;
+        int n;
+        while((n = reader.read(this.buffer, 0, this.buffer.length)) != -1) {
+            total += n;
+        }
+        return total;
+    }
+    
+    @Benchmark
+    public int plainReader() throws IOException {
+        return this.readAll(new StringReader(this.log));
+    }
+    
+    @Benchmark
+    public int filteringReader() throws IOException {
+        return this.readAll(new IRCFormatFilteringReader(new StringReader(this.log)));
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io.processing;
+
+import de.targodan.usb.Fixtures;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks marshalling a single line of a HexChat log.
+ * 
+ * The RegexHexchatMarshaller is the baseline the HexchatMarshaller is
+ * measured against.
+ *
+ * @author Luca Corbatto
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class HexchatMarshallerBenchmark {
+    @Param({"HexchatMarshaller", "RegexHexchatMarshaller"})
+    public String implementation;
+    
+    private Marshaller marshaller;
+    private String[] lines;
+    private int next;
+    
+    @Setup
+    public void setUp() throws IOException {
+        switch(this.implementation) {
+            case "HexchatMarshaller":
+                this.marshaller = new HexchatMarshaller();
+                break;
+            case "RegexHexchatMarshaller":
+                this.marshaller = new RegexHexchatMarshaller();
+                break;
+            default:
+                throw new IllegalArgumentException("Marshaller \""+this.implementation+"\" is unknown.");
+        }
+        this.lines = Fixtures.readFilteredLines(Fixtures.MIXED_LOG).toArray(new String[0]);
+        this.next = 0;
+    }
+    
+    @Benchmark
+    public IRCMessage marshall() {
+        String line = this.lines[this.next];
+        this.next = (this.next + 1) % this.lines.length;
+        return this.marshaller.marshall(line);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io.processing;
+
+import de.targodan.usb.Fixtures;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks parsing a single message.
+ * 
+ * The messages are taken from the mixed log, either all of them or only the
+ * ones of a single kind as classified by the DefaultParser. The handler does
+ * nothing, so only the parsing is measured.
+ *
+ * @author Luca Corbatto
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ParserBenchmark {
+    @Param({"DefaultParser", "ScanningParser"})
+    public String parser;
+    
+    @Param({"mix", "ratsignal", "call", "report", "command", "ignored"})
+    public String messages;
+    
+    private Parser instance;
+    private IRCMessage[] selected;
+    private int next;
+    
+    @Setup
+    public void setUp() throws IOException {
+        Fixtures.disableLogging();
+        
+        switch(this.parser) {
+            case "DefaultParser":
+                this.instance = new DefaultParser();
+                break;
+            case "ScanningParser":
+                this.instance = new ScanningParser();
+                break;
+            default:
+                throw new IllegalArgumentException("Parser \""+this.parser+"\" is unknown.");
+        }
+        this.instance.registerHandler(new Fixtures.NullHandler());
+        
+        Parser classifier = new DefaultParser();
+        classifier.registerHandler(new Fixtures.NullHandler());
+        List<IRCMessage> list = new ArrayList<>();
+        for(IRCMessage msg : Fixtures.readMessages(Fixtures.MIXED_LOG)) {
+            if(this.messages.equals("mix") || this.messages.equals(this.kindOf(classifier.parseAndHandle(msg)))) {
+                list.add(msg);
+            }
+        }
+        if(list.isEmpty()) {
+            throw new IllegalStateException("The log does not contain any messages of kind \""+this.messages+"\".");
+        }
+        this.selected = list.toArray(new IRCMessage[0]);
+        this.next = 0;
+    }
+    
+    /**
+     * Returns the kind of message as used by the messages parameter.
+     * 
+     * @param result The result of parsing the message.
+     * @return the kind of message.
+     */
+    private String kindOf(ParseResult result) {
+        switch(result) {
+            case WAS_RATSIGNAL:
+                return "ratsignal";
+            case WAS_CALL:
+            case WAS_CALL_AND_REPORT:
+                return "call";
+            case WAS_REPORT:
+                return "report";
+            case WAS_COMMAND:
+                return "command";
+            default:
+                return "ignored";
+        }
+    }
+    
+    @Benchmark
+    public ParseResult parseAndHandle() {
+        IRCMessage msg = this.selected[this.next];
+        this.next = (this.next + 1) % this.selected.length;
+        return this.instance.parseAndHandle(msg);
+    }
+}
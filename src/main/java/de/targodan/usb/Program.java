@@ -23,54 +23,130 @@
  */
 package de.targodan.usb;
 
+import de.targodan.usb.api.BoardServer;
 import de.targodan.usb.io.CaseManagerFactory;
 import de.targodan.usb.io.Config;
+import de.targodan.usb.io.IRCClient;
+import de.targodan.usb.io.IRCClientRegistry;
 import de.targodan.usb.io.PathSanitizer;
 import de.targodan.usb.data.CaseManager;
 import de.targodan.usb.io.DataConsumer;
+import de.targodan.usb.io.ReplayDataSource;
 import de.targodan.usb.ui.ConsoleWindow;
 import de.targodan.usb.ui.MainWindow;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.FileHandler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
+import java.util.logging.SimpleFormatter;
 
 public class Program {
     public static DataConsumer dataConsumer;
+    public static BoardServer boardServer;
     public static final Version VERSION = Version.parse("v1.0-beta.4");
     public static String CONFIG_FILE = "usb.yml";
     public static final String[] CONTRIBUTORS = new String[] {
         // Your name could be here
     };
     public static Config CONFIG;
+    public static final String DEFAULT_LOG_FILE = "usb.%g.log";
+    public static final int LOG_FILE_LIMIT = 10 * 1024 * 1024;
+    public static final int LOG_FILE_COUNT = 5;
+    
+    private static boolean shutDown = false;
 
     /**
      * The main function will start up the UberSpatchBoard.
      * 
+     * With --headless only the DataSources, the parser and the CaseManager
+     * are started without any Swing UI, logging to the file given by
+     * --log-file. The UberSpatchBoard is then stopped with SIGTERM.
+     * 
      * @param args the command line arguments
      */
     public static void main(String[] args) {
-        try {
-            javax.swing.UIManager.setLookAndFeel(javax.swing.UIManager.getSystemLookAndFeelClassName());
-        } catch (Exception ex) {
-            ex.printStackTrace();
+        boolean headless = false;
+        String logFile = Program.DEFAULT_LOG_FILE;
+        String replayFile = null;
+        String replayClient = "hexchat";
+        double replaySpeed = ReplayDataSource.AS_FAST_AS_POSSIBLE;
+        List<String> unknownArguments = new ArrayList<>();
+        for(int i = 0; i < args.length; ++i) {
+            if(args[i].equals("--headless")) {
+                headless = true;
+                continue;
+            }
+            if(i + 1 >= args.length) {
+                unknownArguments.add(args[i]);
+                break;
+            }
+            switch(args[i]) {
+                case "--config":
+                    CONFIG_FILE = PathSanitizer.sanitize(args[i+1]);
+                    break;
+                case "--log-file":
+                    logFile = PathSanitizer.sanitize(args[i+1]);
+                    break;
+                case "--replay":
+                    replayFile = PathSanitizer.sanitize(args[i+1]);
+                    break;
+                case "--replay-client":
+                    replayClient = args[i+1];
+                    break;
+                case "--replay-speed":
+                    replaySpeed = Double.parseDouble(args[i+1]);
+                    break;
+                default:
+                    unknownArguments.add(args[i]);
+            }
+            ++i;
         }
         
-        ConsoleWindow consoleWindow = new ConsoleWindow();
+        // The ConsoleWindow has to capture System.err before anything is
+        // logged, so the arguments are only complained about afterwards.
+        ConsoleWindow consoleWindow = null;
+        if(headless) {
+            System.setProperty("java.awt.headless", "true");
+        } else {
+            try {
+                javax.swing.UIManager.setLookAndFeel(javax.swing.UIManager.getSystemLookAndFeelClassName());
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+
+            consoleWindow = new ConsoleWindow();
+        }
 
         Logger rootLogger = LogManager.getLogManager().getLogger("");
         rootLogger.setLevel(Level.INFO);
         for(java.util.logging.Handler h : rootLogger.getHandlers()) {
             h.setLevel(Level.INFO);
         }
-        
-        if(args.length >= 2 && args[0].equals("--config")) {
-            CONFIG_FILE = PathSanitizer.sanitize(args[1]);
+        if(headless) {
+            Program.logToFile(rootLogger, logFile);
         }
+        
+        unknownArguments.forEach(arg -> {
+            Logger.getLogger(Program.class.getName()).log(Level.WARNING, "Unknown argument \"{0}\".", arg);
+        });
 
         CONFIG = Config.readConfig(Program.CONFIG_FILE);
 
-        CaseManagerFactory factory = CaseManagerFactory.getDefaultFactory(CONFIG);
+        CaseManagerFactory factory;
+        if(replayFile != null) {
+            IRCClient ircClient = IRCClientRegistry.getIRCClientByName(replayClient);
+            if(ircClient == null) {
+                throw new IllegalArgumentException("IRCClient type \""+replayClient+"\" is unknown.");
+            }
+            factory = CaseManagerFactory.getReplayFactory(CONFIG, new ReplayDataSource("#fuelrats", replayFile, ircClient.getDefaultLogFileEncoding(), ircClient.getMarshaller(), replaySpeed));
+        } else {
+            factory = CaseManagerFactory.getDefaultFactory(CONFIG);
+        }
 
         CaseManager cm = factory.createCaseManager();
         Program.dataConsumer = factory.createDataConsumer();
@@ -80,8 +156,33 @@ public class Program {
         });
         dataConsumerThread.setName("DataConsumerThread");
         dataConsumerThread.start();
-
-        /* Create and display the form */
+        
+        Program.startBoardServer(cm);
+        
+        // SIGTERM and the like.
+        Thread shutdownHook = new Thread(() -> {
+            Program.shutdown(factory, dataConsumerThread);
+        });
+        shutdownHook.setName("ShutdownHook");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        
+        if(headless) {
+            Logger.getLogger(Program.class.getName()).log(Level.INFO, "Running headless.");
+            return;
+        }
+        
+        Program.showMainWindow(consoleWindow, cm, factory, dataConsumerThread);
+    }
+    
+    /**
+     * Creates and displays the MainWindow, shutting down once it is closed.
+     * 
+     * @param consoleWindow
+     * @param cm
+     * @param factory
+     * @param dataConsumerThread 
+     */
+    private static void showMainWindow(ConsoleWindow consoleWindow, CaseManager cm, CaseManagerFactory factory, Thread dataConsumerThread) {
         java.awt.EventQueue.invokeLater(() -> {
             MainWindow window = new MainWindow(consoleWindow, cm, CONFIG.showTestMenu);
             window.setDataConsumer(Program.dataConsumer);
@@ -96,12 +197,7 @@ public class Program {
                     so this should work as intended.
                     */
                     Thread cleanUpThread = new Thread(() -> {
-                        Program.dataConsumer.stop();
-                        try {
-                            dataConsumerThread.join();
-                        } catch (InterruptedException ex) {
-                            Logger.getLogger(Program.class.getName()).log(Level.SEVERE, null, ex);
-                        }
+                        Program.shutdown(factory, dataConsumerThread);
                     });
                     cleanUpThread.setName("cleanUpThread");
                     cleanUpThread.start();
@@ -110,4 +206,75 @@ public class Program {
             window.setVisible(true);
         });
     }
+    
+    /**
+     * Starts serving the cases via HTTP if enabled in the Config.
+     * 
+     * @param cm 
+     */
+    private static void startBoardServer(CaseManager cm) {
+        Config.Api apiConfig = CONFIG.api;
+        if(apiConfig == null || !apiConfig.enabled) {
+            return;
+        }
+        
+        BoardServer server = new BoardServer(cm, new InetSocketAddress(apiConfig.host, apiConfig.port));
+        try {
+            server.start();
+            Program.boardServer = server;
+            Logger.getLogger(Program.class.getName()).log(Level.INFO, "Serving the cases on {0}:{1}.", new Object[] {apiConfig.host, Integer.toString(server.getPort())});
+        } catch (IOException | RuntimeException ex) {
+            Logger.getLogger(Program.class.getName()).log(Level.SEVERE, "Could not serve the cases on "+apiConfig.host+":"+apiConfig.port+".", ex);
+        }
+    }
+    
+    /**
+     * Additionally writes all log messages to the given file.
+     * 
+     * The file is rotated when it reaches LOG_FILE_LIMIT bytes, keeping
+     * LOG_FILE_COUNT files. The file name may contain the patterns of
+     * java.util.logging.FileHandler, e.g. %g for the generation number.
+     * Records logged for every single message are FINE and don't make it
+     * into the file.
+     * 
+     * @param rootLogger
+     * @param logFile 
+     */
+    private static void logToFile(Logger rootLogger, String logFile) {
+        try {
+            FileHandler fileHandler = new FileHandler(logFile, Program.LOG_FILE_LIMIT, Program.LOG_FILE_COUNT, true);
+            fileHandler.setFormatter(new SimpleFormatter());
+            fileHandler.setLevel(Level.INFO);
+            rootLogger.addHandler(fileHandler);
+        } catch (IOException | RuntimeException ex) {
+            Logger.getLogger(Program.class.getName()).log(Level.SEVERE, "Could not log to \""+logFile+"\".", ex);
+        }
+    }
+    
+    /**
+     * Stops the BoardServer and the DataConsumer and releases everything
+     * held by the factory.
+     * 
+     * Only the first call shuts down, later calls wait until that is done.
+     * 
+     * @param factory
+     * @param dataConsumerThread 
+     */
+    private static synchronized void shutdown(CaseManagerFactory factory, Thread dataConsumerThread) {
+        if(Program.shutDown) {
+            return;
+        }
+        Program.shutDown = true;
+        
+        if(Program.boardServer != null) {
+            Program.boardServer.stop();
+        }
+        Program.dataConsumer.stop();
+        try {
+            dataConsumerThread.join();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(Program.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        factory.close();
+    }
 }
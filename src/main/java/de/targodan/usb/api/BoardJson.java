@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.api;
+
+import de.targodan.usb.data.Case;
+import de.targodan.usb.data.CaseSnapshot;
+import de.targodan.usb.data.Client;
+import de.targodan.usb.data.Rat;
+import de.targodan.usb.data.Report;
+import java.time.LocalDateTime;
+import java.util.List;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * BoardJson encodes the state of the board as JSON.
+ * 
+ * Times are encoded as ISO-8601 local date times, rats that are referenced
+ * by calls or as the first limpet are encoded by their IRC name only.
+ * 
+ * @author Luca Corbatto
+ */
+class BoardJson {
+    private BoardJson() {
+    }
+    
+    /**
+     * Returns the JSON representation of the snapshot.
+     * 
+     * @param snapshot
+     * @return the JSON representation of the snapshot.
+     */
+    public static JSONObject encode(CaseSnapshot snapshot) {
+        JSONObject json = new JSONObject();
+        json.put("version", snapshot.getVersion());
+        json.put("open", BoardJson.encodeCases(snapshot.getOpenCases()));
+        json.put("closed", BoardJson.encodeCases(snapshot.getClosedCases()));
+        return json;
+    }
+    
+    /**
+     * Returns the JSON representation of the cases.
+     * 
+     * @param cases
+     * @return the JSON representation of the cases.
+     */
+    private static JSONArray encodeCases(List<Case> cases) {
+        JSONArray json = new JSONArray();
+        cases.forEach(c -> json.put(BoardJson.encodeCase(c)));
+        return json;
+    }
+    
+    /**
+     * Returns the JSON representation of the case.
+     * 
+     * @param c
+     * @return the JSON representation of the case.
+     */
+    public static JSONObject encodeCase(Case c) {
+        JSONObject json = new JSONObject();
+        json.put("number", c.getNumber());
+        json.put("active", c.isActive());
+        json.put("codeRed", c.isCodeRed());
+        json.put("openTime", BoardJson.encodeTime(c.getOpenTime()));
+        json.put("closeTime", BoardJson.encodeTime(c.getCloseTime()));
+        json.put("client", BoardJson.encodeClient(c.getClient()));
+        json.put("system", c.getSystem().getName());
+        json.put("systemConfirmed", c.getSystem().isConfirmed());
+        
+        JSONArray rats = new JSONArray();
+        c.getRats().forEach(rat -> rats.put(BoardJson.encodeRat(rat)));
+        json.put("rats", rats);
+        
+        JSONArray calls = new JSONArray();
+        c.getCalls().forEach(rat -> calls.put(rat.getIRCName()));
+        json.put("calls", calls);
+        
+        JSONArray notes = new JSONArray();
+        c.getNotes().forEach(notes::put);
+        json.put("notes", notes);
+        
+        Rat firstLimpet = c.getFirstLimpet();
+        json.put("firstLimpet", firstLimpet == null ? JSONObject.NULL : firstLimpet.getIRCName());
+        return json;
+    }
+    
+    /**
+     * Returns the JSON representation of the client.
+     * 
+     * @param client
+     * @return the JSON representation of the client.
+     */
+    private static JSONObject encodeClient(Client client) {
+        JSONObject json = new JSONObject();
+        json.put("ircName", BoardJson.nullable(client.getIRCName()));
+        json.put("cmdrName", BoardJson.nullable(client.getCMDRName()));
+        json.put("platform", BoardJson.nullable(client.getPlatform()));
+        json.put("language", BoardJson.nullable(client.getLanguage()));
+        return json;
+    }
+    
+    /**
+     * Returns the JSON representation of the rat.
+     * 
+     * @param rat
+     * @return the JSON representation of the rat.
+     */
+    public static JSONObject encodeRat(Rat rat) {
+        JSONObject json = new JSONObject();
+        json.put("ircName", BoardJson.nullable(rat.getIRCName()));
+        json.put("cmdrName", BoardJson.nullable(rat.getCMDRName()));
+        json.put("platform", BoardJson.nullable(rat.getPlatform()));
+        json.put("jumps", rat.getJumps());
+        json.put("assigned", rat.isAssigned());
+        
+        JSONArray reports = new JSONArray();
+        rat.getReports().forEach(report -> reports.put(BoardJson.encodeReport(report)));
+        json.put("reports", reports);
+        return json;
+    }
+    
+    /**
+     * Returns the JSON representation of the report.
+     * 
+     * @param report
+     * @return the JSON representation of the report.
+     */
+    private static JSONObject encodeReport(Report report) {
+        JSONObject json = new JSONObject();
+        json.put("type", report.getType().toString());
+        json.put("positive", report.isPositive());
+        return json;
+    }
+    
+    /**
+     * Returns the time as ISO-8601 string or JSONObject.NULL.
+     * 
+     * @param time
+     * @return the time as ISO-8601 string or JSONObject.NULL.
+     */
+    private static Object encodeTime(LocalDateTime time) {
+        if(time == null) {
+            return JSONObject.NULL;
+        }
+        return time.toString();
+    }
+    
+    /**
+     * Returns the string representation of the value or JSONObject.NULL.
+     * 
+     * JSONObject.put drops keys with null values, this keeps them.
+     * 
+     * @param value
+     * @return the string representation of the value or JSONObject.NULL.
+     */
+    private static Object nullable(Object value) {
+        if(value == null) {
+            return JSONObject.NULL;
+        }
+        return value.toString();
+    }
+}
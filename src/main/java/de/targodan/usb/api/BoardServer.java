@@ -0,0 +1,479 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.api;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import de.targodan.usb.data.CaseEvent;
+import de.targodan.usb.data.CaseListener;
+import de.targodan.usb.data.CaseManager;
+import de.targodan.usb.data.CaseSnapshot;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * BoardServer serves the cases of a CaseManager as JSON via HTTP.
+ * 
+ * GET /api/cases returns the open and closed cases with their rats and
+ * reports. The response carries an ETag derived from the version of the
+ * CaseManager, a request with a matching If-None-Match header is answered
+ * with "304 Not Modified".
+ * 
+ * GET /api/cases/poll does the same, but if the If-None-Match header
+ * matches the current version the request is held open until the cases
+ * change or the timeout given by the query parameter "timeout" in seconds
+ * passes, in which case "304 Not Modified" is returned.
+ * 
+ * The JSON is rendered on the owner thread of the CaseManager, so each body
+ * matches its version exactly. It is rendered at most once per version and
+ * shared by all requests, waiting requests don't occupy a thread.
+ * 
+ * @author Luca Corbatto
+ */
+public class BoardServer implements CaseListener {
+    public static final String CASES_PATH = "/api/cases";
+    public static final String POLL_PATH = "/api/cases/poll";
+    public static final int DEFAULT_POLL_TIMEOUT_SECONDS = 30;
+    public static final int MAX_POLL_TIMEOUT_SECONDS = 60;
+    public static final int HANDLER_THREADS = 2;
+    
+    /**
+     * Rendered is the JSON of one version of the cases.
+     */
+    private static class Rendered {
+        public final long version;
+        public final String etag;
+        public final byte[] body;
+        
+        /**
+         * Constructs a Rendered.
+         * 
+         * @param version
+         * @param etag
+         * @param body 
+         */
+        public Rendered(long version, String etag, byte[] body) {
+            this.version = version;
+            this.etag = etag;
+            this.body = body;
+        }
+    }
+    
+    /**
+     * Waiter is a poll request waiting for the cases to change.
+     */
+    private static class Waiter {
+        public final HttpExchange exchange;
+        public final String etag;
+        
+        /**
+         * Constructs a Waiter.
+         * 
+         * @param exchange The exchange to be answered.
+         * @param etag The ETag the client already has.
+         */
+        public Waiter(HttpExchange exchange, String etag) {
+            this.exchange = exchange;
+            this.etag = etag;
+        }
+    }
+    
+    private final CaseManager cm;
+    private final InetSocketAddress address;
+    private final String instance;
+    private volatile Rendered rendered;
+    private final List<Waiter> waiters;
+    private final AtomicBoolean renderScheduled;
+    private HttpServer server;
+    private ExecutorService handlerExecutor;
+    private ScheduledExecutorService scheduler;
+    
+    /**
+     * Constructs a BoardServer serving the cases of cm on the given address.
+     * 
+     * @param cm The CaseManager whose cases are to be served.
+     * @param address The address to listen on, port 0 picks a free port.
+     */
+    public BoardServer(CaseManager cm, InetSocketAddress address) {
+        this.cm = cm;
+        this.address = address;
+        // Distinguishes the ETags of different runs, as the version starts
+        // over with every run.
+        this.instance = Long.toHexString(java.lang.System.currentTimeMillis());
+        this.rendered = null;
+        this.waiters = new ArrayList<>();
+        this.renderScheduled = new AtomicBoolean(false);
+    }
+    
+    /**
+     * Starts listening.
+     * 
+     * @throws IOException If the address cannot be bound.
+     */
+    public synchronized void start() throws IOException {
+        if(this.server != null) {
+            throw new IllegalStateException("The BoardServer is running already.");
+        }
+        
+        HttpServer httpServer = HttpServer.create(this.address, 0);
+        AtomicInteger counter = new AtomicInteger();
+        this.handlerExecutor = Executors.newFixedThreadPool(BoardServer.HANDLER_THREADS, task -> {
+            Thread t = new Thread(task);
+            t.setName("BoardServerHandler_"+counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread t = new Thread(task);
+            t.setName("BoardServerScheduler");
+            t.setDaemon(true);
+            return t;
+        });
+        httpServer.setExecutor(this.handlerExecutor);
+        httpServer.createContext(BoardServer.CASES_PATH, this::handle);
+        
+        this.cm.addListener(this);
+        try {
+            this.renderInitially();
+        } catch (IOException ex) {
+            this.cm.removeListener(this);
+            this.scheduler.shutdownNow();
+            this.handlerExecutor.shutdownNow();
+            throw ex;
+        }
+        httpServer.start();
+        this.server = httpServer;
+    }
+    
+    /**
+     * Stops listening, waiting requests are closed without a response.
+     */
+    public synchronized void stop() {
+        if(this.server == null) {
+            return;
+        }
+        
+        this.cm.removeListener(this);
+        this.server.stop(0);
+        this.server = null;
+        this.scheduler.shutdownNow();
+        this.handlerExecutor.shutdownNow();
+        
+        List<Waiter> waiting;
+        synchronized(this.waiters) {
+            waiting = new ArrayList<>(this.waiters);
+            this.waiters.clear();
+        }
+        waiting.forEach(waiter -> waiter.exchange.close());
+    }
+    
+    /**
+     * Returns the port the server is listening on.
+     * 
+     * @return the port the server is listening on.
+     */
+    public synchronized int getPort() {
+        if(this.server == null) {
+            throw new IllegalStateException("The BoardServer is not running.");
+        }
+        return this.server.getAddress().getPort();
+    }
+    
+    /**
+     * Renders the JSON of the current version on the owner thread of the
+     * CaseManager and waits for it.
+     * 
+     * @throws IOException If interrupted while waiting.
+     */
+    private void renderInitially() throws IOException {
+        CountDownLatch done = new CountDownLatch(1);
+        this.cm.execute(() -> {
+            this.render();
+            done.countDown();
+        });
+        try {
+            done.await();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while rendering the cases.");
+        }
+    }
+    
+    /**
+     * Renders the JSON of the current version unless it is rendered already.
+     * 
+     * This must be called on the owner thread of the CaseManager, as only
+     * there the cases don't change while they are encoded.
+     */
+    private void render() {
+        CaseSnapshot snapshot = this.cm.getSnapshot();
+        Rendered current = this.rendered;
+        if(current != null && current.version == snapshot.getVersion()) {
+            return;
+        }
+        
+        this.rendered = new Rendered(
+                snapshot.getVersion(),
+                "\""+this.instance+"-"+Long.toString(snapshot.getVersion())+"\"",
+                BoardJson.encode(snapshot).toString().getBytes(StandardCharsets.UTF_8)
+        );
+    }
+    
+    /**
+     * Handles all requests below CASES_PATH.
+     * 
+     * @param exchange 
+     */
+    private void handle(HttpExchange exchange) {
+        try {
+            String method = exchange.getRequestMethod();
+            if(!method.equals("GET") && !method.equals("HEAD")) {
+                exchange.getResponseHeaders().set("Allow", "GET, HEAD");
+                BoardServer.sendEmpty(exchange, 405);
+                return;
+            }
+            
+            String path = exchange.getRequestURI().getPath();
+            if(path.equals(BoardServer.CASES_PATH)) {
+                this.respond(exchange, this.rendered, BoardServer.getIfNoneMatch(exchange));
+            } else if(path.equals(BoardServer.POLL_PATH)) {
+                this.poll(exchange);
+            } else {
+                BoardServer.sendEmpty(exchange, 404);
+            }
+        } catch(IOException | RuntimeException ex) {
+            Logger.getLogger(BoardServer.class.getName()).log(Level.WARNING, null, ex);
+            exchange.close();
+        }
+    }
+    
+    /**
+     * Answers the poll request right away if the client is outdated,
+     * otherwise it is held open until the cases change or it times out.
+     * 
+     * @param exchange
+     * @throws IOException 
+     */
+    private void poll(HttpExchange exchange) throws IOException {
+        int timeout;
+        try {
+            timeout = BoardServer.getTimeoutSeconds(exchange.getRequestURI().getRawQuery());
+        } catch(NumberFormatException ex) {
+            BoardServer.sendEmpty(exchange, 400);
+            return;
+        }
+        
+        String etag = BoardServer.getIfNoneMatch(exchange);
+        Rendered current = this.rendered;
+        if(etag == null || !etag.equals(current.etag) || timeout == 0) {
+            this.respond(exchange, current, etag);
+            return;
+        }
+        
+        Waiter waiter = new Waiter(exchange, etag);
+        synchronized(this.waiters) {
+            this.waiters.add(waiter);
+        }
+        this.scheduler.schedule(() -> this.expire(waiter), timeout, TimeUnit.SECONDS);
+        
+        // The cases may have been rendered again before the waiter was
+        // added, in that case the wake up has already happened.
+        if(this.rendered != current) {
+            this.wakeUp();
+        }
+    }
+    
+    /**
+     * Answers all waiters that are outdated.
+     */
+    private void wakeUp() {
+        Rendered current = this.rendered;
+        List<Waiter> outdated = new ArrayList<>();
+        synchronized(this.waiters) {
+            Iterator<Waiter> it = this.waiters.iterator();
+            while(it.hasNext()) {
+                Waiter waiter = it.next();
+                if(!waiter.etag.equals(current.etag)) {
+                    outdated.add(waiter);
+                    it.remove();
+                }
+            }
+        }
+        outdated.forEach(waiter -> this.respondSafely(waiter, current));
+    }
+    
+    /**
+     * Answers the waiter with "304 Not Modified" unless it was answered
+     * already.
+     * 
+     * @param waiter 
+     */
+    private void expire(Waiter waiter) {
+        synchronized(this.waiters) {
+            if(!this.waiters.removeIf(other -> other == waiter)) {
+                return;
+            }
+        }
+        this.respondSafely(waiter, this.rendered);
+    }
+    
+    /**
+     * Answers the waiter, closing the exchange if that fails.
+     * 
+     * @param waiter
+     * @param current 
+     */
+    private void respondSafely(Waiter waiter, Rendered current) {
+        try {
+            this.respond(waiter.exchange, current, waiter.etag);
+        } catch(IOException | RuntimeException ex) {
+            Logger.getLogger(BoardServer.class.getName()).log(Level.FINE, null, ex);
+            waiter.exchange.close();
+        }
+    }
+    
+    /**
+     * Sends the rendered JSON or "304 Not Modified" if the client has it
+     * already.
+     * 
+     * @param exchange
+     * @param current
+     * @param etag The ETag the client has or null.
+     * @throws IOException 
+     */
+    private void respond(HttpExchange exchange, Rendered current, String etag) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("ETag", current.etag);
+        headers.set("Cache-Control", "no-cache");
+        if(current.etag.equals(etag)) {
+            BoardServer.sendEmpty(exchange, 304);
+            return;
+        }
+        
+        headers.set("Content-Type", "application/json; charset=utf-8");
+        if(exchange.getRequestMethod().equals("HEAD")) {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+            return;
+        }
+        
+        exchange.sendResponseHeaders(200, current.body.length);
+        try(OutputStream out = exchange.getResponseBody()) {
+            out.write(current.body);
+        }
+    }
+    
+    /**
+     * Sends a response without a body.
+     * 
+     * @param exchange
+     * @param status
+     * @throws IOException 
+     */
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        exchange.sendResponseHeaders(status, -1);
+        exchange.close();
+    }
+    
+    /**
+     * Returns the value of the If-None-Match header or null.
+     * 
+     * @param exchange
+     * @return the value of the If-None-Match header or null.
+     */
+    private static String getIfNoneMatch(HttpExchange exchange) {
+        String etag = exchange.getRequestHeaders().getFirst("If-None-Match");
+        if(etag == null) {
+            return null;
+        }
+        return etag.trim();
+    }
+    
+    /**
+     * Returns the timeout in seconds given by the query, limited to
+     * MAX_POLL_TIMEOUT_SECONDS.
+     * 
+     * @param query The raw query of the request or null.
+     * @return the timeout in seconds given by the query.
+     */
+    static int getTimeoutSeconds(String query) {
+        if(query != null) {
+            for(String parameter : query.split("&")) {
+                if(parameter.startsWith("timeout=")) {
+                    int timeout = Integer.parseInt(parameter.substring("timeout=".length()));
+                    if(timeout < 0) {
+                        throw new NumberFormatException("The timeout must not be negative, got "+timeout+".");
+                    }
+                    return Math.min(timeout, BoardServer.MAX_POLL_TIMEOUT_SECONDS);
+                }
+            }
+        }
+        return BoardServer.DEFAULT_POLL_TIMEOUT_SECONDS;
+    }
+
+    @Override
+    public void caseChanged(CaseEvent event) {
+        // Changes often come in bursts, so the JSON is rendered once for all
+        // changes that happen until the render gets its turn on the owner
+        // thread. The waiters are answered by the scheduler to keep the
+        // network off the owner thread.
+        if(this.renderScheduled.compareAndSet(false, true)) {
+            this.executeOnScheduler(() -> this.cm.execute(() -> {
+                this.renderScheduled.set(false);
+                this.render();
+                this.executeOnScheduler(this::wakeUp);
+            }));
+        }
+    }
+    
+    /**
+     * Runs the task on the scheduler unless the BoardServer was stopped.
+     * 
+     * @param task 
+     */
+    private void executeOnScheduler(Runnable task) {
+        try {
+            this.scheduler.execute(task);
+        } catch(RejectedExecutionException ex) {
+            // The BoardServer was stopped in the meantime.
+        }
+    }
+}
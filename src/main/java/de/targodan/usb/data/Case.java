@@ -24,22 +24,29 @@
 package de.targodan.usb.data;
 
 import java.time.LocalDateTime;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
 import java.util.Observable;
 import java.util.Observer;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CopyOnWriteArraySet;
 
 /**
  * The Case class represents a fuelrats case.
  * 
+ * Changes of the case, its client, its system and its rats are reported to
+ * the registered CaseListeners.
+ * 
+ * The calls, rats and notes are kept in copy-on-write collections so they
+ * can be read from other threads, e.g. for displaying, while the owner
+ * thread of the CaseManager modifies the case.
+ * 
  * @author Luca Corbatto
  */
-public class Case extends Observable implements Observer {
+public class Case implements Observer {
     private boolean active;
     private final int number;
     private Client client;
@@ -53,6 +60,7 @@ public class Case extends Observable implements Observer {
     private LocalDateTime closeTime;
     
     private CaseManager attachedManager;
+    private final List<CaseListener> listeners;
 
     /**
      * Constructs a Case with number, client, system and codeRed status.
@@ -86,14 +94,59 @@ public class Case extends Observable implements Observer {
         this.codeRed = codeRed;
         
         this.active = true;
-        this.calls = new ArrayList<>();
-        this.rats = new HashSet<>();
-        this.notes = new ArrayList<>();
+        this.calls = new CopyOnWriteArrayList<>();
+        this.rats = new CopyOnWriteArraySet<>();
+        this.notes = new CopyOnWriteArrayList<>();
         this.firstLimpet = null;
         this.openTime = openTime;
         this.closeTime = null;
         
         this.attachedManager = null;
+        this.listeners = new CopyOnWriteArrayList<>();
+    }
+    
+    /**
+     * Registers a listener that gets notified about changes of this case.
+     * 
+     * @param listener 
+     */
+    public void addListener(CaseListener listener) {
+        if(!this.listeners.contains(listener)) {
+            this.listeners.add(listener);
+        }
+    }
+    
+    /**
+     * Removes a previously registered listener.
+     * 
+     * @param listener 
+     */
+    public void removeListener(CaseListener listener) {
+        this.listeners.remove(listener);
+    }
+    
+    /**
+     * Notifies all registered listeners about the given event.
+     * 
+     * @param event 
+     */
+    protected void fireEvent(CaseEvent event) {
+        this.listeners.forEach(listener -> listener.caseChanged(event));
+    }
+    
+    /**
+     * Stops observing the given rat unless it is still assigned, has called
+     * or is the first limpet.
+     * 
+     * @param rat 
+     */
+    private void stopObservingIfUnreferenced(Rat rat) {
+        if(rat == this.firstLimpet
+                || this.rats.stream().anyMatch(elem -> elem == rat)
+                || this.calls.stream().anyMatch(elem -> elem == rat)) {
+            return;
+        }
+        rat.deleteObserver(this);
     }
     
     /**
@@ -106,10 +159,11 @@ public class Case extends Observable implements Observer {
         if(this.rats.size() >= 3 && !this.rats.contains(rat)) {
             throw new IllegalStateException("There have already been 3 rats assigned to this case. Unassign first!");
         }
-        this.rats.add(rat);
+        if(this.rats.add(rat)) {
+            rat.addObserver(this);
+        }
         
-        this.setChanged();
-        this.notifyObservers();
+        this.fireEvent(new CaseEvent(this, CaseEvent.Field.RATS, rat));
     }
     
     /**
@@ -118,10 +172,15 @@ public class Case extends Observable implements Observer {
      * @param rat 
      */
     public void unassignRat(Rat rat) {
-        this.rats.remove(rat);
+        Rat assigned = this.rats.stream()
+                .filter(elem -> elem.equals(rat))
+                .findFirst().orElse(null);
+        if(assigned != null) {
+            this.rats.remove(assigned);
+            this.stopObservingIfUnreferenced(assigned);
+        }
         
-        this.setChanged();
-        this.notifyObservers();
+        this.fireEvent(new CaseEvent(this, CaseEvent.Field.RATS, rat));
     }
 
     /**
@@ -186,8 +245,7 @@ public class Case extends Observable implements Observer {
     public void addNote(String note) {
         this.notes.add(note);
         
-        this.setChanged();
-        this.notifyObservers();
+        this.fireEvent(new CaseEvent(this, CaseEvent.Field.NOTES));
     }
     
     /**
@@ -199,8 +257,7 @@ public class Case extends Observable implements Observer {
         this.notes.clear();
         this.notes.addAll(Arrays.asList(notes));
         
-        this.setChanged();
-        this.notifyObservers();
+        this.fireEvent(new CaseEvent(this, CaseEvent.Field.NOTES));
     }
 
     /**
@@ -237,8 +294,7 @@ public class Case extends Observable implements Observer {
     public void setActive(boolean active) {
         this.active = active;
         
-        this.setChanged();
-        this.notifyObservers();
+        this.fireEvent(new CaseEvent(this, CaseEvent.Field.ACTIVE));
     }
 
     /**
@@ -252,8 +308,7 @@ public class Case extends Observable implements Observer {
         this.client = client;
         this.client.addObserver(this);
         
-        this.setChanged();
-        this.notifyObservers();
+        this.fireEvent(new CaseEvent(this, CaseEvent.Field.CLIENT));
     }
 
     /**
@@ -268,8 +323,7 @@ public class Case extends Observable implements Observer {
         this.system = system;
         this.system.addObserver(this);
         
-        this.setChanged();
-        this.notifyObservers();
+        this.fireEvent(new CaseEvent(this, CaseEvent.Field.SYSTEM));
     }
 
     /**
@@ -277,13 +331,14 @@ public class Case extends Observable implements Observer {
      * @param firstLimpet 
      */
     public void setFirstLimpet(Rat firstLimpet) {
-        if(this.firstLimpet != null) {
-            this.firstLimpet.deleteObserver(this);
-        }
+        Rat previous = this.firstLimpet;
         this.firstLimpet = firstLimpet;
+        if(previous != null) {
+            this.stopObservingIfUnreferenced(previous);
+        }
         this.firstLimpet.addObserver(this);
         
-        this.notifyObservers();
+        this.fireEvent(new CaseEvent(this, CaseEvent.Field.FIRST_LIMPET, firstLimpet));
     }
 
     /**
@@ -293,8 +348,7 @@ public class Case extends Observable implements Observer {
     public void setCodeRed(boolean caseRed) {
         this.codeRed = caseRed;
         
-        this.setChanged();
-        this.notifyObservers();
+        this.fireEvent(new CaseEvent(this, CaseEvent.Field.CODE_RED));
     }
 
     /**
@@ -309,13 +363,21 @@ public class Case extends Observable implements Observer {
      * Closes the case with now as the closing time.
      */
     public void close() {
-        this.closeTime = LocalDateTime.now();
+        this.close(LocalDateTime.now());
+    }
+    
+    /**
+     * Closes the case with the given closing time.
+     * 
+     * @param closeTime The time the case was closed.
+     */
+    public void close(LocalDateTime closeTime) {
+        this.closeTime = closeTime;
         if(this.attachedManager != null) {
             this.attachedManager.notifyCaseClosed(this);
         }
         
-        this.setChanged();
-        this.notifyObservers();
+        this.fireEvent(new CaseEvent(CaseEvent.Type.CLOSED, this));
     }
     
     /**
@@ -351,8 +413,7 @@ public class Case extends Observable implements Observer {
                     .setJumps(rat.getJumps());
         } catch(Exception ex) {}
         
-        this.setChanged();
-        this.notifyObservers();
+        this.fireEvent(new CaseEvent(this, CaseEvent.Field.CALLS, rat));
     }
     
     /**
@@ -375,15 +436,20 @@ public class Case extends Observable implements Observer {
      * @return A rat with the given name or null if no such rat can be found.
      */
     public Rat lookupAssociatedRat(String ircName) {
-                // Try and find rat among assigned rats.
-        return this.rats.stream()
-                .filter(rat -> rat.getIRCName().equals(ircName))
-                .findFirst().orElse(
-                    // No assigned rat found => search in calls.
-                    this.calls.stream()
-                        .filter(rat -> rat.getIRCName().equals(ircName))
-                        .findFirst().orElse(null)
-                );
+        // Try and find rat among assigned rats.
+        for(Rat rat : this.rats) {
+            if(rat.getIRCName().equals(ircName)) {
+                return rat;
+            }
+        }
+        // No assigned rat found => search in calls.
+        for(int i = 0; i < this.calls.size(); ++i) {
+            Rat rat = this.calls.get(i);
+            if(rat.getIRCName().equals(ircName)) {
+                return rat;
+            }
+        }
+        return null;
     }
 
     @Override
@@ -457,7 +523,19 @@ public class Case extends Observable implements Observer {
 
     @Override
     public void update(Observable o, Object arg) {
-        this.setChanged();
-        this.notifyObservers(o);
+        if(o == this.client) {
+            this.fireEvent(new CaseEvent(this, CaseEvent.Field.CLIENT));
+        } else if(o == this.system) {
+            this.fireEvent(new CaseEvent(this, CaseEvent.Field.SYSTEM));
+        } else if(o instanceof Rat) {
+            Rat rat = (Rat)o;
+            if(this.rats.stream().anyMatch(elem -> elem == rat)) {
+                this.fireEvent(new CaseEvent(this, CaseEvent.Field.RATS, rat));
+            } else if(rat == this.firstLimpet) {
+                this.fireEvent(new CaseEvent(this, CaseEvent.Field.FIRST_LIMPET, rat));
+            } else {
+                this.fireEvent(new CaseEvent(this, CaseEvent.Field.CALLS, rat));
+            }
+        }
     }
 }
@@ -0,0 +1,153 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.data;
+
+/**
+ * CaseEvent describes a change of a case.
+ * 
+ * @author Luca Corbatto
+ */
+public class CaseEvent {
+    /**
+     * The kind of change.
+     */
+    public enum Type {
+        /**
+         * The case was added to the CaseManager.
+         */
+        ADDED,
+        /**
+         * The case was closed.
+         */
+        CLOSED,
+        /**
+         * The closed case was removed from the CaseManager.
+         */
+        REMOVED,
+        /**
+         * A field of the case changed.
+         */
+        CHANGED,
+    }
+    
+    /**
+     * The field of the case that changed.
+     */
+    public enum Field {
+        ACTIVE,
+        CLIENT,
+        SYSTEM,
+        RATS,
+        CALLS,
+        NOTES,
+        FIRST_LIMPET,
+        CODE_RED,
+    }
+    
+    private final Type type;
+    private final Case source;
+    private final Field field;
+    private final Rat rat;
+    
+    /**
+     * Constructs a CaseEvent that is not about a single field.
+     * 
+     * @param type The kind of change.
+     * @param source The case that changed.
+     */
+    public CaseEvent(Type type, Case source) {
+        this(type, source, null, null);
+    }
+    
+    /**
+     * Constructs a CaseEvent of type CHANGED.
+     * 
+     * @param source The case that changed.
+     * @param field The field of the case that changed.
+     */
+    public CaseEvent(Case source, Field field) {
+        this(Type.CHANGED, source, field, null);
+    }
+    
+    /**
+     * Constructs a CaseEvent of type CHANGED caused by a change of a rat.
+     * 
+     * @param source The case that changed.
+     * @param field Either RATS, CALLS or FIRST_LIMPET.
+     * @param rat The rat that changed.
+     */
+    public CaseEvent(Case source, Field field, Rat rat) {
+        this(Type.CHANGED, source, field, rat);
+    }
+    
+    private CaseEvent(Type type, Case source, Field field, Rat rat) {
+        this.type = type;
+        this.source = source;
+        this.field = field;
+        this.rat = rat;
+    }
+
+    /**
+     * Returns the kind of change.
+     * 
+     * @return the kind of change.
+     */
+    public Type getType() {
+        return this.type;
+    }
+
+    /**
+     * Returns the case that changed.
+     * 
+     * @return the case that changed.
+     */
+    public Case getSource() {
+        return this.source;
+    }
+
+    /**
+     * Returns the field that changed or null if the type is not CHANGED.
+     * 
+     * @return the field that changed or null if the type is not CHANGED.
+     */
+    public Field getField() {
+        return this.field;
+    }
+
+    /**
+     * Returns the rat that changed or null if the change was not caused by a
+     * rat.
+     * 
+     * @return the rat that changed or null if the change was not caused by a
+     * rat.
+     */
+    public Rat getRat() {
+        return this.rat;
+    }
+
+    @Override
+    public String toString() {
+        return "CaseEvent{" + "type=" + this.type + ", case=" + this.source.getNumber() + ", field=" + this.field + '}';
+    }
+}
@@ -25,34 +25,315 @@ package de.targodan.usb.data;
 
 import java.time.LocalDateTime;
 import java.util.stream.Collectors;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Observable;
-import java.util.Observer;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * The CaseManager keeps track of and manages cases.
  * 
+ * Open cases are indexed by the names of their client and the names of their
+ * assigned and calling rats. The indexes are updated whenever a case notifies
+ * the CaseManager of a change.
+ * 
+ * The open and closed cases are additionally kept sorted by their opening
+ * time and published as an immutable CaseSnapshot after every change.
+ * 
+ * Registered CaseListeners are notified about added, closed and removed
+ * cases as well as about every change of a managed case. The new snapshot
+ * is published before the listeners are notified.
+ * 
+ * Once started the CaseManager has a single owner thread. The CaseManager
+ * and its cases must then only be modified and looked up on that thread,
+ * other threads hand their changes to execute() which runs them on the
+ * owner thread in the order they were handed in. The Swing event dispatch
+ * thread must never wait for the owner thread, it hands its changes to
+ * submit() instead, which are run before the pending changes of execute().
+ * Listeners are notified on
+ * the owner thread. Any other thread only reads the published snapshots,
+ * which never blocks the owner thread.
+ * 
  * @author Luca Corbatto
  */
-public class CaseManager extends Observable implements Observer {
-    protected final Set<Case> closedCases;
+public class CaseManager implements CaseListener {
+    public static final int MUTATION_QUEUE_CAPACITY = 1024;
+    
+    private static final Runnable STOP = () -> {};
+    private static final Runnable WAKE_UP = () -> {};
+    
+    protected final List<Case> closedCases;
     protected final Map<Integer, Case> cases;
+    protected final List<Case> openCases;
+    
+    private long version;
+    private volatile CaseSnapshot snapshot;
+    
+    private final List<CaseListener> listeners;
+    
+    private final BlockingQueue<Runnable> mutations;
+    private final Queue<Runnable> submittedMutations;
+    private volatile Thread owner;
+    
+    protected final Map<String, Set<Case>> casesByClientIRCName;
+    protected final Map<String, Set<Case>> casesByClientCMDRName;
+    protected final Map<String, Set<Case>> casesByAssignedRat;
+    protected final Map<String, Set<Case>> casesByCallingRat;
+    /**
+     * Holds the names each open case is currently indexed by. Cases change
+     * their hash code whenever they are modified so this has to be an
+     * identity map.
+     */
+    protected final Map<Case, IndexedNames> indexedNames;
+    
+    /**
+     * IndexedNames holds the names a case has been indexed by.
+     */
+    protected static class IndexedNames {
+        public final String clientIRCName;
+        public final String clientCMDRName;
+        public final Set<String> assignedRats;
+        public final Set<String> callingRats;
+        
+        /**
+         * Collects the names to index the given case by.
+         * 
+         * @param c The case.
+         */
+        public IndexedNames(Case c) {
+            this.clientIRCName = c.getClient().getIRCName();
+            this.clientCMDRName = c.getClient().getCMDRName();
+            this.assignedRats = c.getRats().stream()
+                    .map(Rat::getIRCName)
+                    .collect(Collectors.toSet());
+            this.callingRats = c.getCalls().stream()
+                    .map(Rat::getIRCName)
+                    .collect(Collectors.toSet());
+        }
+    }
 
     /**
      * Constructs a new CaseManager.
      */
     public CaseManager() {
-        this.closedCases = new HashSet<>();
+        this.closedCases = new ArrayList<>();
         this.cases = new HashMap<>();
+        this.openCases = new ArrayList<>();
+        
+        this.version = 0;
+        this.snapshot = new CaseSnapshot(this.version, Collections.emptyList(), Collections.emptyList());
+        
+        this.casesByClientIRCName = new HashMap<>();
+        this.casesByClientCMDRName = new HashMap<>();
+        this.casesByAssignedRat = new HashMap<>();
+        this.casesByCallingRat = new HashMap<>();
+        this.indexedNames = new IdentityHashMap<>();
+        
+        this.listeners = new CopyOnWriteArrayList<>();
+        
+        this.mutations = new ArrayBlockingQueue<>(CaseManager.MUTATION_QUEUE_CAPACITY);
+        this.submittedMutations = new ConcurrentLinkedQueue<>();
+        this.owner = null;
+    }
+    
+    /**
+     * Starts the owner thread.
+     * 
+     * Until the CaseManager is started it may be used from any single
+     * thread, e.g. for restoring cases.
+     */
+    public void start() {
+        if(this.owner != null) {
+            throw new IllegalStateException("The CaseManager was started already.");
+        }
+        
+        Thread t = new Thread(this::runMutations, "CaseManagerThread");
+        t.setDaemon(true);
+        this.owner = t;
+        t.start();
+    }
+    
+    /**
+     * Runs all changes handed to execute() and submit() so far and stops
+     * the owner thread.
+     * 
+     * Afterwards the CaseManager may be used from any single thread again.
+     */
+    public void stop() {
+        Thread t = this.owner;
+        if(t == null) {
+            return;
+        }
+        if(t == Thread.currentThread()) {
+            throw new IllegalStateException("The CaseManager can't be stopped from its owner thread.");
+        }
+        
+        this.execute(CaseManager.STOP);
+        try {
+            t.join();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(CaseManager.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        this.owner = null;
+    }
+    
+    /**
+     * Runs the given change on the owner thread.
+     * 
+     * When called on the owner thread or before the CaseManager is started
+     * the change is run right away, otherwise it is queued and this only
+     * blocks while the queue is full.
+     * 
+     * @param mutation The change to the CaseManager or its cases.
+     */
+    public void execute(Runnable mutation) {
+        Thread t = this.owner;
+        if(t == null || t == Thread.currentThread()) {
+            mutation.run();
+            return;
+        }
+        
+        try {
+            this.mutations.put(mutation);
+        } catch (InterruptedException ex) {
+            Logger.getLogger(CaseManager.class.getName()).log(Level.SEVERE, "Dropped a change to the cases.", ex);
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Runs the given change on the owner thread without ever blocking.
+     * 
+     * Unlike execute() the change is queued without a limit, so this is
+     * meant for the few changes made by the user on the Swing event
+     * dispatch thread, which must keep responding while the owner thread
+     * is busy. Submitted changes are run before the changes that are
+     * still queued by execute().
+     * 
+     * @param mutation The change to the CaseManager or its cases.
+     */
+    public void submit(Runnable mutation) {
+        Thread t = this.owner;
+        if(t == null || t == Thread.currentThread()) {
+            mutation.run();
+            return;
+        }
+        
+        this.submittedMutations.add(mutation);
+        // If the queue is full the owner thread is busy and gets to the
+        // submitted change with the next change anyway.
+        this.mutations.offer(CaseManager.WAKE_UP);
+    }
+    
+    /**
+     * Returns true if the current thread may modify the CaseManager.
+     * 
+     * @return true if the current thread may modify the CaseManager.
+     */
+    public boolean isOwnerThread() {
+        Thread t = this.owner;
+        return t == null || t == Thread.currentThread();
+    }
+    
+    /**
+     * Throws an IllegalStateException unless the current thread may modify
+     * the CaseManager.
+     */
+    private void checkOwnerThread() {
+        if(!this.isOwnerThread()) {
+            throw new IllegalStateException("The CaseManager must only be modified on its owner thread, use execute().");
+        }
+    }
+    
+    /**
+     * Runs the queued changes until stopped.
+     */
+    private void runMutations() {
+        while(true) {
+            Runnable mutation;
+            try {
+                mutation = this.mutations.take();
+            } catch (InterruptedException ex) {
+                Logger.getLogger(CaseManager.class.getName()).log(Level.SEVERE, null, ex);
+                return;
+            }
+            this.runSubmittedMutations();
+            if(mutation == CaseManager.STOP) {
+                return;
+            }
+            
+            CaseManager.runMutation(mutation);
+        }
+    }
+    
+    /**
+     * Runs all changes handed to submit() so far.
+     */
+    private void runSubmittedMutations() {
+        Runnable mutation;
+        while((mutation = this.submittedMutations.poll()) != null) {
+            CaseManager.runMutation(mutation);
+        }
+    }
+    
+    /**
+     * Runs the change logging any exception.
+     * 
+     * @param mutation 
+     */
+    private static void runMutation(Runnable mutation) {
+        try {
+            mutation.run();
+        } catch(Exception ex) {
+            Logger.getLogger(CaseManager.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Registers a listener that gets notified about changes of any case.
+     * 
+     * @param listener 
+     */
+    public void addListener(CaseListener listener) {
+        if(!this.listeners.contains(listener)) {
+            this.listeners.add(listener);
+        }
+    }
+    
+    /**
+     * Removes a previously registered listener.
+     * 
+     * @param listener 
+     */
+    public void removeListener(CaseListener listener) {
+        this.listeners.remove(listener);
+    }
+    
+    /**
+     * Notifies all registered listeners about the given event.
+     * 
+     * @param event 
+     */
+    protected void fireEvent(CaseEvent event) {
+        this.listeners.forEach(listener -> listener.caseChanged(event));
     }
     
     /**
      * Returns a case with the given case number.
      * 
+     * Like all lookups this must be called on the owner thread.
+     * 
      * @param number The number of the case as given by MechaSqueak.
      * @return The requested case or null.
      */
@@ -61,42 +342,118 @@ public class CaseManager extends Observable implements Observer {
     }
     
     /**
-     * Returns all open cases.
-     * @return all open cases.
+     * Returns all open cases sorted by opening time.
+     * 
+     * @return an unmodifiable list of all open cases.
      */
     public List<Case> getOpenCases() {
-        return this.cases.values().stream()
-                .sorted((i1, i2) -> i1.getOpenTime().compareTo(i2.getOpenTime()))
-                .collect(Collectors.toList());
+        return this.snapshot.getOpenCases();
     }
     
     /**
-     * Returns all closed cases.
+     * Returns all closed cases sorted by opening time.
      * 
-     * @return all closed cases.
+     * @return an unmodifiable list of all closed cases.
      */
     public List<Case> getClosedCases() {
-        return this.closedCases.stream()
-                .sorted((i1, i2) -> i1.getOpenTime().compareTo(i2.getOpenTime()))
-                .collect(Collectors.toList());
+        return this.snapshot.getClosedCases();
+    }
+    
+    /**
+     * Returns an immutable snapshot of the current cases.
+     * 
+     * This may be called from any thread.
+     * 
+     * @return an immutable snapshot of the current cases.
+     */
+    public CaseSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+    
+    /**
+     * Inserts the case c into the list sorted by opening time after all cases
+     * opened at the same time.
+     * 
+     * @param sortedCases
+     * @param c 
+     */
+    private static void insertSorted(List<Case> sortedCases, Case c) {
+        int low = 0;
+        int high = sortedCases.size();
+        while(low < high) {
+            int mid = (low + high) >>> 1;
+            if(sortedCases.get(mid).getOpenTime().compareTo(c.getOpenTime()) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        sortedCases.add(low, c);
+    }
+    
+    /**
+     * Removes the case c from the list comparing by identity.
+     * 
+     * @param cases
+     * @param c 
+     */
+    private static void removeIdentical(List<Case> cases, Case c) {
+        for(int i = 0; i < cases.size(); ++i) {
+            if(cases.get(i) == c) {
+                cases.remove(i);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Publishes a new snapshot.
+     * 
+     * @param casesChanged Whether or not cases have been added, closed or
+     * removed, if not the lists of the previous snapshot are reused.
+     */
+    private void publishSnapshot(boolean casesChanged) {
+        ++this.version;
+        if(casesChanged) {
+            this.snapshot = new CaseSnapshot(
+                    this.version,
+                    Collections.unmodifiableList(new ArrayList<>(this.openCases)),
+                    Collections.unmodifiableList(new ArrayList<>(this.closedCases))
+            );
+        } else {
+            this.snapshot = new CaseSnapshot(
+                    this.version,
+                    this.snapshot.getOpenCases(),
+                    this.snapshot.getClosedCases()
+            );
+        }
     }
     
     /**
      * Adds a case.
      * 
+     * Cases that are closed already are added to the closed cases.
+     * 
      * @param c 
      */
     public void addCase(Case c) {
+        this.checkOwnerThread();
         if(this.cases.containsKey(c.getNumber())) {
             throw new IllegalStateException("A case with the number " + Integer.toString(c.getNumber()) + " already exists!");
         }
         c.attachManager(this);
-        this.cases.put(c.getNumber(), c);
+        if(c.isClosed()) {
+            CaseManager.insertSorted(this.closedCases, c);
+        } else {
+            this.cases.put(c.getNumber(), c);
+            CaseManager.insertSorted(this.openCases, c);
+            this.index(c);
+        }
         
-        c.addObserver(this);
+        c.addListener(this);
+        this.publishSnapshot(true);
         
-        this.setChanged();
-        this.notifyObservers();
+        this.fireEvent(new CaseEvent(CaseEvent.Type.ADDED, c));
     }
     
     /**
@@ -108,13 +465,16 @@ public class CaseManager extends Observable implements Observer {
      * @param c 
      */
     public void notifyCaseClosed(Case c) {
+        this.checkOwnerThread();
         Case closedCase = this.cases.remove(c.getNumber());
         if(closedCase != null) {
-            this.closedCases.add(closedCase);
+            this.unindex(closedCase);
+            CaseManager.removeIdentical(this.openCases, closedCase);
+            CaseManager.insertSorted(this.closedCases, closedCase);
+            this.publishSnapshot(true);
+            
+            this.fireEvent(new CaseEvent(CaseEvent.Type.CLOSED, closedCase));
         }
-        
-        this.setChanged();
-        this.notifyObservers();
     }
     
     /**
@@ -123,62 +483,185 @@ public class CaseManager extends Observable implements Observer {
      * @param closeTime 
      */
     public void removeClosedCasesOlderThan(LocalDateTime closeTime) {
-        if(this.closedCases.removeIf(item -> item.getCloseTime().isBefore(closeTime))) {
-            this.setChanged();
-            this.notifyObservers();
-        }
+        this.checkOwnerThread();
+        List<Case> removed = this.closedCases.stream()
+                .filter(item -> item.getCloseTime().isBefore(closeTime))
+                .collect(Collectors.toList());
+        
+        // Remove them one by one so the listeners always find the removed
+        // case in the previous snapshot.
+        removed.forEach(c -> {
+            CaseManager.removeIdentical(this.closedCases, c);
+            c.removeListener(this);
+            this.publishSnapshot(true);
+            
+            this.fireEvent(new CaseEvent(CaseEvent.Type.REMOVED, c));
+        });
     }
     
     /**
      * Returns the Case where the clients IRC or CMDR name are equal to the
      * given name or null if no such case exists.
      * 
+     * If there are multiple such cases the one with the lowest number is
+     * returned.
+     * 
      * @param clientName
      * @return the Case where the clients IRC or CMDR name are equal to the
      * given name or null if no such case exists.
      */
     public Case lookupCaseOfClient(String clientName) {
-        return this.cases.values().stream()
-                .filter(elem -> elem.getClient().getIRCName().equals(clientName) || elem.getClient().getCMDRName().equals(clientName))
-                .findFirst().orElse(null);
+        Set<Case> byIRCName = this.casesByClientIRCName.getOrDefault(clientName, Collections.emptySet());
+        Set<Case> byCMDRName = this.casesByClientCMDRName.getOrDefault(clientName, Collections.emptySet());
+        if(byCMDRName.isEmpty()) {
+            return this.lowestNumbered(byIRCName);
+        }
+        if(byIRCName.isEmpty()) {
+            return this.lowestNumbered(byCMDRName);
+        }
+        
+        Case c1 = this.lowestNumbered(byIRCName);
+        Case c2 = this.lowestNumbered(byCMDRName);
+        return c1.getNumber() <= c2.getNumber() ? c1 : c2;
     }
     
     /**
      * Returns the Case where a Rat with the same IRC name as the given rat has
      * been assigned or at least has called for the case.
      * 
+     * Cases the rat has been assigned to are preferred over cases the rat
+     * has only called for. If there are multiple such cases the one with the
+     * lowest number is returned.
+     * 
      * @param rat The rat to search for.
      * @return the Case where a Rat with the same IRC name as the given rat has
      * been assigned or at least has called for the case.
      */
     public Case lookupCaseWithRat(Rat rat) {
-        Case c = this.cases.values().stream()
-                .filter(
-                        elem -> elem.getRats().stream().anyMatch(r -> r.getIRCName().equals(rat.getIRCName()))
-                )
-                .findFirst().orElse(null);
+        return this.lookupCaseWithRat(rat.getIRCName());
+    }
+    
+    /**
+     * Returns the Case where a Rat with the given IRC name has been assigned
+     * or at least has called for the case.
+     * 
+     * @see CaseManager#lookupCaseWithRat(de.targodan.usb.data.Rat) 
+     * 
+     * @param ratIrcName The IRC name of the rat to search for.
+     * @return the Case where a Rat with the given IRC name has been assigned
+     * or at least has called for the case.
+     */
+    public Case lookupCaseWithRat(String ratIrcName) {
+        Case c = this.lowestNumbered(this.casesByAssignedRat.getOrDefault(ratIrcName, Collections.emptySet()));
         if(c == null) {
-            c = this.cases.values().stream()
-                .filter(
-                        elem -> elem.getCalls().stream().anyMatch(r -> r.getIRCName().equals(rat.getIRCName()))
-                )
-                .findFirst().orElse(null);
+            c = this.lowestNumbered(this.casesByCallingRat.getOrDefault(ratIrcName, Collections.emptySet()));
         }
         return c;
     }
+    
+    /**
+     * Returns the case with the lowest number or null if cases is empty.
+     * 
+     * @param cases
+     * @return the case with the lowest number or null if cases is empty.
+     */
+    private Case lowestNumbered(Set<Case> cases) {
+        if(cases.isEmpty()) {
+            return null;
+        }
+        if(cases.size() == 1) {
+            return cases.iterator().next();
+        }
+        return cases.stream()
+                .min(Comparator.comparingInt(Case::getNumber))
+                .get();
+    }
+    
+    /**
+     * Adds the open case c to the indexes.
+     * 
+     * @param c 
+     */
+    private void index(Case c) {
+        IndexedNames names = new IndexedNames(c);
+        this.indexedNames.put(c, names);
+        
+        CaseManager.addToIndex(this.casesByClientIRCName, names.clientIRCName, c);
+        CaseManager.addToIndex(this.casesByClientCMDRName, names.clientCMDRName, c);
+        names.assignedRats.forEach(name -> CaseManager.addToIndex(this.casesByAssignedRat, name, c));
+        names.callingRats.forEach(name -> CaseManager.addToIndex(this.casesByCallingRat, name, c));
+    }
+    
+    /**
+     * Removes the case c from the indexes.
+     * 
+     * @param c 
+     */
+    private void unindex(Case c) {
+        IndexedNames names = this.indexedNames.remove(c);
+        if(names == null) {
+            return;
+        }
+        
+        CaseManager.removeFromIndex(this.casesByClientIRCName, names.clientIRCName, c);
+        CaseManager.removeFromIndex(this.casesByClientCMDRName, names.clientCMDRName, c);
+        names.assignedRats.forEach(name -> CaseManager.removeFromIndex(this.casesByAssignedRat, name, c));
+        names.callingRats.forEach(name -> CaseManager.removeFromIndex(this.casesByCallingRat, name, c));
+    }
+    
+    private static void addToIndex(Map<String, Set<Case>> index, String name, Case c) {
+        if(name == null) {
+            return;
+        }
+        index.computeIfAbsent(name, key -> Collections.newSetFromMap(new IdentityHashMap<>()))
+                .add(c);
+    }
+    
+    private static void removeFromIndex(Map<String, Set<Case>> index, String name, Case c) {
+        if(name == null) {
+            return;
+        }
+        Set<Case> indexed = index.get(name);
+        if(indexed == null) {
+            return;
+        }
+        indexed.remove(c);
+        if(indexed.isEmpty()) {
+            index.remove(name);
+        }
+    }
 
     @Override
-    public void update(Observable o, Object arg) {
-        if(!(o instanceof Case)) {
+    public void caseChanged(CaseEvent event) {
+        if(event.getType() != CaseEvent.Type.CHANGED) {
+            // Closing is reported via notifyCaseClosed.
             return;
         }
-        Case c = (Case)o;
+        this.checkOwnerThread();
+        Case c = event.getSource();
         
-        if(this.cases.containsValue(c) || this.closedCases.contains(c)) {
-            this.setChanged();
-            this.notifyObservers(c);
+        if(this.indexedNames.containsKey(c)) {
+            switch(event.getField()) {
+                case CLIENT:
+                case RATS:
+                case CALLS:
+                    // The names of the client or the rats may have changed.
+                    this.unindex(c);
+                    this.index(c);
+                    break;
+                    
+                default:
+                    break;
+            }
+            this.publishSnapshot(false);
+            
+            this.fireEvent(event);
+        } else if(this.closedCases.stream().anyMatch(elem -> elem == c)) {
+            this.publishSnapshot(false);
+            
+            this.fireEvent(event);
         } else {
-            c.deleteObserver(this);
+            c.removeListener(this);
         }
     }
 }
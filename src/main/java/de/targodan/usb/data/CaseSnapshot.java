@@ -0,0 +1,108 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.data;
+
+import java.util.List;
+
+/**
+ * CaseSnapshot is an immutable view of the cases of a CaseManager at one
+ * point in time.
+ * 
+ * Both lists are sorted by the opening time of the cases and support
+ * constant time indexed access. The version is incremented by the
+ * CaseManager whenever a case is added, closed or removed or one of its
+ * cases changes, so two snapshots with the same version are equal. The
+ * lists are the same instances as in the previous snapshot unless cases
+ * were added, closed or removed.
+ * 
+ * @author Luca Corbatto
+ */
+public class CaseSnapshot {
+    private final long version;
+    private final List<Case> openCases;
+    private final List<Case> closedCases;
+    
+    /**
+     * Constructs a CaseSnapshot.
+     * 
+     * @param version The version of the CaseManager.
+     * @param openCases Unmodifiable list of the open cases sorted by opening time.
+     * @param closedCases Unmodifiable list of the closed cases sorted by opening time.
+     */
+    CaseSnapshot(long version, List<Case> openCases, List<Case> closedCases) {
+        this.version = version;
+        this.openCases = openCases;
+        this.closedCases = closedCases;
+    }
+
+    /**
+     * Returns the version of the CaseManager this snapshot was taken at.
+     * 
+     * @return the version of the CaseManager this snapshot was taken at.
+     */
+    public long getVersion() {
+        return this.version;
+    }
+
+    /**
+     * Returns the open cases sorted by opening time.
+     * 
+     * @return the open cases sorted by opening time.
+     */
+    public List<Case> getOpenCases() {
+        return this.openCases;
+    }
+
+    /**
+     * Returns the closed cases sorted by opening time.
+     * 
+     * @return the closed cases sorted by opening time.
+     */
+    public List<Case> getClosedCases() {
+        return this.closedCases;
+    }
+    
+    /**
+     * Returns the total number of cases.
+     * 
+     * @return the total number of cases.
+     */
+    public int size() {
+        return this.closedCases.size() + this.openCases.size();
+    }
+    
+    /**
+     * Returns the case at the given index where the closed cases come first,
+     * followed by the open cases.
+     * 
+     * @param index
+     * @return the case at the given index.
+     */
+    public Case get(int index) {
+        if(index < this.closedCases.size()) {
+            return this.closedCases.get(index);
+        }
+        return this.openCases.get(index - this.closedCases.size());
+    }
+}
@@ -25,8 +25,8 @@ package de.targodan.usb.data;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -37,7 +37,7 @@ import java.util.regex.Pattern;
  * @author Luca Corbatto
  */
 public class Rat extends User {
-    private static Pattern platformPattern;
+    private static final Pattern platformPattern = Pattern.compile(".*[\\[|].*(?<platform>(pc|ps|xb))", Pattern.CASE_INSENSITIVE);
     
     protected int jumps;
     protected boolean assigned;
@@ -48,25 +48,36 @@ public class Rat extends User {
      * Construct a Rat with only an IRC name and the platform guessed based on
      * the IRC name.
      * 
-     * @see Rat#guessPlatform(java.lang.String)
+     * @see RatRegistry#guessPlatform(java.lang.String)
      * 
      * @param ircName 
      */
     public Rat(String ircName) {
-        this(ircName, null, Rat.guessPlatform(ircName));
+        this(RatRegistry.getInstance().lookup(ircName), null);
     }
     
     /**
      * Construct a Rat with an IRC name and a commander name, the platform is
      * guessed based on the IRC name.
      * 
-     * @see Rat#guessPlatform(java.lang.String)
+     * @see RatRegistry#guessPlatform(java.lang.String)
      * 
      * @param ircName 
      * @param cmdrName 
      */
     public Rat(String ircName, String cmdrName) {
-        this(ircName, cmdrName, Rat.guessPlatform(ircName));
+        this(RatRegistry.getInstance().lookup(ircName), cmdrName);
+    }
+    
+    /**
+     * Construct a Rat with the identity known to the RatRegistry and a
+     * commander name.
+     * 
+     * @param identity 
+     * @param cmdrName 
+     */
+    private Rat(RatRegistry.Identity identity, String cmdrName) {
+        this(identity.getIRCName(), cmdrName, identity.getPlatform());
     }
     
     
@@ -81,22 +92,20 @@ public class Rat extends User {
         super(ircName, cmdrName, platform);
         
         this.jumps = -1;
-        this.reports = new HashSet<>();
+        this.reports = new CopyOnWriteArraySet<>();
         this.assigned = false;
     }
     
     /**
      * Guesses the platform based on the IRC name.
      * 
-     * It looks for postfixes like "[PC]", "|PC" or similar. 
+     * It looks for postfixes like "[PC]", "|PC" or similar. This is rather
+     * expensive, use the cached guess of the RatRegistry instead.
      * 
      * @param ircName
      * @return 
      */
-    private static Platform guessPlatform(String ircName) {
-        if(Rat.platformPattern == null) {
-            Rat.platformPattern = Pattern.compile(".*[\\[|].*(?<platform>(pc|ps|xb))", Pattern.CASE_INSENSITIVE);
-        }
+    static Platform guessPlatform(String ircName) {
         Matcher m = Rat.platformPattern.matcher(ircName);
         if(!m.matches()) {
             return null;
@@ -0,0 +1,162 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.data;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * RatRegistry knows the identities of all rats seen by this process.
+ * 
+ * An identity is the IRC name of a rat together with the platform guessed
+ * from it. It is created once per IRC name, so guessing the platform is done
+ * only once and all Rats of the same name share the same String instance.
+ * Looking up a known name does not allocate anything.
+ * 
+ * The Rats themselves are not shared, as the jumps, reports and assignment
+ * belong to the case the rat called for.
+ * 
+ * @author Luca Corbatto
+ */
+public class RatRegistry {
+    public static final int DEFAULT_MAX_SIZE = 10000;
+    
+    private static final RatRegistry INSTANCE = new RatRegistry(RatRegistry.DEFAULT_MAX_SIZE);
+    
+    private final ConcurrentMap<String, Identity> identities;
+    private final int maxSize;
+    
+    /**
+     * Constructs a RatRegistry that forgets all identities once it knows more
+     * than maxSize of them.
+     * 
+     * @param maxSize The maximum number of identities.
+     */
+    public RatRegistry(int maxSize) {
+        if(maxSize <= 0) {
+            throw new IllegalArgumentException("The maximum size must be positive but was "+maxSize+".");
+        }
+        this.identities = new ConcurrentHashMap<>();
+        this.maxSize = maxSize;
+    }
+    
+    /**
+     * Returns the RatRegistry of this process.
+     * 
+     * @return the RatRegistry of this process.
+     */
+    public static RatRegistry getInstance() {
+        return RatRegistry.INSTANCE;
+    }
+    
+    /**
+     * Returns the identity of the rat with the given IRC name, creating it if
+     * the name was not seen before.
+     * 
+     * @param ircName The IRC name of the rat.
+     * @return the identity of the rat.
+     */
+    public Identity lookup(String ircName) {
+        Identity identity = this.identities.get(ircName);
+        if(identity != null) {
+            return identity;
+        }
+        
+        if(this.identities.size() >= this.maxSize) {
+            // Nicks come and go, starting over is cheaper than tracking usage.
+            this.identities.clear();
+        }
+        identity = new Identity(ircName, Rat.guessPlatform(ircName));
+        Identity previous = this.identities.putIfAbsent(ircName, identity);
+        return previous != null ? previous : identity;
+    }
+    
+    /**
+     * Returns the shared instance of the given IRC name.
+     * 
+     * @param ircName The IRC name of the rat.
+     * @return the shared instance of the given IRC name.
+     */
+    public String getCanonicalName(String ircName) {
+        return this.lookup(ircName).getIRCName();
+    }
+    
+    /**
+     * Returns the platform guessed based on the IRC name.
+     * 
+     * @param ircName The IRC name of the rat.
+     * @return the guessed platform or null if it cannot be guessed.
+     */
+    public Platform guessPlatform(String ircName) {
+        return this.lookup(ircName).getPlatform();
+    }
+    
+    /**
+     * Returns the number of known identities.
+     * 
+     * @return the number of known identities.
+     */
+    public int size() {
+        return this.identities.size();
+    }
+    
+    /**
+     * Identity is the IRC name of a rat and the platform guessed from it.
+     * 
+     * This class is immutable.
+     */
+    public static class Identity {
+        private final String ircName;
+        private final Platform platform;
+        
+        /**
+         * Constructs an Identity.
+         * 
+         * @param ircName The IRC name of the rat.
+         * @param platform The guessed platform, may be null.
+         */
+        private Identity(String ircName, Platform platform) {
+            this.ircName = ircName;
+            this.platform = platform;
+        }
+        
+        /**
+         * Returns the IRC name of the rat.
+         * 
+         * @return the IRC name of the rat.
+         */
+        public String getIRCName() {
+            return this.ircName;
+        }
+        
+        /**
+         * Returns the platform guessed from the IRC name.
+         * 
+         * @return the guessed platform or null if it cannot be guessed.
+         */
+        public Platform getPlatform() {
+            return this.platform;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+/**
+ * BackpressurePolicy defines what a RingBufferQueue does with new elements
+ * while it is full.
+ *
+ * @author Luca Corbatto
+ */
+public enum BackpressurePolicy {
+    /**
+     * Offering fails and blocking operations wait until there is space.
+     */
+    BLOCK,
+    /**
+     * The oldest element in the queue is dropped to make space.
+     */
+    DROP_OLDEST,
+    /**
+     * New elements are kept in an unbounded overflow queue until the ring
+     * buffer has been emptied.
+     */
+    SPILL;
+    
+    /**
+     * Returns the BackpressurePolicy with the given name.
+     * 
+     * The name is case insensitive and may use "-" instead of "_", e.g.
+     * "drop-oldest".
+     * 
+     * @param name The name of the policy.
+     * @return the BackpressurePolicy with the given name.
+     * @throws IllegalArgumentException If there is no policy with the given name.
+     */
+    public static BackpressurePolicy fromString(String name) {
+        for(BackpressurePolicy policy : BackpressurePolicy.values()) {
+            if(policy.name().equalsIgnoreCase(name.replace('-', '_'))) {
+                return policy;
+            }
+        }
+        throw new IllegalArgumentException("Backpressure policy \""+name+"\" is unknown.");
+    }
+}
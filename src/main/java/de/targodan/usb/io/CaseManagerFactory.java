@@ -23,13 +23,28 @@
  */
 package de.targodan.usb.io;
 
+import de.targodan.usb.data.Case;
+import de.targodan.usb.io.journal.CaseJournal;
 import de.targodan.usb.io.processing.DefaultHandler;
+import de.targodan.usb.io.processing.ExecutingHandler;
 import de.targodan.usb.io.processing.Handler;
-import de.targodan.usb.io.processing.DefaultParser;
-import de.targodan.usb.io.processing.Parser;
+import de.targodan.usb.io.processing.ScanningParser;
 import de.targodan.usb.data.CaseManager;
+import de.targodan.usb.io.processing.IRCMessage;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 /**
  * CaseManagerFactory creates a CaseManager with DataSources as defined in the
@@ -39,7 +54,8 @@ import java.util.logging.Logger;
  */
 public abstract class CaseManagerFactory {
     /**
-     * Creates a CaseManager.
+     * Creates a CaseManager and starts its owner thread as well as a thread
+     * removing cleared cases as defined in the Config.
      * 
      * @return 
      */
@@ -52,6 +68,14 @@ public abstract class CaseManagerFactory {
      */
     public abstract DataConsumer createDataConsumer();
     
+    /**
+     * Releases any resources held by the created CaseManager, e.g. stops
+     * its threads and writes all pending changes to the journal.
+     * 
+     * Call this after stopping the DataConsumer.
+     */
+    public abstract void close();
+    
     /**
      * Creates a default factory.
      * 
@@ -59,7 +83,22 @@ public abstract class CaseManagerFactory {
      * @return 
      */
     public static CaseManagerFactory getDefaultFactory(Config config) {
-        return new DefaultCaseManagerFactory(config);
+        return new DefaultCaseManagerFactory(config, null);
+    }
+    
+    /**
+     * Creates a factory whose DataConsumer only listens to the given
+     * DataSource instead of the ones defined in the Config.
+     * 
+     * The journal is neither restored nor written, so replaying a recorded
+     * log does not interfere with the cases of a regular session.
+     * 
+     * @param config
+     * @param replaySource The DataSource replaying a recorded log.
+     * @return 
+     */
+    public static CaseManagerFactory getReplayFactory(Config config, DataSource replaySource) {
+        return new DefaultCaseManagerFactory(config, replaySource);
     }
     
     /**
@@ -67,34 +106,146 @@ public abstract class CaseManagerFactory {
      */
     private static class DefaultCaseManagerFactory extends CaseManagerFactory {
         private Config config = null;
+        private DataSource replaySource = null;
         private CaseManager cm = null;
         private DataConsumer dc = null;
+        private CaseJournal journal = null;
+        private boolean casesRestored = false;
+        private Thread removeClearedCasesThread = null;
+        private final AtomicBoolean runRemoveClearedCasesThread = new AtomicBoolean(false);
         
         /**
          * Constructs a new CaseManagerFactory that will create a CaseManager
          * with DataSources as defined by the given config.
          * 
          * @param config The configuration to be used for creating the DataSources.
+         * @param replaySource The only DataSource to be used, null to use
+         * the DataSources defined by the config.
          */
-        public DefaultCaseManagerFactory(Config config) {
+        public DefaultCaseManagerFactory(Config config, DataSource replaySource) {
             this.config = config;
+            this.replaySource = replaySource;
         }
         
         @Override
         public CaseManager createCaseManager() {
             if(this.cm == null) {
                 this.cm = new CaseManager();
+                if(this.replaySource == null) {
+                    this.openJournal();
+                }
 
-                Handler handler = new DefaultHandler();
+                this.cm.start();
+                this.startRemovingClearedCases();
+
+                Handler handler = new ExecutingHandler(new DefaultHandler());
                 handler.registerCaseManager(cm);
-                Parser parser = new DefaultParser();
-                parser.registerHandler(handler);
 
-                this.dc = new DataConsumer(parser);
+                this.dc = new DataConsumer(ScanningParser::new, handler, Math.max(1, this.config.parserThreads), this.createQueue(), this.createExecutor());
             }
            
             return this.cm;
         }
+        
+        /**
+         * Starts a thread removing cases that have been closed for longer
+         * than secondsUntilClearedCasesAreRemoved.
+         * 
+         * The Config is read every time, so changes made in the settings
+         * take effect right away.
+         */
+        private void startRemovingClearedCases() {
+            this.runRemoveClearedCasesThread.set(true);
+            this.removeClearedCasesThread = new Thread(() -> {
+                while(this.runRemoveClearedCasesThread.get()) {
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException ex) {
+                        // Interrupted by close().
+                        return;
+                    }
+                    float seconds = this.config.secondsUntilClearedCasesAreRemoved;
+                    if(seconds > 0) {
+                        LocalDateTime closeTime = LocalDateTime.now().minus((long)(seconds * 1000), ChronoUnit.MILLIS);
+                        this.cm.execute(() -> this.cm.removeClosedCasesOlderThan(closeTime));
+                    }
+                }
+            });
+            this.removeClearedCasesThread.setName("RemoveClearedCasesThread");
+            this.removeClearedCasesThread.setDaemon(true);
+            this.removeClearedCasesThread.start();
+        }
+        
+        /**
+         * Restores the cases from the journal and starts journaling changes
+         * as defined in the Config.
+         */
+        private void openJournal() {
+            Config.Journal journalConfig = this.config.journal;
+            if(journalConfig == null) {
+                journalConfig = new Config.Journal();
+            }
+            if(!journalConfig.enabled) {
+                return;
+            }
+            
+            CaseJournal caseJournal = new CaseJournal(
+                    Paths.get(PathSanitizer.sanitize(journalConfig.directory)),
+                    journalConfig.commitIntervalMillis,
+                    journalConfig.recordsPerSnapshot
+            );
+            try {
+                List<Case> cases = caseJournal.recover(Duration.ofMillis((long)(journalConfig.minutesUntilDiscarded * 60 * 1000)));
+                cases.forEach(this.cm::addCase);
+                this.casesRestored = !cases.isEmpty();
+            } catch (IOException | RuntimeException ex) {
+                Logger.getLogger(CaseManagerFactory.class.getName()).log(Level.SEVERE, "Could not restore cases from the journal.", ex);
+            }
+            
+            try {
+                caseJournal.attach(this.cm);
+                this.journal = caseJournal;
+            } catch (IOException ex) {
+                Logger.getLogger(CaseManagerFactory.class.getName()).log(Level.SEVERE, "Could not open the journal, changes will not be persisted.", ex);
+            }
+        }
+        
+        /**
+         * Creates the queue between the DataSources and the parser as
+         * defined in the Config.
+         * 
+         * @return the queue between the DataSources and the parser.
+         */
+        private BlockingQueue<IRCMessage> createQueue() {
+            Config.Queue queueConfig = this.config.queue;
+            if(queueConfig == null) {
+                queueConfig = new Config.Queue();
+            }
+            
+            switch(queueConfig.type) {
+                case "array":
+                    return new ArrayBlockingQueue<>(queueConfig.capacity);
+                case "ring":
+                    return new RingBufferQueue<>(queueConfig.capacity, BackpressurePolicy.fromString(queueConfig.backpressure));
+                default:
+                    throw new IllegalArgumentException("Queue type \""+queueConfig.type+"\" is unknown.");
+            }
+        }
+
+        /**
+         * Creates the executor running the DataSources as defined in the
+         * Config.
+         * 
+         * @return the executor running the DataSources.
+         */
+        private DataSourceExecutor createExecutor() {
+            Config.Executor executorConfig = this.config.executor;
+            if(executorConfig == null) {
+                executorConfig = new Config.Executor();
+            }
+            
+            return DataSourceExecutor.fromString(executorConfig.type, executorConfig.threads);
+        }
 
         @Override
         public DataConsumer createDataConsumer() {
@@ -102,8 +253,27 @@ public abstract class CaseManagerFactory {
                 this.createCaseManager();
             }
             
+            if(this.replaySource != null) {
+                if(!this.dc.getDataSources().contains(this.replaySource)) {
+                    this.dc.addDataSource(this.replaySource);
+                }
+                return this.dc;
+            }
+            
+            Duration configuredReplayDuration = Duration.ofMillis((long)(this.config.minutesReplayedOnStartup * 60 * 1000));
+            if(this.casesRestored && !configuredReplayDuration.isZero()) {
+                // Replaying the logs would apply the restored changes again.
+                Logger.getLogger(CaseManagerFactory.class.getName()).log(Level.INFO, "Cases were restored from the journal, not replaying the logs.");
+            }
+            Duration replayDuration = this.casesRestored ? Duration.ZERO : configuredReplayDuration;
+            
             this.config.dataSources.stream()
             .forEach((dsConfig) -> {
+                if(IRCDataSource.TYPE.equals(dsConfig.type)) {
+                    this.addIRCDataSource(dsConfig);
+                    return;
+                }
+                
                 IRCClient ircClient = IRCClientRegistry.getIRCClientByName(dsConfig.type);
                 if(ircClient == null) {
                     throw new IllegalArgumentException("IRCClient type \""+dsConfig.type+"\" is unknown.");
@@ -111,13 +281,18 @@ public abstract class CaseManagerFactory {
                 
                 String filePath = dsConfig.path;
                 if(filePath == null) {
-                    filePath = ircClient.getFuelratsLogfilePath();
+                    filePath = dsConfig.channels != null ? ircClient.getLogDirectoryPath() : ircClient.getFuelratsLogfilePath();
                 }
                 filePath = PathSanitizer.sanitize(filePath);
                 
                 try {
                     Logger.getLogger(CaseManagerFactory.class.getName()).log(Level.INFO, "Requesting DataSource {0}:\"{1}\"", new Object[]{ircClient.getName(), filePath});
-                    DataSource ds = new SingleChannelFileDataSource("#fuelrats", filePath, ircClient.getDefaultLogFileEncoding(), ircClient.getMarshaller());
+                    DataSource ds;
+                    if(dsConfig.channels != null) {
+                        ds = new DirectoryDataSource(filePath, Pattern.compile(dsConfig.channels, Pattern.CASE_INSENSITIVE), ircClient, replayDuration);
+                    } else {
+                        ds = new TailingFileDataSource("#fuelrats", filePath, ircClient.getDefaultLogFileEncoding(), ircClient.getMarshaller(), replayDuration);
+                    }
                     this.dc.addDataSource(ds);
                     Logger.getLogger(CaseManagerFactory.class.getName()).log(Level.INFO, "DataSource successful.");
                 } catch (Exception ex) {
@@ -127,5 +302,60 @@ public abstract class CaseManagerFactory {
             
             return this.dc;
         }
+
+        /**
+         * Adds an IRCDataSource connecting to the server given by the path
+         * of the config, e.g. "ircs://irc.fuelrats.com:6697".
+         * 
+         * @param dsConfig The configuration of the IRCDataSource.
+         */
+        private void addIRCDataSource(Config.DataSource dsConfig) {
+            if(dsConfig.path == null || dsConfig.path.trim().isEmpty()) {
+                Logger.getLogger(CaseManagerFactory.class.getName()).log(Level.SEVERE, "The irc DataSource needs the address of the server as path, e.g. \"ircs://irc.fuelrats.com:6697\".");
+                return;
+            }
+            if(dsConfig.channels == null || dsConfig.channels.trim().isEmpty()) {
+                Logger.getLogger(CaseManagerFactory.class.getName()).log(Level.SEVERE, "The irc DataSource \"{0}\" needs a comma separated list of channels to join, e.g. \"#fuelrats\".", dsConfig.path);
+                return;
+            }
+            
+            try {
+                URI uri = new URI(dsConfig.path);
+                if(uri.getHost() == null) {
+                    throw new IllegalArgumentException("The path of the irc DataSource \""+dsConfig.path+"\" is not a server address like \"ircs://irc.fuelrats.com:6697\".");
+                }
+                boolean tls = "ircs".equals(uri.getScheme());
+                int port = uri.getPort() != -1 ? uri.getPort() : (tls ? 6697 : 6667);
+                List<String> channels = Arrays.asList(dsConfig.channels.trim().split("\\s*,\\s*"));
+                String nick = dsConfig.nick != null ? dsConfig.nick : "UberSpatchBoard";
+                
+                Logger.getLogger(CaseManagerFactory.class.getName()).log(Level.INFO, "Requesting DataSource irc:\"{0}\"", dsConfig.path);
+                this.dc.addDataSource(new IRCDataSource(uri.getHost(), port, tls, nick, channels));
+                Logger.getLogger(CaseManagerFactory.class.getName()).log(Level.INFO, "DataSource successful.");
+            } catch (Exception ex) {
+                Logger.getLogger(CaseManagerFactory.class.getName()).log(Level.SEVERE, "Could not add the irc DataSource \""+dsConfig.path+"\".", ex);
+            }
+        }
+
+        @Override
+        public void close() {
+            if(this.removeClearedCasesThread != null) {
+                this.runRemoveClearedCasesThread.set(false);
+                this.removeClearedCasesThread.interrupt();
+                try {
+                    this.removeClearedCasesThread.join();
+                } catch (InterruptedException ex) {
+                    Logger.getLogger(CaseManagerFactory.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                this.removeClearedCasesThread = null;
+            }
+            if(this.cm != null) {
+                this.cm.stop();
+            }
+            if(this.journal != null) {
+                this.journal.close();
+                this.journal = null;
+            }
+        }
     }
 }
\ No newline at end of file
@@ -49,23 +49,140 @@ import java.util.stream.Collectors;
 public class Config {
     /**
      * DataSource represents the configuration of a data source.
+     * 
+     * If channels is set, path is the log directory of the client and the
+     * logs of all channels matching the regular expression channels are
+     * followed, e.g. "#fuelrats|#ratchat". Otherwise path is the fuelrats
+     * log file.
+     * 
+     * If type is "irc" the IRC server is connected to directly. Path is the
+     * address of the server, e.g. "ircs://irc.fuelrats.com:6697", channels
+     * is a comma separated list of the channels to join and nick is the nick
+     * name to use.
      */
     public static class DataSource {
         public String type;
         public String path;
+        public String channels;
+        public String nick;
+    }
+    
+    /**
+     * Queue represents the configuration of the queue between the data
+     * sources and the parser.
+     * 
+     * Type is either "ring" or "array", backpressure is one of "block",
+     * "drop-oldest" or "spill" and only applies to the "ring" type.
+     */
+    public static class Queue {
+        public String type;
+        public int capacity;
+        public String backpressure;
+        
+        /**
+         * Creates a Queue configuration with default values.
+         */
+        public Queue() {
+            this.type = "ring";
+            this.capacity = 1024;
+            this.backpressure = "block";
+        }
+    }
+    
+    /**
+     * Executor represents the configuration of the executor running the
+     * data sources.
+     * 
+     * Type is one of "thread", "virtual" or "scheduled", threads is the
+     * number of threads polling the data sources and only applies to the
+     * "scheduled" type.
+     */
+    public static class Executor {
+        public String type;
+        public int threads;
+        
+        /**
+         * Creates an Executor configuration with default values.
+         */
+        public Executor() {
+            this.type = "thread";
+            this.threads = 2;
+        }
+    }
+    
+    /**
+     * Journal represents the configuration of the case journal which is
+     * used for restoring the cases after a restart.
+     * 
+     * Cases are only restored if the journal has been written to within the
+     * last minutesUntilDiscarded minutes.
+     */
+    public static class Journal {
+        public boolean enabled;
+        public String directory;
+        public int commitIntervalMillis;
+        public int recordsPerSnapshot;
+        public float minutesUntilDiscarded;
+        
+        /**
+         * Creates a Journal configuration with default values.
+         */
+        public Journal() {
+            this.enabled = true;
+            this.directory = "usb-journal";
+            this.commitIntervalMillis = 50;
+            this.recordsPerSnapshot = 1000;
+            this.minutesUntilDiscarded = 60;
+        }
+    }
+    
+    /**
+     * Api represents the configuration of the HTTP API serving the cases
+     * as JSON.
+     * 
+     * The API listens on host and port if enabled, set host to "0.0.0.0"
+     * to make it reachable from other machines.
+     */
+    public static class Api {
+        public boolean enabled;
+        public String host;
+        public int port;
+        
+        /**
+         * Creates an Api configuration with default values.
+         */
+        public Api() {
+            this.enabled = false;
+            this.host = "localhost";
+            this.port = 8080;
+        }
     }
     
     public List<DataSource> dataSources;
+    public Queue queue;
+    public Executor executor;
+    public Journal journal;
+    public Api api;
+    public int parserThreads;
     public float secondsUntilClearedCasesAreRemoved;
+    public float minutesReplayedOnStartup;
     public boolean showTestMenu;
+    public int uiRefreshIntervalMillis;
 
     /**
      * Creates a Config instance.
      */
     public Config() {
         this.dataSources = new ArrayList<>();
+        this.queue = new Queue();
+        this.executor = new Executor();
+        this.journal = new Journal();
+        this.api = new Api();
+        this.parserThreads = 1;
         this.secondsUntilClearedCasesAreRemoved = 60;
+        this.minutesReplayedOnStartup = 0;
         this.showTestMenu = false;
+        this.uiRefreshIntervalMillis = 33;
     }
     
     /**
@@ -180,5 +297,9 @@ public class Config {
         config.writeConfig.setWriteDefaultValues(true);
         config.setClassTag("config", Config.class);
         config.setClassTag("dataSource", Config.DataSource.class);
+        config.setClassTag("queue", Config.Queue.class);
+        config.setClassTag("executor", Config.Executor.class);
+        config.setClassTag("journal", Config.Journal.class);
+        config.setClassTag("api", Config.Api.class);
     }
 }
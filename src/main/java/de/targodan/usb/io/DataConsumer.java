@@ -1,222 +1,378 @@
-/*
- * The MIT License
- *
- * Copyright 2017 Luca Corbatto.
- *
- * Permission is hereby granted, free of charge, to any person obtaining a copy
- * of this software and associated documentation files (the "Software"), to deal
- * in the Software without restriction, including without limitation the rights
- * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
- * copies of the Software, and to permit persons to whom the Software is
- * furnished to do so, subject to the following conditions:
- *
- * The above copyright notice and this permission notice shall be included in
- * all copies or substantial portions of the Software.
- *
- * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
- * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
- * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
- * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
- * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
- * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
- * THE SOFTWARE.
- */
-package de.targodan.usb.io;
-
-import de.targodan.usb.io.processing.IRCMessage;
-import de.targodan.usb.io.processing.ParseResult;
-import de.targodan.usb.io.processing.Parser;
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.List;
-import java.util.Observable;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.logging.Level;
-import java.util.logging.Logger;
-import java.util.stream.IntStream;
-
-/**
- * DataConsumer consumes, parses and handles messages from arbitrarily many
- * DataSources.
- * 
- * Each DataSource will be started in its own thread.
- * 
- * @author Luca Corbatto
- */
-public class DataConsumer extends Observable {
-    private final BlockingQueue<IRCMessage> queue;
-    private final Parser parser;
-    private final AtomicBoolean run;
-    private final AtomicBoolean done;
-    private final List<DataSource> dataSources;
-    private final List<Thread> threads;
-    
-    /**
-     * Constructs a DataConsumer with a Parser.
-     * 
-     * @param parser The parser to be used for parsing and handling of messages.
-     */
-    public DataConsumer(Parser parser) {
-        this.queue = new ArrayBlockingQueue<>(8);
-        this.parser = parser;
-        this.run = new AtomicBoolean(false);
-        this.done = new AtomicBoolean(false);
-        this.dataSources = new CopyOnWriteArrayList<>();
-        this.threads = new ArrayList<>();
-    }
-    
-    /**
-     * Creates and starts a new thread that will listen on the DataSource.
-     * 
-     * @param ds The DataSource that will be listened to in the created thread.
-     */
-    private void createAndStartThread(DataSource ds) {
-        Thread t = new Thread(() -> {
-            ds.listen(this.queue);
-        });
-        t.setName("DataSourceThread_"+ds.getShortName());
-        this.threads.add(t);
-        t.start();
-    }
-    
-    /**
-     * Adds a DataSource.
-     * 
-     * If the DataConsumer was started already a thread will be created and
-     * started listening on the given DataSource.
-     * 
-     * @see DataConsumer#createAndStartThread(de.targodan.usb.io.DataSource) 
-     * 
-     * @param ds The DataSource to be added.
-     */
-    public void addDataSource(DataSource ds) {
-        this.dataSources.add(ds);
-        if(this.run.get() && !this.done.get()) {
-            this.createAndStartThread(ds);
-        }
-        
-        this.setChanged();
-        this.notifyObservers();
-    }
-    
-    /**
-     * Removes the given DataSource from the consumer stopping any started
-     * threads.
-     * 
-     * @param ds The DataSource to be removed.
-     */
-    public void removeDataSource(DataSource ds) {
-        int indexOfDS = IntStream.range(0, this.dataSources.size())
-                .filter(i -> this.dataSources.get(i) == ds)
-                .findFirst().orElse(-1);
-        if(indexOfDS == -1) {
-            return;
-        }
-        
-        this.dataSources.remove(indexOfDS);
-        
-        ds.stop();
-        try {
-            this.threads.get(indexOfDS).join();
-        } catch (InterruptedException ex) {
-            Logger.getLogger(DataConsumer.class.getName()).log(Level.SEVERE, null, ex);
-        }
-        this.threads.remove(indexOfDS);
-        
-        this.setChanged();
-        this.notifyObservers();
-    }
-    
-    /**
-     * Returns an unmodifiable list of the contained DataSources.
-     * 
-     * @return an unmodifiable list of the contained DataSources.
-     */
-    public List<DataSource> getDataSources() {
-        return Collections.unmodifiableList(this.dataSources);
-    }
-    
-    /**
-     * Returns ture if the DataConsumer is still running.
-     * 
-     * @return ture if the DataConsumer is still running.
-     */
-    public boolean isRunning() {
-        return this.run.get();
-    }
-    
-    /**
-     * Starts the DataConsumer, starting any attached DataSources in a thread each.
-     * 
-     * This will block until you call stop().
-     */
-    public void start() {
-        this.done.set(false);
-        this.run.set(true);
-        
-        this.dataSources.forEach(ds -> {
-            this.createAndStartThread(ds);
-        });
-        
-        this.setChanged();
-        this.notifyObservers();
-        
-        IRCMessage msg;
-        while(this.run.get()) {
-            try {
-                msg = this.queue.poll(100, TimeUnit.MILLISECONDS);
-                if(msg == null) {
-                    continue;
-                }
-                
-                ParseResult result = this.parser.parseAndHandle(msg);
-                Logger.getLogger(SingleChannelFileDataSource.class.getName())
-                        .log(Level.INFO, "Parsed message.", result);
-                Logger.getLogger(SingleChannelFileDataSource.class.getName())
-                        .log(Level.FINE, "Parsed message.", msg);
-            } catch(Exception ex) {
-                Logger.getLogger(SingleChannelFileDataSource.class.getName())
-                        .log(Level.SEVERE, null, ex);
-            }
-        }
-        this.done.set(true);
-    }
-    
-    /**
-     * Stops the DataConsumer and all attached DataSources.
-     */
-    public void stop() {
-        this.dataSources.forEach(ds -> {
-            ds.stop();
-        });
-        
-        this.threads.forEach(thread -> {
-            try {
-                thread.join();
-            } catch (InterruptedException ex) {
-                Logger.getLogger(DataConsumer.class.getName()).log(Level.SEVERE, null, ex);
-            }
-        });
-        
-        this.run.set(false);
-        
-        while(!this.done.get()) {
-            try {
-                Thread t = Thread.currentThread();
-                synchronized(t) {
-                    t.wait(50);
-                }
-            } catch (InterruptedException ex) {
-                Logger.getLogger(SingleChannelFileDataSource.class.getName()).log(Level.SEVERE, null, ex);
-                break;
-            }
-        }
-        
-        this.setChanged();
-        this.notifyObservers();
-    }
-}
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.Handler;
+import de.targodan.usb.io.processing.IRCMessage;
+import de.targodan.usb.io.processing.ParseResult;
+import de.targodan.usb.io.processing.Parser;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Observable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * DataConsumer consumes, parses and handles messages from arbitrarily many
+ * DataSources.
+ * 
+ * The DataSources are run by a DataSourceExecutor, by default each in its own
+ * thread. All DataSources hand their messages to the consumer through a
+ * single BlockingQueue which is drained in batches of up to BATCH_SIZE
+ * messages.
+ * 
+ * With more than one parser thread the messages are parsed concurrently by a
+ * ParsingPipeline, but still handled one after another in the order they
+ * were taken from the queue.
+ * 
+ * @author Luca Corbatto
+ */
+public class DataConsumer extends Observable {
+    public static final int DEFAULT_QUEUE_CAPACITY = 1024;
+    public static final int BATCH_SIZE = 64;
+    
+    private final BlockingQueue<IRCMessage> queue;
+    private final Parser parser;
+    private final List<Parser> parsers;
+    private final Handler handler;
+    private final AtomicBoolean run;
+    private final AtomicBoolean done;
+    private final List<DataSource> dataSources;
+    private final DataSourceExecutor executor;
+    private final Map<DataSource, DataSourceExecutor.Handle> handles;
+    private boolean sourcesStarted;
+    
+    /**
+     * Constructs a DataConsumer with a Parser.
+     * 
+     * @param parser The parser to be used for parsing and handling of messages.
+     */
+    public DataConsumer(Parser parser) {
+        this(parser, new RingBufferQueue<>(DataConsumer.DEFAULT_QUEUE_CAPACITY));
+    }
+    
+    /**
+     * Constructs a DataConsumer with a Parser and the queue through which
+     * the DataSources hand over their messages.
+     * 
+     * @param parser The parser to be used for parsing and handling of messages.
+     * @param queue The queue to be used between the DataSources and the parser.
+     */
+    public DataConsumer(Parser parser, BlockingQueue<IRCMessage> queue) {
+        this(parser, queue, DataSourceExecutor.threadPerSource());
+    }
+    
+    /**
+     * Constructs a DataConsumer with a Parser, the queue through which the
+     * DataSources hand over their messages and the executor running the
+     * DataSources.
+     * 
+     * @param parser The parser to be used for parsing and handling of messages.
+     * @param queue The queue to be used between the DataSources and the parser.
+     * @param executor The executor to run the DataSources.
+     */
+    public DataConsumer(Parser parser, BlockingQueue<IRCMessage> queue, DataSourceExecutor executor) {
+        this(Collections.singletonList(parser), null, queue, executor);
+    }
+    
+    /**
+     * Constructs a DataConsumer parsing the messages on the given number of
+     * threads, the queue through which the DataSources hand over their
+     * messages and the executor running the DataSources.
+     * 
+     * Each parser thread gets its own Parser, the parsed messages are
+     * handled by the given Handler on a single thread in the order they
+     * were taken from the queue. With only one parser thread the messages
+     * are parsed and handled on the thread calling start().
+     * 
+     * @param parserFactory Creates the Parsers, one per parser thread.
+     * @param handler The Handler to be used for handling the parsed messages.
+     * @param parserThreads The number of parser threads, at least one.
+     * @param queue The queue to be used between the DataSources and the parser.
+     * @param executor The executor to run the DataSources.
+     */
+    public DataConsumer(Supplier<Parser> parserFactory, Handler handler, int parserThreads, BlockingQueue<IRCMessage> queue, DataSourceExecutor executor) {
+        this(DataConsumer.createParsers(parserFactory, parserThreads), handler, queue, executor);
+    }
+    
+    /**
+     * Constructs a DataConsumer with the given Parsers.
+     * 
+     * A single Parser parses and handles the messages itself, with multiple
+     * Parsers the messages are parsed in a ParsingPipeline.
+     * 
+     * @param parsers The Parsers to be used.
+     * @param handler The Handler to be registered with the Parsers, null if
+     * the Parser already has its Handler.
+     * @param queue The queue to be used between the DataSources and the parser.
+     * @param executor The executor to run the DataSources.
+     */
+    private DataConsumer(List<Parser> parsers, Handler handler, BlockingQueue<IRCMessage> queue, DataSourceExecutor executor) {
+        this.queue = queue;
+        if(parsers.size() == 1) {
+            this.parser = parsers.get(0);
+            this.parsers = null;
+            if(handler != null) {
+                this.parser.registerHandler(handler);
+            }
+        } else {
+            this.parser = null;
+            this.parsers = parsers;
+        }
+        this.handler = handler;
+        this.run = new AtomicBoolean(false);
+        this.done = new AtomicBoolean(false);
+        this.dataSources = new CopyOnWriteArrayList<>();
+        this.executor = executor;
+        this.handles = new IdentityHashMap<>();
+        this.sourcesStarted = false;
+    }
+    
+    /**
+     * Creates the given number of Parsers.
+     * 
+     * @param parserFactory Creates a single Parser.
+     * @param count The number of Parsers to be created, at least one.
+     * @return the created Parsers.
+     */
+    private static List<Parser> createParsers(Supplier<Parser> parserFactory, int count) {
+        if(count < 1) {
+            throw new IllegalArgumentException("At least one parser thread is needed, got "+count+".");
+        }
+        
+        List<Parser> parsers = new ArrayList<>(count);
+        for(int i = 0; i < count; ++i) {
+            parsers.add(parserFactory.get());
+        }
+        return parsers;
+    }
+    
+    /**
+     * Starts the DataSource on the executor unless it was started already.
+     * 
+     * Must be called while holding the lock on handles.
+     * 
+     * @param ds The DataSource to be started.
+     */
+    private void startDataSource(DataSource ds) {
+        if(!this.handles.containsKey(ds)) {
+            this.handles.put(ds, this.executor.execute(ds, this.queue));
+        }
+    }
+    
+    /**
+     * Adds a DataSource.
+     * 
+     * If the DataConsumer was started already the DataSource is started
+     * right away.
+     * 
+     * @param ds The DataSource to be added.
+     */
+    public void addDataSource(DataSource ds) {
+        synchronized(this.handles) {
+            this.dataSources.add(ds);
+            if(this.sourcesStarted) {
+                this.startDataSource(ds);
+            }
+        }
+        
+        this.setChanged();
+        this.notifyObservers();
+    }
+    
+    /**
+     * Removes the given DataSource from the consumer stopping it if it was
+     * started.
+     * 
+     * @param ds The DataSource to be removed.
+     */
+    public void removeDataSource(DataSource ds) {
+        DataSourceExecutor.Handle handle;
+        synchronized(this.handles) {
+            if(!this.dataSources.removeIf(other -> other == ds)) {
+                return;
+            }
+            handle = this.handles.remove(ds);
+        }
+        
+        if(handle != null) {
+            handle.stop();
+        } else {
+            ds.stop();
+        }
+        
+        this.setChanged();
+        this.notifyObservers();
+    }
+    
+    /**
+     * Returns an unmodifiable list of the contained DataSources.
+     * 
+     * @return an unmodifiable list of the contained DataSources.
+     */
+    public List<DataSource> getDataSources() {
+        return Collections.unmodifiableList(this.dataSources);
+    }
+    
+    /**
+     * Returns ture if the DataConsumer is still running.
+     * 
+     * @return ture if the DataConsumer is still running.
+     */
+    public boolean isRunning() {
+        return this.run.get();
+    }
+    
+    /**
+     * Starts the DataConsumer, starting any attached DataSources on the executor.
+     * 
+     * This will block until you call stop().
+     */
+    public void start() {
+        synchronized(this.handles) {
+            this.done.set(false);
+            this.run.set(true);
+            this.sourcesStarted = true;
+            
+            this.dataSources.forEach(this::startDataSource);
+        }
+        
+        this.setChanged();
+        this.notifyObservers();
+        
+        ParsingPipeline pipeline = null;
+        if(this.parsers != null) {
+            pipeline = new ParsingPipeline(this.parsers, this.handler);
+            pipeline.start();
+        }
+        
+        List<IRCMessage> batch = new ArrayList<>(DataConsumer.BATCH_SIZE);
+        IRCMessage msg;
+        while(this.run.get()) {
+            try {
+                msg = this.queue.poll(100, TimeUnit.MILLISECONDS);
+                if(msg == null) {
+                    continue;
+                }
+                
+                batch.add(msg);
+                this.queue.drainTo(batch, DataConsumer.BATCH_SIZE - 1);
+                if(pipeline == null) {
+                    batch.forEach(this::parseAndHandle);
+                } else {
+                    for(int i = 0; i < batch.size(); ++i) {
+                        pipeline.submit(batch.get(i));
+                    }
+                }
+                batch.clear();
+            } catch(Exception ex) {
+                Logger.getLogger(SingleChannelFileDataSource.class.getName())
+                        .log(Level.SEVERE, null, ex);
+            }
+        }
+        
+        if(pipeline != null) {
+            try {
+                pipeline.finish();
+            } catch(InterruptedException ex) {
+                Logger.getLogger(SingleChannelFileDataSource.class.getName())
+                        .log(Level.SEVERE, null, ex);
+            }
+        }
+        this.done.set(true);
+    }
+    
+    /**
+     * Parses and handles a single message.
+     * 
+     * @param msg The message to be parsed and handled.
+     */
+    private void parseAndHandle(IRCMessage msg) {
+        try {
+            ParseResult result = this.parser.parseAndHandle(msg);
+            // Logged for every message, so only when debugging.
+            Logger logger = Logger.getLogger(SingleChannelFileDataSource.class.getName());
+            if(logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Parsed message \"{0}\" as {1}.", new Object[] {msg.getContentSequence(), result});
+            }
+        } catch(Exception ex) {
+            Logger.getLogger(SingleChannelFileDataSource.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        } finally {
+            this.endOfMessage(msg);
+        }
+    }
+    
+    /**
+     * Tells the message that it was handled, through the Handler if there
+     * is one so it happens after the Handler is done with it.
+     * 
+     * @param msg The message that was handled.
+     */
+    private void endOfMessage(IRCMessage msg) {
+        if(this.handler == null) {
+            msg.handled();
+        } else {
+            this.handler.handleEndOfMessage(msg);
+        }
+    }
+    
+    /**
+     * Stops the DataConsumer and all attached DataSources.
+     */
+    public void stop() {
+        List<DataSourceExecutor.Handle> started;
+        synchronized(this.handles) {
+            started = new ArrayList<>(this.handles.values());
+            this.handles.clear();
+            this.sourcesStarted = false;
+        }
+        started.forEach(DataSourceExecutor.Handle::stop);
+        
+        this.run.set(false);
+        
+        while(!this.done.get()) {
+            try {
+                Thread t = Thread.currentThread();
+                synchronized(t) {
+                    t.wait(50);
+                }
+            } catch (InterruptedException ex) {
+                Logger.getLogger(SingleChannelFileDataSource.class.getName()).log(Level.SEVERE, null, ex);
+                break;
+            }
+        }
+        
+        this.setChanged();
+        this.notifyObservers();
+    }
+}
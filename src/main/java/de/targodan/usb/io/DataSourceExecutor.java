@@ -0,0 +1,314 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.IRCMessage;
+import java.lang.reflect.Method;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * DataSourceExecutor runs the DataSources of a DataConsumer.
+ * 
+ * There are three kinds of executors:
+ * "thread" runs every DataSource in its own platform thread.
+ * "virtual" runs every DataSource in its own virtual thread if the JDK
+ * supports them and falls back to platform threads otherwise.
+ * "scheduled" polls every PollableDataSource on a shared pool of threads and
+ * runs any other DataSource in its own platform thread.
+ * 
+ * @author Luca Corbatto
+ */
+public abstract class DataSourceExecutor {
+    /**
+     * Handle controls a DataSource that was started by a DataSourceExecutor.
+     */
+    public interface Handle {
+        /**
+         * Stops the DataSource and waits until it is no longer running.
+         */
+        void stop();
+    }
+    
+    /**
+     * Starts sending the messages of the given DataSource to the output.
+     * 
+     * @param ds The DataSource to be started.
+     * @param output The BlockingQueue that will be receiving the IRC messages.
+     * @return the Handle for stopping the DataSource.
+     */
+    public abstract Handle execute(DataSource ds, BlockingQueue<IRCMessage> output);
+    
+    /**
+     * Returns a DataSourceExecutor running every DataSource in its own
+     * platform thread.
+     * 
+     * @return a DataSourceExecutor running every DataSource in its own
+     * platform thread.
+     */
+    public static DataSourceExecutor threadPerSource() {
+        return new ThreadExecutor(false);
+    }
+    
+    /**
+     * Returns a DataSourceExecutor running every DataSource in its own
+     * virtual thread, or platform thread if virtual threads are not
+     * supported.
+     * 
+     * @return a DataSourceExecutor running every DataSource in its own
+     * virtual thread.
+     */
+    public static DataSourceExecutor virtualThreadPerSource() {
+        return new ThreadExecutor(true);
+    }
+    
+    /**
+     * Returns a DataSourceExecutor polling all PollableDataSources on the
+     * given number of threads.
+     * 
+     * @param threads The number of threads shared by the PollableDataSources.
+     * @return a DataSourceExecutor polling all PollableDataSources on the
+     * given number of threads.
+     */
+    public static DataSourceExecutor scheduled(int threads) {
+        return new ScheduledExecutor(threads);
+    }
+    
+    /**
+     * Returns the DataSourceExecutor of the given type.
+     * 
+     * @param type One of "thread", "virtual" or "scheduled".
+     * @param threads The number of threads used by the "scheduled" type.
+     * @return the DataSourceExecutor of the given type.
+     * @throws IllegalArgumentException If there is no executor of the given type.
+     */
+    public static DataSourceExecutor fromString(String type, int threads) {
+        switch(type) {
+            case "thread":
+                return DataSourceExecutor.threadPerSource();
+            case "virtual":
+                return DataSourceExecutor.virtualThreadPerSource();
+            case "scheduled":
+                return DataSourceExecutor.scheduled(threads);
+            default:
+                throw new IllegalArgumentException("Executor type \""+type+"\" is unknown.");
+        }
+    }
+    
+    /**
+     * ThreadExecutor runs every DataSource in a thread of its own.
+     */
+    private static class ThreadExecutor extends DataSourceExecutor {
+        private final Method ofVirtual;
+        private final Method name;
+        private final Method unstarted;
+        
+        /**
+         * Constructs a ThreadExecutor.
+         * 
+         * @param virtual Whether or not virtual threads should be used.
+         */
+        public ThreadExecutor(boolean virtual) {
+            Method ofVirtualMethod = null;
+            Method nameMethod = null;
+            Method unstartedMethod = null;
+            if(virtual) {
+                // Looked up reflectively as virtual threads need Java 21.
+                try {
+                    ofVirtualMethod = Thread.class.getMethod("ofVirtual");
+                    Class<?> builder = Class.forName("java.lang.Thread$Builder");
+                    nameMethod = builder.getMethod("name", String.class);
+                    unstartedMethod = builder.getMethod("unstarted", Runnable.class);
+                } catch (ReflectiveOperationException ex) {
+                    Logger.getLogger(DataSourceExecutor.class.getName())
+                            .log(Level.WARNING, "Virtual threads are not supported by this JDK, falling back to platform threads.");
+                    ofVirtualMethod = null;
+                }
+            }
+            this.ofVirtual = ofVirtualMethod;
+            this.name = nameMethod;
+            this.unstarted = unstartedMethod;
+        }
+        
+        /**
+         * Creates a new unstarted thread.
+         * 
+         * @param name The name of the thread.
+         * @param task The task of the thread.
+         * @return the new thread.
+         */
+        private Thread newThread(String name, Runnable task) {
+            if(this.ofVirtual != null) {
+                try {
+                    Object builder = this.ofVirtual.invoke(null);
+                    builder = this.name.invoke(builder, name);
+                    return (Thread)this.unstarted.invoke(builder, task);
+                } catch (ReflectiveOperationException ex) {
+                    Logger.getLogger(DataSourceExecutor.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            }
+            Thread t = new Thread(task);
+            t.setName(name);
+            return t;
+        }
+
+        @Override
+        public Handle execute(DataSource ds, BlockingQueue<IRCMessage> output) {
+            Thread t = this.newThread("DataSourceThread_"+ds.getShortName(), () -> {
+                ds.listen(output);
+            });
+            t.start();
+            
+            return () -> {
+                ds.stop();
+                try {
+                    t.join();
+                } catch (InterruptedException ex) {
+                    Logger.getLogger(DataSourceExecutor.class.getName()).log(Level.SEVERE, null, ex);
+                }
+            };
+        }
+    }
+    
+    /**
+     * ScheduledExecutor polls PollableDataSources on a shared pool of threads.
+     */
+    private static class ScheduledExecutor extends DataSourceExecutor {
+        private final ScheduledExecutorService scheduler;
+        private final DataSourceExecutor fallback;
+        
+        /**
+         * Constructs a ScheduledExecutor.
+         * 
+         * @param threads The number of threads shared by the PollableDataSources.
+         */
+        public ScheduledExecutor(int threads) {
+            AtomicInteger counter = new AtomicInteger();
+            this.scheduler = Executors.newScheduledThreadPool(threads, task -> {
+                Thread t = new Thread(task);
+                t.setName("DataSourcePoller_"+counter.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            this.fallback = new ThreadExecutor(false);
+        }
+
+        @Override
+        public Handle execute(DataSource ds, BlockingQueue<IRCMessage> output) {
+            if(!(ds instanceof PollableDataSource)) {
+                return this.fallback.execute(ds, output);
+            }
+            
+            PollingTask task = new PollingTask((PollableDataSource)ds, output, this.scheduler);
+            task.schedule(0);
+            return task;
+        }
+    }
+    
+    /**
+     * PollingTask polls a PollableDataSource, rescheduling itself after each
+     * poll.
+     */
+    private static class PollingTask implements Runnable, Handle {
+        private final PollableDataSource ds;
+        private final BlockingQueue<IRCMessage> output;
+        private final ScheduledExecutorService scheduler;
+        private final Object lock;
+        
+        private boolean stopped;
+        private long pause;
+        private ScheduledFuture<?> next;
+        
+        /**
+         * Constructs a PollingTask.
+         * 
+         * @param ds The DataSource to be polled.
+         * @param output The BlockingQueue that will be receiving the IRC messages.
+         * @param scheduler The scheduler to run the polls on.
+         */
+        public PollingTask(PollableDataSource ds, BlockingQueue<IRCMessage> output, ScheduledExecutorService scheduler) {
+            this.ds = ds;
+            this.output = output;
+            this.scheduler = scheduler;
+            this.lock = new Object();
+            this.stopped = false;
+            this.pause = ds.getMinPollInterval();
+        }
+        
+        /**
+         * Schedules the next poll unless the task was stopped.
+         * 
+         * @param delay The delay until the next poll in milliseconds.
+         */
+        public void schedule(long delay) {
+            synchronized(this.lock) {
+                if(!this.stopped) {
+                    this.next = this.scheduler.schedule(this, delay, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            synchronized(this.lock) {
+                if(this.stopped) {
+                    return;
+                }
+                
+                boolean read = false;
+                try {
+                    read = this.ds.poll(this.output);
+                } catch(Exception ex) {
+                    Logger.getLogger(DataSourceExecutor.class.getName()).log(Level.SEVERE, null, ex);
+                }
+                
+                if(read) {
+                    this.pause = this.ds.getMinPollInterval();
+                    this.schedule(0);
+                } else {
+                    this.schedule(this.pause);
+                    this.pause = Math.min(this.pause * 2, this.ds.getMaxPollInterval());
+                }
+            }
+        }
+
+        @Override
+        public void stop() {
+            // Waits for a running poll as it holds the lock.
+            synchronized(this.lock) {
+                this.stopped = true;
+                if(this.next != null) {
+                    this.next.cancel(false);
+                }
+            }
+            this.ds.stop();
+        }
+    }
+}
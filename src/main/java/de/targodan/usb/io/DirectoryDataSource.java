@@ -0,0 +1,509 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.IRCMessage;
+import de.targodan.usb.io.processing.Marshaller;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * DirectoryDataSource follows the logs of all channels in a log directory
+ * from a single thread.
+ * 
+ * The log files are expected either directly in the directory or in its
+ * subdirectories, e.g. "logs/FuelRats/#fuelrats.log" for HexChat. The channel
+ * of each message is derived from the name of the log file by the IRCClient
+ * and only channels matching the channel pattern are followed. Log files that
+ * are created while listening are picked up and read from their beginning.
+ * 
+ * A single WatchService wakes the DataSource up as soon as any of the
+ * directories is modified. If the file system does not report modifications
+ * all files are polled with an adaptive backoff starting at minReadPause and
+ * doubling up to readPause, just like the TailingFileDataSource does.
+ * 
+ * Instead of listening the DirectoryDataSource may also be polled.
+ * 
+ * @author Luca Corbatto
+ */
+public class DirectoryDataSource implements PollableDataSource {
+    private final File directory;
+    private final Pattern channelPattern;
+    private final IRCClient ircClient;
+    private final Charset charset;
+    private final Marshaller marshaller;
+    private final AtomicBoolean run;
+    private final AtomicBoolean done;
+    private final Map<Path, ChannelLog> logs;
+    private final Map<WatchKey, Path> watchedDirectories;
+    private final WatchService watchService;
+    
+    protected long minReadPause;
+    protected long readPause;
+    
+    /**
+     * Constructs a DirectoryDataSource that follows the log files of all
+     * matching channels starting at their current end.
+     * 
+     * @param directory The path of the log directory.
+     * @param channelPattern The pattern the channel names have to match.
+     * @param ircClient The IRCClient that wrote the log files.
+     * @throws IOException If a log file cannot be opened.
+     */
+    public DirectoryDataSource(String directory, Pattern channelPattern, IRCClient ircClient) throws IOException {
+        this(directory, channelPattern, ircClient, null);
+    }
+    
+    /**
+     * Constructs a DirectoryDataSource that follows the log files of all
+     * matching channels starting at the first line that was logged within
+     * the replayDuration.
+     * 
+     * @param directory The path of the log directory.
+     * @param channelPattern The pattern the channel names have to match.
+     * @param ircClient The IRCClient that wrote the log files.
+     * @param replayDuration How much of the logs should be replayed, null or zero to start at the end.
+     * @throws IOException If a log file cannot be opened.
+     */
+    public DirectoryDataSource(String directory, Pattern channelPattern, IRCClient ircClient, Duration replayDuration) throws IOException {
+        this.directory = new File(directory);
+        if(!this.directory.isDirectory() || !this.directory.canRead()) {
+            throw new IllegalArgumentException("Directory \""+directory+"\" is not readable.");
+        }
+        this.channelPattern = channelPattern;
+        this.ircClient = ircClient;
+        this.charset = ircClient.getDefaultLogFileEncoding();
+        this.marshaller = ircClient.getMarshaller();
+        this.run = new AtomicBoolean(true);
+        this.done = new AtomicBoolean(true);
+        this.logs = new LinkedHashMap<>();
+        this.watchedDirectories = new HashMap<>();
+        this.minReadPause = 5; // milliseconds
+        this.readPause = 200; // milliseconds
+        this.watchService = this.createWatchService();
+        
+        // Existing logs start at their end unless they should be replayed.
+        Duration existingReplayDuration = replayDuration == null ? Duration.ZERO : replayDuration;
+        Path root = this.directory.getAbsoluteFile().toPath();
+        this.addDirectory(root, existingReplayDuration);
+        for(Path dir : this.list(root)) {
+            if(Files.isDirectory(dir)) {
+                this.addDirectory(dir, existingReplayDuration);
+            }
+        }
+    }
+    
+    /**
+     * Creates the WatchService watching the directories.
+     * 
+     * @return the WatchService or null if the file system cannot be watched.
+     */
+    private WatchService createWatchService() {
+        try {
+            return FileSystems.getDefault().newWatchService();
+        } catch(IOException | UnsupportedOperationException ex) {
+            Logger.getLogger(DirectoryDataSource.class.getName())
+                    .log(Level.WARNING, "Could not watch \""+this.directory+"\", falling back to polling.", ex);
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the entries of the given directory.
+     * 
+     * @param dir The directory to be listed.
+     * @return the entries of the given directory.
+     */
+    private List<Path> list(Path dir) {
+        List<Path> entries = new ArrayList<>();
+        try(Stream<Path> stream = Files.list(dir)) {
+            stream.forEach(entries::add);
+        } catch (IOException ex) {
+            Logger.getLogger(DirectoryDataSource.class.getName())
+                    .log(Level.WARNING, null, ex);
+        }
+        return entries;
+    }
+    
+    /**
+     * Watches the given directory and opens all matching log files in it.
+     * 
+     * @param dir The directory to be added.
+     * @param replayDuration How much of the logs should be replayed, null to
+     * read the logs from their beginning.
+     */
+    private void addDirectory(Path dir, Duration replayDuration) {
+        if(this.watchService != null && !this.watchedDirectories.containsValue(dir)) {
+            try {
+                WatchKey key = dir.register(this.watchService, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+                this.watchedDirectories.put(key, dir);
+            } catch (IOException ex) {
+                Logger.getLogger(DirectoryDataSource.class.getName())
+                        .log(Level.WARNING, "Could not watch \""+dir+"\", falling back to polling.", ex);
+            }
+        }
+        
+        for(Path file : this.list(dir)) {
+            this.addLogFile(file, replayDuration);
+        }
+    }
+    
+    /**
+     * Opens the given log file if it belongs to a matching channel and is not
+     * opened yet.
+     * 
+     * @param file The log file to be added.
+     * @param replayDuration How much of the log should be replayed, null to
+     * read the log from its beginning.
+     * @return the opened log or null if the file was not opened.
+     */
+    private ChannelLog addLogFile(Path file, Duration replayDuration) {
+        if(this.logs.containsKey(file) || !Files.isRegularFile(file)) {
+            return null;
+        }
+        String channel = this.ircClient.getChannelFromLogFileName(file.getFileName().toString());
+        if(channel == null || !this.channelPattern.matcher(channel).matches()) {
+            return null;
+        }
+        
+        try {
+            FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+            if(replayDuration != null) {
+                LogFileSeeker.seekToStart(fileChannel, this.charset, this.marshaller, replayDuration);
+            }
+            ChannelLog log = new ChannelLog(channel, new LogFileTail(file, this.charset, fileChannel));
+            this.logs.put(file, log);
+            Logger.getLogger(DirectoryDataSource.class.getName()).log(Level.INFO, "Following channel {0} in \"{1}\".", new Object[]{channel, file});
+            return log;
+        } catch (IOException ex) {
+            Logger.getLogger(DirectoryDataSource.class.getName())
+                    .log(Level.SEVERE, "Could not open \""+file+"\".", ex);
+        }
+        return null;
+    }
+    
+    /**
+     * Returns the names of the channels that are currently followed.
+     * 
+     * @return the names of the channels that are currently followed.
+     */
+    public List<String> getChannels() {
+        synchronized(this.logs) {
+            List<String> channels = new ArrayList<>();
+            this.logs.values().forEach(log -> channels.add(log.channel));
+            return channels;
+        }
+    }
+
+    @Override
+    public void listen(BlockingQueue<IRCMessage> output) {
+        this.done.set(false);
+        this.run.set(true);
+        
+        this.readAll(output);
+        
+        long pause = this.minReadPause;
+        while(this.run.get()) {
+            WatchKey key = this.waitForModification(pause);
+            if(key != null) {
+                this.handleEvents(key, output);
+                pause = this.minReadPause;
+                continue;
+            }
+            
+            if(this.readAll(output) > 0) {
+                pause = this.minReadPause;
+            } else {
+                pause = Math.min(pause * 2, this.readPause);
+            }
+        }
+        this.done.set(true);
+    }
+    
+    @Override
+    public boolean poll(BlockingQueue<IRCMessage> output) {
+        boolean read = false;
+        if(this.watchService != null) {
+            try {
+                WatchKey key;
+                while((key = this.watchService.poll()) != null) {
+                    this.handleEvents(key, output);
+                    read = true;
+                }
+            } catch(ClosedWatchServiceException ex) {
+                return false;
+            }
+        }
+        return this.readAll(output) > 0 || read;
+    }
+
+    @Override
+    public long getMinPollInterval() {
+        return this.minReadPause;
+    }
+
+    @Override
+    public long getMaxPollInterval() {
+        return this.readPause;
+    }
+    
+    /**
+     * Reads everything available from all logs, reopening rotated logs and
+     * picking up new log files.
+     * 
+     * This is the fallback for file systems that do not report any or all
+     * modifications.
+     * 
+     * @param output The BlockingQueue that will be receiving the IRC messages.
+     * @return the number of lines read.
+     */
+    private int readAll(BlockingQueue<IRCMessage> output) {
+        if(this.watchService == null) {
+            this.rescan();
+        }
+        
+        int total = 0;
+        for(ChannelLog log : this.logs.values()) {
+            total += this.read(log, output);
+        }
+        return total;
+    }
+    
+    /**
+     * Opens any matching log files that are not opened yet from their beginning.
+     */
+    private void rescan() {
+        synchronized(this.logs) {
+            Path root = this.directory.getAbsoluteFile().toPath();
+            for(Path entry : this.list(root)) {
+                if(Files.isDirectory(entry)) {
+                    this.addDirectory(entry, null);
+                } else {
+                    this.addLogFile(entry, null);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Reads everything available from the given log, reopening it if it was
+     * rotated.
+     * 
+     * @param log The log to be read.
+     * @param output The BlockingQueue that will be receiving the IRC messages.
+     * @return the number of lines read.
+     */
+    private int read(ChannelLog log, BlockingQueue<IRCMessage> output) {
+        Consumer<String> lineHandler = line -> this.handleLine(log.channel, line, output);
+        int n = log.tail.readAvailable(this.run, lineHandler);
+        if(n == 0 && log.tail.reopenIfRotated(lineHandler)) {
+            n = log.tail.readAvailable(this.run, lineHandler);
+        }
+        return n;
+    }
+    
+    /**
+     * Handles the events of the given key, reading the modified logs and
+     * opening created ones.
+     * 
+     * @param key The signalled WatchKey.
+     * @param output The BlockingQueue that will be receiving the IRC messages.
+     */
+    private void handleEvents(WatchKey key, BlockingQueue<IRCMessage> output) {
+        Path dir = this.watchedDirectories.get(key);
+        List<WatchEvent<?>> events = key.pollEvents();
+        if(!key.reset()) {
+            this.watchedDirectories.remove(key);
+        }
+        if(dir == null) {
+            return;
+        }
+        
+        for(WatchEvent<?> event : events) {
+            if(event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                this.rescan();
+                continue;
+            }
+            
+            Path path = dir.resolve((Path)event.context());
+            ChannelLog log = this.logs.get(path);
+            if(log != null) {
+                this.read(log, output);
+                continue;
+            }
+            
+            if(event.kind() == StandardWatchEventKinds.ENTRY_CREATE || event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                synchronized(this.logs) {
+                    if(Files.isDirectory(path) && dir.equals(this.directory.getAbsoluteFile().toPath())) {
+                        this.addDirectory(path, null);
+                        continue;
+                    }
+                    log = this.addLogFile(path, null);
+                }
+                if(log != null) {
+                    this.read(log, output);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Waits until one of the directories was modified or the timeout has
+     * passed.
+     * 
+     * @param timeout The maximum time to wait in milliseconds.
+     * @return the signalled WatchKey or null if the timeout has passed.
+     */
+    private WatchKey waitForModification(long timeout) {
+        try {
+            if(this.watchService == null) {
+                Thread.sleep(timeout);
+                return null;
+            }
+            return this.watchService.poll(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Logger.getLogger(DirectoryDataSource.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        } catch (ClosedWatchServiceException ex) {
+            // Stop was called, listen will return shortly.
+        }
+        return null;
+    }
+    
+    /**
+     * Marshals the given line and sends the resulting IRCMessage to the output
+     * queue.
+     * 
+     * Lines that cannot be marshalled are dropped.
+     * 
+     * @param channel The channel the line was logged in.
+     * @param line The line to be handled.
+     * @param output The BlockingQueue that will be receiving the IRC message.
+     */
+    private void handleLine(String channel, String line, BlockingQueue<IRCMessage> output) {
+        IRCMessage msg;
+        try {
+            msg = this.marshaller.marshall(line);
+        } catch(Exception ex) {
+            Logger.getLogger(DirectoryDataSource.class.getName())
+                    .log(Level.SEVERE, null, ex);
+            return;
+        }
+        if(msg == null) {
+            return;
+        }
+        msg = msg.withChannel(channel);
+        
+        try {
+            while(!output.offer(msg, this.readPause/2, TimeUnit.MILLISECONDS)) {
+                if(!this.run.get()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Logger.getLogger(DirectoryDataSource.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+
+    @Override
+    public void stop() {
+        this.run.set(false);
+        
+        if(this.watchService != null) {
+            try {
+                this.watchService.close();
+            } catch (IOException ex) {
+                Logger.getLogger(DirectoryDataSource.class.getName())
+                        .log(Level.SEVERE, null, ex);
+            }
+        }
+        
+        while(!this.done.get()) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                Logger.getLogger(DirectoryDataSource.class.getName()).log(Level.SEVERE, null, ex);
+                break;
+            }
+        }
+        
+        synchronized(this.logs) {
+            this.logs.values().forEach(log -> log.tail.close());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "dir://"+this.directory.getPath();
+    }
+
+    @Override
+    public String getShortName() {
+        return "dir://..."+File.separator+this.directory.getName();
+    }
+    
+    /**
+     * ChannelLog is the log file of a single channel.
+     */
+    private static class ChannelLog {
+        private final String channel;
+        private final LogFileTail tail;
+        
+        /**
+         * Constructs a ChannelLog.
+         * 
+         * @param channel The name of the channel.
+         * @param tail The opened log file.
+         */
+        public ChannelLog(String channel, LogFileTail tail) {
+            this.channel = channel;
+            this.tail = tail;
+        }
+    }
+}
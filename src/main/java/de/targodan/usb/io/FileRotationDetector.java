@@ -0,0 +1,127 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * FileRotationDetector detects when a log file that is being read was rotated
+ * or truncated.
+ * 
+ * A rotation is detected by the file key (i.e. the inode on unix systems) of
+ * the path changing. On file systems without file keys the creation time is
+ * used instead. A truncation is detected by the size of the file dropping
+ * below the position that was already read.
+ *
+ * @author Luca Corbatto
+ */
+public class FileRotationDetector {
+    private final Path path;
+    private FileChannel channel;
+    private Object identity;
+    
+    /**
+     * Constructs a FileRotationDetector for the given path and the channel
+     * that is reading it.
+     * 
+     * @param path The path of the log file.
+     * @param channel The channel that is reading the log file.
+     * @throws IOException If the attributes of the file cannot be read.
+     */
+    public FileRotationDetector(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.identity = this.readIdentity(Files.readAttributes(path, BasicFileAttributes.class));
+    }
+    
+    /**
+     * Returns an Object identifying the file with the given attributes.
+     * 
+     * @param attrs The attributes of the file.
+     * @return an Object identifying the file.
+     */
+    private Object readIdentity(BasicFileAttributes attrs) {
+        if(attrs.fileKey() != null) {
+            return attrs.fileKey();
+        }
+        return attrs.creationTime();
+    }
+    
+    /**
+     * Returns true if the file at the path was rotated or truncated since it
+     * was opened.
+     * 
+     * While the path does not exist (e.g. in the middle of a rotation) false
+     * is returned.
+     * 
+     * @return true if the file at the path was rotated or truncated.
+     * @throws IOException If the file cannot be accessed.
+     */
+    public boolean hasChanged() throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(this.path, BasicFileAttributes.class);
+        } catch(NoSuchFileException ex) {
+            return false;
+        }
+        
+        if(!this.readIdentity(attrs).equals(this.identity)) {
+            Logger.getLogger(FileRotationDetector.class.getName())
+                    .log(Level.INFO, "\"{0}\" was rotated.", this.path);
+            return true;
+        }
+        if(attrs.size() < this.channel.position()) {
+            Logger.getLogger(FileRotationDetector.class.getName())
+                    .log(Level.INFO, "\"{0}\" was truncated.", this.path);
+            return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Closes the current channel and opens the file at the path again,
+     * positioned at its beginning.
+     * 
+     * Everything that is left in the current channel should be read before
+     * calling reopen.
+     * 
+     * @return the new channel.
+     * @throws IOException If the file cannot be opened.
+     */
+    public FileChannel reopen() throws IOException {
+        this.channel.close();
+        
+        this.channel = FileChannel.open(this.path, StandardOpenOption.READ);
+        this.identity = this.readIdentity(Files.readAttributes(this.path, BasicFileAttributes.class));
+        return this.channel;
+    }
+}
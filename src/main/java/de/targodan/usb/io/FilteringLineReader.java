@@ -0,0 +1,253 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * FilteringLineReader reads the lines of a log file from a FileChannel.
+ * 
+ * IRC formatting characters are all single ASCII bytes, so they are filtered
+ * out of the raw bytes before anything is decoded. The bytes are split into
+ * lines and only complete lines are decoded. Lines of plain ASCII are decoded
+ * without going through the charset's decoder.
+ * 
+ * The charset of the log must be ASCII compatible, that is every byte below
+ * 0x80 has to represent the ASCII char of the same value. This is true for
+ * UTF-8 and the single byte charsets like ISO-8859-1.
+ * 
+ * @author Luca Corbatto
+ */
+class FilteringLineReader {
+    private final Charset charset;
+    private final ByteBuffer buffer;
+    
+    private FileChannel channel;
+    private IRCFormatFilteringReader filter;
+    private byte[] partialLine;
+    private int partialLineLength;
+    
+    /**
+     * Constructs a FilteringLineReader reading from the current position of
+     * the channel.
+     * 
+     * @param channel The channel to read from.
+     * @param charset The charset of the file.
+     * @throws IllegalArgumentException If the charset is not ASCII compatible.
+     */
+    public FilteringLineReader(FileChannel channel, Charset charset) {
+        FilteringLineReader.requireAsciiCompatible(charset);
+        
+        this.charset = charset;
+        this.buffer = ByteBuffer.allocate(8192);
+        this.partialLine = new byte[256];
+        this.reset(channel);
+    }
+    
+    /**
+     * Returns true if every byte below 0x80 represents the ASCII char of the
+     * same value in the given charset.
+     * 
+     * @param charset The charset to be checked.
+     * @return true if the charset is ASCII compatible.
+     */
+    static boolean isAsciiCompatible(Charset charset) {
+        if(charset.equals(StandardCharsets.UTF_8)) {
+            return true;
+        }
+        if(!charset.canEncode() || charset.newEncoder().maxBytesPerChar() != 1) {
+            return false;
+        }
+        
+        byte[] ascii = new byte[0x80];
+        for(int i = 0; i < ascii.length; ++i) {
+            ascii[i] = (byte)i;
+        }
+        return new String(ascii, charset).equals(new String(ascii, StandardCharsets.US_ASCII));
+    }
+    
+    /**
+     * Throws an IllegalArgumentException if the given charset is not ASCII
+     * compatible.
+     * 
+     * @param charset The charset to be checked.
+     */
+    static void requireAsciiCompatible(Charset charset) {
+        if(!FilteringLineReader.isAsciiCompatible(charset)) {
+            throw new IllegalArgumentException("Charset \""+charset.name()+"\" is not ASCII compatible.");
+        }
+    }
+    
+    /**
+     * Continues reading from the given channel, discarding any buffered
+     * bytes.
+     * 
+     * @param channel The channel to read from.
+     */
+    public final void reset(FileChannel channel) {
+        this.channel = channel;
+        this.filter = new IRCFormatFilteringReader(new StringReader(""));
+        this.buffer.clear();
+        this.buffer.flip();
+        this.partialLineLength = 0;
+    }
+    
+    /**
+     * Returns the next complete line or null if no complete line is available.
+     * 
+     * Empty lines are skipped and the line break is not part of the line. A
+     * line that is still missing its line break is kept until the line break
+     * was read.
+     * 
+     * @return the next complete line or null if no complete line is available.
+     * @throws IOException If reading from the channel fails.
+     */
+    public String readLine() throws IOException {
+        do {
+            while(this.buffer.hasRemaining()) {
+                String line = this.splitLine();
+                if(line != null && !line.isEmpty()) {
+                    return line;
+                }
+            }
+        } while(this.fillBuffer());
+        return null;
+    }
+    
+    /**
+     * Returns the line that is still missing its line break and forgets it.
+     * 
+     * @return the unterminated line, empty if there is none.
+     */
+    public String takePartialLine() {
+        this.appendToPartialLine(this.buffer.array(), this.buffer.position(), this.buffer.limit());
+        this.buffer.position(this.buffer.limit());
+        
+        String line = this.decode(this.partialLine, 0, this.partialLineLength);
+        this.partialLineLength = 0;
+        return line;
+    }
+    
+    /**
+     * Reads the next bytes from the channel and filters them.
+     * 
+     * @return false if nothing could be read.
+     * @throws IOException If reading from the channel fails.
+     */
+    private boolean fillBuffer() throws IOException {
+        this.buffer.clear();
+        int n = this.channel.read(this.buffer);
+        this.buffer.flip();
+        if(n <= 0) {
+            return false;
+        }
+        
+        this.buffer.limit(this.filter.filter(this.buffer.array(), 0, n));
+        return true;
+    }
+    
+    /**
+     * Returns the line ending in the buffer or null if the buffer does not
+     * contain a line break, in which case the rest of the buffer is kept as
+     * the partial line.
+     * 
+     * @return the line ending in the buffer or null.
+     */
+    private String splitLine() {
+        byte[] bytes = this.buffer.array();
+        int start = this.buffer.position();
+        int end = this.buffer.limit();
+        for(int i = start; i < end; ++i) {
+            if(bytes[i] != '\n') {
+                continue;
+            }
+            
+            this.buffer.position(i + 1);
+            if(this.partialLineLength == 0) {
+                return this.decode(bytes, start, i);
+            }
+            this.appendToPartialLine(bytes, start, i);
+            String line = this.decode(this.partialLine, 0, this.partialLineLength);
+            this.partialLineLength = 0;
+            return line;
+        }
+        
+        this.appendToPartialLine(bytes, start, end);
+        this.buffer.position(end);
+        return null;
+    }
+    
+    /**
+     * Appends the given bytes to the partial line.
+     * 
+     * @param bytes The bytes to be appended.
+     * @param start The index of the first byte.
+     * @param end The index after the last byte.
+     */
+    private void appendToPartialLine(byte[] bytes, int start, int end) {
+        int length = end - start;
+        if(this.partialLineLength + length > this.partialLine.length) {
+            this.partialLine = Arrays.copyOf(this.partialLine, Math.max(this.partialLine.length * 2, this.partialLineLength + length));
+        }
+        System.arraycopy(bytes, start, this.partialLine, this.partialLineLength, length);
+        this.partialLineLength += length;
+    }
+    
+    /**
+     * Decodes the given filtered bytes of a line, dropping a trailing
+     * carriage return.
+     * 
+     * @param bytes The bytes of the line.
+     * @param start The index of the first byte.
+     * @param end The index after the last byte.
+     * @return the decoded line.
+     */
+    private String decode(byte[] bytes, int start, int end) {
+        if(end > start && bytes[end-1] == '\r') {
+            --end;
+        }
+        for(int i = start; i < end; ++i) {
+            if(bytes[i] < 0) {
+                return IRCFormatFilteringReader.removeUnprintable(new String(bytes, start, end - start, this.charset));
+            }
+        }
+        // Plain ASCII is the same in every ASCII compatible charset.
+        return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+    
+    /**
+     * Closes the channel.
+     * 
+     * @throws IOException If closing the channel fails.
+     */
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
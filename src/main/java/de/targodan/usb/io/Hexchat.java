@@ -27,7 +27,6 @@ import de.targodan.usb.io.processing.HexchatMarshaller;
 import de.targodan.usb.io.processing.Marshaller;
 import java.io.File;
 import java.nio.charset.Charset;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
@@ -82,10 +81,7 @@ public class Hexchat implements IRCClient {
         Pattern fuelratsFolderPattern = Pattern.compile(".*fuelrats.*", Pattern.CASE_INSENSITIVE);
         Pattern fuelratsFilePattern = Pattern.compile(".*fuelrats\\.log", Pattern.CASE_INSENSITIVE);
         
-        String basePath = this.getBasePath();
-        
-        Path logsPath = Paths.get(basePath, "logs");
-        File logsFolder = logsPath.toFile();
+        File logsFolder = new File(this.getLogDirectoryPath());
         
         File fuelratsFolder = Arrays.asList(logsFolder.listFiles()).stream()
                 .filter(f -> f.isDirectory())
@@ -108,6 +104,20 @@ public class Hexchat implements IRCClient {
         return fuelratsFile.getAbsolutePath();
     }
 
+    @Override
+    public String getLogDirectoryPath() {
+        return Paths.get(this.getBasePath(), "logs").toString();
+    }
+    
+    @Override
+    public String getChannelFromLogFileName(String fileName) {
+        // HexChat logs to "<network>/<channel>.log" by default.
+        if(!fileName.toLowerCase().endsWith(".log") || fileName.length() == 4) {
+            return null;
+        }
+        return fileName.substring(0, fileName.length() - 4);
+    }
+
     @Override
     public Marshaller getMarshaller() {
         return new HexchatMarshaller();
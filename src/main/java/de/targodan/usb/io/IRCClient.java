@@ -50,6 +50,23 @@ public interface IRCClient {
      */
     String getFuelratsLogfilePath();
     
+    /**
+     * GetLogDirectoryPath should return the path of the directory containing
+     * the log files of all channels.
+     * 
+     * @return 
+     */
+    String getLogDirectoryPath();
+    
+    /**
+     * GetChannelFromLogFileName should return the name of the channel that is
+     * logged to a file of the given name.
+     * 
+     * @param fileName The name of the log file without any directories.
+     * @return the name of the channel or null if the file is not a log file.
+     */
+    String getChannelFromLogFileName(String fileName);
+    
     /**
      * GetMarshaller should return a Marshaller that is able to marshal the log
      * files of this client.
@@ -0,0 +1,343 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+
+/**
+ * IRCConnection is a non-blocking, line based connection to an IRC server
+ * using plain TCP or TLS.
+ * 
+ * All methods must be called from the thread selecting on the Selector the
+ * connection was registered with.
+ * 
+ * @author Luca Corbatto
+ */
+class IRCConnection {
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final byte[] LINE_END = new byte[] {'\r', '\n'};
+    
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final SSLEngine engine;
+    
+    private ByteBuffer netIn;
+    private ByteBuffer netOut;
+    private ByteBuffer appIn;
+    private ByteBuffer appOut;
+    
+    /**
+     * Starts connecting to the given server.
+     * 
+     * @param selector The Selector to register the connection with.
+     * @param host The host name of the server.
+     * @param port The port of the server.
+     * @param sslContext The SSLContext to use for TLS, null for plain TCP.
+     * @throws IOException If connecting fails.
+     */
+    public IRCConnection(Selector selector, String host, int port, SSLContext sslContext) throws IOException {
+        if(sslContext != null) {
+            this.engine = sslContext.createSSLEngine(host, port);
+            this.engine.setUseClientMode(true);
+            SSLParameters parameters = this.engine.getSSLParameters();
+            parameters.setEndpointIdentificationAlgorithm("HTTPS");
+            this.engine.setSSLParameters(parameters);
+            
+            int packetSize = this.engine.getSession().getPacketBufferSize();
+            this.netIn = ByteBuffer.allocate(Math.max(packetSize, BUFFER_SIZE));
+            this.netOut = ByteBuffer.allocate(Math.max(packetSize, BUFFER_SIZE));
+            this.appIn = ByteBuffer.allocate(Math.max(this.engine.getSession().getApplicationBufferSize(), BUFFER_SIZE));
+        } else {
+            this.engine = null;
+            // Without TLS the application buffers are used directly.
+            this.appIn = ByteBuffer.allocate(BUFFER_SIZE);
+        }
+        this.appOut = ByteBuffer.allocate(BUFFER_SIZE);
+        
+        this.channel = SocketChannel.open();
+        try {
+            this.channel.configureBlocking(false);
+            this.channel.connect(new InetSocketAddress(host, port));
+            this.key = this.channel.register(selector, SelectionKey.OP_CONNECT, this);
+        } catch(IOException ex) {
+            this.channel.close();
+            throw ex;
+        }
+    }
+    
+    /**
+     * Finishes connecting once the SelectionKey is connectable.
+     * 
+     * @return true if the connection is established.
+     * @throws IOException If connecting failed.
+     */
+    public boolean finishConnect() throws IOException {
+        if(!this.channel.finishConnect()) {
+            return false;
+        }
+        this.flush();
+        return true;
+    }
+    
+    /**
+     * Sends the given line, appending the line break.
+     * 
+     * The line is buffered until the connection is established.
+     * 
+     * @param line The line to be sent.
+     * @throws IOException If writing fails.
+     */
+    public void send(String line) throws IOException {
+        byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+        this.appOut = IRCConnection.ensureRemaining(this.appOut, bytes.length + LINE_END.length);
+        this.appOut.put(bytes).put(LINE_END);
+        if(this.channel.isConnected()) {
+            this.flush();
+        }
+    }
+    
+    /**
+     * Writes as much of the buffered output as possible.
+     * 
+     * @throws IOException If writing fails.
+     */
+    public void flush() throws IOException {
+        ByteBuffer out;
+        if(this.engine != null) {
+            this.wrap();
+            out = this.netOut;
+        } else {
+            out = this.appOut;
+        }
+        
+        out.flip();
+        this.channel.write(out);
+        out.compact();
+        
+        this.key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+    
+    /**
+     * Encrypts the buffered output and any handshake messages into netOut.
+     * 
+     * @throws SSLException If the TLS session fails.
+     */
+    private void wrap() throws SSLException {
+        while(true) {
+            this.appOut.flip();
+            SSLEngineResult result;
+            try {
+                result = this.engine.wrap(this.appOut, this.netOut);
+            } finally {
+                this.appOut.compact();
+            }
+            this.runDelegatedTasks();
+            
+            switch(result.getStatus()) {
+                case BUFFER_OVERFLOW:
+                    this.netOut = IRCConnection.ensureRemaining(this.netOut, this.engine.getSession().getPacketBufferSize());
+                    continue;
+                case CLOSED:
+                    throw new SSLException("The TLS session was closed.");
+                default:
+                    break;
+            }
+            
+            boolean needsWrap = this.engine.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP;
+            boolean canSendData = this.appOut.position() > 0 && !this.isHandshaking();
+            if(result.bytesProduced() == 0 && result.bytesConsumed() == 0 && !needsWrap) {
+                return;
+            }
+            if(!needsWrap && !canSendData) {
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Returns true if the TLS handshake is still in progress.
+     * 
+     * @return true if the TLS handshake is still in progress.
+     */
+    private boolean isHandshaking() {
+        SSLEngineResult.HandshakeStatus status = this.engine.getHandshakeStatus();
+        return status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+                && status != SSLEngineResult.HandshakeStatus.FINISHED;
+    }
+    
+    /**
+     * Runs the tasks the SSLEngine delegated.
+     */
+    private void runDelegatedTasks() {
+        Runnable task;
+        while((task = this.engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+    
+    /**
+     * Reads everything available, handing every complete line to the
+     * lineHandler.
+     * 
+     * @param lineHandler The Consumer to receive the lines without line break.
+     * @throws IOException If reading fails or the server closed the connection.
+     */
+    public void read(Consumer<String> lineHandler) throws IOException {
+        if(this.engine != null) {
+            if(this.channel.read(this.netIn) < 0) {
+                throw new EOFException("The server closed the connection.");
+            }
+            boolean progress;
+            do {
+                progress = this.unwrap();
+                // Handshake messages or buffered lines may be ready to be sent
+                // now, which in turn may allow unwrapping the rest of netIn.
+                this.flush();
+            } while(progress && this.netIn.position() > 0);
+        } else {
+            this.appIn = IRCConnection.ensureRemaining(this.appIn, 1);
+            if(this.channel.read(this.appIn) < 0) {
+                throw new EOFException("The server closed the connection.");
+            }
+        }
+        
+        this.splitLines(lineHandler);
+    }
+    
+    /**
+     * Decrypts netIn into appIn.
+     * 
+     * @return true if anything was consumed from netIn.
+     * @throws SSLException If the TLS session fails.
+     */
+    private boolean unwrap() throws SSLException {
+        boolean progress = false;
+        this.netIn.flip();
+        try {
+            while(this.netIn.hasRemaining()) {
+                SSLEngineResult result = this.engine.unwrap(this.netIn, this.appIn);
+                this.runDelegatedTasks();
+                progress |= result.bytesConsumed() > 0;
+                
+                switch(result.getStatus()) {
+                    case BUFFER_OVERFLOW:
+                        this.appIn = IRCConnection.ensureRemaining(this.appIn, this.engine.getSession().getApplicationBufferSize());
+                        continue;
+                    case BUFFER_UNDERFLOW:
+                        // Wait for the rest of the record.
+                        return progress;
+                    case CLOSED:
+                        throw new SSLException("The TLS session was closed.");
+                    default:
+                        break;
+                }
+                
+                if(result.bytesConsumed() == 0 && result.bytesProduced() == 0
+                        && this.engine.getHandshakeStatus() != SSLEngineResult.HandshakeStatus.NEED_UNWRAP) {
+                    return progress;
+                }
+            }
+            return progress;
+        } finally {
+            this.netIn.compact();
+            if(!this.netIn.hasRemaining()) {
+                this.netIn = IRCConnection.ensureRemaining(this.netIn, this.engine.getSession().getPacketBufferSize());
+            }
+        }
+    }
+    
+    /**
+     * Hands every complete line in appIn to the lineHandler and keeps the
+     * incomplete rest.
+     * 
+     * @param lineHandler The Consumer to receive the lines without line break.
+     */
+    private void splitLines(Consumer<String> lineHandler) {
+        byte[] data = this.appIn.array();
+        int end = this.appIn.position();
+        int start = 0;
+        for(int i = 0; i < end; ++i) {
+            if(data[i] != '\n') {
+                continue;
+            }
+            int length = i - start;
+            if(length > 0 && data[i-1] == '\r') {
+                --length;
+            }
+            if(length > 0) {
+                lineHandler.accept(new String(data, start, length, StandardCharsets.UTF_8));
+            }
+            start = i + 1;
+        }
+        
+        this.appIn.flip();
+        this.appIn.position(start);
+        this.appIn.compact();
+    }
+    
+    /**
+     * Returns a buffer with at least the given number of bytes remaining,
+     * copying the content of the given buffer if it needs to be enlarged.
+     * 
+     * @param buffer The buffer in write mode.
+     * @param remaining The number of bytes needed.
+     * @return the given buffer or an enlarged copy.
+     */
+    private static ByteBuffer ensureRemaining(ByteBuffer buffer, int remaining) {
+        if(buffer.remaining() >= remaining) {
+            return buffer;
+        }
+        ByteBuffer enlarged = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + remaining));
+        buffer.flip();
+        enlarged.put(buffer);
+        return enlarged;
+    }
+    
+    /**
+     * Closes the connection.
+     */
+    public void close() {
+        try {
+            if(this.engine != null) {
+                this.engine.closeOutbound();
+            }
+            this.channel.close();
+        } catch (IOException ex) {
+            // Nothing left to do with a broken connection.
+        }
+    }
+}
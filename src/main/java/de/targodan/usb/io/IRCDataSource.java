@@ -0,0 +1,414 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.IRCMessage;
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.net.ssl.SSLContext;
+
+/**
+ * IRCDataSource connects to an IRC server directly and reads the messages of
+ * the joined channels.
+ * 
+ * The connection is non-blocking and optionally uses TLS. The DataSource
+ * never sends messages to a channel, it only registers, joins the channels
+ * and answers PINGs. Actions are marshalled the way HexChat logs them, with
+ * "*" as the sender. If the connection is lost it is reestablished after a
+ * pause that starts at minReconnectPause and doubles up to
+ * maxReconnectPause.
+ * 
+ * @author Luca Corbatto
+ */
+public class IRCDataSource implements DataSource {
+    public static final String TYPE = "irc";
+    
+    private static final String ACTION_PREFIX = "\u0001ACTION ";
+    
+    private final String host;
+    private final int port;
+    private final SSLContext sslContext;
+    private final String nick;
+    private final Set<String> channels;
+    private final AtomicBoolean run;
+    private final AtomicBoolean done;
+    private final Object pauseLock;
+    private volatile Selector selector;
+    
+    private IRCConnection connection;
+    private String currentNick;
+    private boolean registered;
+    private long lastReceived;
+    private boolean pingSent;
+    
+    protected long minReconnectPause;
+    protected long maxReconnectPause;
+    protected long pingTimeout;
+    protected long offerTimeout;
+    
+    /**
+     * Constructs an IRCDataSource.
+     * 
+     * @param host The host name of the IRC server.
+     * @param port The port of the IRC server.
+     * @param tls Whether or not to connect using TLS.
+     * @param nick The nick name to use.
+     * @param channels The channels to join.
+     */
+    public IRCDataSource(String host, int port, boolean tls, String nick, List<String> channels) {
+        this(host, port, tls ? IRCDataSource.getDefaultSSLContext() : null, nick, channels);
+    }
+    
+    /**
+     * Constructs an IRCDataSource using the given SSLContext for TLS.
+     * 
+     * @param host The host name of the IRC server.
+     * @param port The port of the IRC server.
+     * @param sslContext The SSLContext to use for TLS, null to connect without TLS.
+     * @param nick The nick name to use.
+     * @param channels The channels to join.
+     */
+    public IRCDataSource(String host, int port, SSLContext sslContext, String nick, List<String> channels) {
+        if(channels.isEmpty()) {
+            throw new IllegalArgumentException("At least one channel is needed.");
+        }
+        this.host = host;
+        this.port = port;
+        this.sslContext = sslContext;
+        this.nick = nick;
+        this.channels = new LinkedHashSet<>();
+        channels.forEach(channel -> this.channels.add(channel.toLowerCase(Locale.ROOT)));
+        this.run = new AtomicBoolean(true);
+        this.done = new AtomicBoolean(true);
+        this.pauseLock = new Object();
+        
+        this.minReconnectPause = 1000; // milliseconds
+        this.maxReconnectPause = 60 * 1000; // milliseconds
+        this.pingTimeout = 4 * 60 * 1000; // milliseconds
+        this.offerTimeout = 100; // milliseconds
+    }
+    
+    /**
+     * Returns the default SSLContext.
+     * 
+     * @return the default SSLContext.
+     */
+    private static SSLContext getDefaultSSLContext() {
+        try {
+            return SSLContext.getDefault();
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("TLS is not supported.", ex);
+        }
+    }
+
+    @Override
+    public void listen(BlockingQueue<IRCMessage> output) {
+        this.done.set(false);
+        this.run.set(true);
+        
+        long pause = this.minReconnectPause;
+        while(this.run.get()) {
+            try {
+                this.session(output);
+            } catch (IOException ex) {
+                Logger.getLogger(IRCDataSource.class.getName())
+                        .log(Level.WARNING, "Connection to "+this.getName()+" lost.", ex);
+            }
+            if(this.registered) {
+                pause = this.minReconnectPause;
+            }
+            if(!this.run.get()) {
+                break;
+            }
+            
+            Logger.getLogger(IRCDataSource.class.getName())
+                    .log(Level.INFO, "Reconnecting to {0} in {1} ms.", new Object[]{this.getName(), pause});
+            this.pause(pause);
+            pause = Math.min(pause * 2, this.maxReconnectPause);
+        }
+        this.done.set(true);
+    }
+    
+    /**
+     * Waits for the given time or until stop is called.
+     * 
+     * @param millis The time to wait in milliseconds.
+     */
+    private void pause(long millis) {
+        synchronized(this.pauseLock) {
+            if(!this.run.get()) {
+                return;
+            }
+            try {
+                this.pauseLock.wait(millis);
+            } catch (InterruptedException ex) {
+                Logger.getLogger(IRCDataSource.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+    
+    /**
+     * Connects to the server and handles the connection until it is lost or
+     * stop is called.
+     * 
+     * @param output The BlockingQueue that will be receiving the IRC messages.
+     * @throws IOException If the connection fails.
+     */
+    private void session(BlockingQueue<IRCMessage> output) throws IOException {
+        this.registered = false;
+        this.pingSent = false;
+        this.currentNick = this.nick;
+        
+        try(Selector sel = Selector.open()) {
+            this.selector = sel;
+            this.connection = new IRCConnection(sel, this.host, this.port, this.sslContext);
+            try {
+                this.connection.send("NICK "+this.currentNick);
+                this.connection.send("USER "+this.nick+" 0 * :UberSpatchBoard");
+                this.lastReceived = System.nanoTime();
+                
+                while(this.run.get()) {
+                    sel.select(1000);
+                    
+                    Iterator<SelectionKey> keys = sel.selectedKeys().iterator();
+                    while(keys.hasNext()) {
+                        SelectionKey key = keys.next();
+                        keys.remove();
+                        this.handleKey(key, output);
+                    }
+                    this.checkPingTimeout();
+                }
+                
+                if(this.registered) {
+                    this.connection.send("QUIT :Bye");
+                }
+            } finally {
+                this.connection.close();
+                this.connection = null;
+                this.selector = null;
+            }
+        }
+    }
+    
+    /**
+     * Handles a selected key of the connection.
+     * 
+     * @param key The selected key.
+     * @param output The BlockingQueue that will be receiving the IRC messages.
+     * @throws IOException If the connection fails.
+     */
+    private void handleKey(SelectionKey key, BlockingQueue<IRCMessage> output) throws IOException {
+        if(!key.isValid()) {
+            return;
+        }
+        if(key.isConnectable() && this.connection.finishConnect()) {
+            Logger.getLogger(IRCDataSource.class.getName()).log(Level.INFO, "Connected to {0}.", this.getName());
+        }
+        if(key.isValid() && key.isReadable()) {
+            this.connection.read(line -> this.handleLine(line, output));
+            this.lastReceived = System.nanoTime();
+            this.pingSent = false;
+        }
+        if(key.isValid() && key.isWritable()) {
+            this.connection.flush();
+        }
+    }
+    
+    /**
+     * Pings the server if nothing was received for a while and gives up the
+     * connection if the server does not answer.
+     * 
+     * @throws IOException If the server did not answer.
+     */
+    private void checkPingTimeout() throws IOException {
+        long silence = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.lastReceived);
+        if(silence < this.pingTimeout) {
+            return;
+        }
+        if(!this.pingSent) {
+            this.connection.send("PING :"+this.host);
+            this.pingSent = true;
+        } else if(silence >= 2 * this.pingTimeout) {
+            throw new IOException("Ping timeout after "+silence+" ms.");
+        }
+    }
+    
+    /**
+     * Handles a line received from the server.
+     * 
+     * @param line The line without line break.
+     * @param output The BlockingQueue that will be receiving the IRC messages.
+     */
+    private void handleLine(String line, BlockingQueue<IRCMessage> output) {
+        String rest = line;
+        if(rest.startsWith("@")) {
+            // Skip IRCv3 message tags.
+            rest = IRCDataSource.after(rest, ' ');
+        }
+        String prefix = "";
+        if(rest.startsWith(":")) {
+            prefix = IRCDataSource.before(rest, ' ').substring(1);
+            rest = IRCDataSource.after(rest, ' ');
+        }
+        String command = IRCDataSource.before(rest, ' ');
+        String params = IRCDataSource.after(rest, ' ');
+        
+        try {
+            switch(command) {
+                case "PING":
+                    this.connection.send("PONG "+params);
+                    break;
+                case "001":
+                    this.registered = true;
+                    this.connection.send("JOIN "+String.join(",", this.channels));
+                    Logger.getLogger(IRCDataSource.class.getName()).log(Level.INFO, "Registered at {0} as {1}.", new Object[]{this.getName(), this.currentNick});
+                    break;
+                case "433":
+                    if(!this.registered) {
+                        this.currentNick += "_";
+                        this.connection.send("NICK "+this.currentNick);
+                    }
+                    break;
+                case "PRIVMSG":
+                    this.handlePrivmsg(prefix, params, output);
+                    break;
+                case "ERROR":
+                    Logger.getLogger(IRCDataSource.class.getName()).log(Level.WARNING, "{0} sent {1}", new Object[]{this.getName(), line});
+                    break;
+                default:
+                    break;
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(IRCDataSource.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Sends the PRIVMSG to the output if it was sent to one of the channels.
+     * 
+     * @param prefix The prefix of the message, "nick!user@host".
+     * @param params The parameters of the message, "target :text".
+     * @param output The BlockingQueue that will be receiving the IRC message.
+     */
+    private void handlePrivmsg(String prefix, String params, BlockingQueue<IRCMessage> output) {
+        String target = IRCDataSource.before(params, ' ');
+        if(!this.channels.contains(target.toLowerCase(Locale.ROOT))) {
+            return;
+        }
+        String text = IRCDataSource.after(params, ' ');
+        if(text.startsWith(":")) {
+            text = text.substring(1);
+        }
+        String sender = IRCDataSource.before(prefix, '!');
+        
+        if(text.startsWith(ACTION_PREFIX)) {
+            text = sender+" "+text.substring(ACTION_PREFIX.length(), text.endsWith("\u0001") ? text.length()-1 : text.length());
+            sender = "*";
+        } else if(text.startsWith("\u0001")) {
+            // Other CTCP requests are not of interest.
+            return;
+        }
+        
+        IRCMessage msg = new IRCMessage(LocalDateTime.now(), sender, target, IRCFormatFilteringReader.filter(text));
+        try {
+            while(!output.offer(msg, this.offerTimeout, TimeUnit.MILLISECONDS)) {
+                if(!this.run.get()) {
+                    return;
+                }
+            }
+        } catch (InterruptedException ex) {
+            Logger.getLogger(IRCDataSource.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Returns the part of the string before the first occurrence of the
+     * separator or the whole string if there is none.
+     * 
+     * @param s The string to be split.
+     * @param separator The separator.
+     * @return the part of the string before the separator.
+     */
+    private static String before(String s, char separator) {
+        int i = s.indexOf(separator);
+        return i < 0 ? s : s.substring(0, i);
+    }
+    
+    /**
+     * Returns the part of the string after the first occurrence of the
+     * separator or an empty string if there is none.
+     * 
+     * @param s The string to be split.
+     * @param separator The separator.
+     * @return the part of the string after the separator.
+     */
+    private static String after(String s, char separator) {
+        int i = s.indexOf(separator);
+        return i < 0 ? "" : s.substring(i+1);
+    }
+
+    @Override
+    public void stop() {
+        this.run.set(false);
+        synchronized(this.pauseLock) {
+            this.pauseLock.notifyAll();
+        }
+        Selector sel = this.selector;
+        if(sel != null) {
+            sel.wakeup();
+        }
+        
+        while(!this.done.get()) {
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException ex) {
+                Logger.getLogger(IRCDataSource.class.getName()).log(Level.SEVERE, null, ex);
+                break;
+            }
+        }
+    }
+
+    @Override
+    public String getName() {
+        return (this.sslContext != null ? "ircs://" : "irc://")+this.host+":"+this.port+"/"+String.join(",", this.channels);
+    }
+
+    @Override
+    public String getShortName() {
+        return (this.sslContext != null ? "ircs://" : "irc://")+this.host;
+    }
+}
@@ -26,14 +26,24 @@ package de.targodan.usb.io;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.StringReader;
 
 /**
  * Represents a filter for IRC formatting special characters.
  * 
+ * Whether a character is printable is looked up in a table that is computed
+ * once for the whole Basic Multilingual Plane. The characters are filtered in
+ * place and runs of printable characters are moved in bulk.
+ * 
  * @author Luca Corbatto
  */
 public class IRCFormatFilteringReader extends Reader {
-    private char[] buffer;
+    /**
+     * One bit per char, set if the char is printable outside of a color
+     * definition.
+     */
+    private static final long[] PRINTABLE = IRCFormatFilteringReader.computePrintableTable();
+    
     private boolean isColorDefinition;
     private boolean isHexColor;
     private boolean wasCommaReadInColor;
@@ -48,33 +58,151 @@ public class IRCFormatFilteringReader extends Reader {
     public IRCFormatFilteringReader(Reader reader) {
         super(reader);
         this.reader = reader;
-        this.buffer = new char[512];
         this.isColorDefinition = false;
         this.wasCommaReadInColor = false;
         this.numColorDigitsRead = 0;
     }
     
+    /**
+     * Computes the table of printable chars.
+     * 
+     * @return the table of printable chars.
+     */
+    private static long[] computePrintableTable() {
+        long[] table = new long[(Character.MAX_VALUE + 1) / 64];
+        for(int i = 0; i <= Character.MAX_VALUE; ++i) {
+            char c = (char)i;
+            Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
+            if((Character.isWhitespace(c) || !Character.isISOControl(c)) &&
+                    block != null &&
+                    !block.equals(Character.UnicodeBlock.SPECIALS)) {
+                table[i >>> 6] |= 1L << i;
+            }
+        }
+        return table;
+    }
+    
+    /**
+     * Returns true if the given char is printable outside of a color
+     * definition.
+     * 
+     * @param c The char to be checked.
+     * @return true if the given char is printable.
+     */
+    private static boolean isPrintableChar(char c) {
+        return (IRCFormatFilteringReader.PRINTABLE[c >>> 6] & (1L << c)) != 0;
+    }
+    
     @Override
     public int read(char[] cbuf, int off, int len) throws IOException {
-        if(this.buffer.length < len) {
-            this.buffer = new char[len];
-        }
-        int size = this.reader.read(this.buffer, 0, len);
+        int size = this.reader.read(cbuf, off, len);
         if(size < 0) {
             return size;
         }
         
-        int newSize = 0;
-        for(int i = 0; i < size; ++i) {
-            if(!this.isPrintable(this.buffer[i])) {
-                continue;
+        int end = off + size;
+        int i = off;
+        // Nothing needs to be moved until the first char is dropped.
+        while(i < end && !this.isColorDefinition && IRCFormatFilteringReader.isPrintableChar(cbuf[i])) {
+            ++i;
+        }
+        int newEnd = i;
+        while(i < end) {
+            int runStart = i;
+            while(i < end && !this.isColorDefinition && IRCFormatFilteringReader.isPrintableChar(cbuf[i])) {
+                ++i;
+            }
+            if(i > runStart) {
+                System.arraycopy(cbuf, runStart, cbuf, newEnd, i - runStart);
+                newEnd += i - runStart;
             }
             
-            cbuf[off++] = this.buffer[i];
-            ++newSize;
+            if(i < end) {
+                char c = cbuf[i++];
+                if(this.isPrintable(c)) {
+                    cbuf[newEnd++] = c;
+                }
+            }
+        }
+        
+        return newEnd - off;
+    }
+    
+    /**
+     * Returns the given text without any IRC formatting characters.
+     * 
+     * @param text The text to be filtered.
+     * @return the given text without any IRC formatting characters.
+     */
+    public static String filter(String text) {
+        IRCFormatFilteringReader filter = new IRCFormatFilteringReader(new StringReader(""));
+        StringBuilder sb = new StringBuilder(text.length());
+        for(int i = 0; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if(filter.isPrintable(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+    
+    /**
+     * Filters the IRC formatting characters out of the given bytes in place.
+     * 
+     * The bytes must be encoded in an ASCII compatible charset. Bytes outside
+     * of the ASCII range end a color definition and are always kept. Whether
+     * the chars they encode are printable has to be checked after decoding,
+     * see removeUnprintable.
+     * 
+     * @param buf The bytes to be filtered.
+     * @param off The offset of the first byte.
+     * @param len The number of bytes to be filtered.
+     * @return the number of bytes left starting at off.
+     */
+    int filter(byte[] buf, int off, int len) {
+        int end = off + len;
+        int newEnd = off;
+        for(int i = off; i < end; ++i) {
+            byte b = buf[i];
+            if(0x20 <= b && b < 0x7F && !this.isColorDefinition) {
+                buf[newEnd++] = b;
+            } else if(b < 0) {
+                this.isColorDefinition = false;
+                buf[newEnd++] = b;
+            } else if(this.isPrintable((char)b)) {
+                buf[newEnd++] = b;
+            }
+        }
+        return newEnd - off;
+    }
+    
+    /**
+     * Returns the given text without the chars that are not printable.
+     * 
+     * Unlike filter this does not remove color definitions, it is meant for
+     * text whose bytes were filtered already.
+     * 
+     * @param text The text to be checked.
+     * @return the given text without the chars that are not printable.
+     */
+    static String removeUnprintable(String text) {
+        int i = 0;
+        while(i < text.length() && IRCFormatFilteringReader.isPrintableChar(text.charAt(i))) {
+            ++i;
+        }
+        if(i == text.length()) {
+            return text;
         }
         
-        return newSize;
+        StringBuilder sb = new StringBuilder(text.length());
+        sb.append(text, 0, i);
+        for(; i < text.length(); ++i) {
+            char c = text.charAt(i);
+            if(IRCFormatFilteringReader.isPrintableChar(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
     }
     
     /**
@@ -108,10 +236,7 @@ public class IRCFormatFilteringReader extends Reader {
             this.numColorDigitsRead = 0;
         }
         
-        Character.UnicodeBlock block = Character.UnicodeBlock.of(c);
-        return (Character.isWhitespace(c) || !Character.isISOControl(c)) &&
-                block != null &&
-                !block.equals(Character.UnicodeBlock.SPECIALS);
+        return IRCFormatFilteringReader.isPrintableChar(c);
     }
     
     /**
@@ -175,7 +300,6 @@ public class IRCFormatFilteringReader extends Reader {
 
     @Override
     public void close() throws IOException {
-        this.buffer = null;
         this.reader.close();
     }
 }
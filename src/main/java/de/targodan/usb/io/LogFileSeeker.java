@@ -0,0 +1,224 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.IRCMessage;
+import de.targodan.usb.io.processing.Marshaller;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * LogFileSeeker finds the position in a log file at which a data source
+ * should start reading.
+ * 
+ * Instead of reading through the whole log all positions are found by
+ * reading backwards from the end of the file, so the time this takes does
+ * not depend on the size of the log.
+ *
+ * @author Luca Corbatto
+ */
+public class LogFileSeeker {
+    private static final int BLOCK_SIZE = 8192;
+    
+    private final FileChannel channel;
+    private final ByteBuffer block;
+    private long blockStart;
+    
+    /**
+     * Constructs a LogFileSeeker for the given channel.
+     * 
+     * @param channel The channel of the log file.
+     */
+    public LogFileSeeker(FileChannel channel) {
+        this.channel = channel;
+        this.block = ByteBuffer.allocate(BLOCK_SIZE);
+        this.block.limit(0);
+        this.blockStart = 0;
+    }
+    
+    /**
+     * Positions the channel at the point from which a data source should
+     * start reading.
+     * 
+     * If replayDuration is null or zero this is the end of the last complete
+     * line, otherwise it is the beginning of the first line that was logged
+     * within the replayDuration. Lines that cannot be marshalled are skipped
+     * while searching. If the marshaller does not provide timestamps nothing
+     * is replayed.
+     * 
+     * @param channel The channel of the log file.
+     * @param charset The charset of the log file.
+     * @param marshaller The Marshaller used to read the timestamps of lines.
+     * @param replayDuration How much of the log should be replayed, may be null.
+     * @throws IOException If the file cannot be read.
+     */
+    public static void seekToStart(FileChannel channel, Charset charset, Marshaller marshaller, Duration replayDuration) throws IOException {
+        LogFileSeeker seeker = new LogFileSeeker(channel);
+        
+        long position;
+        if(replayDuration == null || replayDuration.isZero() || replayDuration.isNegative()) {
+            position = seeker.findEndOfLastCompleteLine();
+        } else {
+            position = seeker.findStartOfLinesSince(charset, marshaller, LocalDateTime.now().minus(replayDuration));
+        }
+        channel.position(position);
+    }
+    
+    /**
+     * Returns the position directly after the last line break in the file.
+     * 
+     * A line that is still being written at the end of the file is thereby
+     * read in full once it is complete instead of starting mid-line.
+     * 
+     * @return the position directly after the last line break in the file.
+     * @throws IOException If the file cannot be read.
+     */
+    public long findEndOfLastCompleteLine() throws IOException {
+        return this.findLineBreakBefore(this.channel.size()) + 1;
+    }
+    
+    /**
+     * Returns the position of the first line with a timestamp not older than
+     * since.
+     * 
+     * @param charset The charset of the log file.
+     * @param marshaller The Marshaller used to read the timestamps of lines.
+     * @param since The oldest timestamp that should be included.
+     * @return the position of the first line with a timestamp not older than since.
+     * @throws IOException If the file cannot be read.
+     */
+    public long findStartOfLinesSince(Charset charset, Marshaller marshaller, LocalDateTime since) throws IOException {
+        long end = this.findEndOfLastCompleteLine();
+        
+        long lineEnd = end - 1;
+        while(lineEnd >= 0) {
+            long lineBreak = this.findLineBreakBefore(lineEnd);
+            long lineStart = lineBreak + 1;
+            
+            IRCMessage msg = this.tryMarshall(this.readLine(lineStart, lineEnd, charset), marshaller);
+            if(msg != null) {
+                if(msg.getTimestamp() == null) {
+                    return end;
+                }
+                if(msg.getTimestamp().isBefore(since)) {
+                    return lineEnd + 1;
+                }
+            }
+            
+            lineEnd = lineBreak;
+        }
+        
+        return 0;
+    }
+    
+    /**
+     * Returns the position of the last line break before the given position
+     * or -1 if there is none.
+     * 
+     * @param position The position before which to search.
+     * @return the position of the last line break before the given position.
+     * @throws IOException If the file cannot be read.
+     */
+    private long findLineBreakBefore(long position) throws IOException {
+        long pos = position - 1;
+        while(pos >= 0) {
+            if(pos < this.blockStart || pos >= this.blockStart + this.block.limit()) {
+                this.readBlockEndingAt(pos + 1);
+            }
+            if(this.block.get((int)(pos - this.blockStart)) == '\n') {
+                return pos;
+            }
+            --pos;
+        }
+        return -1;
+    }
+    
+    /**
+     * Reads the block of the file that ends at the given position.
+     * 
+     * @param end The exclusive end of the block.
+     * @throws IOException If the file cannot be read.
+     */
+    private void readBlockEndingAt(long end) throws IOException {
+        this.blockStart = Math.max(0, end - BLOCK_SIZE);
+        this.block.clear();
+        this.block.limit((int)(end - this.blockStart));
+        while(this.block.hasRemaining()) {
+            if(this.channel.read(this.block, this.blockStart + this.block.position()) < 0) {
+                break;
+            }
+        }
+        this.block.flip();
+    }
+    
+    /**
+     * Reads and decodes the line between start and end, excluding the line
+     * break.
+     * 
+     * @param start The position of the first byte of the line.
+     * @param end The position of the line break ending the line.
+     * @param charset The charset of the log file.
+     * @return the decoded line.
+     * @throws IOException If the file cannot be read.
+     */
+    private String readLine(long start, long end, Charset charset) throws IOException {
+        ByteBuffer line = ByteBuffer.allocate((int)(end - start));
+        while(line.hasRemaining()) {
+            if(this.channel.read(line, start + line.position()) < 0) {
+                break;
+            }
+        }
+        line.flip();
+        
+        String str = charset.decode(line).toString();
+        if(str.endsWith("\r")) {
+            str = str.substring(0, str.length()-1);
+        }
+        return str;
+    }
+    
+    /**
+     * Tries to marshall a line returning an IRCMessage or null if that failed.
+     * 
+     * @param line The line to be marshalled.
+     * @param marshaller The Marshaller to be used.
+     * @return an IRCMessage or null if that failed.
+     */
+    private IRCMessage tryMarshall(String line, Marshaller marshaller) {
+        if(line.isEmpty()) {
+            return null;
+        }
+        try {
+            return marshaller.marshall(line);
+        } catch(Exception ex) {
+            // Lines without a timestamp (e.g. "**** BEGIN LOGGING AT ...")
+            // are simply skipped.
+        }
+        return null;
+    }
+}
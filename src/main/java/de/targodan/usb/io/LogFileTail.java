@@ -0,0 +1,140 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * LogFileTail reads the complete lines appended to a log file.
+ * 
+ * A line that is still being written when the end of the file is reached is
+ * kept until its line break arrives. When the file is rotated or truncated
+ * the rest of the old file is read before the new file is followed from its
+ * beginning.
+ * 
+ * The lines are filtered and split on the raw bytes of the file, see
+ * FilteringLineReader.
+ * 
+ * @author Luca Corbatto
+ */
+class LogFileTail {
+    private final Path path;
+    private final FileRotationDetector rotationDetector;
+    private final FilteringLineReader reader;
+    
+    /**
+     * Constructs a LogFileTail reading the given file from the current
+     * position of the channel.
+     * 
+     * @param path The path of the log file.
+     * @param charset The charset of the log file.
+     * @param channel The opened channel of the log file.
+     * @throws IOException If the attributes of the file cannot be read.
+     * @throws IllegalArgumentException If the charset is not ASCII compatible.
+     */
+    public LogFileTail(Path path, Charset charset, FileChannel channel) throws IOException {
+        this.path = path;
+        this.reader = new FilteringLineReader(channel, charset);
+        this.rotationDetector = new FileRotationDetector(path, channel);
+    }
+    
+    /**
+     * Returns the path of the log file.
+     * 
+     * @return the path of the log file.
+     */
+    public Path getPath() {
+        return this.path;
+    }
+    
+    /**
+     * Reads everything up to the current end of the file, handing every
+     * complete line to the lineHandler.
+     * 
+     * @param run Reading stops early once this is false.
+     * @param lineHandler The Consumer to receive the lines.
+     * @return the number of lines read.
+     */
+    public int readAvailable(AtomicBoolean run, Consumer<String> lineHandler) {
+        int total = 0;
+        try {
+            String line;
+            while(run.get() && (line = this.reader.readLine()) != null) {
+                ++total;
+                lineHandler.accept(line);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(LogFileTail.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        }
+        return total;
+    }
+    
+    /**
+     * Reopens the file if it was rotated or truncated.
+     * 
+     * This must only be called once everything available was read. A line
+     * that was not terminated before the rotation will not be continued and
+     * is therefore handed to the lineHandler as is.
+     * 
+     * @param lineHandler The Consumer to receive the unterminated line.
+     * @return true if the file was reopened.
+     */
+    public boolean reopenIfRotated(Consumer<String> lineHandler) {
+        try {
+            if(!this.rotationDetector.hasChanged()) {
+                return false;
+            }
+            String line = this.reader.takePartialLine();
+            if(!line.isEmpty()) {
+                lineHandler.accept(line);
+            }
+            this.reader.reset(this.rotationDetector.reopen());
+            return true;
+        } catch (IOException ex) {
+            Logger.getLogger(LogFileTail.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        }
+        return false;
+    }
+    
+    /**
+     * Closes the log file.
+     */
+    public void close() {
+        try {
+            this.reader.close();
+        } catch (IOException ex) {
+            Logger.getLogger(LogFileTail.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.Handler;
+import de.targodan.usb.io.processing.IRCMessage;
+import de.targodan.usb.io.processing.ParseResult;
+import de.targodan.usb.io.processing.Parser;
+import de.targodan.usb.io.processing.RecordingHandler;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ParsingPipeline parses messages on multiple threads while handling them on
+ * a single thread strictly in the order they were submitted.
+ * 
+ * Each parser thread has its own Parser whose calls to the Handler are
+ * recorded instead of executed. Messages are handed to the parser threads
+ * round robin and the applier thread collects the results in the same round
+ * robin order, so no reordering is needed to replay the recorded calls on
+ * the actual Handler in submission order. The resulting CaseManager state is
+ * therefore the same as when parsing and handling all messages on one thread.
+ * 
+ * A ParsingPipeline can only be started once.
+ * 
+ * @author Luca Corbatto
+ */
+class ParsingPipeline {
+    public static final int QUEUE_CAPACITY = 256;
+    
+    private static final IRCMessage END_OF_MESSAGES = new IRCMessage(null, null, null, null);
+    private static final Parsed END_OF_RESULTS = new Parsed(-1, null, null, Collections.emptyList());
+    
+    private final Handler handler;
+    private final Worker[] workers;
+    private final Thread applier;
+    private long submitted;
+    
+    /**
+     * Parsed is the result of parsing a single message.
+     */
+    private static class Parsed {
+        public final long sequence;
+        public final IRCMessage message;
+        public final ParseResult result;
+        public final List<Consumer<Handler>> operations;
+        
+        public Parsed(long sequence, IRCMessage message, ParseResult result, List<Consumer<Handler>> operations) {
+            this.sequence = sequence;
+            this.message = message;
+            this.result = result;
+            this.operations = operations;
+        }
+    }
+    
+    /**
+     * Worker parses every n-th message on its own thread.
+     */
+    private static class Worker implements Runnable {
+        public final BlockingQueue<IRCMessage> input;
+        public final BlockingQueue<Parsed> output;
+        private final Parser parser;
+        private final RecordingHandler recorder;
+        private final int stride;
+        private long nextSequence;
+        
+        public Worker(Parser parser, int index, int stride) {
+            this.input = new RingBufferQueue<>(ParsingPipeline.QUEUE_CAPACITY);
+            this.output = new RingBufferQueue<>(ParsingPipeline.QUEUE_CAPACITY);
+            this.parser = parser;
+            this.recorder = new RecordingHandler();
+            this.stride = stride;
+            this.nextSequence = index;
+            
+            this.parser.registerHandler(this.recorder);
+        }
+        
+        @Override
+        public void run() {
+            try {
+                IRCMessage msg;
+                while((msg = this.input.take()) != ParsingPipeline.END_OF_MESSAGES) {
+                    ParseResult result = null;
+                    try {
+                        result = this.parser.parseAndHandle(msg);
+                    } catch(Exception ex) {
+                        Logger.getLogger(ParsingPipeline.class.getName()).log(Level.SEVERE, null, ex);
+                    }
+                    // Calls recorded before an exception are kept, just like
+                    // they would have been handled when parsing sequentially.
+                    this.output.put(new Parsed(this.nextSequence, msg, result, this.recorder.takeOperations()));
+                    this.nextSequence += this.stride;
+                }
+                this.output.put(ParsingPipeline.END_OF_RESULTS);
+            } catch(InterruptedException ex) {
+                Logger.getLogger(ParsingPipeline.class.getName()).log(Level.SEVERE, null, ex);
+            }
+        }
+    }
+    
+    /**
+     * Constructs a ParsingPipeline with one parser thread per given Parser.
+     * 
+     * The Parsers must not be shared with anything else while the pipeline
+     * is running, their Handler is replaced by the pipeline.
+     * 
+     * @param parsers The Parsers to be used, at least one.
+     * @param handler The Handler handling the parsed messages.
+     */
+    public ParsingPipeline(List<Parser> parsers, Handler handler) {
+        if(parsers.isEmpty()) {
+            throw new IllegalArgumentException("At least one Parser is needed.");
+        }
+        
+        this.handler = handler;
+        this.workers = new Worker[parsers.size()];
+        for(int i = 0; i < this.workers.length; ++i) {
+            this.workers[i] = new Worker(parsers.get(i), i, this.workers.length);
+        }
+        this.applier = new Thread(this::apply, "ParsingPipeline-Applier");
+        this.applier.setDaemon(true);
+        this.submitted = 0;
+    }
+    
+    /**
+     * Starts the parser threads and the applier thread.
+     */
+    public void start() {
+        for(int i = 0; i < this.workers.length; ++i) {
+            Thread t = new Thread(this.workers[i], "ParsingPipeline-Parser-"+i);
+            t.setDaemon(true);
+            t.start();
+        }
+        this.applier.start();
+    }
+    
+    /**
+     * Submits a message to be parsed and handled.
+     * 
+     * Must always be called from the same thread. Blocks while the parser
+     * thread the message is assigned to is busy.
+     * 
+     * @param msg The message to be parsed and handled.
+     * @throws InterruptedException 
+     */
+    public void submit(IRCMessage msg) throws InterruptedException {
+        this.workers[(int)(this.submitted % this.workers.length)].input.put(msg);
+        ++this.submitted;
+    }
+    
+    /**
+     * Waits until all submitted messages are handled and stops the threads.
+     * 
+     * Must be called from the thread that submitted the messages.
+     * 
+     * @throws InterruptedException 
+     */
+    public void finish() throws InterruptedException {
+        for(int i = 0; i < this.workers.length; ++i) {
+            this.submit(ParsingPipeline.END_OF_MESSAGES);
+        }
+        this.applier.join();
+    }
+    
+    /**
+     * Handles the parsed messages in the order they were submitted until
+     * the end of the messages is reached.
+     */
+    private void apply() {
+        try {
+            long expected = 0;
+            for(int i = 0;; i = (i + 1) % this.workers.length) {
+                Parsed parsed = this.workers[i].output.take();
+                if(parsed == ParsingPipeline.END_OF_RESULTS) {
+                    return;
+                }
+                if(parsed.sequence != expected) {
+                    throw new IllegalStateException("Expected message "+expected+" but got message "+parsed.sequence+".");
+                }
+                ++expected;
+                
+                this.handle(parsed);
+            }
+        } catch(InterruptedException ex) {
+            Logger.getLogger(ParsingPipeline.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Replays the recorded calls of a single parsed message on the Handler.
+     * 
+     * @param parsed The parsed message.
+     */
+    private void handle(Parsed parsed) {
+        try {
+            RecordingHandler.replay(parsed.operations, this.handler);
+            // Logged for every message, so only when debugging.
+            Logger logger = Logger.getLogger(ParsingPipeline.class.getName());
+            if(parsed.result != null && logger.isLoggable(Level.FINE)) {
+                logger.log(Level.FINE, "Parsed message \"{0}\" as {1}.", new Object[] {parsed.message.getContentSequence(), parsed.result});
+            }
+        } catch(Exception ex) {
+            Logger.getLogger(ParsingPipeline.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        } finally {
+            this.handler.handleEndOfMessage(parsed.message);
+        }
+    }
+}
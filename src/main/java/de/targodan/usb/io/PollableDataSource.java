@@ -0,0 +1,66 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.IRCMessage;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Implementations of PollableDataSource can be polled for new messages
+ * instead of blocking a thread in listen.
+ * 
+ * This allows a DataSourceExecutor to share a few threads between many
+ * DataSources. Listen must still be supported.
+ * 
+ * @author Luca Corbatto
+ */
+public interface PollableDataSource extends DataSource {
+    /**
+     * Poll should send all messages that are currently available to the
+     * given queue without waiting for new ones.
+     * 
+     * @param output The BlockingQueue that will be receiving the IRC messages.
+     * @return true if anything was read.
+     */
+    boolean poll(BlockingQueue<IRCMessage> output);
+    
+    /**
+     * Returns the minimum time between two polls in milliseconds.
+     * 
+     * This is used after something was read.
+     * 
+     * @return the minimum time between two polls in milliseconds.
+     */
+    long getMinPollInterval();
+    
+    /**
+     * Returns the maximum time between two polls in milliseconds.
+     * 
+     * The time between polls doubles up to this interval while nothing is
+     * read.
+     * 
+     * @return the maximum time between two polls in milliseconds.
+     */
+    long getMaxPollInterval();
+}
@@ -86,7 +86,7 @@ public abstract class ReaderDataSource implements DataSource {
     protected ReaderDataSource(Marshaller marshaller) {
         this.marshaller = marshaller;
         this.run = new AtomicBoolean(true);
-        this.done = new AtomicBoolean(false);
+        this.done = new AtomicBoolean(true);
         this.readPause = 200; // milliseconds
     }
     
@@ -144,27 +144,62 @@ public abstract class ReaderDataSource implements DataSource {
             
             line = this.tryReadLine();
             if(line == null) {
+                this.endOfReaderReached();
                 continue;
             }
             
-            IRCMessage msg = this.tryMarshall(line);
-            if(msg == null) {
-                continue;
-            }
-            // Fix channel name if necessary
-            if(this.overrideChannelName != null && !msg.getChannel().equals(this.overrideChannelName)) {
-                msg = new IRCMessage(msg.getTimestamp(), msg.getSender(), this.overrideChannelName, msg.getContent());
-            }
-            
-            try {
-                while(!output.offer(msg, this.readPause/2, TimeUnit.MILLISECONDS)) {}
-            } catch (InterruptedException ex) {
-                Logger.getLogger(ReaderDataSource.class.getName()).log(Level.SEVERE, null, ex);
-            }
+            this.handleLine(line, output);
         }
         this.done.set(true);
     }
     
+    /**
+     * Called by listen whenever the end of the reader was reached.
+     * 
+     * Implementations may use this to check whether the underlying source
+     * has been replaced and to open a new reader.
+     */
+    protected void endOfReaderReached() {
+    }
+    
+    /**
+     * Marshals the given line and sends the resulting IRCMessage to the output
+     * queue.
+     * 
+     * Lines that cannot be marshalled are dropped.
+     * 
+     * @param line The line to be handled.
+     * @param output The BlockingQueue that will be receiving the IRC message.
+     */
+    protected void handleLine(String line, BlockingQueue<IRCMessage> output) {
+        IRCMessage msg = this.tryMarshall(line);
+        if(msg == null) {
+            return;
+        }
+        // Fix channel name if necessary
+        if(this.overrideChannelName != null) {
+            msg = msg.withChannel(this.overrideChannelName);
+        }
+        
+        try {
+            while(!output.offer(msg, this.readPause/2, TimeUnit.MILLISECONDS)) {}
+        } catch (InterruptedException ex) {
+            Logger.getLogger(ReaderDataSource.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Reads the next line.
+     * 
+     * Implementations that do not read from the reader may override this.
+     * 
+     * @return the read line or null if there is none.
+     * @throws IOException If reading fails.
+     */
+    protected String readLine() throws IOException {
+        return this.reader.readLine();
+    }
+    
     /**
      * Tries to read a line returning the read line or null if reading failed.
      * 
@@ -172,7 +207,7 @@ public abstract class ReaderDataSource implements DataSource {
      */
     private String tryReadLine() {
         try {
-            return this.reader.readLine();
+            return this.readLine();
         } catch (IOException ex) {
             Logger.getLogger(SingleChannelFileDataSource.class.getName())
                     .log(Level.SEVERE, null, ex);
@@ -212,6 +247,9 @@ public abstract class ReaderDataSource implements DataSource {
             }
         }
         
+        if(this.reader == null) {
+            return;
+        }
         try {
             this.reader.close();
         } catch (IOException ex) {
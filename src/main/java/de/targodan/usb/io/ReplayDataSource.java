@@ -0,0 +1,410 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.IRCMessage;
+import de.targodan.usb.io.processing.Marshaller;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ReplayDataSource replays a recorded log file from its first line.
+ * 
+ * The messages are either sent as fast as possible or at the pace at which
+ * they were logged, accelerated by the given speed. A speed of 10 replays ten
+ * seconds of the log per second. Messages without a timestamp are sent
+ * without delay.
+ * 
+ * While replaying the achieved messages per second and the lag between the
+ * moment a message was due and the moment the DataConsumer finished handling
+ * it are recorded and logged periodically. Once the end of the log is reached
+ * and all messages were handled the final statistics are logged and the
+ * ReplayDataSource idles until stop is called.
+ * 
+ * @author Luca Corbatto
+ */
+public class ReplayDataSource implements DataSource {
+    public static final double AS_FAST_AS_POSSIBLE = 0;
+    
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+    private static final long OFFER_TIMEOUT_MILLIS = 100;
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private final String channelName;
+    private final File file;
+    private final Charset charset;
+    private final Marshaller marshaller;
+    private final double speed;
+    private final AtomicBoolean run;
+    private final AtomicBoolean finished;
+    
+    private final AtomicLong messagesSent;
+    private final AtomicLong messagesHandled;
+    private final AtomicLong lagNanosSum;
+    private final AtomicLong maxLagNanos;
+    private volatile long startNanos;
+    private volatile long lastHandledNanos;
+    private long lastReportNanos;
+    
+    /**
+     * Constructs a ReplayDataSource replaying the given file.
+     * 
+     * @param channelName The name of the channel that will be used for any
+     * message, null to keep the marshalled channel.
+     * @param fileName The path of the log file.
+     * @param charset The charset of the log file.
+     * @param marshaller The Marshaller to be used for marshalling the lines.
+     * @param speed The factor by which the replay is accelerated, zero or
+     * less to replay as fast as possible.
+     */
+    public ReplayDataSource(String channelName, String fileName, Charset charset, Marshaller marshaller, double speed) {
+        this.channelName = channelName;
+        this.file = new File(fileName);
+        if(!this.file.canRead()) {
+            throw new IllegalArgumentException("File \""+fileName+"\" is not readable.");
+        }
+        this.charset = charset;
+        this.marshaller = marshaller;
+        this.speed = speed;
+        this.run = new AtomicBoolean(false);
+        this.finished = new AtomicBoolean(false);
+        
+        this.messagesSent = new AtomicLong();
+        this.messagesHandled = new AtomicLong();
+        this.lagNanosSum = new AtomicLong();
+        this.maxLagNanos = new AtomicLong();
+    }
+
+    @Override
+    public void listen(BlockingQueue<IRCMessage> output) {
+        this.run.set(true);
+        this.finished.set(false);
+        this.resetStatistics();
+        
+        try(BufferedReader reader = new BufferedReader(
+                new IRCFormatFilteringReader(
+                        new InputStreamReader(new FileInputStream(this.file), this.charset)))) {
+            this.replay(reader, output);
+        } catch (IOException ex) {
+            Logger.getLogger(ReplayDataSource.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        
+        this.awaitHandled(output);
+        this.finished.set(true);
+        this.logStatistics("Replay finished");
+        
+        while(this.run.get()) {
+            try {
+                Thread.sleep(OFFER_TIMEOUT_MILLIS);
+            } catch (InterruptedException ex) {
+                Logger.getLogger(ReplayDataSource.class.getName()).log(Level.SEVERE, null, ex);
+                break;
+            }
+        }
+    }
+    
+    /**
+     * Reads the reader line by line sending each message to the output once
+     * it is due.
+     * 
+     * @param reader The reader to be replayed.
+     * @param output The BlockingQueue that will be receiving the IRC messages.
+     * @throws IOException If reading fails.
+     */
+    private void replay(BufferedReader reader, BlockingQueue<IRCMessage> output) throws IOException {
+        LocalDateTime firstTimestamp = null;
+        long lastDueNanos = this.startNanos;
+        
+        String line;
+        while(this.run.get() && (line = reader.readLine()) != null) {
+            IRCMessage msg = this.marshaller.marshall(line);
+            if(msg == null) {
+                continue;
+            }
+            
+            long dueNanos = System.nanoTime();
+            if(this.speed > 0 && msg.getTimestamp() != null) {
+                if(firstTimestamp == null) {
+                    firstTimestamp = msg.getTimestamp();
+                }
+                long offsetNanos = (long)(Duration.between(firstTimestamp, msg.getTimestamp()).toNanos() / this.speed);
+                // Never go back in time, e.g. if the log was written out of order.
+                dueNanos = Math.max(lastDueNanos, this.startNanos + offsetNanos);
+                this.waitUntil(dueNanos);
+            }
+            lastDueNanos = dueNanos;
+            
+            String channel = this.channelName != null ? this.channelName : msg.getChannel();
+            this.send(new ReplayedMessage(this, dueNanos, msg, channel), output);
+        }
+    }
+    
+    /**
+     * Sends the message to the output, retrying until it is accepted or the
+     * ReplayDataSource is stopped.
+     * 
+     * @param msg The message to be sent.
+     * @param output The BlockingQueue that will be receiving the IRC message.
+     */
+    private void send(ReplayedMessage msg, BlockingQueue<IRCMessage> output) {
+        try {
+            while(!output.offer(msg, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                this.reportIfDue();
+                if(!this.run.get()) {
+                    return;
+                }
+            }
+            this.messagesSent.incrementAndGet();
+            this.reportIfDue();
+        } catch (InterruptedException ex) {
+            Logger.getLogger(ReplayDataSource.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Blocks until the given point in time or until the ReplayDataSource is
+     * stopped.
+     * 
+     * @param dueNanos The value of System.nanoTime() to wait for.
+     */
+    private void waitUntil(long dueNanos) {
+        long remaining;
+        while(this.run.get() && (remaining = dueNanos - System.nanoTime()) > 0) {
+            this.reportIfDue();
+            LockSupport.parkNanos(Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(OFFER_TIMEOUT_MILLIS)));
+        }
+    }
+    
+    /**
+     * Blocks until all sent messages were handled.
+     * 
+     * Gives up if no message was handled for a while although the output is
+     * empty, which happens if the queue dropped messages.
+     * 
+     * @param output The BlockingQueue that has been receiving the IRC messages.
+     */
+    private void awaitHandled(BlockingQueue<IRCMessage> output) {
+        long handled = this.messagesHandled.get();
+        long lastProgressNanos = System.nanoTime();
+        while(this.run.get() && handled < this.messagesSent.get()) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            
+            long now = System.nanoTime();
+            if(this.messagesHandled.get() != handled) {
+                handled = this.messagesHandled.get();
+                lastProgressNanos = now;
+            } else if(output.isEmpty() && now - lastProgressNanos > DRAIN_TIMEOUT_NANOS) {
+                Logger.getLogger(ReplayDataSource.class.getName()).log(Level.WARNING, "{0} replayed messages were never handled.", this.messagesSent.get() - handled);
+                break;
+            }
+            this.reportIfDue();
+        }
+    }
+    
+    /**
+     * Records that the given message was handled completely.
+     * 
+     * This is called on the thread that handled the message last, the
+     * owner thread of the CaseManager if it has one.
+     * 
+     * @param msg The message that was handled.
+     */
+    void messageHandled(ReplayedMessage msg) {
+        long now = System.nanoTime();
+        long lag = now - msg.dueNanos;
+        this.lagNanosSum.addAndGet(lag);
+        this.maxLagNanos.accumulateAndGet(lag, Math::max);
+        this.lastHandledNanos = now;
+        this.messagesHandled.incrementAndGet();
+    }
+    
+    /**
+     * Resets the statistics at the start of a replay.
+     */
+    private void resetStatistics() {
+        this.messagesSent.set(0);
+        this.messagesHandled.set(0);
+        this.lagNanosSum.set(0);
+        this.maxLagNanos.set(0);
+        this.startNanos = System.nanoTime();
+        this.lastHandledNanos = this.startNanos;
+        this.lastReportNanos = this.startNanos;
+    }
+    
+    /**
+     * Logs the statistics if the last report is long enough ago.
+     */
+    private void reportIfDue() {
+        long now = System.nanoTime();
+        if(now - this.lastReportNanos < REPORT_INTERVAL_NANOS) {
+            return;
+        }
+        this.lastReportNanos = now;
+        this.logStatistics("Replaying");
+    }
+    
+    /**
+     * Logs the current statistics.
+     * 
+     * @param prefix The text to start the log message with.
+     */
+    private void logStatistics(String prefix) {
+        Logger.getLogger(ReplayDataSource.class.getName()).log(Level.INFO,
+                "{0} {1}: {2} messages sent, {3} handled, {4} messages/s, average lag {5} ms, maximum lag {6} ms",
+                new Object[]{
+                    prefix,
+                    this.getName(),
+                    this.getMessagesSent(),
+                    this.getMessagesHandled(),
+                    String.format("%.1f", this.getMessagesPerSecond()),
+                    String.format("%.3f", this.getAverageLag().toNanos() / 1e6),
+                    String.format("%.3f", this.getMaxLag().toNanos() / 1e6),
+                });
+    }
+    
+    /**
+     * Returns the number of messages sent to the DataConsumer.
+     * 
+     * @return the number of messages sent to the DataConsumer.
+     */
+    public long getMessagesSent() {
+        return this.messagesSent.get();
+    }
+    
+    /**
+     * Returns the number of messages the DataConsumer finished handling.
+     * 
+     * @return the number of messages the DataConsumer finished handling.
+     */
+    public long getMessagesHandled() {
+        return this.messagesHandled.get();
+    }
+    
+    /**
+     * Returns the number of handled messages per second since the start of
+     * the replay up to the last handled message.
+     * 
+     * @return the number of handled messages per second.
+     */
+    public double getMessagesPerSecond() {
+        long elapsed = this.lastHandledNanos - this.startNanos;
+        if(elapsed <= 0) {
+            return 0;
+        }
+        return this.messagesHandled.get() * 1e9 / elapsed;
+    }
+    
+    /**
+     * Returns the average time between the moment a message was due and the
+     * moment it was handled.
+     * 
+     * @return the average end-to-end lag.
+     */
+    public Duration getAverageLag() {
+        long handled = this.messagesHandled.get();
+        if(handled == 0) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos(this.lagNanosSum.get() / handled);
+    }
+    
+    /**
+     * Returns the maximum time between the moment a message was due and the
+     * moment it was handled.
+     * 
+     * @return the maximum end-to-end lag.
+     */
+    public Duration getMaxLag() {
+        return Duration.ofNanos(this.maxLagNanos.get());
+    }
+    
+    /**
+     * Returns true if the whole log was replayed and all messages were
+     * handled.
+     * 
+     * @return true if the replay is finished.
+     */
+    public boolean isFinished() {
+        return this.finished.get();
+    }
+
+    @Override
+    public void stop() {
+        this.run.set(false);
+    }
+
+    @Override
+    public String getName() {
+        return "replay://"+this.file.getPath()+(this.speed > 0 ? " ("+this.speed+"x)" : "");
+    }
+
+    @Override
+    public String getShortName() {
+        return "replay://..."+File.separator+this.file.getName();
+    }
+    
+    /**
+     * ReplayedMessage is an IRCMessage that remembers when it was due so it
+     * can report back once it was handled.
+     */
+    static class ReplayedMessage extends IRCMessage {
+        private final ReplayDataSource source;
+        private final long dueNanos;
+        
+        /**
+         * Constructs a ReplayedMessage.
+         * 
+         * @param source The ReplayDataSource that sent the message.
+         * @param dueNanos The value of System.nanoTime() at which the message was due.
+         * @param message The message that was replayed.
+         * @param channel The name of the channel in which the message was sent.
+         */
+        ReplayedMessage(ReplayDataSource source, long dueNanos, IRCMessage message, String channel) {
+            super(message, channel);
+            this.source = source;
+            this.dueNanos = dueNanos;
+        }
+        
+        /**
+         * Reports to the ReplayDataSource that the message was handled.
+         */
+        @Override
+        public void handled() {
+            this.source.messageHandled(this);
+        }
+    }
+}
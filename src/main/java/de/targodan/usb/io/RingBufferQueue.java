@@ -0,0 +1,480 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Predicate;
+
+/**
+ * RingBufferQueue is a bounded, lock-free BlockingQueue backed by a ring
+ * buffer.
+ * 
+ * Any number of threads may offer and poll concurrently. Every slot of the
+ * ring carries a sequence number telling producers and consumers whether the
+ * slot is free or filled for their position, so neither side needs a lock.
+ * 
+ * Blocking reads are meant for a single consumer thread: a consumer waiting
+ * for elements is parked and woken by the next producer. Producers waiting
+ * for space (only with BackpressurePolicy.BLOCK) park with a backoff.
+ * 
+ * What happens when the ring is full is defined by the BackpressurePolicy.
+ * 
+ * Elements can only be taken from the head of the queue. Removing arbitrary
+ * elements (remove(Object), removeAll, retainAll, removeIf and the
+ * iterator's remove) is not supported, as it would need the lock the ring
+ * buffer avoids, and throws an UnsupportedOperationException.
+ *
+ * @author Luca Corbatto
+ * @param <E> The type of the elements.
+ */
+public class RingBufferQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+    private static final long MAX_PRODUCER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final String REMOVAL_UNSUPPORTED = "A RingBufferQueue only supports taking elements from its head.";
+    
+    private final AtomicReferenceArray<E> buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong enqueuePosition;
+    private final AtomicLong dequeuePosition;
+    
+    private final BackpressurePolicy policy;
+    private final Queue<E> spill;
+    private final AtomicLong dropped;
+    
+    private volatile Thread waitingConsumer;
+    
+    /**
+     * Constructs a RingBufferQueue with the given capacity that blocks while
+     * it is full.
+     * 
+     * @param capacity The capacity, rounded up to the next power of two.
+     */
+    public RingBufferQueue(int capacity) {
+        this(capacity, BackpressurePolicy.BLOCK);
+    }
+    
+    /**
+     * Constructs a RingBufferQueue with the given capacity and
+     * BackpressurePolicy.
+     * 
+     * @param capacity The capacity, rounded up to the next power of two.
+     * @param policy What to do with new elements while the queue is full.
+     */
+    public RingBufferQueue(int capacity, BackpressurePolicy policy) {
+        if(capacity < 1 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30, got "+capacity+".");
+        }
+        if(policy == null) {
+            throw new IllegalArgumentException("Policy must not be null.");
+        }
+        
+        int size = Integer.highestOneBit(capacity);
+        if(size < capacity) {
+            size <<= 1;
+        }
+        
+        this.buffer = new AtomicReferenceArray<>(size);
+        this.sequences = new AtomicLongArray(size);
+        for(int i = 0; i < size; ++i) {
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+        this.enqueuePosition = new AtomicLong(0);
+        this.dequeuePosition = new AtomicLong(0);
+        
+        this.policy = policy;
+        this.spill = new ConcurrentLinkedQueue<>();
+        this.dropped = new AtomicLong(0);
+    }
+    
+    /**
+     * Returns the capacity of the ring buffer.
+     * 
+     * @return the capacity of the ring buffer.
+     */
+    public int getCapacity() {
+        return this.mask + 1;
+    }
+    
+    /**
+     * Returns the BackpressurePolicy of the queue.
+     * 
+     * @return the BackpressurePolicy of the queue.
+     */
+    public BackpressurePolicy getPolicy() {
+        return this.policy;
+    }
+    
+    /**
+     * Returns the number of elements that were dropped due to
+     * BackpressurePolicy.DROP_OLDEST.
+     * 
+     * @return the number of elements that were dropped.
+     */
+    public long getDroppedCount() {
+        return this.dropped.get();
+    }
+    
+    /**
+     * Tries to put the element into the ring.
+     * 
+     * @param e The element.
+     * @return true if the element was put into the ring, false if it is full.
+     */
+    private boolean offerToRing(E e) {
+        long pos = this.enqueuePosition.get();
+        int index;
+        while(true) {
+            index = (int)(pos & this.mask);
+            long diff = this.sequences.get(index) - pos;
+            if(diff == 0) {
+                if(this.enqueuePosition.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = this.enqueuePosition.get();
+            } else if(diff < 0) {
+                return false;
+            } else {
+                pos = this.enqueuePosition.get();
+            }
+        }
+        
+        this.buffer.set(index, e);
+        this.sequences.set(index, pos + 1);
+        return true;
+    }
+    
+    /**
+     * Tries to take the oldest element out of the ring.
+     * 
+     * @return the oldest element or null if the ring is empty.
+     */
+    private E pollFromRing() {
+        long pos = this.dequeuePosition.get();
+        int index;
+        while(true) {
+            index = (int)(pos & this.mask);
+            long diff = this.sequences.get(index) - (pos + 1);
+            if(diff == 0) {
+                if(this.dequeuePosition.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+                pos = this.dequeuePosition.get();
+            } else if(diff < 0) {
+                return null;
+            } else {
+                pos = this.dequeuePosition.get();
+            }
+        }
+        
+        E e = this.buffer.get(index);
+        this.buffer.set(index, null);
+        this.sequences.set(index, pos + this.mask + 1);
+        return e;
+    }
+    
+    /**
+     * Wakes up the consumer if it is waiting for elements.
+     */
+    private void signalConsumer() {
+        Thread consumer = this.waitingConsumer;
+        if(consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+    }
+    
+    @Override
+    public boolean offer(E e) {
+        if(e == null) {
+            throw new NullPointerException();
+        }
+        
+        boolean added;
+        switch(this.policy) {
+            case DROP_OLDEST:
+                while(!this.offerToRing(e)) {
+                    if(this.pollFromRing() != null) {
+                        this.dropped.incrementAndGet();
+                    }
+                }
+                added = true;
+                break;
+            case SPILL:
+                // Once elements were spilled everything goes to the spill
+                // until the consumer caught up so the order is preserved.
+                if(!this.spill.isEmpty() || !this.offerToRing(e)) {
+                    this.spill.add(e);
+                }
+                added = true;
+                break;
+            default:
+                added = this.offerToRing(e);
+        }
+        
+        if(added) {
+            this.signalConsumer();
+        }
+        return added;
+    }
+
+    @Override
+    public E poll() {
+        E e = this.pollFromRing();
+        if(e == null && this.policy == BackpressurePolicy.SPILL) {
+            e = this.spill.poll();
+        }
+        return e;
+    }
+
+    @Override
+    public E peek() {
+        long pos = this.dequeuePosition.get();
+        int index = (int)(pos & this.mask);
+        if(this.sequences.get(index) == pos + 1) {
+            E e = this.buffer.get(index);
+            if(e != null) {
+                return e;
+            }
+        }
+        if(this.policy == BackpressurePolicy.SPILL) {
+            return this.spill.peek();
+        }
+        return null;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        while(!this.offer(e, Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {}
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if(this.offer(e)) {
+            return true;
+        }
+        
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long park = 1000;
+        while(true) {
+            if(Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long remaining = deadline - System.nanoTime();
+            if(remaining <= 0) {
+                return false;
+            }
+            LockSupport.parkNanos(this, Math.min(park, remaining));
+            park = Math.min(park * 2, MAX_PRODUCER_PARK_NANOS);
+            
+            if(this.offer(e)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e;
+        while((e = this.poll(Long.MAX_VALUE, TimeUnit.NANOSECONDS)) == null) {}
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = this.poll();
+        if(e != null) {
+            return e;
+        }
+        
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        this.waitingConsumer = Thread.currentThread();
+        try {
+            while(true) {
+                // Checked after announcing the consumer, so an element offered
+                // in between either is seen here or unparks the consumer.
+                e = this.poll();
+                if(e != null) {
+                    return e;
+                }
+                if(Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                long remaining = deadline - System.nanoTime();
+                if(remaining <= 0) {
+                    return null;
+                }
+                LockSupport.parkNanos(this, remaining);
+            }
+        } finally {
+            this.waitingConsumer = null;
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        if(this.policy != BackpressurePolicy.BLOCK) {
+            return Integer.MAX_VALUE;
+        }
+        return this.getCapacity() - this.ringSize();
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return this.drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if(c == this) {
+            throw new IllegalArgumentException("Cannot drain a queue to itself.");
+        }
+        
+        int n = 0;
+        E e;
+        while(n < maxElements && (e = this.poll()) != null) {
+            c.add(e);
+            ++n;
+        }
+        return n;
+    }
+    
+    /**
+     * Returns the number of elements in the ring.
+     * 
+     * @return the number of elements in the ring.
+     */
+    private int ringSize() {
+        while(true) {
+            long dequeue = this.dequeuePosition.get();
+            long enqueue = this.enqueuePosition.get();
+            if(dequeue == this.dequeuePosition.get()) {
+                return (int)Math.max(0, Math.min(enqueue - dequeue, this.getCapacity()));
+            }
+        }
+    }
+
+    @Override
+    public int size() {
+        return this.ringSize() + this.spill.size();
+    }
+
+    /**
+     * Not supported, elements can only be taken from the head of the queue.
+     * 
+     * @param o
+     * @return never.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException(RingBufferQueue.REMOVAL_UNSUPPORTED);
+    }
+    
+    /**
+     * Not supported, elements can only be taken from the head of the queue.
+     * 
+     * @param c
+     * @return never.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        throw new UnsupportedOperationException(RingBufferQueue.REMOVAL_UNSUPPORTED);
+    }
+    
+    /**
+     * Not supported, elements can only be taken from the head of the queue.
+     * 
+     * @param c
+     * @return never.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public boolean retainAll(Collection<?> c) {
+        throw new UnsupportedOperationException(RingBufferQueue.REMOVAL_UNSUPPORTED);
+    }
+    
+    /**
+     * Not supported, elements can only be taken from the head of the queue.
+     * 
+     * @param filter
+     * @return never.
+     * @throws UnsupportedOperationException always.
+     */
+    @Override
+    public boolean removeIf(Predicate<? super E> filter) {
+        throw new UnsupportedOperationException(RingBufferQueue.REMOVAL_UNSUPPORTED);
+    }
+
+    /**
+     * Returns an iterator over a snapshot of the elements in the queue.
+     * 
+     * The iterator does not support removal.
+     * 
+     * @return an iterator over a snapshot of the elements in the queue.
+     */
+    @Override
+    public Iterator<E> iterator() {
+        List<E> snapshot = new ArrayList<>();
+        long enqueue = this.enqueuePosition.get();
+        for(long pos = this.dequeuePosition.get(); pos < enqueue; ++pos) {
+            int index = (int)(pos & this.mask);
+            E e = this.buffer.get(index);
+            if(e != null && this.sequences.get(index) == pos + 1) {
+                snapshot.add(e);
+            }
+        }
+        snapshot.addAll(this.spill);
+        
+        Iterator<E> it = snapshot.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return it.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException(RingBufferQueue.REMOVAL_UNSUPPORTED);
+            }
+        };
+    }
+}
@@ -24,35 +24,107 @@
 package de.targodan.usb.io;
 
 import de.targodan.usb.io.processing.Marshaller;
-import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.InputStreamReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
- * The SingleChannelFileDataSource is a ReaderDataSource that creates a reader
- * from a file.
+ * The SingleChannelFileDataSource is a ReaderDataSource that reads the lines
+ * of a file.
+ * 
+ * The lines are filtered and split on the raw bytes of the file, see
+ * FilteringLineReader. Only complete lines are read.
  *
  * @author Luca Corbatto
  */
 public class SingleChannelFileDataSource extends ReaderDataSource {
     private final File file;
+    private final FileRotationDetector rotationDetector;
+    private final FilteringLineReader lines;
+    private String unterminatedLine;
     
-    public SingleChannelFileDataSource(String channelName, String fileName, Charset charset, Marshaller marshaller) throws FileNotFoundException {
+    /**
+     * Constructs a SingleChannelFileDataSource that starts reading at the end
+     * of the given file.
+     * 
+     * @param channelName The name of the channel that will be used for any message.
+     * @param fileName The path of the log file.
+     * @param charset The charset of the log file.
+     * @param marshaller The Marshaller to be used for marshalling the lines.
+     * @throws IOException If the file cannot be opened.
+     */
+    public SingleChannelFileDataSource(String channelName, String fileName, Charset charset, Marshaller marshaller) throws IOException {
+        this(channelName, fileName, charset, marshaller, null);
+    }
+    
+    /**
+     * Constructs a SingleChannelFileDataSource that starts reading at the
+     * first line of the given file that was logged within the replayDuration.
+     * 
+     * @param channelName The name of the channel that will be used for any message.
+     * @param fileName The path of the log file.
+     * @param charset The charset of the log file.
+     * @param marshaller The Marshaller to be used for marshalling the lines.
+     * @param replayDuration How much of the log should be replayed, null or zero to start at the end.
+     * @throws IOException If the file cannot be opened.
+     * @throws IllegalArgumentException If the charset is not ASCII compatible.
+     */
+    public SingleChannelFileDataSource(String channelName, String fileName, Charset charset, Marshaller marshaller, Duration replayDuration) throws IOException {
         super(marshaller, channelName);
         
         this.file = new File(fileName);
         if(!this.file.canRead()) {
             throw new IllegalArgumentException("File \""+fileName+"\" is not readable.");
         }
-        this.reader = new BufferedReader(
-                new IRCFormatFilteringReader(
-                        new InputStreamReader(
-                                new FileInputStream(this.file), charset)));
+        FilteringLineReader.requireAsciiCompatible(charset);
         
-        this.goToEndOfReader();
+        FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+        LogFileSeeker.seekToStart(channel, charset, marshaller, replayDuration);
+        this.rotationDetector = new FileRotationDetector(this.file.toPath(), channel);
+        this.lines = new FilteringLineReader(channel, charset);
+    }
+    
+    @Override
+    protected String readLine() throws IOException {
+        if(this.unterminatedLine != null) {
+            String line = this.unterminatedLine;
+            this.unterminatedLine = null;
+            return line;
+        }
+        return this.lines.readLine();
+    }
+    
+    @Override
+    protected void endOfReaderReached() {
+        try {
+            if(this.rotationDetector.hasChanged()) {
+                // The rest of the old file will not be continued.
+                String line = this.lines.takePartialLine();
+                if(!line.isEmpty()) {
+                    this.unterminatedLine = line;
+                }
+                this.lines.reset(this.rotationDetector.reopen());
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(SingleChannelFileDataSource.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    @Override
+    public void stop() {
+        super.stop();
+        try {
+            this.lines.close();
+        } catch (IOException ex) {
+            Logger.getLogger(SingleChannelFileDataSource.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        }
     }
     
     
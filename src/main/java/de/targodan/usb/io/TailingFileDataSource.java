@@ -0,0 +1,241 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.IRCMessage;
+import de.targodan.usb.io.processing.Marshaller;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * TailingFileDataSource follows a log file similar to "tail -f".
+ * 
+ * Unlike the SingleChannelFileDataSource it does not pause before every line.
+ * All lines that are available are read in one go and the source only waits
+ * once the end of the file has been reached. While waiting it is woken up by
+ * a WatchService as soon as the directory of the file is modified. If the
+ * file system does not report modifications (or is slow to do so) the file
+ * is polled with an adaptive backoff starting at minReadPause and doubling up
+ * to readPause.
+ * 
+ * Only complete lines are marshalled and rotated or truncated files are
+ * followed from their beginning, see LogFileTail.
+ * 
+ * Instead of listening the TailingFileDataSource may also be polled.
+ *
+ * @author Luca Corbatto
+ */
+public class TailingFileDataSource extends ReaderDataSource implements PollableDataSource {
+    private final File file;
+    private final LogFileTail tail;
+    private WatchService watchService;
+    
+    protected long minReadPause;
+    
+    /**
+     * Constructs a TailingFileDataSource that follows the given file starting
+     * at its current end.
+     * 
+     * @param channelName The name of the channel that will be used for any message.
+     * @param fileName The path of the log file.
+     * @param charset The charset of the log file.
+     * @param marshaller The Marshaller to be used for marshalling the lines.
+     * @throws IOException If the file cannot be opened.
+     */
+    public TailingFileDataSource(String channelName, String fileName, Charset charset, Marshaller marshaller) throws IOException {
+        this(channelName, fileName, charset, marshaller, null);
+    }
+    
+    /**
+     * Constructs a TailingFileDataSource that follows the given file starting
+     * at the first line that was logged within the replayDuration.
+     * 
+     * @param channelName The name of the channel that will be used for any message.
+     * @param fileName The path of the log file.
+     * @param charset The charset of the log file.
+     * @param marshaller The Marshaller to be used for marshalling the lines.
+     * @param replayDuration How much of the log should be replayed, null or zero to start at the end.
+     * @throws IOException If the file cannot be opened.
+     */
+    public TailingFileDataSource(String channelName, String fileName, Charset charset, Marshaller marshaller, Duration replayDuration) throws IOException {
+        super(marshaller, channelName);
+        
+        this.file = new File(fileName);
+        if(!this.file.canRead()) {
+            throw new IllegalArgumentException("File \""+fileName+"\" is not readable.");
+        }
+        FilteringLineReader.requireAsciiCompatible(charset);
+        
+        FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+        LogFileSeeker.seekToStart(channel, charset, marshaller, replayDuration);
+        this.tail = new LogFileTail(this.file.toPath(), charset, channel);
+        
+        this.minReadPause = 5; // milliseconds
+    }
+    
+    /**
+     * Creates a WatchService watching the directory of the file.
+     * 
+     * @return the WatchService or null if the directory cannot be watched.
+     */
+    private WatchService createWatchService() {
+        Path dir = this.file.getAbsoluteFile().toPath().getParent();
+        if(dir == null) {
+            return null;
+        }
+        try {
+            WatchService ws = FileSystems.getDefault().newWatchService();
+            dir.register(ws, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE);
+            return ws;
+        } catch(IOException | UnsupportedOperationException ex) {
+            Logger.getLogger(TailingFileDataSource.class.getName())
+                    .log(Level.WARNING, "Could not watch \""+dir+"\", falling back to polling.", ex);
+        }
+        return null;
+    }
+
+    @Override
+    public void listen(BlockingQueue<IRCMessage> output) {
+        if(this.marshaller == null) {
+            throw new IllegalStateException("RegisterMarshaller needs to be called before Listen.");
+        }
+        
+        this.done.set(false);
+        this.run.set(true);
+        // Only created while listening, polling does not need to be woken up.
+        this.watchService = this.createWatchService();
+        
+        Consumer<String> lineHandler = line -> this.handleLine(line, output);
+        long pause = this.minReadPause;
+        while(this.run.get()) {
+            if(this.tail.readAvailable(this.run, lineHandler) > 0) {
+                pause = this.minReadPause;
+                continue;
+            }
+            if(this.tail.reopenIfRotated(lineHandler)) {
+                pause = this.minReadPause;
+                continue;
+            }
+            
+            this.waitForModification(pause);
+            pause = Math.min(pause * 2, this.readPause);
+        }
+        this.closeWatchService();
+        this.done.set(true);
+    }
+    
+    @Override
+    public boolean poll(BlockingQueue<IRCMessage> output) {
+        Consumer<String> lineHandler = line -> this.handleLine(line, output);
+        int n = this.tail.readAvailable(this.run, lineHandler);
+        if(this.tail.reopenIfRotated(lineHandler)) {
+            this.tail.readAvailable(this.run, lineHandler);
+            return true;
+        }
+        return n > 0;
+    }
+
+    @Override
+    public long getMinPollInterval() {
+        return this.minReadPause;
+    }
+
+    @Override
+    public long getMaxPollInterval() {
+        return this.readPause;
+    }
+    
+    /**
+     * Waits until the directory of the file was modified or the timeout has
+     * passed.
+     * 
+     * @param timeout The maximum time to wait in milliseconds.
+     */
+    private void waitForModification(long timeout) {
+        try {
+            if(this.watchService == null) {
+                Thread.sleep(timeout);
+                return;
+            }
+            
+            WatchKey key = this.watchService.poll(timeout, TimeUnit.MILLISECONDS);
+            if(key != null) {
+                key.pollEvents();
+                key.reset();
+            }
+        } catch (InterruptedException ex) {
+            Logger.getLogger(TailingFileDataSource.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        } catch (ClosedWatchServiceException ex) {
+            // Stop was called, listen will return shortly.
+        }
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        this.tail.close();
+    }
+    
+    /**
+     * Closes the WatchService if there is one.
+     */
+    private void closeWatchService() {
+        if(this.watchService == null) {
+            return;
+        }
+        try {
+            this.watchService.close();
+        } catch (IOException ex) {
+            Logger.getLogger(TailingFileDataSource.class.getName())
+                    .log(Level.SEVERE, null, ex);
+        }
+        this.watchService = null;
+    }
+    
+    @Override
+    public String getName() {
+        return "file://"+this.file.getPath();
+    }
+
+    @Override
+    public String getShortName() {
+        return "file://..."+File.separator+this.file.getName();
+    }
+}
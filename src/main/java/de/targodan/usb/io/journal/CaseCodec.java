@@ -0,0 +1,261 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io.journal;
+
+import de.targodan.usb.data.Case;
+import de.targodan.usb.data.Client;
+import de.targodan.usb.data.Platform;
+import de.targodan.usb.data.Rat;
+import de.targodan.usb.data.Report;
+import de.targodan.usb.data.System;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * CaseCodec writes the complete state of a case in a compact binary format
+ * and reads it back.
+ * 
+ * Rats that are referenced multiple times by a case (e.g. a rat that called
+ * and was assigned afterwards) are written once and referenced by index so
+ * the restored case references the same Rat instance in the same places.
+ * 
+ * @author Luca Corbatto
+ */
+class CaseCodec {
+    private CaseCodec() {}
+    
+    /**
+     * Writes the state of the case c.
+     * 
+     * @param out
+     * @param c
+     * @throws IOException 
+     */
+    public static void writeCase(DataOutput out, Case c) throws IOException {
+        out.writeInt(c.getNumber());
+        out.writeBoolean(c.isActive());
+        out.writeBoolean(c.isCodeRed());
+        CaseCodec.writeTime(out, c.getOpenTime());
+        CaseCodec.writeTime(out, c.getCloseTime());
+        
+        Client client = c.getClient();
+        CaseCodec.writeString(out, client.getIRCName());
+        CaseCodec.writeString(out, client.getCMDRName());
+        CaseCodec.writePlatform(out, client.getPlatform());
+        out.writeUTF(client.getLanguage());
+        
+        System system = c.getSystem();
+        CaseCodec.writeString(out, system.getName());
+        out.writeBoolean(system.isConfirmed());
+        
+        List<Rat> distinctRats = new ArrayList<>();
+        Map<Rat, Integer> ratIndexes = new IdentityHashMap<>();
+        c.getCalls().forEach(rat -> CaseCodec.indexRat(rat, distinctRats, ratIndexes));
+        c.getRats().forEach(rat -> CaseCodec.indexRat(rat, distinctRats, ratIndexes));
+        if(c.getFirstLimpet() != null) {
+            CaseCodec.indexRat(c.getFirstLimpet(), distinctRats, ratIndexes);
+        }
+        
+        out.writeInt(distinctRats.size());
+        for(Rat rat : distinctRats) {
+            CaseCodec.writeRat(out, rat);
+        }
+        out.writeInt(c.getCalls().size());
+        for(Rat rat : c.getCalls()) {
+            out.writeInt(ratIndexes.get(rat));
+        }
+        out.writeInt(c.getRats().size());
+        for(Rat rat : c.getRats()) {
+            out.writeInt(ratIndexes.get(rat));
+        }
+        out.writeInt(c.getFirstLimpet() == null ? -1 : ratIndexes.get(c.getFirstLimpet()));
+        
+        out.writeInt(c.getNotes().size());
+        for(String note : c.getNotes()) {
+            out.writeUTF(note);
+        }
+    }
+    
+    /**
+     * Reads a case as written by writeCase.
+     * 
+     * The returned case is not attached to any CaseManager.
+     * 
+     * @param in
+     * @return the read case.
+     * @throws IOException 
+     */
+    public static Case readCase(DataInput in) throws IOException {
+        int number = in.readInt();
+        boolean active = in.readBoolean();
+        boolean codeRed = in.readBoolean();
+        LocalDateTime openTime = CaseCodec.readTime(in);
+        LocalDateTime closeTime = CaseCodec.readTime(in);
+        
+        String ircName = CaseCodec.readString(in);
+        String cmdrName = CaseCodec.readString(in);
+        Platform platform = CaseCodec.readPlatform(in);
+        String language = in.readUTF();
+        Client client = new Client(ircName, cmdrName, platform, language);
+        
+        System system = new System(CaseCodec.readString(in));
+        if(in.readBoolean()) {
+            system.setConfirmed(true);
+        }
+        
+        int ratCount = in.readInt();
+        List<Rat> distinctRats = new ArrayList<>(ratCount);
+        for(int i = 0; i < ratCount; ++i) {
+            distinctRats.add(CaseCodec.readRat(in));
+        }
+        
+        Case c = new Case(number, client, system, codeRed, openTime);
+        if(!active) {
+            c.setActive(false);
+        }
+        int callCount = in.readInt();
+        for(int i = 0; i < callCount; ++i) {
+            c.addCall(CaseCodec.ratAt(distinctRats, in.readInt()));
+        }
+        int assignedCount = in.readInt();
+        for(int i = 0; i < assignedCount; ++i) {
+            c.assignRat(CaseCodec.ratAt(distinctRats, in.readInt()));
+        }
+        int firstLimpet = in.readInt();
+        if(firstLimpet != -1) {
+            c.setFirstLimpet(CaseCodec.ratAt(distinctRats, firstLimpet));
+        }
+        
+        int noteCount = in.readInt();
+        String[] notes = new String[noteCount];
+        for(int i = 0; i < noteCount; ++i) {
+            notes[i] = in.readUTF();
+        }
+        c.setNotes(notes);
+        
+        if(closeTime != null) {
+            c.close(closeTime);
+        }
+        return c;
+    }
+    
+    private static void indexRat(Rat rat, List<Rat> distinctRats, Map<Rat, Integer> ratIndexes) {
+        if(!ratIndexes.containsKey(rat)) {
+            ratIndexes.put(rat, distinctRats.size());
+            distinctRats.add(rat);
+        }
+    }
+    
+    private static Rat ratAt(List<Rat> distinctRats, int index) throws IOException {
+        if(index < 0 || index >= distinctRats.size()) {
+            throw new IOException("Invalid rat reference "+index+".");
+        }
+        return distinctRats.get(index);
+    }
+    
+    private static void writeRat(DataOutput out, Rat rat) throws IOException {
+        CaseCodec.writeString(out, rat.getIRCName());
+        CaseCodec.writeString(out, rat.getCMDRName());
+        CaseCodec.writePlatform(out, rat.getPlatform());
+        out.writeInt(rat.getJumps());
+        out.writeBoolean(rat.isAssigned());
+        out.writeInt(rat.getReports().size());
+        for(Report report : rat.getReports()) {
+            out.writeUTF(report.getType().name());
+            out.writeBoolean(report.isPositive());
+        }
+    }
+    
+    private static Rat readRat(DataInput in) throws IOException {
+        String ircName = CaseCodec.readString(in);
+        String cmdrName = CaseCodec.readString(in);
+        Rat rat = new Rat(ircName, cmdrName, CaseCodec.readPlatform(in));
+        rat.setJumps(in.readInt());
+        rat.setAssigned(in.readBoolean());
+        int reportCount = in.readInt();
+        for(int i = 0; i < reportCount; ++i) {
+            Report.Type type = CaseCodec.valueOf(Report.Type.class, in.readUTF());
+            rat.insertReport(new Report(type, in.readBoolean()));
+        }
+        return rat;
+    }
+    
+    private static void writeString(DataOutput out, String str) throws IOException {
+        out.writeBoolean(str != null);
+        if(str != null) {
+            out.writeUTF(str);
+        }
+    }
+    
+    private static String readString(DataInput in) throws IOException {
+        if(!in.readBoolean()) {
+            return null;
+        }
+        return in.readUTF();
+    }
+    
+    private static void writePlatform(DataOutput out, Platform platform) throws IOException {
+        CaseCodec.writeString(out, platform == null ? null : platform.name());
+    }
+    
+    private static Platform readPlatform(DataInput in) throws IOException {
+        String name = CaseCodec.readString(in);
+        if(name == null) {
+            return null;
+        }
+        return CaseCodec.valueOf(Platform.class, name);
+    }
+    
+    private static <T extends Enum<T>> T valueOf(Class<T> type, String name) throws IOException {
+        try {
+            return Enum.valueOf(type, name);
+        } catch(IllegalArgumentException ex) {
+            throw new IOException("Unknown "+type.getSimpleName()+" \""+name+"\".", ex);
+        }
+    }
+    
+    private static void writeTime(DataOutput out, LocalDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if(time != null) {
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+        }
+    }
+    
+    private static LocalDateTime readTime(DataInput in) throws IOException {
+        if(!in.readBoolean()) {
+            return null;
+        }
+        long seconds = in.readLong();
+        int nanos = in.readInt();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+}
@@ -0,0 +1,539 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io.journal;
+
+import de.targodan.usb.data.Case;
+import de.targodan.usb.data.CaseEvent;
+import de.targodan.usb.data.CaseListener;
+import de.targodan.usb.data.CaseManager;
+import de.targodan.usb.data.CaseSnapshot;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * CaseJournal persists the cases of a CaseManager so they can be restored
+ * after a restart or a crash.
+ * 
+ * Every change of a case is appended to a journal file as a record holding
+ * the complete state of the case, removed cases are appended as a removal
+ * record. The records are written and synced to disk by a background thread
+ * every commit interval so all changes within one interval share a single
+ * fsync. After a configurable number of records a snapshot of all cases is
+ * written and the journal is started over.
+ * 
+ * Restoring loads the snapshot and replays the journal on top of it. The
+ * snapshot and the journal both carry a generation number and the journal is
+ * only replayed if it belongs to the snapshot. After a crash between writing
+ * a snapshot and starting the new journal only the snapshot is restored, as
+ * the old journal holds states of the cases that are older than the snapshot.
+ * A torn record at the end of the journal is detected by its checksum and
+ * ignored.
+ * 
+ * @author Luca Corbatto
+ */
+public class CaseJournal implements CaseListener {
+    public static final String SNAPSHOT_FILE = "cases.snapshot";
+    public static final String JOURNAL_FILE = "cases.journal";
+    
+    private static final int SNAPSHOT_MAGIC = 0x55534253;
+    private static final int JOURNAL_MAGIC = 0x5553424A;
+    private static final int FORMAT_VERSION = 2;
+    private static final int HEADER_SIZE = 16;
+    
+    private static final byte RECORD_UPSERT = 1;
+    private static final byte RECORD_REMOVE = 2;
+    
+    private final Path directory;
+    private final long commitIntervalMillis;
+    private final int recordsPerSnapshot;
+    
+    private CaseManager cm;
+    private FileChannel journal;
+    private ScheduledExecutorService flusher;
+    
+    private final ByteArrayOutputStream pendingRecords;
+    private byte[] pendingSnapshot;
+    private long pendingSnapshotGeneration;
+    private int pendingSnapshotOffset;
+    private int recordsSinceSnapshot;
+    private long generation;
+    
+    /**
+     * Constructs a CaseJournal storing its files in the given directory.
+     * 
+     * @param directory The directory for the snapshot and the journal.
+     * @param commitIntervalMillis The time between two syncs of the journal.
+     * @param recordsPerSnapshot The number of records after which a new
+     * snapshot is written.
+     */
+    public CaseJournal(Path directory, long commitIntervalMillis, int recordsPerSnapshot) {
+        if(commitIntervalMillis <= 0) {
+            throw new IllegalArgumentException("The commit interval must be positive.");
+        }
+        if(recordsPerSnapshot <= 0) {
+            throw new IllegalArgumentException("The number of records per snapshot must be positive.");
+        }
+        
+        this.directory = directory;
+        this.commitIntervalMillis = commitIntervalMillis;
+        this.recordsPerSnapshot = recordsPerSnapshot;
+        
+        this.pendingRecords = new ByteArrayOutputStream();
+        this.pendingSnapshot = null;
+        this.pendingSnapshotGeneration = 0;
+        this.pendingSnapshotOffset = 0;
+        this.recordsSinceSnapshot = 0;
+        this.generation = 0;
+    }
+    
+    /**
+     * Restores the cases from the snapshot and the journal.
+     * 
+     * If the files have not been written to for longer than maxAge nothing
+     * is restored, as the cases will be outdated.
+     * 
+     * @param maxAge The maximum age of the files.
+     * @return The restored cases which are not attached to any CaseManager.
+     * @throws IOException 
+     */
+    public List<Case> recover(Duration maxAge) throws IOException {
+        Path snapshotPath = this.directory.resolve(SNAPSHOT_FILE);
+        Path journalPath = this.directory.resolve(JOURNAL_FILE);
+        
+        Instant lastWrite = null;
+        for(Path path : new Path[] {snapshotPath, journalPath}) {
+            if(Files.exists(path)) {
+                Instant modified = Files.getLastModifiedTime(path).toInstant();
+                if(lastWrite == null || modified.isAfter(lastWrite)) {
+                    lastWrite = modified;
+                }
+            }
+        }
+        if(lastWrite == null) {
+            return new ArrayList<>();
+        }
+        if(lastWrite.isBefore(Instant.now().minus(maxAge))) {
+            Logger.getLogger(CaseJournal.class.getName()).log(Level.INFO, "Journal in \"{0}\" is outdated, not restoring any cases.", this.directory);
+            return new ArrayList<>();
+        }
+        
+        Map<Integer, Case> cases = new LinkedHashMap<>();
+        long snapshotGeneration = -1;
+        if(Files.exists(snapshotPath)) {
+            snapshotGeneration = this.readSnapshot(Files.readAllBytes(snapshotPath), cases);
+        }
+        if(Files.exists(journalPath)) {
+            this.replayJournal(Files.readAllBytes(journalPath), snapshotGeneration, cases);
+        }
+        
+        Logger.getLogger(CaseJournal.class.getName()).log(Level.INFO, "Restored {0} cases from \"{1}\".", new Object[]{cases.size(), this.directory});
+        return new ArrayList<>(cases.values());
+    }
+    
+    /**
+     * Starts journaling all changes of the cases of the given CaseManager.
+     * 
+     * This writes a snapshot of the current cases and starts a new journal.
+     * 
+     * @param cm The CaseManager to be journaled.
+     * @throws IOException 
+     */
+    public void attach(CaseManager cm) throws IOException {
+        if(this.cm != null) {
+            throw new IllegalStateException("The CaseJournal is already attached to a CaseManager.");
+        }
+        this.cm = cm;
+        
+        Files.createDirectories(this.directory);
+        long attachGeneration = Math.max(
+                CaseJournal.readGeneration(this.directory.resolve(SNAPSHOT_FILE), SNAPSHOT_MAGIC),
+                CaseJournal.readGeneration(this.directory.resolve(JOURNAL_FILE), JOURNAL_MAGIC)
+        ) + 1;
+        synchronized(this) {
+            this.generation = attachGeneration;
+        }
+        this.writeSnapshot(this.encodeSnapshot(cm.getSnapshot(), attachGeneration));
+        
+        this.journal = FileChannel.open(
+                this.directory.resolve(JOURNAL_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING
+        );
+        this.startJournal(attachGeneration);
+        
+        cm.addListener(this);
+        
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread t = new Thread(runnable);
+            t.setName("CaseJournalThread");
+            t.setDaemon(true);
+            return t;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flush, this.commitIntervalMillis, this.commitIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Stops journaling and writes all pending records to disk.
+     */
+    public void close() {
+        if(this.cm == null) {
+            return;
+        }
+        this.cm.removeListener(this);
+        
+        this.flusher.shutdown();
+        try {
+            this.flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Logger.getLogger(CaseJournal.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        this.flush();
+        
+        try {
+            this.journal.close();
+        } catch (IOException ex) {
+            Logger.getLogger(CaseJournal.class.getName()).log(Level.SEVERE, null, ex);
+        }
+        this.cm = null;
+    }
+
+    @Override
+    public void caseChanged(CaseEvent event) {
+        byte[] record;
+        try {
+            record = this.encodeRecord(event);
+        } catch (IOException | RuntimeException ex) {
+            // The case may have been changed concurrently, it will be
+            // written again with its next change.
+            Logger.getLogger(CaseJournal.class.getName()).log(Level.WARNING, "Could not journal change of case.", ex);
+            return;
+        }
+        
+        synchronized(this) {
+            this.pendingRecords.write(record, 0, record.length);
+            ++this.recordsSinceSnapshot;
+            
+            if(this.recordsSinceSnapshot >= this.recordsPerSnapshot) {
+                try {
+                    // The snapshot contains all pending records, they are
+                    // only dropped once the snapshot is on disk.
+                    this.pendingSnapshot = this.encodeSnapshot(this.cm.getSnapshot(), this.generation + 1);
+                    this.pendingSnapshotGeneration = ++this.generation;
+                    this.pendingSnapshotOffset = this.pendingRecords.size();
+                    this.recordsSinceSnapshot = 0;
+                } catch (IOException | RuntimeException ex) {
+                    Logger.getLogger(CaseJournal.class.getName()).log(Level.WARNING, "Could not create snapshot.", ex);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Writes the pending snapshot and records to disk.
+     * 
+     * If the snapshot was written the journal is started over with the
+     * records following the snapshot. Otherwise all records are appended to
+     * the current journal, so none of them are lost.
+     * 
+     * This is only ever called by the flusher thread or after it was shut
+     * down, so there is only one writer.
+     */
+    private void flush() {
+        byte[] snapshot;
+        long snapshotGeneration;
+        int snapshotOffset;
+        byte[] records;
+        synchronized(this) {
+            snapshot = this.pendingSnapshot;
+            snapshotGeneration = this.pendingSnapshotGeneration;
+            snapshotOffset = this.pendingSnapshotOffset;
+            this.pendingSnapshot = null;
+            this.pendingSnapshotOffset = 0;
+            records = this.pendingRecords.toByteArray();
+            this.pendingRecords.reset();
+        }
+        
+        try {
+            int offset = 0;
+            if(snapshot != null) {
+                try {
+                    this.writeSnapshot(snapshot);
+                    this.journal.truncate(0);
+                    this.journal.position(0);
+                    this.startJournal(snapshotGeneration);
+                    offset = snapshotOffset;
+                } catch (IOException ex) {
+                    Logger.getLogger(CaseJournal.class.getName()).log(Level.SEVERE, "Could not write snapshot.", ex);
+                }
+            }
+            if(records.length > offset) {
+                ByteBuffer buffer = ByteBuffer.wrap(records, offset, records.length - offset);
+                while(buffer.hasRemaining()) {
+                    this.journal.write(buffer);
+                }
+                this.journal.force(false);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(CaseJournal.class.getName()).log(Level.SEVERE, null, ex);
+        }
+    }
+    
+    /**
+     * Writes the header of a new journal belonging to the snapshot with the
+     * given generation.
+     * 
+     * @param journalGeneration
+     * @throws IOException 
+     */
+    private void startJournal(long journalGeneration) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(JOURNAL_MAGIC).putInt(FORMAT_VERSION).putLong(journalGeneration).flip();
+        while(header.hasRemaining()) {
+            this.journal.write(header);
+        }
+        this.journal.force(true);
+    }
+    
+    /**
+     * Returns the generation in the header of the given snapshot or journal
+     * file or 0 if there is no such file or it has an unknown format.
+     * 
+     * @param path
+     * @param magic The magic number of the file type.
+     * @return the generation in the header of the file.
+     */
+    private static long readGeneration(Path path, int magic) {
+        if(!Files.exists(path)) {
+            return 0;
+        }
+        try(DataInputStream in = new DataInputStream(Files.newInputStream(path))) {
+            if(in.readInt() != magic || in.readInt() != FORMAT_VERSION) {
+                return 0;
+            }
+            return Math.max(0, in.readLong());
+        } catch(IOException ex) {
+            return 0;
+        }
+    }
+    
+    /**
+     * Encodes a journal record for the given event.
+     * 
+     * A record consists of its length, its type, the payload and the CRC32
+     * of type and payload.
+     * 
+     * @param event
+     * @return the encoded record.
+     * @throws IOException 
+     */
+    private byte[] encodeRecord(CaseEvent event) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(body);
+        if(event.getType() == CaseEvent.Type.REMOVED) {
+            out.writeByte(RECORD_REMOVE);
+            out.writeInt(event.getSource().getNumber());
+        } else {
+            out.writeByte(RECORD_UPSERT);
+            CaseCodec.writeCase(out, event.getSource());
+        }
+        out.flush();
+        
+        CRC32 crc = new CRC32();
+        crc.update(body.toByteArray());
+        
+        ByteArrayOutputStream record = new ByteArrayOutputStream(body.size() + 8);
+        DataOutputStream recordOut = new DataOutputStream(record);
+        recordOut.writeInt(body.size());
+        body.writeTo(recordOut);
+        recordOut.writeInt((int)crc.getValue());
+        recordOut.flush();
+        return record.toByteArray();
+    }
+    
+    /**
+     * Replays the records of the given journal onto the cases.
+     * 
+     * The journal is ignored unless it belongs to the snapshot with the
+     * given generation.
+     * 
+     * @param data The contents of the journal file.
+     * @param snapshotGeneration The generation of the restored snapshot or
+     * -1 if none was restored.
+     * @param cases The cases by number.
+     * @throws IOException 
+     */
+    private void replayJournal(byte[] data, long snapshotGeneration, Map<Integer, Case> cases) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if(data.length < HEADER_SIZE || in.readInt() != JOURNAL_MAGIC || in.readInt() != FORMAT_VERSION) {
+            Logger.getLogger(CaseJournal.class.getName()).log(Level.WARNING, "Ignoring journal with unknown format.");
+            return;
+        }
+        long journalGeneration = in.readLong();
+        if(journalGeneration != snapshotGeneration) {
+            Logger.getLogger(CaseJournal.class.getName()).log(Level.INFO, "Ignoring journal of generation {0} which does not belong to the snapshot.", journalGeneration);
+            return;
+        }
+        
+        int offset = HEADER_SIZE;
+        while(offset < data.length) {
+            if(data.length - offset < 4) {
+                break;
+            }
+            int length = ByteBuffer.wrap(data, offset, 4).getInt();
+            if(length <= 0 || data.length - offset - 8 < length) {
+                break;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, offset + 4, length);
+            if((int)crc.getValue() != ByteBuffer.wrap(data, offset + 4 + length, 4).getInt()) {
+                break;
+            }
+            
+            DataInputStream record = new DataInputStream(new ByteArrayInputStream(data, offset + 4, length));
+            byte type = record.readByte();
+            switch(type) {
+                case RECORD_UPSERT:
+                    Case c = CaseCodec.readCase(record);
+                    cases.put(c.getNumber(), c);
+                    break;
+                    
+                case RECORD_REMOVE:
+                    cases.remove(record.readInt());
+                    break;
+                    
+                default:
+                    throw new IOException("Unknown journal record type "+type+".");
+            }
+            offset += length + 8;
+        }
+        
+        if(offset < data.length) {
+            Logger.getLogger(CaseJournal.class.getName()).log(Level.WARNING, "Ignoring {0} bytes of incomplete records at the end of the journal.", data.length - offset);
+        }
+    }
+    
+    /**
+     * Encodes a snapshot of all cases in the given CaseSnapshot.
+     * 
+     * @param snapshot
+     * @param snapshotGeneration The generation of the snapshot.
+     * @return the encoded snapshot.
+     * @throws IOException 
+     */
+    private byte[] encodeSnapshot(CaseSnapshot snapshot, long snapshotGeneration) throws IOException {
+        ByteArrayOutputStream data = new ByteArrayOutputStream(1024);
+        DataOutputStream out = new DataOutputStream(data);
+        out.writeInt(SNAPSHOT_MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(snapshotGeneration);
+        out.writeInt(snapshot.size());
+        for(int i = 0; i < snapshot.size(); ++i) {
+            CaseCodec.writeCase(out, snapshot.get(i));
+        }
+        out.flush();
+        
+        CRC32 crc = new CRC32();
+        crc.update(data.toByteArray());
+        out.writeInt((int)crc.getValue());
+        out.flush();
+        return data.toByteArray();
+    }
+    
+    /**
+     * Reads the cases of an encoded snapshot.
+     * 
+     * @param data The contents of the snapshot file.
+     * @param cases The cases by number.
+     * @return the generation of the snapshot or -1 if it was ignored.
+     * @throws IOException 
+     */
+    private long readSnapshot(byte[] data, Map<Integer, Case> cases) throws IOException {
+        if(data.length < HEADER_SIZE + 8) {
+            Logger.getLogger(CaseJournal.class.getName()).log(Level.WARNING, "Ignoring incomplete snapshot.");
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length - 4);
+        if((int)crc.getValue() != ByteBuffer.wrap(data, data.length - 4, 4).getInt()) {
+            Logger.getLogger(CaseJournal.class.getName()).log(Level.WARNING, "Ignoring corrupt snapshot.");
+            return -1;
+        }
+        
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, 0, data.length - 4));
+        if(in.readInt() != SNAPSHOT_MAGIC || in.readInt() != FORMAT_VERSION) {
+            Logger.getLogger(CaseJournal.class.getName()).log(Level.WARNING, "Ignoring snapshot with unknown format.");
+            return -1;
+        }
+        long snapshotGeneration = in.readLong();
+        try {
+            int count = in.readInt();
+            for(int i = 0; i < count; ++i) {
+                Case c = CaseCodec.readCase(in);
+                cases.put(c.getNumber(), c);
+            }
+        } catch(EOFException ex) {
+            throw new IOException("Snapshot ended unexpectedly.", ex);
+        }
+        return snapshotGeneration;
+    }
+    
+    /**
+     * Atomically replaces the snapshot file with the given snapshot.
+     * 
+     * @param snapshot The encoded snapshot.
+     * @throws IOException 
+     */
+    private void writeSnapshot(byte[] snapshot) throws IOException {
+        Path tmp = this.directory.resolve(SNAPSHOT_FILE + ".tmp");
+        try(FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(snapshot);
+            while(buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, this.directory.resolve(SNAPSHOT_FILE), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
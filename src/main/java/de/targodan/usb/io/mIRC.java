@@ -27,7 +27,6 @@ import de.targodan.usb.io.processing.Marshaller;
 import de.targodan.usb.io.processing.mIRCMarshaller;
 import java.io.File;
 import java.nio.charset.Charset;
-import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.Collections;
@@ -65,10 +64,7 @@ public class mIRC implements IRCClient {
 
     @Override
     public String getFuelratsLogfilePath() {
-        String basePath = this.getBasePath();
-        
-        Path logsPath = Paths.get(basePath, "logs");
-        File logsFolder = logsPath.toFile();
+        File logsFolder = new File(this.getLogDirectoryPath());
         
         File fuelratsFile = Arrays.asList(logsFolder.listFiles()).stream()
                 .filter(f -> f.isFile())
@@ -81,6 +77,25 @@ public class mIRC implements IRCClient {
         return fuelratsFile.getAbsolutePath();
     }
 
+    @Override
+    public String getLogDirectoryPath() {
+        return Paths.get(this.getBasePath(), "logs").toString();
+    }
+    
+    @Override
+    public String getChannelFromLogFileName(String fileName) {
+        // mIRC logs to "<channel>.<network>.log" by default.
+        if(!fileName.toLowerCase().endsWith(".log")) {
+            return null;
+        }
+        String name = fileName.substring(0, fileName.length() - 4);
+        int networkStart = name.lastIndexOf('.');
+        if(networkStart <= 0) {
+            return null;
+        }
+        return name.substring(0, networkStart);
+    }
+
     @Override
     public Marshaller getMarshaller() {
         return new mIRCMarshaller();
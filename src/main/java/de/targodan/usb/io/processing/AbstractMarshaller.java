@@ -23,16 +23,11 @@
  */
 package de.targodan.usb.io.processing;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  *
  * @author Luca Corbatto
  */
 public abstract class AbstractMarshaller implements Marshaller {
-    protected final Pattern sanitizationPattern = Pattern.compile("\\.?:?\\<?[+\\-%@~]?(?<clean>.*?)\\>?:?\\.?");
-    
     /**
      * Sanitizes the given username.
      * 
@@ -43,10 +38,81 @@ public abstract class AbstractMarshaller implements Marshaller {
      * @return the sanitized username.
      */
     protected String sanitizeUsername(String name) {
-        Matcher m = this.sanitizationPattern.matcher(name);
-        if(!m.matches()) {
-            throw new UnknownError("This should never happen.");
+        return this.sanitizeUsername(name, 0, name.length());
+    }
+    
+    /**
+     * Sanitizes the username between start and end of the given String.
+     * 
+     * The prefix ".:&lt;" followed by a mode like "@" and the postfix
+     * "&gt;:." are stripped, every single character of them being optional.
+     * 
+     * @param s The String containing the name.
+     * @param start The index of the first character of the name.
+     * @param end The index after the last character of the name.
+     * @return the sanitized username.
+     */
+    protected String sanitizeUsername(String s, int start, int end) {
+        int nameStart = this.sanitizedStart(s, start, end);
+        return s.substring(nameStart, this.sanitizedEnd(s, nameStart, end));
+    }
+    
+    /**
+     * Returns the index of the first character of the username between start
+     * and end of the given String with its prefix stripped.
+     * 
+     * @param s The String containing the name.
+     * @param start The index of the first character of the name.
+     * @param end The index after the last character of the name.
+     * @return the index of the first character of the sanitized username.
+     */
+    protected int sanitizedStart(String s, int start, int end) {
+        if(start < end && s.charAt(start) == '.') {
+            ++start;
+        }
+        if(start < end && s.charAt(start) == ':') {
+            ++start;
         }
-        return m.group("clean");
+        if(start < end && s.charAt(start) == '<') {
+            ++start;
+        }
+        if(start < end && AbstractMarshaller.isModePrefix(s.charAt(start))) {
+            ++start;
+        }
+        return start;
+    }
+    
+    /**
+     * Returns the index after the last character of the username between
+     * start and end of the given String with its postfix stripped.
+     * 
+     * @param s The String containing the name.
+     * @param start The index of the first character of the name, its prefix
+     * already stripped.
+     * @param end The index after the last character of the name.
+     * @return the index after the last character of the sanitized username.
+     */
+    protected int sanitizedEnd(String s, int start, int end) {
+        if(start < end && s.charAt(end-1) == '.') {
+            --end;
+        }
+        if(start < end && s.charAt(end-1) == ':') {
+            --end;
+        }
+        if(start < end && s.charAt(end-1) == '>') {
+            --end;
+        }
+        return end;
+    }
+    
+    /**
+     * Returns true if the given character is a prefix denoting the mode of a
+     * user in a channel.
+     * 
+     * @param c The character to be checked.
+     * @return true if the given character is a mode prefix.
+     */
+    private static boolean isModePrefix(char c) {
+        return c == '+' || c == '-' || c == '%' || c == '@' || c == '~';
     }
 }
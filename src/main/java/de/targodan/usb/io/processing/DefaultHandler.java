@@ -27,6 +27,7 @@ import de.targodan.usb.data.Case;
 import de.targodan.usb.data.CaseManager;
 import de.targodan.usb.data.Platform;
 import de.targodan.usb.data.Rat;
+import de.targodan.usb.data.RatRegistry;
 import de.targodan.usb.data.Report;
 import de.targodan.usb.data.System;
 import java.util.HashMap;
@@ -41,6 +42,8 @@ import java.util.logging.Logger;
  * @author Luca Corbatto
  */
 public class DefaultHandler implements Handler {
+    private static final long NOT_A_CASE_NUMBER = Long.MIN_VALUE;
+    
     protected Case latestCase;
     protected Map<Platform, Case> latestCases;
     protected CaseManager cm;
@@ -52,9 +55,24 @@ public class DefaultHandler implements Handler {
         this.latestCases = new HashMap<>();
     }
 
+    /**
+     * Registers a CaseManager.
+     * 
+     * If the CaseManager already contains open cases, e.g. because they were
+     * restored after a restart, the latest of them are used for guessing the
+     * case of calls and reports.
+     */
     @Override
     public void registerCaseManager(CaseManager cm) {
         this.cm = cm;
+        
+        this.latestCase = null;
+        this.latestCases.clear();
+        cm.getOpenCases().forEach(c -> {
+            // The open cases are sorted by opening time.
+            this.latestCase = c;
+            this.latestCases.put(c.getClient().getPlatform(), c);
+        });
     }
 
     @Override
@@ -162,7 +180,7 @@ public class DefaultHandler implements Handler {
             throw new IllegalStateException("Call RegisterCaseManager before calling any of the handle* functions.");
         }
         
-        Case c = this.lookupCase(caseIdentifier, new Rat(ratIrcName));
+        Case c = this.lookupCase(caseIdentifier, ratIrcName, RatRegistry.getInstance().guessPlatform(ratIrcName));
         if(c == null) {
             Logger.getLogger(DefaultHandler.class.getName()).log(Level.WARNING, "Recieved report but couldn't find related case.");
             return;
@@ -190,11 +208,27 @@ public class DefaultHandler implements Handler {
      * @return 
      */
     protected Case lookupCase(String caseIdentifier, Rat rat) {
+        if(rat == null) {
+            return this.lookupCase(caseIdentifier, null, null);
+        }
+        return this.lookupCase(caseIdentifier, rat.getIRCName(), rat.getPlatform());
+    }
+    
+    /**
+     * Returns the determined Case like lookupCase(String, Rat) but takes the
+     * IRC name and platform of the rat instead of the rat.
+     * 
+     * @param caseIdentifier The case identifier to search for, can be null.
+     * @param ratIrcName The IRC name of the rat to search for, can be null.
+     * @param ratPlatform The platform of the rat, can be null.
+     * @return 
+     */
+    protected Case lookupCase(String caseIdentifier, String ratIrcName, Platform ratPlatform) {
         if(caseIdentifier != null) {
-            try {
-                int caseID = Integer.valueOf(caseIdentifier.replace("#", ""));
-                return this.cm.getCase(caseID);
-            } catch(Exception ex) {}
+            long caseID = DefaultHandler.parseCaseNumber(caseIdentifier);
+            if(caseID != DefaultHandler.NOT_A_CASE_NUMBER) {
+                return this.cm.getCase((int)caseID);
+            }
 
             // Was no numeral, so we'll assume it's the clients name.
             Case c = this.cm.lookupCaseOfClient(caseIdentifier);
@@ -203,16 +237,16 @@ public class DefaultHandler implements Handler {
             }
         }
         
-        if(rat != null) {
+        if(ratIrcName != null) {
             // Couldn't find the client name, try to find the rat.
-            Case c = this.cm.lookupCaseWithRat(rat);
+            Case c = this.cm.lookupCaseWithRat(ratIrcName);
             if(c != null) {
                 return c;
             }
             
             // Couldn't find the rat, try to guess the case via platform
-            if(rat.getPlatform() != null) {
-                Case latestPlatformCase = this.latestCases.get(rat.getPlatform());
+            if(ratPlatform != null) {
+                Case latestPlatformCase = this.latestCases.get(ratPlatform);
                 if(latestPlatformCase != null && latestPlatformCase.isActive()) {
                     return latestPlatformCase;
                 }
@@ -227,6 +261,53 @@ public class DefaultHandler implements Handler {
         return null;
     }
     
+    /**
+     * Parses the case identifier as a case number ignoring any '#' like
+     * Integer.valueOf(caseIdentifier.replace("#", "")) would, but without
+     * throwing if it is not a number.
+     * 
+     * @param caseIdentifier The case identifier to be parsed.
+     * @return the case number or NOT_A_CASE_NUMBER.
+     */
+    private static long parseCaseNumber(String caseIdentifier) {
+        int i = 0;
+        int length = caseIdentifier.length();
+        while(i < length && caseIdentifier.charAt(i) == '#') {
+            ++i;
+        }
+        boolean negative = false;
+        if(i < length && (caseIdentifier.charAt(i) == '+' || caseIdentifier.charAt(i) == '-')) {
+            negative = caseIdentifier.charAt(i) == '-';
+            ++i;
+        }
+        
+        long number = 0;
+        boolean hasDigits = false;
+        for(; i < length; ++i) {
+            char c = caseIdentifier.charAt(i);
+            if(c == '#') {
+                continue;
+            }
+            int digit = Character.digit(c, 10);
+            if(digit < 0) {
+                return DefaultHandler.NOT_A_CASE_NUMBER;
+            }
+            number = number * 10 + digit;
+            if(number > (long)Integer.MAX_VALUE + 1) {
+                return DefaultHandler.NOT_A_CASE_NUMBER;
+            }
+            hasDigits = true;
+        }
+        if(!hasDigits) {
+            return DefaultHandler.NOT_A_CASE_NUMBER;
+        }
+        number = negative ? -number : number;
+        if(number > Integer.MAX_VALUE) {
+            return DefaultHandler.NOT_A_CASE_NUMBER;
+        }
+        return number;
+    }
+    
     /**
      * Handles the !close command.
      * 
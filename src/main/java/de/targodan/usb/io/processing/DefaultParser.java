@@ -170,9 +170,18 @@ public class DefaultParser implements Parser {
             return false;
         }
         
-        String cmd = m.group("cmd");
-        String params = m.group("params");
-        
+        return this.handleCommand(m.group("cmd"), m.group("params"));
+    }
+    
+    /**
+     * Tries to interpret the command and its parameters and send it to the
+     * attached handler.
+     * 
+     * @param cmd The command, like "!assign" or "go".
+     * @param params The parameters of the command.
+     * @return true if the command was supported and sent to the handler.
+     */
+    protected boolean handleCommand(String cmd, String params) {
         Command.Type cmdType;
         try {
             cmdType = this.parseCommandType(cmd);
@@ -0,0 +1,99 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io.processing;
+
+import de.targodan.usb.data.Case;
+import de.targodan.usb.data.CaseManager;
+import de.targodan.usb.data.Rat;
+import de.targodan.usb.data.Report;
+
+/**
+ * ExecutingHandler hands all calls over to another Handler on the owner
+ * thread of the registered CaseManager.
+ * 
+ * This way the parsing threads never modify the CaseManager themselves.
+ * 
+ * @author Luca Corbatto
+ */
+public class ExecutingHandler implements Handler {
+    private final Handler handler;
+    private CaseManager cm;
+    
+    /**
+     * Constructs an ExecutingHandler.
+     * 
+     * @param handler The Handler to be called on the owner thread of the
+     * CaseManager.
+     */
+    public ExecutingHandler(Handler handler) {
+        this.handler = handler;
+        this.cm = null;
+    }
+
+    @Override
+    public void registerCaseManager(CaseManager cm) {
+        this.cm = cm;
+        this.cm.execute(() -> this.handler.registerCaseManager(cm));
+    }
+    
+    /**
+     * Runs the call on the owner thread of the CaseManager.
+     * 
+     * @param call The call to the Handler.
+     */
+    private void execute(Runnable call) {
+        if(this.cm == null) {
+            throw new IllegalStateException("Call RegisterCaseManager before calling any of the handle* functions.");
+        }
+        
+        this.cm.execute(call);
+    }
+
+    @Override
+    public void handleNewCase(Case c) {
+        this.execute(() -> this.handler.handleNewCase(c));
+    }
+
+    @Override
+    public void handleCommand(Command cmd) {
+        this.execute(() -> this.handler.handleCommand(cmd));
+    }
+
+    @Override
+    public void handleCall(Rat rat, String caseIdentifier) {
+        this.execute(() -> this.handler.handleCall(rat, caseIdentifier));
+    }
+
+    @Override
+    public void handleReport(String ratIrcName, Report report, String caseIdentifier) {
+        this.execute(() -> this.handler.handleReport(ratIrcName, report, caseIdentifier));
+    }
+
+    @Override
+    public void handleEndOfMessage(IRCMessage message) {
+        // Queued behind the calls of the message, so the message is only
+        // handled once the CaseManager applied them.
+        this.execute(() -> this.handler.handleEndOfMessage(message));
+    }
+}
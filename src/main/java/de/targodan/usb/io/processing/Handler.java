@@ -75,4 +75,16 @@ public interface Handler {
      * @param caseIdentifier The identifier of the Case the report is associated with.
      */
     void handleReport(String ratIrcName, Report report, String caseIdentifier);
+    
+    /**
+     * Handles the end of a message, after all calls resulting from it.
+     * 
+     * By default this tells the message that it was handled, Handlers that
+     * hand their calls on have to hand this on as well.
+     * 
+     * @param message The message that was handled.
+     */
+    default void handleEndOfMessage(IRCMessage message) {
+        message.handled();
+    }
 }
@@ -23,26 +23,47 @@
  */
 package de.targodan.usb.io.processing;
 
+import java.time.Clock;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.Month;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 /**
  * This implementation of Marshaller marshalls lines as formatted by the HexChat
  * IRC client.
+ * 
+ * The lines start with a timestamp of the fixed format "MMM dd HH:mm:ss"
+ * which is parsed by the offsets of its fields. The current date, needed to
+ * guess the year of the messages, is looked up at most once per second.
  *
  * @author Luca Corbatto
  */
 public class HexchatMarshaller extends AbstractMarshaller {
-    protected Pattern usernameMessagePattern;
+    private static final Month[] MONTHS = Month.values();
+    private static final String[] MONTH_NAMES = {
+        "jan", "feb", "mar", "apr", "may", "jun",
+        "jul", "aug", "sep", "oct", "nov", "dec",
+    };
+    
+    private final Clock clock;
+    private volatile CachedDate today;
     
     /**
      * Constructs a HexchatMarshaller.
      */
     public HexchatMarshaller() {
-        this.usernameMessagePattern = Pattern.compile("(.*?)\t(.*)");
+        this(Clock.systemDefaultZone());
+    }
+    
+    /**
+     * Constructs a HexchatMarshaller using the given clock to guess the year
+     * of the messages.
+     * 
+     * @param clock The clock telling the current date.
+     */
+    public HexchatMarshaller(Clock clock) {
+        this.clock = clock;
+        this.today = null;
     }
     
     /**
@@ -53,34 +74,42 @@ public class HexchatMarshaller extends AbstractMarshaller {
      * @throws IllegalArgumentException If the given String cannot be parsed.
      */
     protected Month parseMonth(String month) {
-        switch(month.toLowerCase()) {
-            case "jan":
-                return Month.JANUARY;
-            case "feb":
-                return Month.FEBRUARY;
-            case "mar":
-                return Month.MARCH;
-            case "apr":
-                return Month.APRIL;
-            case "may":
-                return Month.MAY;
-            case "jun":
-                return Month.JUNE;
-            case "jul":
-                return Month.JULY;
-            case "aug":
-                return Month.AUGUST;
-            case "sep":
-                return Month.SEPTEMBER;
-            case "oct":
-                return Month.OCTOBER;
-            case "nov":
-                return Month.NOVEMBER;
-            case "dec":
-                return Month.DECEMBER;
-            default:
-                throw new IllegalArgumentException("\""+month+"\" is not a valid month.");
+        if(month.length() != 3) {
+            throw new IllegalArgumentException("\""+month+"\" is not a valid month.");
+        }
+        return this.parseMonth(month, 0);
+    }
+    
+    /**
+     * Parses the month identified by the three characters at the offset.
+     * 
+     * @param s The String containing the month.
+     * @param offset The index of the first character of the month.
+     * @return the parsed month.
+     * @throws IllegalArgumentException If the month cannot be parsed.
+     */
+    private Month parseMonth(String s, int offset) {
+        for(int i = 0; i < HexchatMarshaller.MONTH_NAMES.length; ++i) {
+            if(s.regionMatches(true, offset, HexchatMarshaller.MONTH_NAMES[i], 0, 3)) {
+                return HexchatMarshaller.MONTHS[i];
+            }
+        }
+        throw new IllegalArgumentException("\""+s.substring(offset, offset+3)+"\" is not a valid month.");
+    }
+    
+    /**
+     * Returns the current date, looking it up at most once per second.
+     * 
+     * @return the current date.
+     */
+    private CachedDate getToday() {
+        CachedDate date = this.today;
+        long now = this.clock.millis();
+        if(date == null || now < date.lookedUpAt || now >= date.lookedUpAt + 1000) {
+            date = new CachedDate(LocalDate.now(this.clock), now);
+            this.today = date;
         }
+        return date;
     }
     
     /**
@@ -95,13 +124,12 @@ public class HexchatMarshaller extends AbstractMarshaller {
      */
     protected int getYear(Month messageMonth) {
         // Sort of a workaround in case this runs over newyears.
-        int currentYear = LocalDate.now().getYear();
-        Month currentMonth = LocalDate.now().getMonth();
+        CachedDate date = this.getToday();
         
-        if(messageMonth == Month.DECEMBER && currentMonth == Month.JANUARY) {
-            return currentYear-1;
+        if(messageMonth == Month.DECEMBER && date.month == Month.JANUARY) {
+            return date.year-1;
         } else {
-            return currentYear;
+            return date.year;
         }
     }
     
@@ -113,25 +141,54 @@ public class HexchatMarshaller extends AbstractMarshaller {
      * @throws IllegalArgumentException if the String could not be parsed.
      */
     protected LocalDateTime parseDateTime(String dateTime) {
-        String[] parts = dateTime.split(" ");
-        
-        String month = parts[0];
-        String day = parts[1];
-        String time = parts[2];
-        
-        String[] timeParts = time.split(":");
+        return this.parseDateTime(dateTime, 0);
+    }
+    
+    /**
+     * Parses the date time at the offset of the given String.
+     * 
+     * @param s The String containing the date time.
+     * @param offset The index of the first character of the date time.
+     * @return the parsed LocalDateTime.
+     * @throws IllegalArgumentException if the date time could not be parsed.
+     */
+    private LocalDateTime parseDateTime(String s, int offset) {
+        if(s.length() < offset+15
+                || s.charAt(offset+3) != ' '
+                || s.charAt(offset+6) != ' '
+                || s.charAt(offset+9) != ':'
+                || s.charAt(offset+12) != ':') {
+            throw new IllegalArgumentException("\""+s+"\" does not start with a date time.");
+        }
         
-        Month m = this.parseMonth(month);
+        Month m = this.parseMonth(s, offset);
         
         return LocalDateTime.of(
                     this.getYear(m),
                     m,
-                    Integer.valueOf(day),
-                    Integer.valueOf(timeParts[0]),
-                    Integer.valueOf(timeParts[1]),
-                    Integer.valueOf(timeParts[2])
+                    HexchatMarshaller.parseTwoDigits(s, offset+4),
+                    HexchatMarshaller.parseTwoDigits(s, offset+7),
+                    HexchatMarshaller.parseTwoDigits(s, offset+10),
+                    HexchatMarshaller.parseTwoDigits(s, offset+13)
                 );
     }
+    
+    /**
+     * Parses the two digits at the offset of the given String.
+     * 
+     * @param s The String containing the digits.
+     * @param offset The index of the first digit.
+     * @return the parsed number.
+     * @throws IllegalArgumentException if the characters are not digits.
+     */
+    private static int parseTwoDigits(String s, int offset) {
+        char tens = s.charAt(offset);
+        char ones = s.charAt(offset+1);
+        if(tens < '0' || '9' < tens || ones < '0' || '9' < ones) {
+            throw new IllegalArgumentException("\""+s.substring(offset, offset+2)+"\" is not a number.");
+        }
+        return (tens - '0') * 10 + (ones - '0');
+    }
    
     @Override
     public IRCMessage marshall(Object o) {
@@ -144,17 +201,38 @@ public class HexchatMarshaller extends AbstractMarshaller {
             return null;
         }
         
-        String dateTime = line.substring(0, 15);
-        LocalDateTime timestamp = this.parseDateTime(dateTime);
-        String event = line.substring(16);
+        LocalDateTime timestamp = this.parseDateTime(line, 0);
         
-        Matcher matcher = this.usernameMessagePattern.matcher(event);
-        if(!matcher.find()) {
-            throw new IllegalArgumentException("String \""+event+"\" does not fit the expected pattern.");
+        int tab = line.indexOf('\t', 16);
+        if(tab < 0) {
+            throw new IllegalArgumentException("String \""+line.substring(16)+"\" does not fit the expected pattern.");
         }
         
         // Hexchat has a single file per channel, so just assume "#fuelrats" here. SingleChannelFileDataSource will overwrite this if necessary.
-        IRCMessage msg = new IRCMessage(timestamp, this.sanitizeUsername(matcher.group(1)), "#fuelrats", matcher.group(2));
+        int senderStart = this.sanitizedStart(line, 16, tab);
+        int senderEnd = this.sanitizedEnd(line, senderStart, tab);
+        IRCMessage msg = new IRCMessage(timestamp, "#fuelrats", line, senderStart, senderEnd, tab+1);
         return msg;
     }
+    
+    /**
+     * CachedDate is the current date together with the time it was looked up.
+     */
+    private static class CachedDate {
+        public final long lookedUpAt;
+        public final int year;
+        public final Month month;
+        
+        /**
+         * Constructs a CachedDate.
+         * 
+         * @param date The current date.
+         * @param lookedUpAt The time the date was looked up at in milliseconds.
+         */
+        public CachedDate(LocalDate date, long lookedUpAt) {
+            this.lookedUpAt = lookedUpAt;
+            this.year = date.getYear();
+            this.month = date.getMonth();
+        }
+    }
 }
@@ -30,16 +30,33 @@ import java.util.Objects;
  * IRCMessage represents an IRC message including the timestamp, sender, channel
  * and content.
  * 
- * This class is immutable.
+ * The sender and content may also be sections of the line the message was
+ * marshalled from. They are only copied out of the line once they are asked
+ * for as Strings, before that they can be looked at through CharSequence
+ * views. Most messages are ignored by the parser after a single look at the
+ * content.
+ * 
+ * This class is effectively immutable. The Strings copied out of the line are
+ * cached without synchronization, which is benign as Strings are immutable:
+ * a thread that does not see the cached String yet copies its own.
  * 
  * @author Luca Corbatto
  */
 public class IRCMessage {
     protected final LocalDateTime timestamp;
     // FromUser will be "*" if it is an event, like "someone joined" or "someone quit".
-    protected final String sender;
+    private final String sender;
     protected final String channel;
-    protected final String content;
+    private final String content;
+    
+    // The line the sender and content are sections of, null if they were given as Strings.
+    private final String line;
+    private final int senderStart;
+    private final int senderEnd;
+    private final int contentStart;
+    // The sender and content once they were copied out of the line.
+    private String senderCopy;
+    private String contentCopy;
 
     /**
      * Constructs an IRCMessage.
@@ -54,6 +71,86 @@ public class IRCMessage {
         this.sender = sender;
         this.channel = channel;
         this.content = content;
+        this.line = null;
+        this.senderStart = 0;
+        this.senderEnd = 0;
+        this.contentStart = 0;
+        this.senderCopy = null;
+        this.contentCopy = null;
+    }
+    
+    /**
+     * Constructs an IRCMessage whose sender and content are sections of the
+     * given line, the content reaching to the end of the line.
+     * 
+     * @param timestamp The time and date at which the message was sent.
+     * @param channel The name of the channel in which the message was sent.
+     * @param line The line the message was marshalled from.
+     * @param senderStart The index of the first character of the sender.
+     * @param senderEnd The index after the last character of the sender.
+     * @param contentStart The index of the first character of the content.
+     */
+    public IRCMessage(LocalDateTime timestamp, String channel, String line, int senderStart, int senderEnd, int contentStart) {
+        if(senderStart < 0 || senderEnd < senderStart || line.length() < senderEnd || contentStart < 0 || line.length() < contentStart) {
+            throw new IllegalArgumentException("The sections of the sender and the content have to be within the line.");
+        }
+        this.timestamp = timestamp;
+        this.sender = null;
+        this.channel = channel;
+        this.content = null;
+        this.line = line;
+        this.senderStart = senderStart;
+        this.senderEnd = senderEnd;
+        this.contentStart = contentStart;
+        this.senderCopy = null;
+        this.contentCopy = null;
+    }
+    
+    /**
+     * Constructs an IRCMessage like the given one but sent in the given
+     * channel.
+     * 
+     * The sender and content are shared with the given message, without
+     * copying them out of its line.
+     * 
+     * @param message The message to be copied.
+     * @param channel The name of the channel in which the message was sent.
+     */
+    protected IRCMessage(IRCMessage message, String channel) {
+        this.timestamp = message.timestamp;
+        this.sender = message.sender;
+        this.channel = channel;
+        this.content = message.content;
+        this.line = message.line;
+        this.senderStart = message.senderStart;
+        this.senderEnd = message.senderEnd;
+        this.contentStart = message.contentStart;
+        this.senderCopy = message.senderCopy;
+        this.contentCopy = message.contentCopy;
+    }
+    
+    /**
+     * Returns this message if it was sent in the given channel or a copy of
+     * it sent in the given channel otherwise.
+     * 
+     * @param channel The name of the channel.
+     * @return the message sent in the given channel.
+     */
+    public IRCMessage withChannel(String channel) {
+        if(Objects.equals(this.channel, channel)) {
+            return this;
+        }
+        return new IRCMessage(this, channel);
+    }
+
+    /**
+     * Is called once the message was handled completely, including the
+     * resulting changes of the cases.
+     * 
+     * This does nothing, subclasses may override it to learn when their
+     * messages are done.
+     */
+    public void handled() {
     }
 
     /**
@@ -70,7 +167,15 @@ public class IRCMessage {
      * @return the name of the user who sent the message.
      */
     public String getSender() {
-        return sender;
+        if(this.line == null) {
+            return this.sender;
+        }
+        String copy = this.senderCopy;
+        if(copy == null) {
+            copy = this.line.substring(this.senderStart, this.senderEnd);
+            this.senderCopy = copy;
+        }
+        return copy;
     }
 
     /**
@@ -88,16 +193,41 @@ public class IRCMessage {
      * @return the content of the message.
      */
     public String getContent() {
-        return content;
+        if(this.line == null) {
+            return this.content;
+        }
+        String copy = this.contentCopy;
+        if(copy == null) {
+            copy = this.line.substring(this.contentStart);
+            this.contentCopy = copy;
+        }
+        return copy;
+    }
+    
+    /**
+     * Returns the content of the message without copying it out of the line
+     * it was marshalled from.
+     * 
+     * @return the content of the message.
+     */
+    public CharSequence getContentSequence() {
+        if(this.line == null) {
+            return this.content;
+        }
+        String copy = this.contentCopy;
+        if(copy == null) {
+            return new Section(this.line, this.contentStart, this.line.length());
+        }
+        return copy;
     }
 
     @Override
     public int hashCode() {
         int hash = 5;
         hash = 89 * hash + Objects.hashCode(this.timestamp);
-        hash = 89 * hash + Objects.hashCode(this.sender);
+        hash = 89 * hash + Objects.hashCode(this.getSender());
         hash = 89 * hash + Objects.hashCode(this.channel);
-        hash = 89 * hash + Objects.hashCode(this.content);
+        hash = 89 * hash + Objects.hashCode(this.getContent());
         return hash;
     }
 
@@ -113,13 +243,13 @@ public class IRCMessage {
             return false;
         }
         final IRCMessage other = (IRCMessage) obj;
-        if (!Objects.equals(this.sender, other.sender)) {
+        if (!Objects.equals(this.getSender(), other.getSender())) {
             return false;
         }
         if (!Objects.equals(this.channel, other.channel)) {
             return false;
         }
-        if (!Objects.equals(this.content, other.content)) {
+        if (!Objects.equals(this.getContent(), other.getContent())) {
             return false;
         }
         if (!Objects.equals(this.timestamp, other.timestamp)) {
@@ -127,4 +257,52 @@ public class IRCMessage {
         }
         return true;
     }
+    
+    /**
+     * Section is a view of a section of a String.
+     */
+    private static final class Section implements CharSequence {
+        private final String string;
+        private final int start;
+        private final int end;
+        
+        /**
+         * Constructs a Section of the given String.
+         * 
+         * @param string The String.
+         * @param start The index of the first character of the section.
+         * @param end The index after the last character of the section.
+         */
+        public Section(String string, int start, int end) {
+            this.string = string;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public int length() {
+            return this.end - this.start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if(index < 0 || this.end - this.start <= index) {
+                throw new IndexOutOfBoundsException("Index "+index+" is out of bounds for length "+this.length()+".");
+            }
+            return this.string.charAt(this.start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if(start < 0 || end < start || this.end - this.start < end) {
+                throw new IndexOutOfBoundsException("Section "+start+" to "+end+" is out of bounds for length "+this.length()+".");
+            }
+            return new Section(this.string, this.start + start, this.start + end);
+        }
+
+        @Override
+        public String toString() {
+            return this.string.substring(this.start, this.end);
+        }
+    }
 }
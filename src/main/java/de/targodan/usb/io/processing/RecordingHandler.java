@@ -0,0 +1,122 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io.processing;
+
+import de.targodan.usb.data.Case;
+import de.targodan.usb.data.CaseManager;
+import de.targodan.usb.data.Rat;
+import de.targodan.usb.data.Report;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * RecordingHandler records the calls made by a Parser instead of handling
+ * them, so they can be replayed on another Handler later, e.g. on another
+ * thread.
+ * 
+ * @author Luca Corbatto
+ */
+public class RecordingHandler implements Handler {
+    private List<Consumer<Handler>> operations;
+    
+    /**
+     * Constructs a RecordingHandler without any recorded calls.
+     */
+    public RecordingHandler() {
+        this.operations = null;
+    }
+    
+    /**
+     * Returns the calls recorded since the last call to takeOperations and
+     * forgets about them.
+     * 
+     * @return the calls recorded since the last call to takeOperations.
+     */
+    public List<Consumer<Handler>> takeOperations() {
+        if(this.operations == null) {
+            return Collections.emptyList();
+        }
+        
+        List<Consumer<Handler>> ops = this.operations;
+        this.operations = null;
+        return ops;
+    }
+    
+    /**
+     * Replays the given calls on the given Handler in the order they were
+     * recorded.
+     * 
+     * @param operations The calls as returned by takeOperations.
+     * @param handler The Handler to replay the calls on.
+     */
+    public static void replay(List<Consumer<Handler>> operations, Handler handler) {
+        for(int i = 0; i < operations.size(); ++i) {
+            operations.get(i).accept(handler);
+        }
+    }
+    
+    /**
+     * Records a call.
+     * 
+     * @param op The call to be recorded.
+     */
+    private void record(Consumer<Handler> op) {
+        if(this.operations == null) {
+            this.operations = new ArrayList<>(2);
+        }
+        this.operations.add(op);
+    }
+
+    @Override
+    public void registerCaseManager(CaseManager cm) {
+        throw new UnsupportedOperationException("A RecordingHandler does not handle anything itself, register the CaseManager with the Handler the calls are replayed on.");
+    }
+
+    @Override
+    public void handleNewCase(Case c) {
+        this.record(handler -> handler.handleNewCase(c));
+    }
+
+    @Override
+    public void handleCommand(Command cmd) {
+        this.record(handler -> handler.handleCommand(cmd));
+    }
+
+    @Override
+    public void handleCall(Rat rat, String caseIdentifier) {
+        this.record(handler -> handler.handleCall(rat, caseIdentifier));
+    }
+
+    @Override
+    public void handleReport(String ratIrcName, Report report, String caseIdentifier) {
+        this.record(handler -> handler.handleReport(ratIrcName, report, caseIdentifier));
+    }
+
+    @Override
+    public void handleEndOfMessage(IRCMessage message) {
+        this.record(handler -> handler.handleEndOfMessage(message));
+    }
+}
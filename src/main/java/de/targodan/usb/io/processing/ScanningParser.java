@@ -0,0 +1,547 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io.processing;
+
+import de.targodan.usb.data.Rat;
+import de.targodan.usb.data.Report;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * ScanningParser is a Parser producing the same results as the DefaultParser
+ * without running a cascade of regular expressions on every line.
+ * 
+ * A line is classified in a single left-to-right scan which finds the
+ * candidates for a command, a jump call and reports at once. Report types are
+ * recognized by walking a keyword trie. Only lines that turn out to be a
+ * RATSIGNAL or a command are handed to the more expensive code of the
+ * DefaultParser, chatter is ignored without creating any substrings.
+ * 
+ * The regular expressions of the DefaultParser treat line terminators (line
+ * feed, carriage return, next line, line and paragraph separator) specially.
+ * Lines containing any of these are therefore parsed by the DefaultParser
+ * itself.
+ * 
+ * A ScanningParser keeps the state of the current scan, so it must not be
+ * used by multiple threads at once.
+ *
+ * @author Luca Corbatto
+ */
+public class ScanningParser extends DefaultParser {
+    private static final String RATSIGNAL_PREFIX = "RATSIGNAL - CMDR ";
+    private static final String RATSIGNAL = "ratsignal";
+    
+    /**
+     * TrieNode is a node of the keyword trie for report types.
+     */
+    private static class TrieNode {
+        final TrieNode[] children = new TrieNode['z'-'a'+1];
+        int keyword = -1;
+    }
+    
+    private final TrieNode reportTrie;
+    
+    private int trimmedStart;
+    private int trimmedEnd;
+    private int lastCallStart;
+    private int lastReportStart;
+    private boolean mentionsRatsignal;
+    
+    /**
+     * Constructs a new ScanningParser.
+     */
+    public ScanningParser() {
+        super();
+        
+        this.reportTrie = new TrieNode();
+        for(int i = 0; i < this.supportedReports.length; ++i) {
+            TrieNode node = this.reportTrie;
+            for(char ch : this.supportedReports[i].toCharArray()) {
+                int index = ScanningParser.toLowerAscii(ch) - 'a';
+                if(index < 0 || index >= node.children.length) {
+                    throw new IllegalArgumentException("Report \""+this.supportedReports[i]+"\" must only consist of letters.");
+                }
+                if(node.children[index] == null) {
+                    node.children[index] = new TrieNode();
+                }
+                node = node.children[index];
+            }
+            node.keyword = i;
+        }
+    }
+
+    @Override
+    public ParseResult parseAndHandle(IRCMessage message) {
+        if(this.handler == null) {
+            throw new IllegalStateException("Call RegisterHandler before calling ParseAndHandle.");
+        }
+        
+        CharSequence content = message.getContentSequence();
+        if(!this.scan(content)) {
+            return super.parseAndHandle(message);
+        }
+        
+        if(this.scanAndHandleCommand(content)) {
+            return ParseResult.WAS_COMMAND;
+        }
+        
+        if(ScanningParser.regionMatches(content, 0, RATSIGNAL_PREFIX)) {
+            if(this.parseAndHandleRatsignal(message)) {
+                return ParseResult.WAS_RATSIGNAL;
+            }
+        } else if(this.mentionsRatsignal) {
+            Logger.getLogger(DefaultParser.class.getName()).log(Level.WARNING, "Possibly missed RATSIGNAL.", message);
+        }
+        
+        boolean wasCall = this.scanAndHandleCall(message, content);
+        boolean wasReport = this.scanAndHandleReports(message, content);
+        if(wasCall && wasReport) {
+            return ParseResult.WAS_CALL_AND_REPORT;
+        }
+        if(wasCall) {
+            return ParseResult.WAS_CALL;
+        }
+        if(wasReport) {
+            return ParseResult.WAS_REPORT;
+        }
+        
+        return ParseResult.IGNORED;
+    }
+    
+    /**
+     * Scans the content once, remembering where calls and reports could start.
+     * 
+     * Like the greedy ".*(\s|,)" prefix of the regular expressions only the
+     * last candidate following a separator is remembered.
+     * 
+     * @param content The content of the message.
+     * @return false if the content contains a line terminator.
+     */
+    private boolean scan(CharSequence content) {
+        int length = content.length();
+        
+        int start = 0;
+        int end = length;
+        while(start < end && content.charAt(start) <= ' ') {
+            ++start;
+        }
+        while(end > start && content.charAt(end-1) <= ' ') {
+            --end;
+        }
+        this.trimmedStart = start;
+        this.trimmedEnd = end;
+        
+        this.lastCallStart = -1;
+        this.lastReportStart = -1;
+        this.mentionsRatsignal = false;
+        
+        for(int i = 0; i < length; ++i) {
+            char ch = content.charAt(i);
+            if(ScanningParser.isLineTerminator(ch)) {
+                return false;
+            }
+            
+            if(ch == ',' || ScanningParser.isSpace(ch)) {
+                if(i >= start && this.callEndAt(content, i+1) >= 0) {
+                    this.lastCallStart = i+1;
+                }
+                if(this.reportAt(content, i+1, length) >= 0) {
+                    this.lastReportStart = i+1;
+                }
+            } else if(!this.mentionsRatsignal && ScanningParser.toLowerAscii(ch) == 'r') {
+                this.mentionsRatsignal = ScanningParser.regionMatchesIgnoreCase(content, i, RATSIGNAL);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Tries to parse the trimmed content as a command and send it to the
+     * attached handler.
+     * 
+     * A command is a word starting with '!' or "go" followed by whitespace
+     * and the parameters.
+     * 
+     * @param content The content of the message.
+     * @return true if the content was handled as a command.
+     */
+    private boolean scanAndHandleCommand(CharSequence content) {
+        int start = this.trimmedStart;
+        int end = this.trimmedEnd;
+        
+        int cmdEnd;
+        if(start+1 < end && content.charAt(start) == '!' && !ScanningParser.isSpace(content.charAt(start+1))) {
+            cmdEnd = start+2;
+            while(cmdEnd < end && !ScanningParser.isSpace(content.charAt(cmdEnd))) {
+                ++cmdEnd;
+            }
+            if(cmdEnd == end) {
+                return false;
+            }
+        } else if(start+2 < end && ScanningParser.regionMatches(content, start, "go") && ScanningParser.isSpace(content.charAt(start+2))) {
+            cmdEnd = start+2;
+        } else {
+            return false;
+        }
+        
+        int paramsStart = cmdEnd;
+        while(ScanningParser.isSpace(content.charAt(paramsStart))) {
+            ++paramsStart;
+        }
+        
+        return this.handleCommand(content.subSequence(start, cmdEnd).toString(), content.subSequence(paramsStart, end).toString());
+    }
+    
+    /**
+     * Returns the position of the 'j' if a jump call like "5j" starts at the
+     * given position of the trimmed content or -1 otherwise.
+     * 
+     * @param content The content of the message.
+     * @param start The position to look at.
+     * @return the position of the 'j' or -1.
+     */
+    private int callEndAt(CharSequence content, int start) {
+        int end = this.trimmedEnd;
+        int pos = start;
+        while(pos < end && ScanningParser.isDigit(content.charAt(pos))) {
+            ++pos;
+        }
+        if(pos == start || pos >= end) {
+            return -1;
+        }
+        char ch = content.charAt(pos);
+        if(ch != 'j' && ch != 'J') {
+            return -1;
+        }
+        if(pos+1 < end && ScanningParser.isWordChar(content.charAt(pos+1))) {
+            return -1;
+        }
+        return pos;
+    }
+    
+    /**
+     * Tries to parse a jump call and send it to the attached handler.
+     * 
+     * @param message The message to be parsed.
+     * @param content The content of the message.
+     * @return true if the message was handled as a call.
+     */
+    private boolean scanAndHandleCall(IRCMessage message, CharSequence content) {
+        int start = this.trimmedStart;
+        int jPos = this.callEndAt(content, start);
+        if(jPos < 0) {
+            start = this.lastCallStart;
+            if(start < 0) {
+                return false;
+            }
+            jPos = this.callEndAt(content, start);
+        }
+        
+        Rat call = new Rat(message.getSender());
+        call.setJumps(ScanningParser.parseJumps(content, start, jPos));
+        
+        String caseIdentifier = "";
+        int end = this.trimmedEnd;
+        if(jPos+1 < end) {
+            // The character after the 'j' is skipped, the case identifier is
+            // the last word after it.
+            int from = jPos + 1 + Character.charCount(Character.codePointAt(content, jPos+1));
+            caseIdentifier = this.sanitizeCaseIdentifier(content, ScanningParser.lastWordStart(content, from, end), end);
+        }
+        
+        this.handler.handleCall(call, caseIdentifier);
+        
+        return true;
+    }
+    
+    /**
+     * Parses the number of jumps between start and end.
+     * 
+     * @param content The content of the message.
+     * @param start The position of the first digit.
+     * @param end The position after the last digit.
+     * @return the number of jumps.
+     * @throws NumberFormatException If the number is too large.
+     */
+    private static int parseJumps(CharSequence content, int start, int end) {
+        if(end - start > 9) {
+            return Integer.valueOf(content.subSequence(start, end).toString());
+        }
+        int jumps = 0;
+        for(int i = start; i < end; ++i) {
+            jumps = jumps*10 + (content.charAt(i) - '0');
+        }
+        return jumps;
+    }
+    
+    /**
+     * Returns the index of the report type followed by '+' or '-' at the
+     * given position or -1 if there is none.
+     * 
+     * @param content The content of the message.
+     * @param start The position to look at.
+     * @param end The end of the region to look at.
+     * @return the index of the report type or -1.
+     */
+    private int reportAt(CharSequence content, int start, int end) {
+        TrieNode node = this.reportTrie;
+        for(int pos = start; pos < end; ++pos) {
+            char ch = content.charAt(pos);
+            if(node.keyword >= 0 && (ch == '+' || ch == '-')) {
+                return node.keyword;
+            }
+            
+            int index = ScanningParser.toLowerAscii(ch) - 'a';
+            if(index < 0 || index >= node.children.length || node.children[index] == null) {
+                return -1;
+            }
+            node = node.children[index];
+        }
+        return -1;
+    }
+    
+    /**
+     * Tries to parse reports and send them to the attached handler.
+     * 
+     * This follows the way DefaultParser#parseAndHandleReport finds multiple
+     * reports in a line, working on a region of the content instead of
+     * substrings.
+     * 
+     * @param message The message to be parsed.
+     * @param content The content of the message.
+     * @return true if the message contained at least one report.
+     */
+    private boolean scanAndHandleReports(IRCMessage message, CharSequence content) {
+        boolean matchedAtLeastOnce = false;
+        String caseIdentifier = null;
+        int start = 0;
+        int end = content.length();
+        while(true) /* will break when done */ {
+            int reportStart = start;
+            int report = this.reportAt(content, reportStart, end);
+            if(report < 0) {
+                reportStart = this.lastReportStart;
+                if(reportStart <= start) {
+                    break;
+                }
+                report = this.reportAt(content, reportStart, end);
+            }
+            matchedAtLeastOnce = true;
+            
+            int typeLength = this.supportedReports[report].length();
+            int statePos = reportStart + typeLength;
+            if(caseIdentifier == null) {
+                caseIdentifier = this.sanitizeCaseIdentifier(content, ScanningParser.lastWordStart(content, statePos+1, end), end);
+            }
+            
+            Report r = new Report(this.parseReportType(this.supportedReports[report]), content.charAt(statePos) == '+');
+            this.handler.handleReport(message.getSender(), r, caseIdentifier);
+            
+            // Continue after the first occurrence of the report type.
+            int typePos = start;
+            while(!ScanningParser.regionMatches(content, typePos, content, reportStart, typeLength)) {
+                ++typePos;
+            }
+            int nextStart = typePos + typeLength + 1;
+            if(end <= nextStart) {
+                break;
+            }
+            start = nextStart;
+            while(start < end && content.charAt(start) <= ' ') {
+                ++start;
+            }
+            while(end > start && content.charAt(end-1) <= ' ') {
+                --end;
+            }
+        }
+        
+        return matchedAtLeastOnce;
+    }
+    
+    /**
+     * Returns the start of the last word in the region or end if the region
+     * is empty or ends with whitespace.
+     * 
+     * @param content The content of the message.
+     * @param start The start of the region.
+     * @param end The end of the region.
+     * @return the start of the last word in the region.
+     */
+    private static int lastWordStart(CharSequence content, int start, int end) {
+        if(start >= end || ScanningParser.isSpace(content.charAt(end-1))) {
+            return end;
+        }
+        int pos = end;
+        while(pos > start && !ScanningParser.isSpace(content.charAt(pos-1))) {
+            --pos;
+        }
+        return pos;
+    }
+    
+    /**
+     * Sanitizes the case identifier between start and end.
+     * 
+     * @see DefaultParser#sanitizeCaseIdentifier(java.lang.String) 
+     * 
+     * @param content The content of the message.
+     * @param start The start of the case identifier.
+     * @param end The end of the case identifier.
+     * @return The sanitized case identifier.
+     */
+    private String sanitizeCaseIdentifier(CharSequence content, int start, int end) {
+        if(start >= end) {
+            return "";
+        }
+        
+        int numberStart = start;
+        char first = content.charAt(start);
+        if(first == 'c' || first == 'C' || first == '#') {
+            ++numberStart;
+        }
+        int length = end - numberStart;
+        if(length >= 1 && length <= 3) {
+            boolean isNumber = true;
+            for(int i = numberStart; i < end; ++i) {
+                isNumber &= ScanningParser.isDigit(content.charAt(i));
+            }
+            if(isNumber) {
+                return content.subSequence(numberStart, end).toString();
+            }
+        }
+        return content.subSequence(start, end).toString();
+    }
+    
+    /**
+     * Returns true if the content contains the word at the given position.
+     * 
+     * @param content The content to look at.
+     * @param start The position to look at.
+     * @param word The word.
+     * @return true if the word is at the given position.
+     */
+    private static boolean regionMatches(CharSequence content, int start, String word) {
+        return ScanningParser.regionMatches(content, start, word, 0, word.length());
+    }
+    
+    /**
+     * Returns true if the region of the content starting at start equals the
+     * region of the other sequence starting at otherStart.
+     * 
+     * @param content The content to look at.
+     * @param start The start of the region of the content.
+     * @param other The other sequence.
+     * @param otherStart The start of the region of the other sequence.
+     * @param length The length of the regions.
+     * @return true if the regions are equal.
+     */
+    private static boolean regionMatches(CharSequence content, int start, CharSequence other, int otherStart, int length) {
+        if(start < 0 || otherStart < 0 || start + length > content.length() || otherStart + length > other.length()) {
+            return false;
+        }
+        for(int i = 0; i < length; ++i) {
+            if(content.charAt(start+i) != other.charAt(otherStart+i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns true if the content contains the lower case word at the given
+     * position, ignoring the case of ASCII letters.
+     * 
+     * @param content The content to look at.
+     * @param start The position to look at.
+     * @param word The lower case word.
+     * @return true if the word is at the given position.
+     */
+    private static boolean regionMatchesIgnoreCase(CharSequence content, int start, String word) {
+        if(start + word.length() > content.length()) {
+            return false;
+        }
+        for(int i = 0; i < word.length(); ++i) {
+            if(ScanningParser.toLowerAscii(content.charAt(start+i)) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Returns the character in lower case if it is an ASCII letter.
+     * 
+     * Like the regular expressions of the DefaultParser only ASCII letters
+     * are matched case insensitively.
+     * 
+     * @param ch The character.
+     * @return the character in lower case if it is an ASCII letter.
+     */
+    private static char toLowerAscii(char ch) {
+        if(ch >= 'A' && ch <= 'Z') {
+            return (char)(ch + ('a' - 'A'));
+        }
+        return ch;
+    }
+    
+    /**
+     * Returns true if the character matches "\s".
+     * 
+     * @param ch The character.
+     * @return true if the character matches "\s".
+     */
+    private static boolean isSpace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\u000B' || ch == '\f' || ch == '\r';
+    }
+    
+    /**
+     * Returns true if the character matches "\d".
+     * 
+     * @param ch The character.
+     * @return true if the character matches "\d".
+     */
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+    
+    /**
+     * Returns true if the character matches "\w".
+     * 
+     * @param ch The character.
+     * @return true if the character matches "\w".
+     */
+    private static boolean isWordChar(char ch) {
+        return ScanningParser.isDigit(ch) || ch == '_' || (ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z');
+    }
+    
+    /**
+     * Returns true if the character is a line terminator which "." does not
+     * match.
+     * 
+     * @param ch The character.
+     * @return true if the character is a line terminator.
+     */
+    private static boolean isLineTerminator(char ch) {
+        return ch == '\n' || ch == '\r' || ch == '\u0085' || ch == '\u2028' || ch == '\u2029';
+    }
+}
@@ -24,7 +24,10 @@
 package de.targodan.usb.ui;
 
 import de.targodan.usb.data.Case;
+import de.targodan.usb.data.CaseEvent;
+import de.targodan.usb.data.CaseListener;
 import de.targodan.usb.data.CaseManager;
+import de.targodan.usb.data.CaseSnapshot;
 import de.targodan.usb.data.Client;
 import de.targodan.usb.data.Platform;
 import de.targodan.usb.data.Rat;
@@ -35,13 +38,12 @@ import java.awt.GridLayout;
 import java.awt.Rectangle;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Observable;
-import java.util.Observer;
 import java.util.Set;
-import java.util.stream.Stream;
 import javax.swing.AbstractCellEditor;
 import javax.swing.JPanel;
 import javax.swing.JTable;
@@ -55,7 +57,7 @@ import javax.swing.table.TableModel;
  * @author Luca Corbatto
  */
 public class CaseTable extends JTable {
-    private static class Model extends AbstractTableModel implements TableModel, Observer {
+    private static class Model extends AbstractTableModel implements TableModel, CaseListener {
         private static final String[] COLUMNS = new String[] {
             "Case", "CMDR Name", "Lang", "Plat", "System", "Rats", "Notes"
         };
@@ -63,15 +65,22 @@ public class CaseTable extends JTable {
             Integer.class, Client.class, Client.class, Client.class, de.targodan.usb.data.System.class, Set.class, List.class
         };
         private final CaseManager cm;
+        private CaseSnapshot snapshot;
+        
+        private final RefreshScheduler refreshScheduler;
+        private final Map<Case, Set<CaseEvent.Field>> changedFields;
         
         public Model(CaseManager cm) {
             this.cm = cm;
-            this.cm.addObserver(this);
+            this.snapshot = cm.getSnapshot();
+            this.refreshScheduler = new RefreshScheduler(this::refresh);
+            this.changedFields = new IdentityHashMap<>();
+            this.cm.addListener(this);
         }
         
         @Override
         public int getRowCount() {
-            return this.cm.getOpenCases().size() + this.cm.getClosedCases().size();
+            return this.snapshot.size();
         }
 
         @Override
@@ -120,43 +129,166 @@ public class CaseTable extends JTable {
         @Override
         public void setValueAt(Object aValue, int rowIndex, int columnIndex) {
             if(columnIndex == 6) {
-                String val = aValue.toString();
-                this.getCase(rowIndex).setNotes(val.split("\n"));
+                String[] notes = aValue.toString().split("\n");
+                Case c = this.getCase(rowIndex);
+                this.cm.submit(() -> c.setNotes(notes));
             }
         }
         
         private Case getCase(int rowIndex) {
-            if(rowIndex < this.cm.getClosedCases().size()) {
-                return this.cm.getClosedCases().get(rowIndex);
+            return this.snapshot.get(rowIndex);
+        }
+
+        /**
+         * Returns the row of the case c in the given snapshot or -1.
+         * 
+         * @param snapshot
+         * @param c
+         * @return the row of the case c in the given snapshot or -1.
+         */
+        private static int rowOf(CaseSnapshot snapshot, Case c) {
+            for(int row = 0; row < snapshot.size(); ++row) {
+                if(snapshot.get(row) == c) {
+                    return row;
+                }
+            }
+            return -1;
+        }
+        
+        /**
+         * Returns the columns displaying the given field of a case.
+         * 
+         * @param field
+         * @return the columns displaying the given field of a case.
+         */
+        private static int[] columnsOf(CaseEvent.Field field) {
+            switch(field) {
+                case ACTIVE:
+                case CODE_RED:
+                    return new int[] {0};
+                    
+                case CLIENT:
+                    return new int[] {1, 2, 3};
+                    
+                case SYSTEM:
+                    return new int[] {4};
+                    
+                case RATS:
+                    return new int[] {5};
+                    
+                case NOTES:
+                    return new int[] {6};
             }
-            return this.cm.getOpenCases().get(rowIndex - this.cm.getClosedCases().size());
+            // Calls and the first limpet are not displayed.
+            return new int[0];
         }
 
+        /**
+         * Remembers what changed and requests a refresh.
+         * 
+         * This is called on the owner thread of the CaseManager, the table
+         * itself is only updated by refresh() on the event dispatch thread.
+         * 
+         * @param event 
+         */
         @Override
-        public void update(Observable o, Object arg) {
-            this.fireTableDataChanged();
+        public void caseChanged(CaseEvent event) {
+            if(event.getType() == CaseEvent.Type.CHANGED) {
+                synchronized(this.changedFields) {
+                    this.changedFields
+                            .computeIfAbsent(event.getSource(), c -> EnumSet.noneOf(CaseEvent.Field.class))
+                            .add(event.getField());
+                }
+            }
+            this.refreshScheduler.requestRefresh();
+        }
+        
+        /**
+         * Shows the latest snapshot, updating only the changed cells unless
+         * cases were added, closed or removed since the last refresh.
+         */
+        private void refresh() {
+            List<Map.Entry<Case, Set<CaseEvent.Field>>> changed;
+            synchronized(this.changedFields) {
+                changed = new ArrayList<>(this.changedFields.entrySet());
+                this.changedFields.clear();
+            }
+            
+            // The snapshot may already contain changes that are only
+            // remembered after this, their cells are updated with the next
+            // refresh.
+            CaseSnapshot oldSnapshot = this.snapshot;
+            CaseSnapshot newSnapshot = this.cm.getSnapshot();
+            this.snapshot = newSnapshot;
+            
+            // The lists are only replaced if cases were added, closed or
+            // removed.
+            if(newSnapshot.getOpenCases() != oldSnapshot.getOpenCases()
+                    || newSnapshot.getClosedCases() != oldSnapshot.getClosedCases()) {
+                this.fireTableDataChanged();
+                return;
+            }
+            
+            for(Map.Entry<Case, Set<CaseEvent.Field>> entry : changed) {
+                int row = Model.rowOf(newSnapshot, entry.getKey());
+                if(row == -1) {
+                    continue;
+                }
+                for(CaseEvent.Field field : entry.getValue()) {
+                    for(int column : Model.columnsOf(field)) {
+                        this.fireTableCellUpdated(row, column);
+                    }
+                }
+            }
         }
     }
     
+    /*
+     * The renderers below reuse one component per column. JTable only uses
+     * the returned component for painting the cell, so every renderer has to
+     * reset all properties it changes for some of the cells.
+     */
+    
     @SuppressWarnings("unchecked")
     private static class CaseNumberRenderer implements TableCellRenderer {
         private static final Color CR_BACKGROUND_COLOR = Color.RED;
         private static final Color CR_FOREGROUND_COLOR = Color.WHITE;
         private static final Color CLOSED_BACKGROUND_COLOR = Color.GREEN;
         private static final Color CLOSED_FOREGROUND_COLOR = Color.BLACK;
+        
+        private final TextPanel panel;
+        private final Color defaultBackground;
+        private final Color defaultForeground;
+        private final Font defaultFont;
+        private final Font plainFont;
+        private final Font boldFont;
+        
+        public CaseNumberRenderer() {
+            this.panel = new TextPanel();
+            this.defaultBackground = this.panel.getBackground();
+            this.defaultForeground = this.panel.getLabel().getForeground();
+            this.defaultFont = this.panel.getLabel().getFont();
+            this.plainFont = this.defaultFont.deriveFont(Font.PLAIN);
+            this.boldFont = this.defaultFont.deriveFont(Font.BOLD);
+        }
     
         @Override
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
             Pair<Integer, Case> pair = (Pair<Integer, Case>)value;
-            TextPanel panel = new TextPanel("#"+pair.getLeft().toString());
+            TextPanel panel = this.panel;
+            panel.setText("#"+pair.getLeft().toString());
             if(pair.getRight().isClosed()) {
                 panel.setBackground(CLOSED_BACKGROUND_COLOR);
                 panel.getLabel().setForeground(CLOSED_FOREGROUND_COLOR);
-                panel.getLabel().setFont(new Font(panel.getLabel().getFont().getFamily(), Font.PLAIN, panel.getLabel().getFont().getSize()));
+                panel.getLabel().setFont(this.plainFont);
             } else if(pair.getRight().isCodeRed()) {
                 panel.setBackground(CR_BACKGROUND_COLOR);
                 panel.getLabel().setForeground(CR_FOREGROUND_COLOR);
-                panel.getLabel().setFont(new Font(panel.getLabel().getFont().getFamily(), Font.BOLD, panel.getLabel().getFont().getSize()));
+                panel.getLabel().setFont(this.boldFont);
+            } else {
+                panel.setBackground(this.defaultBackground);
+                panel.getLabel().setForeground(this.defaultForeground);
+                panel.getLabel().setFont(this.defaultFont);
             }
             if(!pair.getRight().isActive()) {
                 panel.setText("("+panel.getText()+")");
@@ -171,6 +303,10 @@ public class CaseTable extends JTable {
         }
     }
     private class ClientRenderer implements TableCellRenderer {
+        private final CopyableTextPanel cmdrNamePanel = new CopyableTextPanel();
+        private final TextPanel languagePanel = new TextPanel();
+        private final TextPanel platformPanel = new TextPanel();
+        
         protected String platformToString(Platform platform) {
             switch(platform) {
                 case PC:
@@ -191,15 +327,18 @@ public class CaseTable extends JTable {
             Component c;
             switch(column) {
                 case 1:
-                    c = new CopyableTextPanel(client.getCMDRName());
+                    this.cmdrNamePanel.setText(client.getCMDRName());
+                    c = this.cmdrNamePanel;
                     break;
 
                 case 2:
-                    c = new TextPanel(client.getLanguage().toUpperCase());
+                    this.languagePanel.setText(client.getLanguage().toUpperCase());
+                    c = this.languagePanel;
                     break;
 
                 case 3:
-                    c = new TextPanel(this.platformToString(client.getPlatform()));
+                    this.platformPanel.setText(this.platformToString(client.getPlatform()));
+                    c = this.platformPanel;
                     break;
 
                 default:
@@ -209,28 +348,58 @@ public class CaseTable extends JTable {
         }
     }
     private static class SystemRenderer implements TableCellRenderer {
+        private final CopyableTextPanel panel = new CopyableTextPanel();
+        
         @Override
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
             de.targodan.usb.data.System system = (de.targodan.usb.data.System)value;
-            return new CopyableTextPanel(system.getName());
+            this.panel.setText(system.getName());
+            return this.panel;
         }
     }
     
     @SuppressWarnings("unchecked")
     private static class RatsRenderer implements TableCellRenderer {
+        private final GridLayout layout;
+        private final JPanel panel;
+        private final List<RatView> ratViews;
+        private final List<Rat> sortedRats;
+        
+        public RatsRenderer() {
+            this.layout = new GridLayout(0, 1);
+            this.panel = new JPanel(this.layout);
+            this.ratViews = new ArrayList<>();
+            this.sortedRats = new ArrayList<>();
+        }
+        
         @Override
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
             Set<Rat> rats = (Set<Rat>)value;
-            JPanel panel = new JPanel(new GridLayout(rats.size(), 1));
-            rats.stream()
-                    .sorted((r1, r2) -> r1.getCMDRName().compareTo(r2.getCMDRName()))
-                    .forEach(rat -> {
-                        panel.add(new RatView(rat));
-                    });
             
-            int height = Stream.of(panel.getComponents())
-                    .mapToInt(c -> c.getPreferredSize().height)
-                    .sum();
+            this.sortedRats.clear();
+            this.sortedRats.addAll(rats);
+            this.sortedRats.sort((r1, r2) -> r1.getCMDRName().compareTo(r2.getCMDRName()));
+            
+            while(this.ratViews.size() < this.sortedRats.size()) {
+                this.ratViews.add(new RatView());
+            }
+            
+            JPanel panel = this.panel;
+            panel.removeAll();
+            this.layout.setRows(this.sortedRats.size());
+            int height = 0;
+            for(int i = 0; i < this.ratViews.size(); ++i) {
+                RatView view = this.ratViews.get(i);
+                if(i < this.sortedRats.size()) {
+                    view.setRat(this.sortedRats.get(i));
+                    panel.add(view);
+                    height += view.getPreferredSize().height;
+                } else {
+                    // Don't keep rats that are not shown anymore.
+                    view.setRat(null);
+                }
+            }
+            this.sortedRats.clear();
             
             if(height > 0 && table.getRowHeight(row) != height) {
                 table.setRowHeight(row, height);
@@ -242,20 +411,23 @@ public class CaseTable extends JTable {
     
     @SuppressWarnings("unchecked")
     private static class NotesRenderer implements TableCellRenderer {
+        private final MultiTextPanel panel = new MultiTextPanel();
+        
         @Override
         public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
             List<String> notes = (List<String>)value;
-            return new MultiTextPanel(String.join("\n", notes));
+            this.panel.setText(String.join("\n", notes));
+            return this.panel;
         }
     }
     
+    /**
+     * The NotesEditor uses its own MultiTextPanel as the renderers' panel is
+     * used for painting the other cells while editing.
+     */
+    @SuppressWarnings("unchecked")
     private static class NotesEditor extends AbstractCellEditor implements TableCellEditor {
-        private final Map<Pair<Integer, Integer>, Component> cells;
-        private MultiTextPanel panel;
-        
-        public NotesEditor(Map<Pair<Integer, Integer>, Component> cells) {
-            this.cells = cells;
-        }
+        private final MultiTextPanel panel = new MultiTextPanel();
         
         @Override
         public Object getCellEditorValue() {
@@ -265,7 +437,8 @@ public class CaseTable extends JTable {
         @Override
         public Component getTableCellEditorComponent(JTable table, Object value, boolean isSelected, int row, int column) {
             if(column == 6) {
-                this.panel = (MultiTextPanel)this.cells.get(new Pair<>(row, column));
+                List<String> notes = (List<String>)value;
+                this.panel.setText(String.join("\n", notes));
                 return this.panel;
             }
             return null;
@@ -276,12 +449,16 @@ public class CaseTable extends JTable {
         private void relayEvent(MouseEvent e) {
             int row = CaseTable.this.rowAtPoint(e.getPoint());
             int column = CaseTable.this.columnAtPoint(e.getPoint());
-            Component c = CaseTable.this.cells.get(new Pair<>(row, column));
-            if(c == null) {
+            if(row == -1 || column == -1) {
                 return;
             }
-
+            
+            // The renderers share their components between cells so prepare
+            // and lay out the component for this cell first.
+            Component c = CaseTable.this.prepareRenderer(CaseTable.this.getCellRenderer(row, column), row, column);
             Rectangle pos = CaseTable.this.getCellRect(row, column, true);
+            c.setBounds(pos);
+            c.validate();
 
             e.translatePoint(-(int)pos.getX(), -(int)pos.getY());
             c.dispatchEvent(e);
@@ -311,15 +488,13 @@ public class CaseTable extends JTable {
     public CaseTable(CaseManager cm) {
         super(new Model(cm));
         
-        this.cells = new HashMap<>();
-        
         this.setDefaultRenderer(Integer.class, new CaseNumberRenderer());
         this.setDefaultRenderer(Client.class, new ClientRenderer());
         this.setDefaultRenderer(de.targodan.usb.data.System.class, new SystemRenderer());
         this.setDefaultRenderer(Set.class, new RatsRenderer());
         this.setDefaultRenderer(List.class, new NotesRenderer());
         
-        this.setDefaultEditor(List.class, new NotesEditor(this.cells));
+        this.setDefaultEditor(List.class, new NotesEditor());
         
         this.addMouseListener(new MouseHandler());
         this.addMouseMotionListener(new MouseHandler());
@@ -331,15 +506,4 @@ public class CaseTable extends JTable {
         // Platform
         this.getColumnModel().getColumn(3).setMaxWidth(45);
     }
-
-    @Override
-    public Component prepareRenderer(TableCellRenderer renderer, int row, int column) {
-        Component c = super.prepareRenderer(renderer, row, column);
-        
-        this.cells.put(new Pair<>(row, column), c);
-        
-        return c;
-    }
-    
-    private final Map<Pair<Integer, Integer>, Component> cells;
 }
@@ -23,7 +23,6 @@
  */
 package de.targodan.usb.ui;
 
-import de.targodan.usb.Program;
 import de.targodan.usb.data.Case;
 import de.targodan.usb.data.CaseManager;
 import de.targodan.usb.data.Client;
@@ -34,12 +33,8 @@ import de.targodan.usb.io.DataConsumer;
 import java.awt.Dimension;
 import java.net.URI;
 import java.time.LocalDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.Observable;
 import java.util.Observer;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 /**
@@ -56,21 +51,6 @@ public class MainWindow extends javax.swing.JFrame implements Observer {
         
         this.consoleWindow = consoleWindow;
         this.testMenu.setVisible(showTestMenu);
-        
-        this.runRemoveClearedCasesThread = new AtomicBoolean(true);
-        this.removeClearedCasesThread = new Thread(() -> {
-            while(this.runRemoveClearedCasesThread.get()) {
-                try {
-                    Thread.sleep(1000);
-                } catch (InterruptedException ex) {
-                    Logger.getLogger(MainWindow.class.getName()).log(Level.SEVERE, null, ex);
-                }
-                if(Program.CONFIG.secondsUntilClearedCasesAreRemoved > 0) {
-                    this.cm.removeClosedCasesOlderThan(LocalDateTime.now().minus((int)(Program.CONFIG.secondsUntilClearedCasesAreRemoved * 1000), ChronoUnit.MILLIS));
-                }
-            }
-        });
-        this.removeClearedCasesThread.setName("RemoveClearedCasesThread");
     }
     
     private void updateDataConsumerLabel() {
@@ -146,15 +126,6 @@ public class MainWindow extends javax.swing.JFrame implements Observer {
 
         setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
         setTitle("USB - UberSpatchBoard");
-        addWindowListener(new java.awt.event.WindowAdapter() {
-            public void windowClosing(java.awt.event.WindowEvent evt) {
-                formWindowClosing(evt);
-            }
-            public void windowOpened(java.awt.event.WindowEvent evt) {
-                formWindowOpened(evt);
-            }
-        });
-
         caseBox.setBorder(javax.swing.BorderFactory.createTitledBorder("Cases"));
 
         caseWrapperPanel.setLayout(new java.awt.BorderLayout());
@@ -284,13 +255,15 @@ public class MainWindow extends javax.swing.JFrame implements Observer {
     }//GEN-LAST:event_onCloseMenuClicked
 
     private void onAddTestCaseClicked(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_onAddTestCaseClicked
-        Case testCase = new Case(this.cm.getOpenCases().size()+1, new Client("Kies", "Kies", Platform.PC, "de"), new de.targodan.usb.data.System("Cubeo"), false, LocalDateTime.now());
-        Rat rat = new Rat("testRat");
-        rat.setJumps(5);
-        rat.setAssigned(true);
-        rat.insertReport(new Report(Report.Type.SYS, true));
-        testCase.assignRat(rat);
-        this.cm.addCase(testCase);
+        this.cm.submit(() -> {
+            Case testCase = new Case(this.cm.getOpenCases().size()+1, new Client("Kies", "Kies", Platform.PC, "de"), new de.targodan.usb.data.System("Cubeo"), false, LocalDateTime.now());
+            Rat rat = new Rat("testRat");
+            rat.setJumps(5);
+            rat.setAssigned(true);
+            rat.insertReport(new Report(Report.Type.SYS, true));
+            testCase.assignRat(rat);
+            this.cm.addCase(testCase);
+        });
     }//GEN-LAST:event_onAddTestCaseClicked
 
     private void onOpenInjectionWindowClicked(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_onOpenInjectionWindowClicked
@@ -328,23 +301,8 @@ public class MainWindow extends javax.swing.JFrame implements Observer {
         });
     }//GEN-LAST:event_onSettingsClicked
 
-    private void formWindowOpened(java.awt.event.WindowEvent evt) {//GEN-FIRST:event_formWindowOpened
-        this.removeClearedCasesThread.start();
-    }//GEN-LAST:event_formWindowOpened
-
-    private void formWindowClosing(java.awt.event.WindowEvent evt) {//GEN-FIRST:event_formWindowClosing
-        this.runRemoveClearedCasesThread.set(false);
-        try {
-            this.removeClearedCasesThread.join();
-        } catch (InterruptedException ex) {
-            Logger.getLogger(MainWindow.class.getName()).log(Level.SEVERE, null, ex);
-        }
-    }//GEN-LAST:event_formWindowClosing
-
     private CaseManager cm;
     private ConsoleWindow consoleWindow;
-    private final Thread removeClearedCasesThread;
-    private AtomicBoolean runRemoveClearedCasesThread;
     
     // Variables declaration - do not modify//GEN-BEGIN:variables
     private javax.swing.JPanel caseBox;
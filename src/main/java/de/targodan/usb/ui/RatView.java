@@ -28,32 +28,113 @@ import de.targodan.usb.data.Report;
 import java.awt.Color;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 
 /**
+ * RatView shows a rat with its jumps and reports.
+ * 
+ * A RatView created for a rat observes it and shows its changes on its own.
+ * A RatView created without a rat, e.g. for rendering table cells, only
+ * shows the rat it is given by setRat at that moment.
  *
  * @author Luca Corbatto
  */
 public class RatView extends javax.swing.JPanel implements Observer {
     private static final Color HARD_ASSIGNED_FOREGROUND_COLOR = Color.BLACK;
     private static final Color SOFT_ASSIGNED_FOREGROUND_COLOR = Color.GRAY;
+    
+    private final AtomicBoolean outdated = new AtomicBoolean(false);
+    // Only set if the rat is observed.
+    private final RefreshScheduler refreshScheduler;
 
     /**
      * Creates new form RatView
      */
     public RatView() {
-        initComponents();
+        this(false);
     }
     
+    /**
+     * Creates new form RatView observing the given rat.
+     * 
+     * @param rat The rat to show.
+     */
     public RatView(Rat rat) {
-        this();
+        this(true);
         
+        this.setRat(rat);
+    }
+    
+    /**
+     * Creates new form RatView.
+     * 
+     * @param observing Whether or not the shown rat is observed.
+     */
+    private RatView(boolean observing) {
+        initComponents();
+        
+        if(observing) {
+            this.refreshScheduler = new RefreshScheduler(() -> {
+                if(this.rat != null && this.outdated.getAndSet(false)) {
+                    this.updateRatView();
+                }
+            });
+        } else {
+            this.refreshScheduler = null;
+        }
+    }
+    
+    /**
+     * Shows the given rat instead of the current one.
+     * 
+     * An observing RatView stops observing the previous rat, so views can
+     * be reused for different rats without leaking observers. Setting the
+     * same rat again applies any of its changes that were not shown yet.
+     * A RatView that does not observe always shows the rat as it is now.
+     * 
+     * @param rat The rat to show or null to just stop showing the current
+     * rat.
+     */
+    public void setRat(Rat rat) {
+        if(this.refreshScheduler == null) {
+            this.rat = rat;
+            if(this.rat != null) {
+                this.updateRatView();
+            }
+            return;
+        }
+        
+        if(this.rat == rat) {
+            if(this.rat != null && this.outdated.getAndSet(false)) {
+                this.updateRatView();
+            }
+            return;
+        }
+        
+        if(this.rat != null) {
+            this.rat.deleteObserver(this);
+        }
         this.rat = rat;
-        this.updateRatView();
-        this.rat.addObserver(this);
+        if(this.rat != null) {
+            this.rat.addObserver(this);
+            this.outdated.set(false);
+            this.updateRatView();
+        }
+    }
+    
+    /**
+     * Returns the shown rat.
+     * 
+     * @return the shown rat or null.
+     */
+    public Rat getRat() {
+        return this.rat;
     }
 
     private String getRatName() {
@@ -90,29 +171,44 @@ public class RatView extends javax.swing.JPanel implements Observer {
     private void updateReports() {
         this.reportsPanel.removeAll();
         
-        this.rat.getReports().stream()
-                .sorted((r1, r2) -> this.reportOrder(r1.getType()) - this.reportOrder(r2.getType()))
-                .forEach(report -> {
-                    JLabel label = new JLabel();
-                    JPanel panel = new JPanel();
+        List<Report> reports = new ArrayList<>(this.rat.getReports());
+        reports.sort((r1, r2) -> this.reportOrder(r1.getType()) - this.reportOrder(r2.getType()));
+        
+        // Reuse the labels of previous updates.
+        while(this.reportLabels.size() < reports.size()) {
+            JLabel label = new JLabel();
+            JPanel panel = new JPanel();
+            panel.add(label);
+            this.reportLabels.add(label);
+        }
+        if(this.reportFont == null) {
+            this.reportFont = this.reportLabels.get(0).getFont();
+            this.minusReportFont = this.reportFont.deriveFont(Font.BOLD);
+        }
+        
+        for(int i = 0; i < reports.size(); ++i) {
+            Report report = reports.get(i);
+            JLabel label = this.reportLabels.get(i);
+            JPanel panel = (JPanel)label.getParent();
 
-                    String text = this.reportTypeToString(report.getType());
-                    if(report.isPlus()) {
-                        text += "+";
-                        panel.setBackground(RatView.PLUS_BACKGROUND_COLOR);
-                        label.setForeground(RatView.PLUS_FOREGROUND_COLOR);
-                    } else {
-                        text += "-";
-                        panel.setBackground(RatView.MINUS_BACKGROUND_COLOR);
-                        label.setForeground(RatView.MINUS_FOREGROUND_COLOR);
-                        label.setFont(new Font(label.getFont().getFamily(), Font.BOLD, label.getFont().getSize()));
-                    }
-                    label.setText(text);
-                    panel.add(label);
-                    panel.setPreferredSize(new Dimension(panel.getPreferredSize().width, 25));
+            String text = this.reportTypeToString(report.getType());
+            if(report.isPlus()) {
+                text += "+";
+                panel.setBackground(RatView.PLUS_BACKGROUND_COLOR);
+                label.setForeground(RatView.PLUS_FOREGROUND_COLOR);
+                label.setFont(this.reportFont);
+            } else {
+                text += "-";
+                panel.setBackground(RatView.MINUS_BACKGROUND_COLOR);
+                label.setForeground(RatView.MINUS_FOREGROUND_COLOR);
+                label.setFont(this.minusReportFont);
+            }
+            label.setText(text);
+            panel.setPreferredSize(null);
+            panel.setPreferredSize(new Dimension(panel.getPreferredSize().width, 25));
 
-                    this.reportsPanel.add(panel);
-                });
+            this.reportsPanel.add(panel);
+        }
     }
     
     private String reportTypeToString(Report.Type type) {
@@ -171,9 +267,8 @@ public class RatView extends javax.swing.JPanel implements Observer {
     
     @Override
     public void update(Observable o, Object arg) {
-        java.awt.EventQueue.invokeLater(() -> {
-            this.updateRatView();
-        });
+        this.outdated.set(true);
+        this.refreshScheduler.requestRefresh();
     }
     
     /**
@@ -255,6 +350,9 @@ public class RatView extends javax.swing.JPanel implements Observer {
     }// </editor-fold>//GEN-END:initComponents
 
     private Rat rat;
+    private final List<JLabel> reportLabels = new ArrayList<>();
+    private Font reportFont;
+    private Font minusReportFont;
     
     private static final Color MINUS_BACKGROUND_COLOR = Color.RED;
     private static final Color MINUS_FOREGROUND_COLOR = Color.WHITE;
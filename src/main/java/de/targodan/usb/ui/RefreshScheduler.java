@@ -0,0 +1,98 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.ui;
+
+import de.targodan.usb.Program;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.Timer;
+
+/**
+ * RefreshScheduler coalesces refresh requests from any thread into at most
+ * one refresh per interval on the event dispatch thread.
+ * 
+ * The first request after a refresh starts a Swing Timer, all further
+ * requests until the timer fires are collapsed into that single refresh.
+ * 
+ * @author Luca Corbatto
+ */
+public class RefreshScheduler {
+    public static final int DEFAULT_INTERVAL_MILLIS = 33;
+    
+    private final Timer timer;
+    private final AtomicBoolean scheduled;
+    
+    /**
+     * Constructs a RefreshScheduler.
+     * 
+     * @param intervalMillis The minimum time between two refreshes in
+     * milliseconds.
+     * @param refresh The refresh, run on the event dispatch thread.
+     */
+    public RefreshScheduler(int intervalMillis, Runnable refresh) {
+        if(intervalMillis < 0) {
+            throw new IllegalArgumentException("The refresh interval must not be negative, got "+intervalMillis+".");
+        }
+        
+        this.scheduled = new AtomicBoolean(false);
+        this.timer = new Timer(intervalMillis, e -> {
+            // Requests from now on need another refresh.
+            this.scheduled.set(false);
+            refresh.run();
+        });
+        this.timer.setRepeats(false);
+    }
+    
+    /**
+     * Constructs a RefreshScheduler with the interval defined in the Config.
+     * 
+     * @param refresh The refresh, run on the event dispatch thread.
+     */
+    public RefreshScheduler(Runnable refresh) {
+        this(RefreshScheduler.getConfiguredIntervalMillis(), refresh);
+    }
+    
+    /**
+     * Returns the refresh interval defined in the Config or the default
+     * interval if there is none.
+     * 
+     * @return the refresh interval in milliseconds.
+     */
+    public static int getConfiguredIntervalMillis() {
+        if(Program.CONFIG == null || Program.CONFIG.uiRefreshIntervalMillis < 0) {
+            return RefreshScheduler.DEFAULT_INTERVAL_MILLIS;
+        }
+        return Program.CONFIG.uiRefreshIntervalMillis;
+    }
+    
+    /**
+     * Requests a refresh unless one is scheduled already.
+     * 
+     * This may be called from any thread.
+     */
+    public void requestRefresh() {
+        if(this.scheduled.compareAndSet(false, true)) {
+            this.timer.start();
+        }
+    }
+}
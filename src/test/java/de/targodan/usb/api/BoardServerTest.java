@@ -0,0 +1,264 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.api;
+
+import de.targodan.usb.data.Case;
+import de.targodan.usb.data.CaseManager;
+import de.targodan.usb.data.Client;
+import de.targodan.usb.data.Platform;
+import de.targodan.usb.data.Rat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class BoardServerTest {
+    private CaseManager cm;
+    private BoardServer server;
+    
+    public BoardServerTest() {
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        this.cm = new CaseManager();
+        this.cm.start();
+        this.server = new BoardServer(this.cm, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        this.server.start();
+    }
+    
+    @After
+    public void tearDown() {
+        this.server.stop();
+        this.cm.stop();
+    }
+    
+    private static Case createCase(int number) {
+        return new Case(number, new Client("client_"+number, "Client "+number, Platform.PC, "en"), new de.targodan.usb.data.System("Sol"), false);
+    }
+    
+    private void addCase(Case c) {
+        this.cm.execute(() -> this.cm.addCase(c));
+    }
+    
+    /**
+     * Returns the ETag of the current cases.
+     */
+    private String getETag() throws IOException {
+        HttpURLConnection connection = this.open(BoardServer.CASES_PATH, "GET", null);
+        assertThat(connection.getResponseCode(), equalTo(200));
+        return connection.getHeaderField("ETag");
+    }
+    
+    /**
+     * Waits until the cases differ from the given ETag.
+     */
+    private HttpURLConnection waitForChange(String etag) throws IOException {
+        HttpURLConnection connection = this.open(BoardServer.POLL_PATH+"?timeout=10", "GET", etag);
+        assertThat(connection.getResponseCode(), equalTo(200));
+        return connection;
+    }
+    
+    private HttpURLConnection open(String path, String method, String etag) throws IOException {
+        URL url = new URL("http", InetAddress.getLoopbackAddress().getHostAddress(), this.server.getPort(), path);
+        HttpURLConnection connection = (HttpURLConnection)url.openConnection();
+        connection.setRequestMethod(method);
+        connection.setReadTimeout(10000);
+        if(etag != null) {
+            connection.setRequestProperty("If-None-Match", etag);
+        }
+        return connection;
+    }
+    
+    private static String readBody(HttpURLConnection connection) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(InputStream in = connection.getInputStream()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Test of GET /api/cases, of class BoardServer.
+     */
+    @Test
+    public void testGetCases() throws IOException {
+        System.out.println("getCases");
+        
+        Case c = BoardServerTest.createCase(1);
+        Rat rat = new Rat("some_rat", "Some Rat", Platform.PC);
+        c.assignRat(rat);
+        c.addNote("Some \"note\"");
+        String etag = this.getETag();
+        this.addCase(c);
+        this.waitForChange(etag);
+        
+        HttpURLConnection connection = this.open(BoardServer.CASES_PATH, "GET", null);
+        assertThat(connection.getResponseCode(), equalTo(200));
+        assertThat(connection.getHeaderField("Content-Type"), equalTo("application/json; charset=utf-8"));
+        assertThat(connection.getHeaderField("ETag"), not(equalTo(etag)));
+        String body = BoardServerTest.readBody(connection);
+        assertThat(body, containsString("\"number\":1"));
+        assertThat(body, containsString("\"ircName\":\"client_1\""));
+        assertThat(body, containsString("\"ircName\":\"some_rat\""));
+        assertThat(body, containsString("\"Some \\\"note\\\"\""));
+        assertThat(body, containsString("\"closed\":[]"));
+    }
+
+    /**
+     * Test of the ETag handling, of class BoardServer.
+     */
+    @Test
+    public void testIfNoneMatch() throws IOException {
+        System.out.println("ifNoneMatch");
+        
+        String etag = this.getETag();
+        
+        HttpURLConnection connection = this.open(BoardServer.CASES_PATH, "GET", etag);
+        assertThat(connection.getResponseCode(), equalTo(304));
+        assertThat(connection.getHeaderField("ETag"), equalTo(etag));
+        
+        this.addCase(BoardServerTest.createCase(1));
+        this.waitForChange(etag);
+        
+        connection = this.open(BoardServer.CASES_PATH, "GET", etag);
+        assertThat(connection.getResponseCode(), equalTo(200));
+        assertThat(connection.getHeaderField("ETag"), not(equalTo(etag)));
+        assertThat(BoardServerTest.readBody(connection), containsString("\"number\":1"));
+        
+        connection = this.open(BoardServer.CASES_PATH, "HEAD", null);
+        assertThat(connection.getResponseCode(), equalTo(200));
+        assertThat(connection.getHeaderField("ETag"), not(equalTo(etag)));
+    }
+
+    /**
+     * Test of GET /api/cases/poll, of class BoardServer.
+     */
+    @Test
+    public void testPoll() throws Exception {
+        System.out.println("poll");
+        
+        HttpURLConnection connection = this.open(BoardServer.POLL_PATH, "GET", null);
+        assertThat(connection.getResponseCode(), equalTo(200));
+        String etag = connection.getHeaderField("ETag");
+        
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<HttpURLConnection> poll = executor.submit(() -> {
+                HttpURLConnection pollConnection = this.open(BoardServer.POLL_PATH+"?timeout=10", "GET", etag);
+                pollConnection.getResponseCode();
+                return pollConnection;
+            });
+            
+            Thread.sleep(200);
+            assertThat(poll.isDone(), is(false));
+            
+            this.addCase(BoardServerTest.createCase(1));
+            
+            connection = poll.get(5, TimeUnit.SECONDS);
+            assertThat(connection.getResponseCode(), equalTo(200));
+            assertThat(connection.getHeaderField("ETag"), not(equalTo(etag)));
+            assertThat(BoardServerTest.readBody(connection), containsString("\"number\":1"));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Test of the timeout of GET /api/cases/poll, of class BoardServer.
+     */
+    @Test
+    public void testPollTimeout() throws IOException {
+        System.out.println("pollTimeout");
+        
+        String etag = this.getETag();
+        
+        HttpURLConnection connection = this.open(BoardServer.POLL_PATH+"?timeout=1", "GET", etag);
+        assertThat(connection.getResponseCode(), equalTo(304));
+        assertThat(connection.getHeaderField("ETag"), equalTo(etag));
+        
+        connection = this.open(BoardServer.POLL_PATH+"?timeout=nope", "GET", etag);
+        assertThat(connection.getResponseCode(), equalTo(400));
+    }
+
+    /**
+     * Test of unsupported requests, of class BoardServer.
+     */
+    @Test
+    public void testUnsupportedRequests() throws IOException {
+        System.out.println("unsupportedRequests");
+        
+        HttpURLConnection connection = this.open(BoardServer.CASES_PATH, "POST", null);
+        connection.setDoOutput(true);
+        try(OutputStream out = connection.getOutputStream()) {
+            out.write("{}".getBytes(StandardCharsets.UTF_8));
+        }
+        assertThat(connection.getResponseCode(), equalTo(405));
+        
+        connection = this.open(BoardServer.CASES_PATH+"/nope", "GET", null);
+        assertThat(connection.getResponseCode(), equalTo(404));
+    }
+
+    /**
+     * Test of getTimeoutSeconds method, of class BoardServer.
+     */
+    @Test
+    public void testGetTimeoutSeconds() {
+        System.out.println("getTimeoutSeconds");
+        
+        assertThat(BoardServer.getTimeoutSeconds(null), equalTo(BoardServer.DEFAULT_POLL_TIMEOUT_SECONDS));
+        assertThat(BoardServer.getTimeoutSeconds("foo=bar"), equalTo(BoardServer.DEFAULT_POLL_TIMEOUT_SECONDS));
+        assertThat(BoardServer.getTimeoutSeconds("foo=bar&timeout=5"), equalTo(5));
+        assertThat(BoardServer.getTimeoutSeconds("timeout=600"), equalTo(BoardServer.MAX_POLL_TIMEOUT_SECONDS));
+    }
+    
+    @Test(expected=NumberFormatException.class)
+    public void testGetTimeoutSecondsNegative() {
+        System.out.println("getTimeoutSecondsNegative");
+        
+        BoardServer.getTimeoutSeconds("timeout=-1");
+    }
+}
@@ -0,0 +1,354 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.data;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class CaseManagerTest {
+    
+    public CaseManagerTest() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+    
+    private static Case createCase(int number, String ircName, String cmdrName) {
+        return new Case(number, new Client(ircName, cmdrName, Platform.PC, "en"), new System("Sol"), false);
+    }
+    
+    private static Case createCase(int number, LocalDateTime openTime) {
+        return new Case(number, new Client("client_"+number, "Client "+number, Platform.PC, "en"), new System("Sol"), false, openTime);
+    }
+
+    /**
+     * Test of getSnapshot method, of class CaseManager.
+     */
+    @Test
+    public void testGetSnapshot() {
+        java.lang.System.out.println("getSnapshot");
+        
+        {
+            CaseManager cm = new CaseManager();
+            LocalDateTime now = LocalDateTime.of(2017, 7, 1, 12, 0);
+            Case c1 = createCase(1, now.plusMinutes(2));
+            Case c2 = createCase(2, now);
+            Case c3 = createCase(3, now.plusMinutes(1));
+            Case c4 = createCase(4, now);
+            
+            CaseSnapshot empty = cm.getSnapshot();
+            assertThat(empty.size(), equalTo(0));
+            
+            cm.addCase(c1);
+            cm.addCase(c2);
+            cm.addCase(c3);
+            cm.addCase(c4);
+            CaseSnapshot snapshot = cm.getSnapshot();
+            assertThat(snapshot.getVersion(), is(not(equalTo(empty.getVersion()))));
+            assertThat(snapshot.getOpenCases(), equalTo(Arrays.asList(c2, c4, c3, c1)));
+            assertThat(snapshot.getClosedCases().isEmpty(), is(true));
+            assertThat(cm.getOpenCases(), equalTo(Arrays.asList(c2, c4, c3, c1)));
+            
+            // Snapshots are not affected by later changes.
+            c3.close();
+            assertThat(snapshot.getOpenCases(), equalTo(Arrays.asList(c2, c4, c3, c1)));
+            assertThat(empty.size(), equalTo(0));
+            
+            CaseSnapshot closed = cm.getSnapshot();
+            assertThat(closed.getVersion(), is(not(equalTo(snapshot.getVersion()))));
+            assertThat(closed.getOpenCases(), equalTo(Arrays.asList(c2, c4, c1)));
+            assertThat(closed.getClosedCases(), equalTo(Arrays.asList(c3)));
+            assertThat(closed.size(), equalTo(4));
+            assertThat(closed.get(0), is(sameInstance(c3)));
+            assertThat(closed.get(1), is(sameInstance(c2)));
+            assertThat(closed.get(3), is(sameInstance(c1)));
+            
+            // Changes to a case only change the version.
+            c1.setCodeRed(true);
+            CaseSnapshot changed = cm.getSnapshot();
+            assertThat(changed.getVersion(), is(not(equalTo(closed.getVersion()))));
+            assertThat(changed.getOpenCases(), is(sameInstance(closed.getOpenCases())));
+            
+            cm.removeClosedCasesOlderThan(c3.getCloseTime().plusSeconds(1));
+            assertThat(cm.getSnapshot().getClosedCases().isEmpty(), is(true));
+            assertThat(cm.getSnapshot().size(), equalTo(3));
+            
+            // Nothing was removed so the snapshot stays the same.
+            CaseSnapshot unchanged = cm.getSnapshot();
+            cm.removeClosedCasesOlderThan(c3.getCloseTime().plusSeconds(1));
+            assertThat(cm.getSnapshot(), is(sameInstance(unchanged)));
+        }
+    }
+
+    /**
+     * Test of lookupCaseOfClient method, of class CaseManager.
+     */
+    @Test
+    public void testLookupCaseOfClient() {
+        java.lang.System.out.println("lookupCaseOfClient");
+        
+        {
+            CaseManager cm = new CaseManager();
+            Case c0 = createCase(0, "client_0", "Client 0");
+            Case c1 = createCase(1, "client_1", "Client 1");
+            cm.addCase(c0);
+            cm.addCase(c1);
+            
+            assertThat(cm.lookupCaseOfClient("client_0"), is(sameInstance(c0)));
+            assertThat(cm.lookupCaseOfClient("Client 1"), is(sameInstance(c1)));
+            assertThat(cm.lookupCaseOfClient("client_2"), is(nullValue()));
+        }
+        {
+            // Renaming the client updates the index.
+            CaseManager cm = new CaseManager();
+            Case c = createCase(0, "client_0", "Client 0");
+            cm.addCase(c);
+            
+            c.getClient().setIRCName("client_renamed");
+            c.getClient().setCMDRName("Client Renamed");
+            assertThat(cm.lookupCaseOfClient("client_0"), is(nullValue()));
+            assertThat(cm.lookupCaseOfClient("Client 0"), is(nullValue()));
+            assertThat(cm.lookupCaseOfClient("client_renamed"), is(sameInstance(c)));
+            assertThat(cm.lookupCaseOfClient("Client Renamed"), is(sameInstance(c)));
+            
+            c.setClient(new Client("other_client", null, Platform.PC, "en"));
+            assertThat(cm.lookupCaseOfClient("client_renamed"), is(nullValue()));
+            assertThat(cm.lookupCaseOfClient("other_client"), is(sameInstance(c)));
+        }
+        {
+            // Closed cases are not found and the lowest number wins.
+            CaseManager cm = new CaseManager();
+            Case c3 = createCase(3, "client", "Client");
+            Case c5 = createCase(5, "someone", "client");
+            cm.addCase(c5);
+            cm.addCase(c3);
+            
+            assertThat(cm.lookupCaseOfClient("client"), is(sameInstance(c3)));
+            c3.close();
+            assertThat(cm.lookupCaseOfClient("client"), is(sameInstance(c5)));
+            c5.close();
+            assertThat(cm.lookupCaseOfClient("client"), is(nullValue()));
+        }
+    }
+
+    /**
+     * Test of lookupCaseWithRat method, of class CaseManager.
+     */
+    @Test
+    public void testLookupCaseWithRat() {
+        java.lang.System.out.println("lookupCaseWithRat");
+        
+        {
+            CaseManager cm = new CaseManager();
+            Case c0 = createCase(0, "client_0", "Client 0");
+            Case c1 = createCase(1, "client_1", "Client 1");
+            cm.addCase(c0);
+            cm.addCase(c1);
+            
+            assertThat(cm.lookupCaseWithRat(new Rat("Rat1")), is(nullValue()));
+            
+            c1.addCall(new Rat("Rat1"));
+            assertThat(cm.lookupCaseWithRat(new Rat("Rat1")), is(sameInstance(c1)));
+            
+            // Assigned rats are preferred over calls.
+            c0.assignRat(new Rat("Rat1"));
+            assertThat(cm.lookupCaseWithRat(new Rat("Rat1")), is(sameInstance(c0)));
+            
+            c0.unassignRat(new Rat("Rat1"));
+            assertThat(cm.lookupCaseWithRat(new Rat("Rat1")), is(sameInstance(c1)));
+            
+            c1.close();
+            assertThat(cm.lookupCaseWithRat(new Rat("Rat1")), is(nullValue()));
+        }
+    }
+
+    /**
+     * Test of addListener method, of class CaseManager.
+     */
+    @Test
+    public void testAddListener() {
+        java.lang.System.out.println("addListener");
+        
+        {
+            CaseManager cm = new CaseManager();
+            List<CaseEvent> events = new ArrayList<>();
+            List<Long> versions = new ArrayList<>();
+            cm.addListener(event -> {
+                events.add(event);
+                versions.add(cm.getSnapshot().getVersion());
+            });
+            
+            Case c = createCase(1, "client", "Client");
+            cm.addCase(c);
+            c.getClient().setCMDRName("Other Name");
+            Rat rat = new Rat("Rat1");
+            c.assignRat(rat);
+            rat.setJumps(5);
+            c.addCall(new Rat("Rat2"));
+            c.setNotes(new String[] {"note"});
+            c.close();
+            cm.removeClosedCasesOlderThan(c.getCloseTime().plusSeconds(1));
+            
+            // Removed cases are no longer reported.
+            c.setCodeRed(true);
+            
+            assertThat(events.size(), equalTo(8));
+            assertThat(events.get(0).getType(), equalTo(CaseEvent.Type.ADDED));
+            assertThat(events.get(1).getField(), equalTo(CaseEvent.Field.CLIENT));
+            assertThat(events.get(2).getField(), equalTo(CaseEvent.Field.RATS));
+            assertThat(events.get(2).getRat(), is(sameInstance(rat)));
+            assertThat(events.get(3).getField(), equalTo(CaseEvent.Field.RATS));
+            assertThat(events.get(4).getField(), equalTo(CaseEvent.Field.CALLS));
+            assertThat(events.get(5).getField(), equalTo(CaseEvent.Field.NOTES));
+            assertThat(events.get(6).getType(), equalTo(CaseEvent.Type.CLOSED));
+            assertThat(events.get(7).getType(), equalTo(CaseEvent.Type.REMOVED));
+            events.forEach(event -> assertThat(event.getSource(), is(sameInstance(c))));
+            
+            // Every event comes with exactly one new snapshot.
+            for(int i = 1; i < versions.size(); ++i) {
+                assertThat(versions.get(i), equalTo(versions.get(i - 1) + 1));
+            }
+        }
+    }
+
+    /**
+     * Test of execute method, of class CaseManager.
+     */
+    @Test
+    public void testExecute() {
+        java.lang.System.out.println("execute");
+        
+        CaseManager cm = new CaseManager();
+        
+        // Until the CaseManager is started changes are run right away.
+        cm.execute(() -> cm.addCase(createCase(1, "client_1", "Client 1")));
+        assertThat(cm.getOpenCases().size(), equalTo(1));
+        
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        Set<Thread> threads = Collections.synchronizedSet(new HashSet<>());
+        cm.start();
+        try {
+            for(int i = 2; i <= 100; ++i) {
+                int number = i;
+                cm.execute(() -> {
+                    cm.addCase(createCase(number, "client_"+number, "Client "+number));
+                    order.add(number);
+                    threads.add(Thread.currentThread());
+                });
+            }
+        } finally {
+            // Stopping runs all changes handed in so far.
+            cm.stop();
+        }
+        
+        assertThat(cm.getOpenCases().size(), equalTo(100));
+        for(int i = 0; i < order.size(); ++i) {
+            assertThat(order.get(i), equalTo(i + 2));
+        }
+        assertThat(threads.size(), equalTo(1));
+        assertThat(threads.contains(Thread.currentThread()), is(false));
+        
+        // Stopped CaseManagers can be used right away again.
+        cm.getCase(1).close();
+        assertThat(cm.getOpenCases().size(), equalTo(99));
+    }
+    
+    /**
+     * Test of submit method, of class CaseManager.
+     */
+    @Test
+    public void testSubmit() throws InterruptedException {
+        java.lang.System.out.println("submit");
+        
+        CaseManager cm = new CaseManager();
+        List<Integer> order = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        cm.start();
+        try {
+            cm.execute(() -> {
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+            blocked.await();
+            
+            // Fill the queue while the owner thread is busy.
+            for(int i = 0; i < CaseManager.MUTATION_QUEUE_CAPACITY; ++i) {
+                cm.execute(() -> order.add(1));
+            }
+            
+            // Submitting does not wait for the owner thread.
+            cm.submit(() -> order.add(2));
+            assertThat(order.isEmpty(), is(true));
+            
+            release.countDown();
+        } finally {
+            cm.stop();
+        }
+        
+        assertThat(order.size(), equalTo(CaseManager.MUTATION_QUEUE_CAPACITY + 1));
+        assertThat(order.get(0), equalTo(2));
+    }
+    
+    /**
+     * Test of addCase method, of class CaseManager, on another than the
+     * owner thread.
+     */
+    @Test(expected=IllegalStateException.class)
+    public void testAddCaseNotOnOwnerThread() {
+        java.lang.System.out.println("addCaseNotOnOwnerThread");
+        
+        CaseManager cm = new CaseManager();
+        cm.start();
+        try {
+            cm.addCase(createCase(1, "client_1", "Client 1"));
+        } finally {
+            cm.stop();
+        }
+    }
+}
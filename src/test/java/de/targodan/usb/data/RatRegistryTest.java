@@ -0,0 +1,106 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.data;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class RatRegistryTest {
+    
+    public RatRegistryTest() {
+    }
+
+    /**
+     * Test of lookup method, of class RatRegistry.
+     */
+    @Test
+    public void testLookup() {
+        java.lang.System.out.println("lookup");
+        
+        RatRegistry instance = new RatRegistry(10);
+        RatRegistry.Identity identity = instance.lookup("Kies|PC");
+        assertThat(identity.getIRCName(), equalTo("Kies|PC"));
+        assertThat(identity.getPlatform(), equalTo(Platform.PC));
+        assertThat(instance.lookup(new String("Kies|PC")), is(sameInstance(identity)));
+        assertThat(instance.getCanonicalName(new String("Kies|PC")), is(sameInstance(identity.getIRCName())));
+        assertThat(instance.size(), equalTo(1));
+    }
+
+    /**
+     * Test of guessPlatform method, of class RatRegistry.
+     */
+    @Test
+    public void testGuessPlatform() {
+        java.lang.System.out.println("guessPlatform");
+        
+        RatRegistry instance = new RatRegistry(10);
+        assertThat(instance.guessPlatform("Kies|PC"), equalTo(Platform.PC));
+        assertThat(instance.guessPlatform("Kies[ps"), equalTo(Platform.PS4));
+        assertThat(instance.guessPlatform("Kies|XB"), equalTo(Platform.XBOX));
+        assertThat(instance.guessPlatform("Kies"), is(nullValue()));
+        assertThat(instance.guessPlatform("KiesPC"), is(nullValue()));
+    }
+    
+    /**
+     * Test of size method, of class RatRegistry.
+     */
+    @Test
+    public void testSize() {
+        java.lang.System.out.println("size");
+        
+        RatRegistry instance = new RatRegistry(2);
+        instance.lookup("a");
+        instance.lookup("b");
+        assertThat(instance.size(), equalTo(2));
+        instance.lookup("a");
+        assertThat(instance.size(), equalTo(2));
+        instance.lookup("c");
+        assertThat(instance.size(), equalTo(1));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidMaxSize() {
+        new RatRegistry(0);
+    }
+    
+    /**
+     * Test of the platform guessed for a new Rat, of class Rat.
+     */
+    @Test
+    public void testRatIdentity() {
+        java.lang.System.out.println("ratIdentity");
+        
+        Rat rat1 = new Rat("RegistryTest|PS");
+        Rat rat2 = new Rat(new String("RegistryTest|PS"), "Kies");
+        assertThat(rat1.getPlatform(), equalTo(Platform.PS4));
+        assertThat(rat2.getPlatform(), equalTo(Platform.PS4));
+        assertThat(rat2.getIRCName(), is(sameInstance(rat1.getIRCName())));
+        assertThat(rat1, is(not(sameInstance(rat2))));
+    }
+}
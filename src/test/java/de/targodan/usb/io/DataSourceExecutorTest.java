@@ -0,0 +1,200 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.IRCMessage;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class DataSourceExecutorTest {
+    
+    public DataSourceExecutorTest() {
+    }
+    
+    /**
+     * BlockingSource sends one message and blocks until it is stopped.
+     */
+    private static class BlockingSource implements DataSource {
+        protected final AtomicBoolean run = new AtomicBoolean(true);
+        protected final AtomicInteger stopCalls = new AtomicInteger();
+        protected volatile Thread thread;
+
+        @Override
+        public void listen(BlockingQueue<IRCMessage> output) {
+            this.thread = Thread.currentThread();
+            output.add(new IRCMessage(null, "user", "#fuelrats", "listened"));
+            while(this.run.get()) {
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException ex) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void stop() {
+            this.stopCalls.incrementAndGet();
+            this.run.set(false);
+        }
+
+        @Override
+        public String getName() {
+            return "blocking";
+        }
+
+        @Override
+        public String getShortName() {
+            return "blocking";
+        }
+    }
+    
+    /**
+     * PollingSource sends one message on its first poll.
+     */
+    private static class PollingSource extends BlockingSource implements PollableDataSource {
+        private final AtomicInteger polls = new AtomicInteger();
+
+        @Override
+        public boolean poll(BlockingQueue<IRCMessage> output) {
+            if(this.polls.incrementAndGet() == 1) {
+                output.add(new IRCMessage(null, "user", "#fuelrats", "polled"));
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public long getMinPollInterval() {
+            return 1;
+        }
+
+        @Override
+        public long getMaxPollInterval() {
+            return 4;
+        }
+    }
+
+    /**
+     * Test of threadPerSource method, of class DataSourceExecutor.
+     */
+    @Test
+    public void testThreadPerSource() throws InterruptedException {
+        System.out.println("threadPerSource");
+        
+        BlockingQueue<IRCMessage> queue = new ArrayBlockingQueue<>(4);
+        BlockingSource ds = new BlockingSource();
+        DataSourceExecutor.Handle handle = DataSourceExecutor.threadPerSource().execute(ds, queue);
+        
+        assertThat(queue.poll(5, TimeUnit.SECONDS).getContent(), equalTo("listened"));
+        assertThat(ds.thread.getName(), equalTo("DataSourceThread_blocking"));
+        
+        handle.stop();
+        assertThat(ds.stopCalls.get(), equalTo(1));
+        assertThat(ds.thread.isAlive(), is(false));
+    }
+
+    /**
+     * Test of virtualThreadPerSource method, of class DataSourceExecutor.
+     */
+    @Test
+    public void testVirtualThreadPerSource() throws InterruptedException {
+        System.out.println("virtualThreadPerSource");
+        
+        // Falls back to platform threads on JDKs without virtual threads.
+        BlockingQueue<IRCMessage> queue = new ArrayBlockingQueue<>(4);
+        BlockingSource ds = new BlockingSource();
+        DataSourceExecutor.Handle handle = DataSourceExecutor.virtualThreadPerSource().execute(ds, queue);
+        
+        assertThat(queue.poll(5, TimeUnit.SECONDS).getContent(), equalTo("listened"));
+        
+        handle.stop();
+        assertThat(ds.stopCalls.get(), equalTo(1));
+        assertThat(ds.thread.isAlive(), is(false));
+    }
+
+    /**
+     * Test of scheduled method, of class DataSourceExecutor.
+     */
+    @Test
+    public void testScheduled() throws InterruptedException {
+        System.out.println("scheduled");
+        
+        DataSourceExecutor executor = DataSourceExecutor.scheduled(1);
+        BlockingQueue<IRCMessage> queue = new ArrayBlockingQueue<>(4);
+        
+        PollingSource polled = new PollingSource();
+        DataSourceExecutor.Handle pollingHandle = executor.execute(polled, queue);
+        assertThat(queue.poll(5, TimeUnit.SECONDS).getContent(), equalTo("polled"));
+        assertThat(polled.thread, nullValue());
+        
+        BlockingSource listened = new BlockingSource();
+        DataSourceExecutor.Handle listeningHandle = executor.execute(listened, queue);
+        assertThat(queue.poll(5, TimeUnit.SECONDS).getContent(), equalTo("listened"));
+        
+        Thread.sleep(50);
+        assertThat(polled.polls.get() > 1, is(true));
+        
+        pollingHandle.stop();
+        int polls = polled.polls.get();
+        Thread.sleep(50);
+        assertThat(polled.polls.get(), equalTo(polls));
+        assertThat(polled.stopCalls.get(), equalTo(1));
+        
+        listeningHandle.stop();
+        assertThat(listened.thread.isAlive(), is(false));
+    }
+
+    /**
+     * Test of fromString method, of class DataSourceExecutor.
+     */
+    @Test
+    public void testFromString() {
+        System.out.println("fromString");
+        
+        assertThat(DataSourceExecutor.fromString("thread", 1), not(nullValue()));
+        assertThat(DataSourceExecutor.fromString("virtual", 1), not(nullValue()));
+        assertThat(DataSourceExecutor.fromString("scheduled", 1), not(nullValue()));
+    }
+
+    /**
+     * Test of fromString method, of class DataSourceExecutor.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testFromStringUnknown() {
+        System.out.println("fromStringUnknown");
+        
+        DataSourceExecutor.fromString("fibers", 1);
+    }
+}
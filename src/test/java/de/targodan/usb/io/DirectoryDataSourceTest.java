@@ -0,0 +1,131 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.IRCMessage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class DirectoryDataSourceTest {
+    private static final DateTimeFormatter HEXCHAT_FORMAT = DateTimeFormatter.ofPattern("MMM dd HH:mm:ss", Locale.ENGLISH);
+    
+    private Path dir;
+    private Path network;
+    
+    public DirectoryDataSourceTest() {
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("usb-directory");
+        this.network = Files.createDirectory(this.dir.resolve("FuelRats"));
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        Files.walk(this.dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(p -> p.toFile().delete());
+    }
+    
+    private void append(Path file, String content) throws IOException {
+        String line = HEXCHAT_FORMAT.format(LocalDateTime.now())+" <user>\t"+content+"\n";
+        Files.write(file, line.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+    
+    /**
+     * Takes the given number of messages from the queue.
+     * 
+     * @return the messages formatted as "channel content".
+     */
+    private Set<String> take(BlockingQueue<IRCMessage> queue, int count) throws InterruptedException {
+        Set<String> messages = new HashSet<>();
+        for(int i = 0; i < count; ++i) {
+            IRCMessage msg = queue.poll(5, TimeUnit.SECONDS);
+            assertThat(msg, not(nullValue()));
+            messages.add(msg.getChannel()+" "+msg.getContent());
+        }
+        return messages;
+    }
+
+    /**
+     * Test of listen method, of class DirectoryDataSource.
+     */
+    @Test
+    public void testListen() throws IOException, InterruptedException {
+        System.out.println("listen");
+        
+        this.append(this.network.resolve("#fuelrats.log"), "old");
+        this.append(this.network.resolve("#other.log"), "old");
+        
+        DirectoryDataSource ds = new DirectoryDataSource(this.dir.toString(), Pattern.compile("#fuelrats|#ratchat"), new Hexchat());
+        assertThat(ds.getChannels(), equalTo(Arrays.asList("#fuelrats")));
+        
+        BlockingQueue<IRCMessage> queue = new ArrayBlockingQueue<>(16);
+        Thread t = new Thread(() -> ds.listen(queue));
+        t.start();
+        
+        this.append(this.network.resolve("#fuelrats.log"), "appended");
+        this.append(this.network.resolve("#other.log"), "ignored");
+        this.append(this.network.resolve("#ratchat.log"), "created");
+        assertThat(this.take(queue, 2), equalTo(new HashSet<>(Arrays.asList(
+                "#fuelrats appended",
+                "#ratchat created"
+        ))));
+        
+        Path otherNetwork = Files.createDirectory(this.dir.resolve("Other"));
+        this.append(otherNetwork.resolve("#fuelrats.log"), "other network");
+        assertThat(this.take(queue, 1), equalTo(new HashSet<>(Arrays.asList(
+                "#fuelrats other network"
+        ))));
+        
+        assertThat(queue.poll(100, TimeUnit.MILLISECONDS), nullValue());
+        assertThat(ds.getChannels().size(), equalTo(3));
+        
+        ds.stop();
+        t.join();
+    }
+}
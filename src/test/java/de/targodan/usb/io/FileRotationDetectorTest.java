@@ -0,0 +1,133 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class FileRotationDetectorTest {
+    private Path dir;
+    private Path file;
+    
+    public FileRotationDetectorTest() {
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("usb-rotation");
+        this.file = this.dir.resolve("fuelrats.log");
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        Files.walk(this.dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(p -> p.toFile().delete());
+    }
+    
+    private void write(Path path, String content, StandardOpenOption... options) throws IOException {
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8), options);
+    }
+    
+    private FileChannel openAtEnd() throws IOException {
+        FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ);
+        channel.position(channel.size());
+        return channel;
+    }
+
+    /**
+     * Test of hasChanged method, of class FileRotationDetector.
+     */
+    @Test
+    public void testHasChanged() throws IOException {
+        System.out.println("hasChanged");
+        
+        {
+            this.write(this.file, "first\n");
+            try(FileChannel channel = this.openAtEnd()) {
+                FileRotationDetector detector = new FileRotationDetector(this.file, channel);
+                assertThat(detector.hasChanged(), is(false));
+                
+                this.write(this.file, "second\n", StandardOpenOption.APPEND);
+                assertThat(detector.hasChanged(), is(false));
+            }
+        }
+        {
+            this.write(this.file, "first\nsecond\n");
+            try(FileChannel channel = this.openAtEnd()) {
+                FileRotationDetector detector = new FileRotationDetector(this.file, channel);
+                
+                this.write(this.file, "new\n", StandardOpenOption.TRUNCATE_EXISTING);
+                assertThat(detector.hasChanged(), is(true));
+            }
+        }
+        {
+            this.write(this.file, "first\n");
+            try(FileChannel channel = this.openAtEnd()) {
+                FileRotationDetector detector = new FileRotationDetector(this.file, channel);
+                
+                Files.move(this.file, this.dir.resolve("fuelrats.log.1"));
+                assertThat(detector.hasChanged(), is(false));
+                
+                this.write(this.file, "a much longer line than before\n");
+                assertThat(detector.hasChanged(), is(true));
+            }
+        }
+    }
+
+    /**
+     * Test of reopen method, of class FileRotationDetector.
+     */
+    @Test
+    public void testReopen() throws IOException {
+        System.out.println("reopen");
+        
+        this.write(this.file, "first\n");
+        FileChannel channel = this.openAtEnd();
+        FileRotationDetector detector = new FileRotationDetector(this.file, channel);
+        
+        Files.move(this.file, this.dir.resolve("fuelrats.log.1"));
+        this.write(this.file, "a much longer line than before\n");
+        assertThat(detector.hasChanged(), is(true));
+        
+        FileChannel newChannel = detector.reopen();
+        assertThat(channel.isOpen(), is(false));
+        assertThat(newChannel.position(), equalTo(0L));
+        assertThat(detector.hasChanged(), is(false));
+        newChannel.close();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class FilteringLineReaderTest {
+    private Path dir;
+    private Path file;
+    
+    public FilteringLineReaderTest() {
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("usb-lines");
+        this.file = this.dir.resolve("fuelrats.log");
+        Files.write(this.file, new byte[0]);
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        Files.walk(this.dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(p -> p.toFile().delete());
+    }
+    
+    private void append(byte[] content) throws IOException {
+        Files.write(this.file, content, StandardOpenOption.APPEND);
+    }
+    
+    private void append(String content) throws IOException {
+        this.append(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test of readLine method, of class FilteringLineReader.
+     */
+    @Test
+    public void testReadLine() throws IOException {
+        System.out.println("readLine");
+        
+        try(FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            FilteringLineReader instance = new FilteringLineReader(channel, StandardCharsets.UTF_8);
+            assertThat(instance.readLine(), is(nullValue()));
+            
+            this.append("first\r\n\nsec");
+            assertThat(instance.readLine(), equalTo("first"));
+            assertThat(instance.readLine(), is(nullValue()));
+            
+            this.append("ond\n\u000304,12colour\u0003 and \u0002bold\u000F\n");
+            assertThat(instance.readLine(), equalTo("second"));
+            assertThat(instance.readLine(), equalTo("colour and bold"));
+            assertThat(instance.readLine(), is(nullValue()));
+        }
+    }
+    
+    /**
+     * Test of readLine method, of class FilteringLineReader, with chars that
+     * are encoded in multiple bytes.
+     */
+    @Test
+    public void testReadLineMultiByte() throws IOException {
+        System.out.println("readLineMultiByte");
+        
+        try(FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            FilteringLineReader instance = new FilteringLineReader(channel, StandardCharsets.UTF_8);
+            
+            byte[] bytes = "\u000312Grüße €\n".getBytes(StandardCharsets.UTF_8);
+            // Split within the encoded ü.
+            this.append(Arrays.copyOfRange(bytes, 0, 6));
+            assertThat(instance.readLine(), is(nullValue()));
+            this.append(Arrays.copyOfRange(bytes, 6, bytes.length));
+            assertThat(instance.readLine(), equalTo("Grüße €"));
+            
+            // Unprintable chars and malformed bytes are dropped.
+            this.append(new byte[]{'a', (byte)0xC2, (byte)0x85, 'b', (byte)0xFF, 'c', '\n'});
+            assertThat(instance.readLine(), equalTo("abc"));
+        }
+    }
+    
+    /**
+     * Test of takePartialLine method, of class FilteringLineReader.
+     */
+    @Test
+    public void testTakePartialLine() throws IOException {
+        System.out.println("takePartialLine");
+        
+        try(FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            FilteringLineReader instance = new FilteringLineReader(channel, StandardCharsets.UTF_8);
+            assertThat(instance.takePartialLine(), equalTo(""));
+            
+            this.append("complete\nincomplete");
+            assertThat(instance.readLine(), equalTo("complete"));
+            assertThat(instance.readLine(), is(nullValue()));
+            assertThat(instance.takePartialLine(), equalTo("incomplete"));
+            assertThat(instance.takePartialLine(), equalTo(""));
+        }
+    }
+    
+    /**
+     * Test of isAsciiCompatible method, of class FilteringLineReader.
+     */
+    @Test
+    public void testIsAsciiCompatible() {
+        System.out.println("isAsciiCompatible");
+        
+        assertThat(FilteringLineReader.isAsciiCompatible(StandardCharsets.UTF_8), is(true));
+        assertThat(FilteringLineReader.isAsciiCompatible(StandardCharsets.ISO_8859_1), is(true));
+        assertThat(FilteringLineReader.isAsciiCompatible(StandardCharsets.US_ASCII), is(true));
+        assertThat(FilteringLineReader.isAsciiCompatible(Charset.forName("windows-1252")), is(true));
+        assertThat(FilteringLineReader.isAsciiCompatible(StandardCharsets.UTF_16), is(false));
+        assertThat(FilteringLineReader.isAsciiCompatible(StandardCharsets.UTF_16LE), is(false));
+    }
+    
+    @Test(expected=IllegalArgumentException.class)
+    public void testIncompatibleCharset() throws IOException {
+        System.out.println("incompatibleCharset");
+        
+        try(FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+            new FilteringLineReader(channel, StandardCharsets.UTF_16);
+        }
+    }
+}
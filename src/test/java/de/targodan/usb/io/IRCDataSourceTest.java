@@ -0,0 +1,235 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.IRCMessage;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyStore;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class IRCDataSourceTest {
+    private ServerSocket server;
+    private IRCDataSource ds;
+    private Thread listener;
+    private BlockingQueue<IRCMessage> queue;
+    
+    public IRCDataSourceTest() {
+    }
+    
+    @After
+    public void tearDown() throws IOException, InterruptedException {
+        if(this.ds != null) {
+            this.ds.stop();
+            this.listener.join();
+        }
+        if(this.server != null) {
+            this.server.close();
+        }
+    }
+    
+    /**
+     * Client is the server side of a connection to the IRCDataSource.
+     */
+    private static class Client {
+        private final Socket socket;
+        private final BufferedReader reader;
+        private final OutputStream writer;
+        
+        public Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.socket.setSoTimeout(5000);
+            this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            this.writer = socket.getOutputStream();
+        }
+        
+        /**
+         * Reads lines until one starts with the given prefix.
+         */
+        public String expect(String prefix) throws IOException {
+            String line;
+            while((line = this.reader.readLine()) != null) {
+                if(line.startsWith(prefix)) {
+                    return line;
+                }
+            }
+            fail("Expected \""+prefix+"\" before the connection was closed.");
+            return null;
+        }
+        
+        public void send(String line) throws IOException {
+            this.writer.write((line+"\r\n").getBytes(StandardCharsets.UTF_8));
+            this.writer.flush();
+        }
+        
+        public void close() throws IOException {
+            this.socket.close();
+        }
+    }
+    
+    private void listen(SSLContext sslContext) {
+        this.ds = new IRCDataSource("localhost", this.server.getLocalPort(), sslContext, "usb", Arrays.asList("#FuelRats", "#ratchat"));
+        this.ds.minReconnectPause = 10;
+        this.queue = new ArrayBlockingQueue<>(16);
+        this.listener = new Thread(() -> this.ds.listen(this.queue));
+        this.listener.start();
+    }
+    
+    private Client accept() throws IOException {
+        return new Client(this.server.accept());
+    }
+    
+    /**
+     * Loads the self signed certificate of the tests into an SSLContext.
+     * 
+     * @param server Whether the context is used by the server or the client.
+     */
+    private SSLContext createSSLContext(boolean server) throws Exception {
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try(InputStream in = IRCDataSourceTest.class.getResourceAsStream("irc-test.p12")) {
+            keyStore.load(in, "changeit".toCharArray());
+        }
+        SSLContext context = SSLContext.getInstance("TLS");
+        if(server) {
+            KeyManagerFactory kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            kmf.init(keyStore, "changeit".toCharArray());
+            context.init(kmf.getKeyManagers(), null, null);
+        } else {
+            TrustManagerFactory tmf = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+            tmf.init(keyStore);
+            context.init(null, tmf.getTrustManagers(), null);
+        }
+        return context;
+    }
+
+    /**
+     * Test of listen method, of class IRCDataSource.
+     */
+    @Test
+    public void testListen() throws IOException, InterruptedException {
+        System.out.println("listen");
+        
+        this.server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        this.listen(null);
+        Client client = this.accept();
+        
+        client.expect("NICK usb");
+        client.expect("USER usb");
+        client.send(":irc.test 433 * usb :Nickname is already in use");
+        assertThat(client.expect("NICK "), equalTo("NICK usb_"));
+        client.send(":irc.test 001 usb_ :Welcome");
+        assertThat(client.expect("JOIN "), equalTo("JOIN #fuelrats,#ratchat"));
+        client.send("PING :irc.test");
+        assertThat(client.expect("PONG "), equalTo("PONG :irc.test"));
+        
+        client.send(":Kies!kies@rats.test PRIVMSG #FuelRats :\u000304#1\u0003 fr+");
+        client.send(":Someone!someone@rats.test PRIVMSG usb_ :not from a channel");
+        client.send("@time=2017-06-07T22:00:19.000Z :Quasar!quasar@rats.test PRIVMSG #ratchat :\u0001ACTION waves\u0001");
+        
+        IRCMessage msg = this.queue.poll(5, TimeUnit.SECONDS);
+        assertThat(msg.getSender(), equalTo("Kies"));
+        assertThat(msg.getChannel(), equalTo("#FuelRats"));
+        assertThat(msg.getContent(), equalTo("#1 fr+"));
+        assertThat(msg.getTimestamp(), not(nullValue()));
+        
+        msg = this.queue.poll(5, TimeUnit.SECONDS);
+        assertThat(msg.getSender(), equalTo("*"));
+        assertThat(msg.getChannel(), equalTo("#ratchat"));
+        assertThat(msg.getContent(), equalTo("Quasar waves"));
+        
+        assertThat(this.queue.poll(100, TimeUnit.MILLISECONDS), nullValue());
+        
+        this.ds.stop();
+        client.expect("QUIT");
+        client.close();
+    }
+
+    /**
+     * Test of listen method, of class IRCDataSource.
+     */
+    @Test
+    public void testReconnect() throws IOException, InterruptedException {
+        System.out.println("reconnect");
+        
+        this.server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        this.listen(null);
+        
+        Client client = this.accept();
+        client.expect("NICK usb");
+        client.close();
+        
+        client = this.accept();
+        client.expect("NICK usb");
+        client.send(":irc.test 001 usb :Welcome");
+        client.expect("JOIN ");
+        client.send(":Kies!kies@rats.test PRIVMSG #fuelrats :#1 fr+");
+        
+        IRCMessage msg = this.queue.poll(5, TimeUnit.SECONDS);
+        assertThat(msg.getContent(), equalTo("#1 fr+"));
+        client.close();
+    }
+
+    /**
+     * Test of listen method, of class IRCDataSource.
+     */
+    @Test
+    public void testListenTLS() throws Exception {
+        System.out.println("listenTLS");
+        
+        this.server = this.createSSLContext(true).getServerSocketFactory().createServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        this.listen(this.createSSLContext(false));
+        Client client = this.accept();
+        
+        client.expect("NICK usb");
+        client.send(":irc.test 001 usb :Welcome");
+        client.expect("JOIN ");
+        client.send(":Kies!kies@rats.test PRIVMSG #fuelrats :#1 fr+");
+        
+        IRCMessage msg = this.queue.poll(5, TimeUnit.SECONDS);
+        assertThat(msg.getSender(), equalTo("Kies"));
+        assertThat(msg.getContent(), equalTo("#1 fr+"));
+        client.close();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.HexchatMarshaller;
+import de.targodan.usb.io.processing.mIRCMarshaller;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class LogFileSeekerTest {
+    private static final DateTimeFormatter HEXCHAT_FORMAT = DateTimeFormatter.ofPattern("MMM dd HH:mm:ss", Locale.ENGLISH);
+    
+    private File file;
+    
+    public LogFileSeekerTest() {
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        this.file = File.createTempFile("usb-seeker", ".log");
+    }
+    
+    @After
+    public void tearDown() {
+        this.file.delete();
+    }
+    
+    private void write(String content) throws IOException {
+        Files.write(this.file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private FileChannel open() throws IOException {
+        return FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+    }
+    
+    private String hexchatLine(LocalDateTime time, String content) {
+        return HEXCHAT_FORMAT.format(time)+" <user>\t"+content+"\n";
+    }
+
+    /**
+     * Test of findEndOfLastCompleteLine method, of class LogFileSeeker.
+     */
+    @Test
+    public void testFindEndOfLastCompleteLine() throws IOException {
+        System.out.println("findEndOfLastCompleteLine");
+        
+        {
+            this.write("");
+            try(FileChannel channel = this.open()) {
+                assertThat(new LogFileSeeker(channel).findEndOfLastCompleteLine(), equalTo(0L));
+            }
+        }
+        {
+            this.write("first\nsecond\n");
+            try(FileChannel channel = this.open()) {
+                assertThat(new LogFileSeeker(channel).findEndOfLastCompleteLine(), equalTo(13L));
+            }
+        }
+        {
+            this.write("first\nsecond\nthi");
+            try(FileChannel channel = this.open()) {
+                assertThat(new LogFileSeeker(channel).findEndOfLastCompleteLine(), equalTo(13L));
+            }
+        }
+        {
+            this.write("partial");
+            try(FileChannel channel = this.open()) {
+                assertThat(new LogFileSeeker(channel).findEndOfLastCompleteLine(), equalTo(0L));
+            }
+        }
+        {
+            StringBuilder sb = new StringBuilder();
+            for(int i = 0; i < 20000; ++i) {
+                sb.append('x');
+            }
+            this.write("first\n"+sb.toString());
+            try(FileChannel channel = this.open()) {
+                assertThat(new LogFileSeeker(channel).findEndOfLastCompleteLine(), equalTo(6L));
+            }
+        }
+    }
+
+    /**
+     * Test of findStartOfLinesSince method, of class LogFileSeeker.
+     */
+    @Test
+    public void testFindStartOfLinesSince() throws IOException {
+        System.out.println("findStartOfLinesSince");
+        
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        String old1 = this.hexchatLine(now.minusMinutes(30), "old 1");
+        String old2 = this.hexchatLine(now.minusMinutes(20), "old 2");
+        String header = "**** BEGIN LOGGING AT Fri Jun  9 09:48:03 2017\n";
+        String new1 = this.hexchatLine(now.minusMinutes(5), "new 1");
+        String new2 = this.hexchatLine(now.minusMinutes(1), "new 2");
+        
+        {
+            this.write(old1+old2+header+new1+new2);
+            try(FileChannel channel = this.open()) {
+                long result = new LogFileSeeker(channel).findStartOfLinesSince(StandardCharsets.UTF_8, new HexchatMarshaller(), now.minusMinutes(10));
+                assertThat(result, equalTo((long)(old1+old2).length()));
+            }
+        }
+        {
+            this.write(old1+old2+new1+new2+"partial");
+            try(FileChannel channel = this.open()) {
+                long result = new LogFileSeeker(channel).findStartOfLinesSince(StandardCharsets.UTF_8, new HexchatMarshaller(), now.minusMinutes(25));
+                assertThat(result, equalTo((long)old1.length()));
+            }
+        }
+        {
+            this.write(new1+new2);
+            try(FileChannel channel = this.open()) {
+                long result = new LogFileSeeker(channel).findStartOfLinesSince(StandardCharsets.UTF_8, new HexchatMarshaller(), now.minusMinutes(10));
+                assertThat(result, equalTo(0L));
+            }
+        }
+        {
+            this.write(old1+old2+new1+new2);
+            try(FileChannel channel = this.open()) {
+                long result = new LogFileSeeker(channel).findStartOfLinesSince(StandardCharsets.UTF_8, new HexchatMarshaller(), now);
+                assertThat(result, equalTo((long)(old1+old2+new1+new2).length()));
+            }
+        }
+        {
+            // mIRC does not provide timestamps so nothing can be replayed.
+            String content = "[12:00] <user> first\n[12:01] <user> second\n";
+            this.write(content);
+            try(FileChannel channel = this.open()) {
+                long result = new LogFileSeeker(channel).findStartOfLinesSince(StandardCharsets.UTF_8, new mIRCMarshaller(), now.minusMinutes(10));
+                assertThat(result, equalTo((long)content.length()));
+            }
+        }
+    }
+}
@@ -0,0 +1,276 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.data.Case;
+import de.targodan.usb.data.CaseManager;
+import de.targodan.usb.data.Rat;
+import de.targodan.usb.data.Report;
+import de.targodan.usb.io.processing.Command;
+import de.targodan.usb.io.processing.DefaultHandler;
+import de.targodan.usb.io.processing.ExecutingHandler;
+import de.targodan.usb.io.processing.Handler;
+import de.targodan.usb.io.processing.IRCMessage;
+import de.targodan.usb.io.processing.ParseResult;
+import de.targodan.usb.io.processing.Parser;
+import de.targodan.usb.io.processing.ScanningParser;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class ParsingPipelineTest {
+    
+    public ParsingPipelineTest() {
+    }
+    
+    /**
+     * Parses every message by reporting its content after a random delay.
+     */
+    private static class SlowParser implements Parser {
+        private final Random random;
+        private Handler handler;
+        
+        public SlowParser(long seed) {
+            this.random = new Random(seed);
+        }
+
+        @Override
+        public void registerHandler(Handler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public ParseResult parseAndHandle(IRCMessage message) {
+            try {
+                Thread.sleep(0, this.random.nextInt(200000));
+            } catch(InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if(message.getContent().equals("fail")) {
+                throw new IllegalArgumentException("fail");
+            }
+            this.handler.handleReport(message.getContent(), null, null);
+            return ParseResult.WAS_REPORT;
+        }
+    }
+    
+    /**
+     * Remembers the reported contents and the threads they were handled on.
+     */
+    private static class CollectingHandler implements Handler {
+        public final List<String> contents = new ArrayList<>();
+        public final Set<Thread> threads = new HashSet<>();
+
+        @Override
+        public void registerCaseManager(CaseManager cm) {
+        }
+
+        @Override
+        public void handleNewCase(Case c) {
+        }
+
+        @Override
+        public void handleCommand(Command cmd) {
+        }
+
+        @Override
+        public void handleCall(Rat rat, String caseIdentifier) {
+        }
+
+        @Override
+        public void handleReport(String ratIrcName, Report report, String caseIdentifier) {
+            this.contents.add(ratIrcName);
+            this.threads.add(Thread.currentThread());
+        }
+    }
+    
+    private static IRCMessage message(String sender, String content) {
+        return new IRCMessage(LocalDateTime.of(2017, 3, 1, 12, 0), sender, "#fuelrats", content);
+    }
+    
+    private static List<IRCMessage> generateMessages() {
+        Random random = new Random(42);
+        List<IRCMessage> messages = new ArrayList<>();
+        for(int n = 1; n <= 40; ++n) {
+            messages.add(ParsingPipelineTest.message("MechaSqueak[BOT]",
+                    "RATSIGNAL - CMDR Client"+n+" - System: Sys"+n+" (not in EDDB) - Platform: PC - O2: OK - Language: English (en-US) (Case #"+n+")"));
+        }
+        List<IRCMessage> chatter = new ArrayList<>();
+        for(int n = 1; n <= 40; ++n) {
+            String rat = "Rat"+(n % 7);
+            chatter.add(ParsingPipelineTest.message("MechaSqueak[BOT]", "!go "+n+" "+rat));
+            chatter.add(ParsingPipelineTest.message(rat, (n % 9 + 1)+"j #"+n));
+            chatter.add(ParsingPipelineTest.message(rat, "fr+ #"+n));
+            chatter.add(ParsingPipelineTest.message(rat, "just some text"));
+            chatter.add(ParsingPipelineTest.message(rat, "wb- #"+n));
+            chatter.add(ParsingPipelineTest.message("Client"+n, "thanks"));
+        }
+        Collections.shuffle(chatter, random);
+        messages.addAll(chatter);
+        return messages;
+    }
+
+    /**
+     * Asserts that the cases are the same except for the CaseManager they
+     * are attached to.
+     */
+    private static void assertSameCases(List<Case> actual, List<Case> expected) {
+        assertThat(actual.size(), equalTo(expected.size()));
+        for(int i = 0; i < expected.size(); ++i) {
+            Case a = actual.get(i);
+            Case e = expected.get(i);
+            assertThat(a.getNumber(), equalTo(e.getNumber()));
+            assertThat(a.isActive(), equalTo(e.isActive()));
+            assertThat(a.getClient(), equalTo(e.getClient()));
+            assertThat(a.getSystem(), equalTo(e.getSystem()));
+            assertThat(a.getCalls(), equalTo(e.getCalls()));
+            assertThat(a.getRats(), equalTo(e.getRats()));
+            assertThat(a.getNotes(), equalTo(e.getNotes()));
+            assertThat(a.getFirstLimpet(), equalTo(e.getFirstLimpet()));
+            assertThat(a.isCodeRed(), equalTo(e.isCodeRed()));
+            assertThat(a.getOpenTime(), equalTo(e.getOpenTime()));
+            assertThat(a.getCloseTime(), equalTo(e.getCloseTime()));
+        }
+    }
+
+    /**
+     * Test of submit method, of class ParsingPipeline.
+     */
+    @Test
+    public void testSubmit() throws InterruptedException {
+        System.out.println("submit");
+        
+        List<String> expected = new ArrayList<>();
+        List<Parser> parsers = Arrays.asList(new SlowParser(1), new SlowParser(2), new SlowParser(3), new SlowParser(4));
+        CollectingHandler handler = new CollectingHandler();
+        ParsingPipeline instance = new ParsingPipeline(parsers, handler);
+        instance.start();
+        for(int i = 0; i < 1000; ++i) {
+            String content = (i % 97 == 0) ? "fail" : "message "+i;
+            if(!content.equals("fail")) {
+                expected.add(content);
+            }
+            instance.submit(ParsingPipelineTest.message("Kies", content));
+        }
+        instance.finish();
+        
+        assertThat(handler.contents, equalTo(expected));
+        assertThat(handler.threads.size(), equalTo(1));
+        assertThat(handler.threads.contains(Thread.currentThread()), is(false));
+    }
+    
+    /**
+     * Test of submit method, of class ParsingPipeline, telling the messages
+     * that they were handled after the CaseManager applied their calls.
+     */
+    @Test
+    public void testSubmitHandled() throws InterruptedException {
+        System.out.println("submitHandled");
+        
+        CaseManager cm = new CaseManager();
+        CollectingHandler collecting = new CollectingHandler();
+        ExecutingHandler handler = new ExecutingHandler(collecting);
+        handler.registerCaseManager(cm);
+        cm.start();
+        
+        List<String> expected = new ArrayList<>();
+        ParsingPipeline instance = new ParsingPipeline(Arrays.asList(new SlowParser(1), new SlowParser(2)), handler);
+        instance.start();
+        for(int i = 0; i < 100; ++i) {
+            String content = "message "+i;
+            expected.add(content);
+            expected.add("handled "+content);
+            instance.submit(new IRCMessage(LocalDateTime.of(2017, 3, 1, 12, 0), "Kies", "#fuelrats", content) {
+                @Override
+                public void handled() {
+                    collecting.contents.add("handled "+content);
+                    collecting.threads.add(Thread.currentThread());
+                }
+            });
+        }
+        instance.finish();
+        cm.stop();
+        
+        assertThat(collecting.contents, equalTo(expected));
+        assertThat(collecting.threads.size(), equalTo(1));
+    }
+    
+    /**
+     * Test of submit method, of class ParsingPipeline, comparing the
+     * resulting cases with sequential parsing.
+     */
+    @Test
+    public void testSubmitSameAsSequential() throws InterruptedException {
+        System.out.println("submitSameAsSequential");
+        
+        List<IRCMessage> messages = ParsingPipelineTest.generateMessages();
+        
+        CaseManager sequential = new CaseManager();
+        {
+            Handler handler = new DefaultHandler();
+            handler.registerCaseManager(sequential);
+            Parser parser = new ScanningParser();
+            parser.registerHandler(handler);
+            messages.forEach(parser::parseAndHandle);
+        }
+        
+        CaseManager parallel = new CaseManager();
+        {
+            Handler handler = new DefaultHandler();
+            handler.registerCaseManager(parallel);
+            ParsingPipeline instance = new ParsingPipeline(Arrays.asList(new ScanningParser(), new ScanningParser(), new ScanningParser()), handler);
+            instance.start();
+            for(IRCMessage msg : messages) {
+                instance.submit(msg);
+            }
+            instance.finish();
+        }
+        
+        assertThat(sequential.getOpenCases().size(), equalTo(40));
+        ParsingPipelineTest.assertSameCases(parallel.getOpenCases(), sequential.getOpenCases());
+        ParsingPipelineTest.assertSameCases(parallel.getClosedCases(), sequential.getClosedCases());
+    }
+    
+    /**
+     * Test of constructor, of class ParsingPipeline.
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorWithoutParsers() {
+        System.out.println("constructorWithoutParsers");
+        
+        new ParsingPipeline(Collections.emptyList(), new CollectingHandler());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.Handler;
+import de.targodan.usb.io.processing.HexchatMarshaller;
+import de.targodan.usb.io.processing.IRCMessage;
+import de.targodan.usb.io.processing.ParseResult;
+import de.targodan.usb.io.processing.Parser;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class ReplayDataSourceTest {
+    private static final DateTimeFormatter HEXCHAT_FORMAT = DateTimeFormatter.ofPattern("MMM dd HH:mm:ss", Locale.ENGLISH);
+    
+    private File file;
+    
+    public ReplayDataSourceTest() {
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        this.file = File.createTempFile("usb-replay", ".log");
+    }
+    
+    @After
+    public void tearDown() {
+        this.file.delete();
+    }
+    
+    private void write(LocalDateTime first, int secondsBetweenLines, String... contents) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for(int i = 0; i < contents.length; ++i) {
+            sb.append(HEXCHAT_FORMAT.format(first.plusSeconds(i * secondsBetweenLines)))
+                    .append(" <user>\t")
+                    .append(contents[i])
+                    .append("\n");
+        }
+        Files.write(this.file.toPath(), sb.toString().getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Replays the DataSource through a DataConsumer until it is finished.
+     * 
+     * @return the messages in the order they were handled.
+     */
+    private List<IRCMessage> replay(ReplayDataSource ds) throws InterruptedException {
+        List<IRCMessage> handled = new CopyOnWriteArrayList<>();
+        DataConsumer consumer = new DataConsumer(new Parser() {
+            @Override
+            public void registerHandler(Handler handler) {
+            }
+
+            @Override
+            public ParseResult parseAndHandle(IRCMessage message) {
+                handled.add(message);
+                return null;
+            }
+        });
+        consumer.addDataSource(ds);
+        
+        Thread t = new Thread(consumer::start);
+        t.start();
+        for(int i = 0; i < 500 && !ds.isFinished(); ++i) {
+            Thread.sleep(10);
+        }
+        consumer.stop();
+        t.join();
+        
+        return handled;
+    }
+
+    /**
+     * Test of listen method, of class ReplayDataSource.
+     */
+    @Test
+    public void testListenAsFastAsPossible() throws IOException, InterruptedException {
+        System.out.println("listenAsFastAsPossible");
+        
+        this.write(LocalDateTime.now().minusHours(3), 3600, "first", "second", "third");
+        ReplayDataSource ds = new ReplayDataSource("#fuelrats", this.file.getPath(), StandardCharsets.UTF_8, new HexchatMarshaller(), ReplayDataSource.AS_FAST_AS_POSSIBLE);
+        
+        long start = System.nanoTime();
+        List<IRCMessage> handled = this.replay(ds);
+        long elapsed = System.nanoTime() - start;
+        
+        assertThat(ds.isFinished(), is(true));
+        assertThat(handled.stream().map(IRCMessage::getContent).collect(Collectors.toList()), equalTo(Arrays.asList("first", "second", "third")));
+        assertThat(handled.stream().allMatch(msg -> msg.getChannel().equals("#fuelrats")), is(true));
+        assertThat(ds.getMessagesSent(), equalTo(3L));
+        assertThat(ds.getMessagesHandled(), equalTo(3L));
+        assertThat(ds.getMessagesPerSecond() > 0, is(true));
+        assertThat(elapsed < Duration.ofSeconds(2).toNanos(), is(true));
+    }
+
+    /**
+     * Test of listen method, of class ReplayDataSource.
+     */
+    @Test
+    public void testListenWithSpeed() throws IOException, InterruptedException {
+        System.out.println("listenWithSpeed");
+        
+        // 20 seconds of log at 100x should take at least 200 ms.
+        this.write(LocalDateTime.now().minusMinutes(1), 10, "first", "second", "third");
+        ReplayDataSource ds = new ReplayDataSource("#fuelrats", this.file.getPath(), StandardCharsets.UTF_8, new HexchatMarshaller(), 100);
+        
+        long start = System.nanoTime();
+        List<IRCMessage> handled = this.replay(ds);
+        long elapsed = System.nanoTime() - start;
+        
+        assertThat(ds.isFinished(), is(true));
+        assertThat(handled.size(), equalTo(3));
+        assertThat(ds.getMessagesHandled(), equalTo(3L));
+        assertThat(elapsed >= Duration.ofMillis(200).toNanos(), is(true));
+        assertThat(ds.getAverageLag().isNegative(), is(false));
+        assertThat(ds.getMaxLag().compareTo(ds.getAverageLag()) >= 0, is(true));
+    }
+}
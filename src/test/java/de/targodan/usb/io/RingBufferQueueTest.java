@@ -0,0 +1,234 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class RingBufferQueueTest {
+    
+    public RingBufferQueueTest() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of offer and poll methods, of class RingBufferQueue.
+     */
+    @Test
+    public void testOfferAndPoll() {
+        System.out.println("offerAndPoll");
+        
+        {
+            RingBufferQueue<Integer> queue = new RingBufferQueue<>(3);
+            assertThat(queue.getCapacity(), equalTo(4));
+            assertThat(queue.poll(), is(nullValue()));
+            
+            for(int i = 0; i < 4; ++i) {
+                assertThat(queue.offer(i), is(true));
+            }
+            assertThat(queue.offer(4), is(false));
+            assertThat(queue.size(), equalTo(4));
+            assertThat(queue.remainingCapacity(), equalTo(0));
+            assertThat(queue.peek(), equalTo(0));
+            
+            for(int i = 0; i < 4; ++i) {
+                assertThat(queue.poll(), equalTo(i));
+            }
+            assertThat(queue.poll(), is(nullValue()));
+            assertThat(queue.size(), equalTo(0));
+        }
+        {
+            // Wrap around the ring a few times.
+            RingBufferQueue<Integer> queue = new RingBufferQueue<>(4);
+            for(int i = 0; i < 100; ++i) {
+                assertThat(queue.offer(i), is(true));
+                assertThat(queue.offer(-i), is(true));
+                assertThat(queue.poll(), equalTo(i));
+                assertThat(queue.poll(), equalTo(-i));
+            }
+        }
+    }
+
+    /**
+     * Test of offer method with BackpressurePolicy.DROP_OLDEST, of class RingBufferQueue.
+     */
+    @Test
+    public void testDropOldest() {
+        System.out.println("dropOldest");
+        
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(4, BackpressurePolicy.DROP_OLDEST);
+        for(int i = 0; i < 6; ++i) {
+            assertThat(queue.offer(i), is(true));
+        }
+        assertThat(queue.getDroppedCount(), equalTo(2L));
+        for(int i = 2; i < 6; ++i) {
+            assertThat(queue.poll(), equalTo(i));
+        }
+        assertThat(queue.poll(), is(nullValue()));
+    }
+
+    /**
+     * Test of offer method with BackpressurePolicy.SPILL, of class RingBufferQueue.
+     */
+    @Test
+    public void testSpill() {
+        System.out.println("spill");
+        
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(4, BackpressurePolicy.SPILL);
+        for(int i = 0; i < 6; ++i) {
+            assertThat(queue.offer(i), is(true));
+        }
+        assertThat(queue.size(), equalTo(6));
+        
+        assertThat(queue.poll(), equalTo(0));
+        // There is space in the ring now, but the spill comes first.
+        assertThat(queue.offer(6), is(true));
+        for(int i = 1; i < 7; ++i) {
+            assertThat(queue.poll(), equalTo(i));
+        }
+        assertThat(queue.poll(), is(nullValue()));
+    }
+
+    /**
+     * Test of drainTo method, of class RingBufferQueue.
+     */
+    @Test
+    public void testDrainTo() {
+        System.out.println("drainTo");
+        
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(8);
+        for(int i = 0; i < 6; ++i) {
+            queue.offer(i);
+        }
+        
+        List<Integer> batch = new ArrayList<>();
+        assertThat(queue.drainTo(batch, 4), equalTo(4));
+        assertThat(batch.size(), equalTo(4));
+        assertThat(batch.get(3), equalTo(3));
+        
+        assertThat(queue.drainTo(batch), equalTo(2));
+        assertThat(batch.size(), equalTo(6));
+        assertThat(batch.get(5), equalTo(5));
+    }
+
+    /**
+     * Test of poll method with timeout, of class RingBufferQueue.
+     */
+    @Test
+    public void testPollWithTimeout() throws InterruptedException {
+        System.out.println("pollWithTimeout");
+        
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(2);
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS), is(nullValue()));
+        
+        Thread producer = new Thread(() -> {
+            try {
+                Thread.sleep(20);
+            } catch (InterruptedException ex) {
+            }
+            queue.offer(42);
+        });
+        producer.start();
+        assertThat(queue.poll(5, TimeUnit.SECONDS), equalTo(42));
+        producer.join();
+    }
+
+    /**
+     * Test of concurrent producers, of class RingBufferQueue.
+     */
+    @Test
+    public void testMultipleProducers() throws InterruptedException {
+        System.out.println("multipleProducers");
+        
+        final int producers = 4;
+        final int perProducer = 10000;
+        RingBufferQueue<int[]> queue = new RingBufferQueue<>(16);
+        
+        List<Thread> threads = new ArrayList<>();
+        for(int p = 0; p < producers; ++p) {
+            final int producer = p;
+            Thread t = new Thread(() -> {
+                try {
+                    for(int i = 0; i < perProducer; ++i) {
+                        queue.put(new int[]{producer, i});
+                    }
+                } catch (InterruptedException ex) {
+                }
+            });
+            threads.add(t);
+            t.start();
+        }
+        
+        int[] next = new int[producers];
+        List<int[]> batch = new ArrayList<>();
+        int received = 0;
+        while(received < producers * perProducer) {
+            int[] e = queue.poll(5, TimeUnit.SECONDS);
+            assertThat(e, is(notNullValue()));
+            batch.add(e);
+            queue.drainTo(batch, 8);
+            for(int[] msg : batch) {
+                assertThat(msg[1], equalTo(next[msg[0]]));
+                ++next[msg[0]];
+            }
+            received += batch.size();
+            batch.clear();
+        }
+        
+        for(Thread t : threads) {
+            t.join();
+        }
+        assertThat(queue.poll(), is(nullValue()));
+    }
+
+    /**
+     * Test of remove method, of class RingBufferQueue.
+     */
+    @Test(expected=UnsupportedOperationException.class)
+    public void testRemove() {
+        System.out.println("remove");
+        
+        RingBufferQueue<Integer> queue = new RingBufferQueue<>(4);
+        queue.offer(1);
+        queue.offer(2);
+        queue.remove(Integer.valueOf(2));
+    }
+}
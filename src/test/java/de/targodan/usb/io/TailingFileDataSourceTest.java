@@ -0,0 +1,189 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io;
+
+import de.targodan.usb.io.processing.IRCMessage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class TailingFileDataSourceTest {
+    private static final DateTimeFormatter HEXCHAT_FORMAT = DateTimeFormatter.ofPattern("MMM dd HH:mm:ss", Locale.ENGLISH);
+    private static final long READ_PAUSE = 10000;
+    
+    private Path dir;
+    private Path file;
+    
+    public TailingFileDataSourceTest() {
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("usb-tailing");
+        this.file = this.dir.resolve("#fuelrats.log");
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        Files.walk(this.dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(p -> p.toFile().delete());
+    }
+    
+    private static String line(LocalDateTime time, String content) {
+        return HEXCHAT_FORMAT.format(time)+" <user>\t"+content+"\n";
+    }
+    
+    private void append(String content) throws IOException {
+        Files.write(this.file, content.getBytes(StandardCharsets.UTF_8), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+    
+    private TailingFileDataSource createDataSource(Duration replayDuration) throws IOException {
+        TailingFileDataSource ds = new TailingFileDataSource("#fuelrats", this.file.toString(), StandardCharsets.UTF_8, new Hexchat().getMarshaller(), replayDuration);
+        ds.readPause = READ_PAUSE;
+        return ds;
+    }
+    
+    /**
+     * Takes the given number of messages from the queue.
+     * 
+     * @return the contents of the messages.
+     */
+    private static List<String> take(BlockingQueue<IRCMessage> queue, int count) throws InterruptedException {
+        List<String> messages = new ArrayList<>();
+        for(int i = 0; i < count; ++i) {
+            IRCMessage msg = queue.poll(READ_PAUSE / 2, TimeUnit.MILLISECONDS);
+            assertThat(msg, not(nullValue()));
+            messages.add(msg.getContent());
+        }
+        return messages;
+    }
+
+    /**
+     * Test of listen method, of class TailingFileDataSource.
+     */
+    @Test
+    public void testListen() throws IOException, InterruptedException {
+        System.out.println("listen");
+        
+        this.append(line(LocalDateTime.now(), "old"));
+        TailingFileDataSource ds = this.createDataSource(null);
+        BlockingQueue<IRCMessage> queue = new ArrayBlockingQueue<>(16);
+        Thread t = new Thread(() -> ds.listen(queue));
+        t.start();
+        
+        // The new lines arrive long before the readPause has passed.
+        long start = java.lang.System.nanoTime();
+        this.append(line(LocalDateTime.now(), "first"));
+        assertThat(take(queue, 1), equalTo(Arrays.asList("first")));
+        
+        // Idle long enough for the backoff to grow, it starts over after a read.
+        Thread.sleep(300);
+        this.append(line(LocalDateTime.now(), "second")+line(LocalDateTime.now(), "thi").trim());
+        this.append("rd\n");
+        assertThat(take(queue, 2), equalTo(Arrays.asList("second", "third")));
+        assertThat(TimeUnit.NANOSECONDS.toMillis(java.lang.System.nanoTime() - start) < READ_PAUSE / 2, is(true));
+        
+        // Incomplete lines are held back.
+        this.append(line(LocalDateTime.now(), "incomplete").trim());
+        assertThat(queue.poll(200, TimeUnit.MILLISECONDS), nullValue());
+        
+        ds.stop();
+        t.join();
+    }
+
+    /**
+     * Test of poll method, of class TailingFileDataSource.
+     */
+    @Test
+    public void testPoll() throws IOException {
+        System.out.println("poll");
+        
+        this.append(line(LocalDateTime.now(), "old"));
+        TailingFileDataSource ds = this.createDataSource(null);
+        BlockingQueue<IRCMessage> queue = new ArrayBlockingQueue<>(16);
+        
+        assertThat(ds.poll(queue), is(false));
+        assertThat(queue.isEmpty(), is(true));
+        
+        this.append(line(LocalDateTime.now(), "first")+line(LocalDateTime.now(), "second"));
+        assertThat(ds.poll(queue), is(true));
+        assertThat(queue.size(), equalTo(2));
+        assertThat(queue.poll().getContent(), equalTo("first"));
+        assertThat(queue.poll().getContent(), equalTo("second"));
+        assertThat(ds.poll(queue), is(false));
+        
+        assertThat(ds.getMinPollInterval() <= ds.getMaxPollInterval(), is(true));
+        assertThat(ds.getMaxPollInterval(), equalTo(READ_PAUSE));
+        ds.stop();
+    }
+
+    /**
+     * Test of the replayDuration, of class TailingFileDataSource.
+     */
+    @Test
+    public void testReplayDuration() throws IOException {
+        System.out.println("replayDuration");
+        
+        LocalDateTime now = LocalDateTime.now().withNano(0);
+        this.append(line(now.minusHours(2), "too old")
+                + line(now.minusMinutes(20), "old")
+                + line(now.minusMinutes(5), "recent")
+                + line(now, "now"));
+        
+        BlockingQueue<IRCMessage> queue = new ArrayBlockingQueue<>(16);
+        TailingFileDataSource ds = this.createDataSource(Duration.ofMinutes(10));
+        assertThat(ds.poll(queue), is(true));
+        List<String> messages = new ArrayList<>();
+        queue.forEach(msg -> messages.add(msg.getContent()));
+        assertThat(messages, equalTo(Arrays.asList("recent", "now")));
+        ds.stop();
+        
+        queue.clear();
+        ds = this.createDataSource(Duration.ZERO);
+        assertThat(ds.poll(queue), is(false));
+        ds.stop();
+    }
+}
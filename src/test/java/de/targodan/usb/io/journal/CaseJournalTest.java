@@ -0,0 +1,303 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io.journal;
+
+import de.targodan.usb.data.Case;
+import de.targodan.usb.data.CaseManager;
+import de.targodan.usb.data.Client;
+import de.targodan.usb.data.Platform;
+import de.targodan.usb.data.Rat;
+import de.targodan.usb.data.Report;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class CaseJournalTest {
+    private static final Duration MAX_AGE = Duration.ofHours(1);
+    
+    private Path dir;
+    
+    public CaseJournalTest() {
+    }
+    
+    @Before
+    public void setUp() throws IOException {
+        this.dir = Files.createTempDirectory("usb-journal");
+    }
+    
+    @After
+    public void tearDown() throws IOException {
+        Files.walk(this.dir)
+                .sorted((a, b) -> b.compareTo(a))
+                .forEach(p -> p.toFile().delete());
+    }
+    
+    /**
+     * Returns a description of everything that is journaled about a case.
+     */
+    private static String describe(Case c) {
+        return "#" + c.getNumber()
+                + " active=" + c.isActive()
+                + " cr=" + c.isCodeRed()
+                + " open=" + c.getOpenTime()
+                + " close=" + c.getCloseTime()
+                + " client=" + c.getClient().getIRCName() + "/" + c.getClient().getCMDRName() + "/" + c.getClient().getPlatform() + "/" + c.getClient().getLanguage()
+                + " system=" + c.getSystem().getName() + "/" + c.getSystem().isConfirmed()
+                + " rats=" + c.getRats().stream().map(CaseJournalTest::describe).sorted().collect(Collectors.toList())
+                + " calls=" + c.getCalls().stream().map(CaseJournalTest::describe).collect(Collectors.toList())
+                + " firstLimpet=" + (c.getFirstLimpet() == null ? null : describe(c.getFirstLimpet()))
+                + " notes=" + c.getNotes();
+    }
+    
+    private static String describe(Rat rat) {
+        return rat.getIRCName() + "/" + rat.getCMDRName() + "/" + rat.getPlatform()
+                + "/" + rat.getJumps() + "j/" + rat.isAssigned()
+                + "/" + rat.getReports().stream().map(r -> r.getType() + (r.isPlus() ? "+" : "-")).sorted().collect(Collectors.toList());
+    }
+    
+    private static List<String> describe(List<Case> cases) {
+        return cases.stream()
+                .map(CaseJournalTest::describe)
+                .sorted()
+                .collect(Collectors.toList());
+    }
+    
+    private static List<String> describe(CaseManager cm) {
+        List<Case> cases = cm.getClosedCases().stream().collect(Collectors.toList());
+        cases.addAll(cm.getOpenCases());
+        return describe(cases);
+    }
+    
+    /**
+     * Plays through a few cases.
+     */
+    private static void playCases(CaseManager cm) {
+        LocalDateTime now = LocalDateTime.of(2017, 7, 1, 12, 0, 0, 123456789);
+        
+        Case c1 = new Case(1, new Client("client_1", "Client 1", Platform.PC, "en"), new de.targodan.usb.data.System("Sol"), false, now);
+        Case c2 = new Case(2, new Client("client_2", "Client 2", Platform.XBOX, "de"), new de.targodan.usb.data.System("Fuelum"), true, now.plusMinutes(1));
+        Case c3 = new Case(3, new Client("client_3", null, Platform.PS4, "ru"), new de.targodan.usb.data.System("Cubeo"), false, now.plusMinutes(2));
+        cm.addCase(c1);
+        cm.addCase(c2);
+        cm.addCase(c3);
+        
+        Rat caller = new Rat("Rat1[PC]", "Rat One");
+        caller.setJumps(7);
+        c1.addCall(caller);
+        c1.addCall(new Rat("Rat2[PC]", "Rat Two"));
+        caller.setAssigned(true);
+        c1.assignRat(caller);
+        caller.insertReport(new Report(Report.Type.FR, true));
+        caller.insertReport(new Report(Report.Type.WR, false));
+        c1.addNote("first note");
+        c1.getClient().setCMDRName("Client One");
+        c1.getSystem().setConfirmed(true);
+        
+        c2.assignRat(new Rat("Rat3[XB]"));
+        c2.setCodeRed(false);
+        c2.setActive(false);
+        c2.setFirstLimpet(new Rat("Rat3[XB]"));
+        c2.close(now.plusMinutes(10));
+        
+        c3.setNotes(new String[] {"a", "b"});
+        c3.close(now.plusMinutes(5));
+        cm.removeClosedCasesOlderThan(now.plusMinutes(6));
+    }
+
+    /**
+     * Test of recover method, of class CaseJournal.
+     */
+    @Test
+    public void testRecover() throws IOException {
+        System.out.println("recover");
+        
+        {
+            // Nothing to recover.
+            CaseJournal journal = new CaseJournal(this.dir, 10, 1000);
+            assertThat(journal.recover(MAX_AGE).isEmpty(), is(true));
+        }
+        {
+            CaseManager cm = new CaseManager();
+            CaseJournal journal = new CaseJournal(this.dir, 10, 1000);
+            journal.recover(MAX_AGE);
+            journal.attach(cm);
+            playCases(cm);
+            journal.close();
+            
+            List<Case> restored = new CaseJournal(this.dir, 10, 1000).recover(MAX_AGE);
+            assertThat(restored.size(), equalTo(2));
+            assertThat(describe(restored), equalTo(describe(cm)));
+            
+            // The restored cases can be added to a new CaseManager.
+            CaseManager restoredCm = new CaseManager();
+            restored.forEach(restoredCm::addCase);
+            assertThat(restoredCm.getOpenCases().size(), equalTo(1));
+            assertThat(restoredCm.getClosedCases().size(), equalTo(1));
+            assertThat(restoredCm.lookupCaseWithRat(new Rat("Rat1[PC]")), is(sameInstance(restoredCm.getCase(1))));
+            
+            // The calling and assigned rat is still the same instance.
+            Case c1 = restoredCm.getCase(1);
+            assertThat(c1.getRats().iterator().next(), is(sameInstance(c1.getCalls().get(0))));
+        }
+    }
+
+    /**
+     * Test of recover method after snapshots, of class CaseJournal.
+     */
+    @Test
+    public void testRecoverWithSnapshots() throws IOException, InterruptedException {
+        System.out.println("recoverWithSnapshots");
+        
+        {
+            CaseManager cm = new CaseManager();
+            CaseJournal journal = new CaseJournal(this.dir, 1, 3);
+            journal.attach(cm);
+            playCases(cm);
+            // Let the flusher write some of the snapshots.
+            Thread.sleep(20);
+            cm.getCase(1).addNote("after snapshot");
+            journal.close();
+            
+            assertThat(describe(new CaseJournal(this.dir, 10, 1000).recover(MAX_AGE)), equalTo(describe(cm)));
+        }
+        {
+            // A new journal starts from the restored cases.
+            CaseManager cm = new CaseManager();
+            CaseJournal journal = new CaseJournal(this.dir, 10, 1000);
+            journal.recover(MAX_AGE).forEach(cm::addCase);
+            journal.attach(cm);
+            cm.getCase(1).setCodeRed(true);
+            journal.close();
+            
+            List<Case> restored = new CaseJournal(this.dir, 10, 1000).recover(MAX_AGE);
+            assertThat(describe(restored), equalTo(describe(cm)));
+            assertThat(restored.stream().filter(c -> c.getNumber() == 1).findFirst().get().isCodeRed(), is(true));
+        }
+    }
+
+    /**
+     * Test of recover method after a crash between writing a snapshot and
+     * starting the new journal, of class CaseJournal.
+     */
+    @Test
+    public void testRecoverSnapshotNewerThanJournal() throws IOException {
+        System.out.println("recoverSnapshotNewerThanJournal");
+        
+        {
+            CaseManager cm = new CaseManager();
+            CaseJournal journal = new CaseJournal(this.dir, 10, 1000);
+            journal.attach(cm);
+            playCases(cm);
+            journal.close();
+            
+            Path journalFile = this.dir.resolve(CaseJournal.JOURNAL_FILE);
+            byte[] oldJournal = Files.readAllBytes(journalFile);
+            
+            // Changes that are only contained in the new snapshot.
+            CaseManager newCm = new CaseManager();
+            CaseJournal newJournal = new CaseJournal(this.dir, 10, 1000);
+            newJournal.recover(MAX_AGE).forEach(newCm::addCase);
+            newCm.getCase(1).setCodeRed(true);
+            newCm.removeClosedCasesOlderThan(LocalDateTime.of(2017, 7, 1, 13, 0));
+            newJournal.attach(newCm);
+            newJournal.close();
+            
+            // The crash left the old journal behind the new snapshot.
+            Files.write(journalFile, oldJournal);
+            
+            List<Case> restored = new CaseJournal(this.dir, 10, 1000).recover(MAX_AGE);
+            assertThat(describe(restored), equalTo(describe(newCm)));
+            assertThat(restored.size(), equalTo(1));
+            assertThat(restored.get(0).isCodeRed(), is(true));
+        }
+    }
+
+    /**
+     * Test of recover method with a damaged journal, of class CaseJournal.
+     */
+    @Test
+    public void testRecoverTornJournal() throws IOException {
+        System.out.println("recoverTornJournal");
+        
+        {
+            CaseManager cm = new CaseManager();
+            CaseJournal journal = new CaseJournal(this.dir, 10, 1000);
+            journal.attach(cm);
+            playCases(cm);
+            journal.close();
+            
+            // A record that was only partially written before a crash.
+            Path journalFile = this.dir.resolve(CaseJournal.JOURNAL_FILE);
+            Files.write(journalFile, new byte[] {0, 0, 0, 100, 1, 0, 0}, StandardOpenOption.APPEND);
+            assertThat(describe(new CaseJournal(this.dir, 10, 1000).recover(MAX_AGE)), equalTo(describe(cm)));
+            
+            // A broken checksum in the last complete record, which removed
+            // case 3, so everything but the removal is restored.
+            byte[] data = Files.readAllBytes(journalFile);
+            data[data.length - 7 - 8] ^= 0x55;
+            Files.write(journalFile, data);
+            List<Case> restored = new CaseJournal(this.dir, 10, 1000).recover(MAX_AGE);
+            assertThat(restored.size(), equalTo(3));
+            assertThat(restored.stream().filter(c -> c.getNumber() == 3).findFirst().get().isClosed(), is(true));
+        }
+    }
+
+    /**
+     * Test of recover method with outdated files, of class CaseJournal.
+     */
+    @Test
+    public void testRecoverOutdated() throws IOException {
+        System.out.println("recoverOutdated");
+        
+        {
+            CaseManager cm = new CaseManager();
+            CaseJournal journal = new CaseJournal(this.dir, 10, 1000);
+            journal.attach(cm);
+            playCases(cm);
+            journal.close();
+            
+            FileTime old = FileTime.from(Instant.now().minus(Duration.ofHours(2)));
+            Files.setLastModifiedTime(this.dir.resolve(CaseJournal.SNAPSHOT_FILE), old);
+            Files.setLastModifiedTime(this.dir.resolve(CaseJournal.JOURNAL_FILE), old);
+            assertThat(new CaseJournal(this.dir, 10, 1000).recover(MAX_AGE).isEmpty(), is(true));
+            assertThat(new CaseJournal(this.dir, 10, 1000).recover(Duration.ofHours(3)).size(), equalTo(2));
+        }
+    }
+}
@@ -23,8 +23,10 @@
  */
 package de.targodan.usb.io.processing;
 
+import java.time.Clock;
 import java.time.LocalDateTime;
 import java.time.Month;
+import java.time.ZoneOffset;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
@@ -182,6 +184,33 @@ public class HexchatMarshallerTest {
         assertThat(result, equalTo(expResult));
     }
 
+    /**
+     * Test of getYear method, of class HexchatMarshaller.
+     */
+    @Test
+    public void testGetYear() {
+        System.out.println("getYear");
+        
+        {
+            Clock clock = Clock.fixed(LocalDateTime.of(2017, Month.SEPTEMBER, 8, 12, 0).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+            HexchatMarshaller instance = new HexchatMarshaller(clock);
+            assertThat(instance.getYear(Month.SEPTEMBER), equalTo(2017));
+            assertThat(instance.getYear(Month.DECEMBER), equalTo(2017));
+        }
+        {
+            Clock clock = Clock.fixed(LocalDateTime.of(2018, Month.JANUARY, 1, 0, 0, 5).toInstant(ZoneOffset.UTC), ZoneOffset.UTC);
+            HexchatMarshaller instance = new HexchatMarshaller(clock);
+            assertThat(instance.getYear(Month.JANUARY), equalTo(2018));
+            assertThat(instance.getYear(Month.DECEMBER), equalTo(2017));
+        }
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseDateTimeThrows() {
+        HexchatMarshaller instance = new HexchatMarshaller();
+        instance.parseDateTime("Sep 08 23:4x:02");
+    }
+
     /**
      * Test of sanitizeUsername method, of class HexchatMarshaller.
      */
@@ -231,6 +260,20 @@ public class HexchatMarshallerTest {
             String result = instance.sanitizeUsername(name);
             assertThat(result, equalTo(expResult));
         }
+        {
+            String name = ".:~Kies:.";
+            HexchatMarshaller instance = new HexchatMarshaller();
+            String expResult = "Kies";
+            String result = instance.sanitizeUsername(name);
+            assertThat(result, equalTo(expResult));
+        }
+        {
+            String name = "*";
+            HexchatMarshaller instance = new HexchatMarshaller();
+            String expResult = "*";
+            String result = instance.sanitizeUsername(name);
+            assertThat(result, equalTo(expResult));
+        }
     }
 
     /**
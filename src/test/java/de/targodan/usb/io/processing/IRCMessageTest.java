@@ -0,0 +1,91 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io.processing;
+
+import java.time.LocalDateTime;
+import java.time.Month;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class IRCMessageTest {
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2017, Month.AUGUST, 17, 18, 22, 18);
+    
+    public IRCMessageTest() {
+    }
+
+    /**
+     * Test of the constructor taking sections of a line, of class IRCMessage.
+     */
+    @Test
+    public void testSectionsOfLine() {
+        System.out.println("sectionsOfLine");
+        
+        String line = "Aug 17 18:22:18 <@Kies>\t5j #3";
+        IRCMessage instance = new IRCMessage(TIMESTAMP, "#fuelrats", line, 18, 22, 24);
+        IRCMessage expResult = new IRCMessage(TIMESTAMP, "Kies", "#fuelrats", "5j #3");
+        
+        assertThat(instance.getContentSequence().toString(), equalTo("5j #3"));
+        assertThat(instance.getContentSequence().length(), equalTo(5));
+        assertThat(instance.getContentSequence().charAt(1), equalTo('j'));
+        assertThat(instance.getContentSequence().subSequence(3, 5).toString(), equalTo("#3"));
+        assertThat(instance.getSender(), equalTo("Kies"));
+        assertThat(instance.getContent(), equalTo("5j #3"));
+        assertThat(instance, equalTo(expResult));
+        assertThat(instance.hashCode(), equalTo(expResult.hashCode()));
+    }
+    
+    @Test(expected = IllegalArgumentException.class)
+    public void testSectionsOutOfLine() {
+        new IRCMessage(TIMESTAMP, "#fuelrats", "Kies\tno", 0, 4, 8);
+    }
+    
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testContentSequenceOutOfBounds() {
+        IRCMessage instance = new IRCMessage(TIMESTAMP, "#fuelrats", "Kies\tno", 0, 4, 5);
+        instance.getContentSequence().charAt(2);
+    }
+
+    /**
+     * Test of withChannel method, of class IRCMessage.
+     */
+    @Test
+    public void testWithChannel() {
+        System.out.println("withChannel");
+        
+        IRCMessage instance = new IRCMessage(TIMESTAMP, "#fuelrats", "Kies\tno", 0, 4, 5);
+        assertThat(instance.withChannel("#fuelrats"), is(sameInstance(instance)));
+        
+        IRCMessage result = instance.withChannel("#ratchat");
+        assertThat(result.getChannel(), equalTo("#ratchat"));
+        assertThat(result.getTimestamp(), equalTo(TIMESTAMP));
+        assertThat(result.getSender(), equalTo("Kies"));
+        assertThat(result.getContent(), equalTo("no"));
+        assertThat(instance.getChannel(), equalTo("#fuelrats"));
+    }
+}
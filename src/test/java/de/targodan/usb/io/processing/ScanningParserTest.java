@@ -0,0 +1,229 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.io.processing;
+
+import de.targodan.usb.data.Case;
+import de.targodan.usb.data.CaseManager;
+import de.targodan.usb.data.Rat;
+import de.targodan.usb.data.Report;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class ScanningParserTest {
+    /**
+     * RecordingHandler records every call as a String.
+     */
+    private static class RecordingHandler implements Handler {
+        final List<String> calls = new ArrayList<>();
+        
+        @Override
+        public void registerCaseManager(CaseManager cm) {
+        }
+
+        @Override
+        public void handleNewCase(Case c) {
+            this.calls.add("case "+c.getNumber()+" "+c.getClient().getIRCName()+" "+c.getClient().getCMDRName()
+                    +" "+c.getClient().getPlatform()+" "+c.getClient().getLanguage()+" "+c.getSystem().getName()
+                    +" "+c.isCodeRed()+" "+c.getOpenTime());
+        }
+
+        @Override
+        public void handleCommand(Command cmd) {
+            StringBuilder sb = new StringBuilder("command "+cmd.getType());
+            for(int i = 0; i < cmd.getParameterCount(); ++i) {
+                sb.append(" [").append(cmd.getParameter(i)).append("]");
+            }
+            this.calls.add(sb.toString());
+        }
+
+        @Override
+        public void handleCall(Rat rat, String caseIdentifier) {
+            this.calls.add("call "+rat.getIRCName()+" "+rat.getJumps()+" ["+caseIdentifier+"]");
+        }
+
+        @Override
+        public void handleReport(String ratIrcName, Report report, String caseIdentifier) {
+            this.calls.add("report "+ratIrcName+" "+report.getType()+(report.isPlus() ? "+" : "-")+" ["+caseIdentifier+"]");
+        }
+    }
+    
+    private static final String[] CORPUS = {
+        // From DefaultParserTest
+        "RATSIGNAL - CMDR Filip - System: ScoutCZ (not in EDDB) - Platform: PC - O2: OK - Language: Czech (cs) (Case #2)",
+        "just some text",
+        "go 2 Kies",
+        "go 2 Tom Kies",
+        "!go 2 Kies",
+        "!go 2 Tom Kies",
+        "!inject 2 this is some text",
+        "!cmdr 2 Cpt. Obvious",
+        "5j #2",
+        "5j c2",
+        "5j clientName",
+        "5j",
+        "5j +scooping #3",
+        "5j+scooping #3",
+        "fr+ #2",
+        "fr- client",
+        "bc+ #2",
+        "wb- #2",
+        "sys+ #2",
+        "sys+ fr- wr+ #2",
+        "fr+ wr- #2",
+        "fr+, wr- #2",
+        "just some text #2",
+        // Further cases
+        "RATSIGNAL - CMDR Some Body - System: Sol (1.23 LY from Sol) - Platform: XB - O2: NOT OK - Language: English (en-US) - IRC Nickname: some_body (Case #12)",
+        "RATSIGNAL - CMDR broken",
+        "there was a ratsignal earlier",
+        "  !sub 3 Kies Tom  ",
+        "!sub 3 Kies",
+        "!help me",
+        "!md",
+        "gone fishing",
+        "go",
+        "  5J, c123",
+        "I need 12j to #4",
+        "5j 6j #3",
+        "15jumps #3",
+        "5j_ #3",
+        "5j. ",
+        "12345678901j #2",
+        "FR+ WR- #2 ",
+        "friend fr+",
+        "comm+ comms- #2",
+        "inst+party- #5",
+        "fr+ 5j #3",
+        "5j fr+ c4",
+        "sys+\tbc+,client Name",
+        "fr+#2",
+        "#2 fr+",
+        "wr",
+        "",
+        "   ",
+    };
+    
+    public ScanningParserTest() {
+    }
+    
+    @Before
+    public void setUp() {
+    }
+    
+    @After
+    public void tearDown() {
+    }
+    
+    /**
+     * Test of parseAndHandle method, of class ScanningParser.
+     */
+    @Test
+    public void testParseAndHandle() {
+        System.out.println("parseAndHandle");
+        
+        {
+            IRCMessage message = new IRCMessage(LocalDateTime.now(), "Kies", "#fuelrats", "sys+ fr- wr+ #2");
+            RecordingHandler handler = new RecordingHandler();
+            ScanningParser instance = new ScanningParser();
+            instance.registerHandler(handler);
+            ParseResult result = instance.parseAndHandle(message);
+            assertThat(result, equalTo(ParseResult.WAS_REPORT));
+            assertThat(handler.calls.size(), equalTo(3));
+            assertThat(handler.calls.get(0), equalTo("report Kies SYS+ [2]"));
+            assertThat(handler.calls.get(1), equalTo("report Kies FR- [2]"));
+            assertThat(handler.calls.get(2), equalTo("report Kies WR+ [2]"));
+        }
+        {
+            IRCMessage message = new IRCMessage(LocalDateTime.now(), "Kies", "#fuelrats", "5j+scooping #3");
+            RecordingHandler handler = new RecordingHandler();
+            ScanningParser instance = new ScanningParser();
+            instance.registerHandler(handler);
+            ParseResult result = instance.parseAndHandle(message);
+            assertThat(result, equalTo(ParseResult.WAS_CALL));
+            assertThat(handler.calls.size(), equalTo(1));
+            assertThat(handler.calls.get(0), equalTo("call Kies 5 [3]"));
+        }
+        {
+            IRCMessage message = new IRCMessage(LocalDateTime.now(), "Kies", "#fuelrats", "!inject 2 this is some text");
+            RecordingHandler handler = new RecordingHandler();
+            ScanningParser instance = new ScanningParser();
+            instance.registerHandler(handler);
+            ParseResult result = instance.parseAndHandle(message);
+            assertThat(result, equalTo(ParseResult.WAS_COMMAND));
+            assertThat(handler.calls.size(), equalTo(1));
+            assertThat(handler.calls.get(0), equalTo("command INJECT [2] [this is some text]"));
+        }
+    }
+    
+    /**
+     * Test that ScanningParser produces the same results as DefaultParser.
+     */
+    @Test
+    public void testSameResultsAsDefaultParser() {
+        System.out.println("sameResultsAsDefaultParser");
+        
+        LocalDateTime timestamp = LocalDateTime.now();
+        for(String content : CORPUS) {
+            IRCMessage message = new IRCMessage(timestamp, "Kies", "#fuelrats", content);
+            
+            RecordingHandler expHandler = new RecordingHandler();
+            DefaultParser expParser = new DefaultParser();
+            expParser.registerHandler(expHandler);
+            String expResult = this.parseAndHandle(expParser, message);
+            
+            RecordingHandler handler = new RecordingHandler();
+            ScanningParser instance = new ScanningParser();
+            instance.registerHandler(handler);
+            String result = this.parseAndHandle(instance, message);
+            
+            assertThat("Result of \""+content+"\"", result, equalTo(expResult));
+            assertThat("Handler calls of \""+content+"\"", handler.calls, equalTo(expHandler.calls));
+        }
+    }
+    
+    /**
+     * Returns the ParseResult or the class of the thrown exception as String.
+     * 
+     * @param parser The parser to be used.
+     * @param message The message to be parsed.
+     * @return the ParseResult or the class of the thrown exception as String.
+     */
+    private String parseAndHandle(Parser parser, IRCMessage message) {
+        try {
+            return parser.parseAndHandle(message).toString();
+        } catch(Exception ex) {
+            return ex.getClass().getName();
+        }
+    }
+}
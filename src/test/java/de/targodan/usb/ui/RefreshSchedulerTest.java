@@ -0,0 +1,84 @@
+/*
+ * The MIT License
+ *
+ * Copyright 2017 Luca Corbatto.
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+package de.targodan.usb.ui;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingUtilities;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.hamcrest.CoreMatchers.*;
+
+/**
+ *
+ * @author Luca Corbatto
+ */
+public class RefreshSchedulerTest {
+    
+    public RefreshSchedulerTest() {
+    }
+
+    /**
+     * Test of requestRefresh method, of class RefreshScheduler.
+     */
+    @Test
+    public void testRequestRefresh() throws InterruptedException {
+        System.out.println("requestRefresh");
+        
+        AtomicInteger refreshes = new AtomicInteger(0);
+        AtomicBoolean onEventDispatchThread = new AtomicBoolean(true);
+        Semaphore refreshed = new Semaphore(0);
+        RefreshScheduler instance = new RefreshScheduler(100, () -> {
+            refreshes.incrementAndGet();
+            onEventDispatchThread.compareAndSet(true, SwingUtilities.isEventDispatchThread());
+            refreshed.release();
+        });
+        
+        // A burst of requests results in a single refresh.
+        for(int i = 0; i < 1000; ++i) {
+            instance.requestRefresh();
+        }
+        assertThat(refreshed.tryAcquire(5, TimeUnit.SECONDS), is(true));
+        assertThat(refreshed.tryAcquire(300, TimeUnit.MILLISECONDS), is(false));
+        assertThat(refreshes.get(), equalTo(1));
+        
+        // Requests after a refresh are not lost.
+        instance.requestRefresh();
+        assertThat(refreshed.tryAcquire(5, TimeUnit.SECONDS), is(true));
+        assertThat(refreshes.get(), equalTo(2));
+        assertThat(onEventDispatchThread.get(), is(true));
+    }
+    
+    /**
+     * Test of constructor, of class RefreshScheduler.
+     */
+    @Test(expected=IllegalArgumentException.class)
+    public void testConstructorWithNegativeInterval() {
+        System.out.println("constructorWithNegativeInterval");
+        
+        new RefreshScheduler(-1, () -> {});
+    }
+}